@@ -0,0 +1,127 @@
+package net.deelam.graphtools.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tinkerpop.blueprints.impls.orient.OrientGraph;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import net.deelam.graphtools.CompactGraphRecord;
+import net.deelam.graphtools.GraphRecord;
+import net.deelam.graphtools.GraphRecordImpl;
+import net.deelam.graphtools.GraphRecordMerger;
+import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.JavaSetPropertyMerger;
+import net.deelam.graphtools.JsonPropertyMerger;
+import net.deelam.graphtools.Neo4jPropertyMerger;
+import net.deelam.graphtools.PropertyMerger;
+import net.deelam.graphtools.graphfactories.IdGraphFactoryNeo4j;
+import net.deelam.graphtools.graphfactories.IdGraphFactoryOrientdb;
+import net.deelam.graphtools.graphfactories.IdGraphFactoryTinker;
+import net.deelam.graphtools.importer.GraphRecordBuilder;
+import net.deelam.graphtools.importer.domain.CompanyContactBean;
+import net.deelam.graphtools.importer.domain.CompanyContactsEncoder;
+
+/**
+ * @author deelam
+ */
+public final class BenchmarkUtils {
+
+  public static void registerGraphFactories() {
+    IdGraphFactoryTinker.register();
+    IdGraphFactoryNeo4j.register();
+    IdGraphFactoryOrientdb.register();
+  }
+
+  /**
+   * @param name one of javaSet, json, or neo4j
+   */
+  public static PropertyMerger createPropertyMerger(String name) {
+    switch (name) {
+      case "javaSet":
+        return new JavaSetPropertyMerger();
+      case "json":
+        return new JsonPropertyMerger();
+      case "neo4j":
+        return new Neo4jPropertyMerger();
+      default:
+        throw new IllegalArgumentException("Unknown PropertyMerger: " + name);
+    }
+  }
+
+  /**
+   * @param name one of impl (GraphRecordImpl) or compact (CompactGraphRecord)
+   */
+  public static GraphRecord.Factory createGraphRecordFactory(String name) {
+    switch (name) {
+      case "impl":
+        return new GraphRecordImpl.Factory();
+      case "compact":
+        return new CompactGraphRecord.Factory();
+      default:
+        throw new IllegalArgumentException("Unknown GraphRecord.Factory: " + name);
+    }
+  }
+
+  public static GraphRecordBuilder<CompanyContactBean> createGraphRecordBuilder() {
+    return createGraphRecordBuilder("impl");
+  }
+
+  public static GraphRecordBuilder<CompanyContactBean> createGraphRecordBuilder(String recordFactory) {
+    return new GraphRecordBuilder<>(new CompanyContactsEncoder(), createGraphRecordFactory(recordFactory));
+  }
+
+  /**
+   * @return GraphRecords for all beans, in order and not consolidated
+   */
+  public static List<GraphRecord> buildRecords(List<CompanyContactBean> beans) {
+    return buildRecords(beans, "impl");
+  }
+
+  public static List<GraphRecord> buildRecords(List<CompanyContactBean> beans, String recordFactory) {
+    GraphRecordBuilder<CompanyContactBean> grBuilder = createGraphRecordBuilder(recordFactory);
+    List<GraphRecord> records = new ArrayList<>(beans.size() * 6);
+    for (CompanyContactBean bean : beans) {
+      records.addAll(grBuilder.build(bean)); // copy since builder reuses its collection
+    }
+    return records;
+  }
+
+  /**
+   * Merges records with the same id, like ConsolidatingImporter does within its buffer.
+   */
+  public static Map<String, GraphRecord> consolidate(Collection<GraphRecord> records,
+      GraphRecordMerger merger) {
+    Map<String, GraphRecord> consolidated = new LinkedHashMap<>(records.size());
+    for (GraphRecord gr : records) {
+      GraphRecord existingGR = consolidated.get(gr.getStringId());
+      if (existingGR == null) {
+        consolidated.put(gr.getStringId(), gr);
+      } else {
+        merger.merge(gr, existingGR);
+      }
+    }
+    return consolidated;
+  }
+
+  /**
+   * Deletes any existing graph and, for OrientDB, predefines the edge types
+   * since OrientDB cannot create them within a transaction.
+   */
+  public static void resetGraph(GraphUri graphUri) throws IOException {
+    graphUri.delete();
+    if (graphUri.getScheme().equals("orientdb")) {
+      IdGraph<?> graph = graphUri.createNewIdGraph(true);
+      OrientGraph oGraph = (OrientGraph) graph.getBaseGraph();
+      oGraph.createEdgeType("hasDevice");
+      oGraph.createEdgeType("inState");
+      oGraph.createEdgeType("employeeAt");
+      graphUri.shutdown();
+    }
+  }
+
+}
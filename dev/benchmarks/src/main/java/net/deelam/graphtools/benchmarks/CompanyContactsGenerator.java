@@ -0,0 +1,82 @@
+package net.deelam.graphtools.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import net.deelam.graphtools.importer.domain.CompanyContactBean;
+
+/**
+ * Generates synthetic rows shaped like us-500.csv so benchmarks can run at any scale.
+ *
+ * People, companies and phone numbers are drawn from pools sized relative to the number of rows,
+ * so the same entities recur across rows and exercise the merge paths:
+ * <li> each person appears in about rowsPerPerson rows
+ * <li> about 20 people work at each company, sharing its address and switchboard phone (phone2)
+ * <li> some rows list a different company for the same person, creating extra employeeAt edges
+ *
+ * Output is deterministic for a given seed.
+ *
+ * @author deelam
+ */
+@RequiredArgsConstructor
+public class CompanyContactsGenerator {
+
+  /// scale factors
+  final int rows;
+  final int rowsPerPerson;
+
+  @Setter
+  private int employeesPerCompany = 20;
+
+  @Setter
+  private float companyChangeRate = 0.1f;
+
+  @Setter
+  private long seed = 201610181200L;
+
+  private static final String[] STATES = {"AL", "AK", "AZ", "AR", "CA", "CO", "CT", "DE", "FL",
+      "GA", "HI", "ID", "IL", "IN", "IA", "KS", "KY", "LA", "ME", "MD", "MA", "MI", "MN", "MS",
+      "MO", "MT", "NE", "NV", "NH", "NJ", "NM", "NY", "NC", "ND", "OH", "OK", "OR", "PA", "RI",
+      "SC", "SD", "TN", "TX", "UT", "VT", "VA", "WA", "WV", "WI", "WY"};
+
+  public List<CompanyContactBean> generate() {
+    int persons = Math.max(1, rows / Math.max(1, rowsPerPerson));
+    int companies = Math.max(1, persons / employeesPerCompany);
+    Random rand = new Random(seed);
+
+    List<CompanyContactBean> beans = new ArrayList<>(rows);
+    for (int i = 0; i < rows; ++i) {
+      int p = (i < persons) ? i : rand.nextInt(persons); // every person appears at least once
+      int c = p % companies;
+      if (rand.nextFloat() < companyChangeRate)
+        c = rand.nextInt(companies);
+      beans.add(createBean(p, c));
+    }
+    return beans;
+  }
+
+  private static CompanyContactBean createBean(int p, int c) {
+    CompanyContactBean b = new CompanyContactBean();
+    b.setFirstName("First" + p);
+    b.setLastName("Last" + (p / 7));
+    b.setCompany("Company " + c);
+    b.setAddress(c + " Main St");
+    b.setCity("City" + (c % 500));
+    b.setCounty("County" + (c % 200));
+    b.setState(STATES[c % STATES.length]);
+    b.setZip(10000 + (c % 89999));
+    b.setPhone1(phoneNumber(1_000_000_000L + p));
+    b.setPhone2(phoneNumber(9_000_000_000L - c)); // company switchboard, shared by employees
+    b.setEmail("first" + p + ".last" + (p / 7) + "@company" + c + ".com");
+    return b;
+  }
+
+  private static String phoneNumber(long n) {
+    String digits = Long.toString(n);
+    return digits.substring(0, 3) + "-" + digits.substring(3, 6) + "-" + digits.substring(6);
+  }
+
+}
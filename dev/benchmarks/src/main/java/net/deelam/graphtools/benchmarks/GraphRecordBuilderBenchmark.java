@@ -0,0 +1,64 @@
+package net.deelam.graphtools.benchmarks;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.deelam.graphtools.GraphRecord;
+import net.deelam.graphtools.importer.GraphRecordBuilder;
+import net.deelam.graphtools.importer.domain.CompanyContactBean;
+
+/**
+ * Encoding throughput: one row into its GraphRecords per operation.
+ * recordFactory compares GraphRecordImpl with CompactGraphRecord.
+ * 
+ * @author deelam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphRecordBuilderBenchmark {
+
+  @Param({"10000"})
+  int scale;
+
+  @Param({"4"})
+  int rowsPerPerson;
+
+  @Param({"impl", "compact"})
+  String recordFactory;
+
+  private List<CompanyContactBean> beans;
+  private GraphRecordBuilder<CompanyContactBean> grBuilder;
+  private int i = 0;
+
+  @Setup
+  public void setup() {
+    beans = new CompanyContactsGenerator(scale, rowsPerPerson).generate();
+    grBuilder = BenchmarkUtils.createGraphRecordBuilder(recordFactory);
+  }
+
+  @Benchmark
+  public Collection<GraphRecord> build() {
+    CompanyContactBean bean = beans.get(i);
+    if (++i == beans.size())
+      i = 0;
+    return grBuilder.build(bean);
+  }
+
+}
@@ -0,0 +1,72 @@
+package net.deelam.graphtools.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.deelam.graphtools.GraphRecord;
+import net.deelam.graphtools.importer.DefaultGraphRecordMerger;
+import net.deelam.graphtools.importer.domain.CompanyContactBean;
+
+/**
+ * Consolidation of one buffer of GraphRecords by id using DefaultGraphRecordMerger.merge(),
+ * as done by ConsolidatingImporter and Neo4jBatchImporter.
+ * 
+ * Records are rebuilt before each invocation since merging modifies them.
+ * 
+ * @author deelam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphRecordMergerBenchmark {
+
+  @Param({"10000"})
+  int scale;
+
+  @Param({"1", "4"})
+  int rowsPerPerson;
+
+  @Param({"javaSet", "json", "neo4j"})
+  String propertyMerger;
+
+  @Param({"impl", "compact"})
+  String recordFactory;
+
+  private List<CompanyContactBean> beans;
+  private DefaultGraphRecordMerger merger;
+  private List<GraphRecord> records;
+
+  @Setup
+  public void setup() {
+    beans = new CompanyContactsGenerator(scale, rowsPerPerson).generate();
+    merger = new DefaultGraphRecordMerger(BenchmarkUtils.createPropertyMerger(propertyMerger));
+  }
+
+  @Setup(Level.Invocation)
+  public void buildRecords() {
+    records = BenchmarkUtils.buildRecords(beans, recordFactory);
+  }
+
+  @Benchmark
+  public Map<String, GraphRecord> merge() {
+    return BenchmarkUtils.consolidate(records, merger);
+  }
+
+}
@@ -0,0 +1,39 @@
+package net.deelam.graphtools.benchmarks;
+
+import java.util.Iterator;
+import java.util.List;
+
+import net.deelam.graphtools.importer.SourceData;
+
+/**
+ * SourceData over records already in memory, so that benchmarks exclude parsing.
+ *
+ * @author deelam
+ */
+public class ListSourceData<B> implements SourceData<B> {
+
+  private final List<B> records;
+  private final Iterator<B> itr;
+  private int count = 0;
+
+  public ListSourceData(List<B> records) {
+    this.records = records;
+    itr = records.iterator();
+  }
+
+  @Override
+  public B getNextRecord() {
+    if (!itr.hasNext())
+      return null;
+    ++count;
+    return itr.next();
+  }
+
+  @Override
+  public int getPercentProcessed() {
+    if (records.isEmpty())
+      return 100;
+    return count * 100 / records.size();
+  }
+
+}
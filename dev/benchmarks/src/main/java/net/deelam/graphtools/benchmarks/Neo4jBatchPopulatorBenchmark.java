@@ -0,0 +1,83 @@
+package net.deelam.graphtools.benchmarks;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.deelam.graphtools.GraphRecord;
+import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.importer.Neo4jBatchPopulator;
+import net.deelam.graphtools.importer.domain.CompanyContactBean;
+
+/**
+ * Time to create a new Neo4j store from consolidated GraphRecords using Neo4jBatchPopulator,
+ * including indexing (per element or deferred) and the post-insert shutdown() pass.
+ * 
+ * @author deelam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Neo4jBatchPopulatorBenchmark {
+
+  @Param({"neo4j:./target/benchmark-neo4jbatch"})
+  String graphUriStr;
+
+  @Param({"10000"})
+  int scale;
+
+  @Param({"4"})
+  int rowsPerPerson;
+
+  @Param({"false", "true"})
+  boolean deferIndexing;
+
+  private List<CompanyContactBean> beans;
+  private GraphUri graphUri;
+  private Collection<GraphRecord> records;
+
+  @Setup
+  public void setup() {
+    BenchmarkUtils.registerGraphFactories();
+    beans = new CompanyContactsGenerator(scale, rowsPerPerson).generate();
+  }
+
+  @Setup(Level.Iteration)
+  public void resetGraph() throws IOException {
+    graphUri = new GraphUri(graphUriStr);
+    graphUri.delete();
+    Neo4jBatchPopulator populator = new Neo4jBatchPopulator("benchmark");
+    records = BenchmarkUtils.consolidate(BenchmarkUtils.buildRecords(beans),
+        populator.getGraphRecordMerger()).values();
+  }
+
+  @Benchmark
+  public void populateGraph() throws IOException {
+    Neo4jBatchPopulator populator = new Neo4jBatchPopulator("benchmark");
+    populator.setDeferIndexing(deferIndexing);
+    populator.reinit(graphUri, null);
+    try {
+      populator.populateGraph(graphUri, records);
+    } finally {
+      populator.shutdown();
+    }
+  }
+
+}
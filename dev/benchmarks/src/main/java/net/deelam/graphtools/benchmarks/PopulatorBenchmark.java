@@ -0,0 +1,96 @@
+package net.deelam.graphtools.benchmarks;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.deelam.graphtools.GraphRecord;
+import net.deelam.graphtools.GraphTransaction;
+import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.importer.DefaultGraphRecordMerger;
+import net.deelam.graphtools.importer.DefaultPopulator;
+import net.deelam.graphtools.importer.domain.CompanyContactBean;
+
+/**
+ * Time to populate a new graph with consolidated GraphRecords using DefaultPopulator,
+ * including opening and shutting down the graph.
+ * 
+ * @author deelam
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PopulatorBenchmark {
+
+  @Param({"tinker:///", "neo4j:./target/benchmark-neo4j", "orientdb:plocal:./target/benchmark-orientdb"})
+  String graphUriStr;
+
+  @Param({"10000"})
+  int scale;
+
+  @Param({"4"})
+  int rowsPerPerson;
+
+  /// DefaultPopulator.writeBehindBufferSize; 0 writes directly to the graph
+  @Param({"0", "10000"})
+  int writeBehindBufferSize;
+
+  /// DefaultPopulator.bloomFilterCapacity; 0 looks up every id
+  @Param({"0", "100000"})
+  int bloomFilterCapacity;
+
+  private List<CompanyContactBean> beans;
+  private GraphUri graphUri;
+  private Collection<GraphRecord> records;
+
+  @Setup
+  public void setup() {
+    BenchmarkUtils.registerGraphFactories();
+    beans = new CompanyContactsGenerator(scale, rowsPerPerson).generate();
+  }
+
+  @Setup(Level.Iteration)
+  public void resetGraph() throws IOException {
+    graphUri = new GraphUri(graphUriStr);
+    BenchmarkUtils.resetGraph(graphUri);
+    DefaultGraphRecordMerger merger = new DefaultGraphRecordMerger(graphUri.createPropertyMerger());
+    records = BenchmarkUtils.consolidate(BenchmarkUtils.buildRecords(beans), merger).values();
+  }
+
+  @Benchmark
+  public void populateGraph() {
+    DefaultPopulator populator = new DefaultPopulator("benchmark",
+        new DefaultGraphRecordMerger(graphUri.createPropertyMerger()));
+    populator.setWriteBehindBufferSize(writeBehindBufferSize);
+    populator.setBloomFilterCapacity(bloomFilterCapacity);
+    populator.reinit(graphUri, null);
+    int tx = GraphTransaction.begin(graphUri.getGraph());
+    try {
+      populator.populateGraph(graphUri, records);
+      GraphTransaction.commit(tx);
+    } catch (RuntimeException re) {
+      GraphTransaction.rollback(tx);
+      throw re;
+    } finally {
+      populator.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,97 @@
+package net.deelam.graphtools.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.deelam.graphtools.GraphRecord;
+import net.deelam.graphtools.GraphRecordImpl;
+import net.deelam.graphtools.JsonPropertyMerger;
+import net.deelam.graphtools.Neo4jPropertyMerger;
+import net.deelam.graphtools.PropertyMerger;
+
+/**
+ * Merges `cardinality` elements into one element per operation, 
+ * which shows how mergeProperties() scales with the size of a multivalued property.
+ * 
+ * @author deelam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PropertyMergerBenchmark {
+
+  static final String MULTIVALUED_KEY = "origId";
+
+  @Param({"javaSet", "json", "neo4j"})
+  String propertyMerger;
+
+  @Param({"10", "100", "1000"})
+  int cardinality;
+
+  /// if true, merges are done within a merge session (see PropertyMerger.beginMergeSession())
+  @Param({"false", "true"})
+  boolean mergeSession;
+
+  private PropertyMerger pm;
+  private GraphRecord[] distinctFroms;
+  private GraphRecord[] sameFroms;
+
+  @Setup
+  public void setup() {
+    JsonPropertyMerger.allowMultivaluedProperty(MULTIVALUED_KEY);
+    Neo4jPropertyMerger.allowMultivaluedProperty(MULTIVALUED_KEY);
+    pm = BenchmarkUtils.createPropertyMerger(propertyMerger);
+
+    distinctFroms = new GraphRecord[cardinality];
+    sameFroms = new GraphRecord[cardinality];
+    for (int i = 0; i < cardinality; ++i) {
+      distinctFroms[i] = createFrom(i, "orig:" + i);
+      sameFroms[i] = createFrom(i, "orig:0");
+    }
+  }
+
+  private static GraphRecord createFrom(int i, String origId) {
+    GraphRecord from = new GraphRecordImpl("from" + i, "PERSON");
+    from.setProperty("name", "Same Name");
+    from.setProperty(MULTIVALUED_KEY, origId);
+    return from;
+  }
+
+  @Benchmark
+  public GraphRecord distinctValues() {
+    GraphRecord to = new GraphRecordImpl("to");
+    mergeAll(distinctFroms, to);
+    return to;
+  }
+
+  @Benchmark
+  public GraphRecord sameValues() {
+    GraphRecord to = new GraphRecordImpl("to");
+    mergeAll(sameFroms, to);
+    return to;
+  }
+
+  private void mergeAll(GraphRecord[] froms, GraphRecord to) {
+    if (mergeSession)
+      pm.beginMergeSession();
+    for (GraphRecord from : froms)
+      pm.mergeProperties(from, to);
+    if (mergeSession)
+      pm.endMergeSession(true);
+  }
+
+}
@@ -0,0 +1,165 @@
+package net.deelam.graphtools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Adjusts the threshold within [minThreshold, maxThreshold] after each batch:
+ * <li> shrinks it if free heap is below minFreeHeapFraction or the commit took longer than maxCommitMillis
+ * <li> after shrinking for either reason, keeps it until healthyBatchesToRegrow batches in a row have
+ *   neither problem, and then grows it again
+ * <li> otherwise grows or shrinks it by growthFactor, reversing direction when records/sec drops
+ *   by more than rateTolerance compared to the previous batch (i.e., hill-climbing on throughput)
+ *
+ * Free heap is measured as of the last garbage collection (see MemoryPoolMXBean.getCollectionUsage()),
+ * so garbage that has not been collected yet doesn't count as used.
+ *
+ * Decisions are logged and exposed via putMetrics().
+ *
+ * @author deelam
+ */
+@Slf4j
+public class AdaptiveThresholdController implements ThresholdController {
+
+  @Getter
+  private final int minThreshold;
+  @Getter
+  private final int maxThreshold;
+
+  @Setter
+  private double growthFactor = 1.5;
+  @Setter
+  private long maxCommitMillis = 10000;
+  @Setter
+  private double minFreeHeapFraction = 0.2;
+  @Setter
+  private double rateTolerance = 0.05;
+  @Setter
+  private int healthyBatchesToRegrow = 5;
+
+  /// returns the fraction of the max heap that is free; replaced in tests
+  @Setter(AccessLevel.PACKAGE)
+  private DoubleSupplier freeHeapFraction = AdaptiveThresholdController::freeHeapFractionAfterGc;
+
+  private final AtomicLong threshold = new AtomicLong();
+  private final AtomicLong increases = new AtomicLong();
+  private final AtomicLong decreases = new AtomicLong();
+  private final AtomicLong recordsPerSec = new AtomicLong();
+  private final AtomicLong commitMillis = new AtomicLong();
+  private final AtomicLong freeHeapPercent = new AtomicLong();
+
+  private double prevRate = -1;
+  private boolean growing = true;
+  /// number of batches without low heap or slow commits since the last one, or -1 if not backing off
+  private int healthyBatches = -1;
+
+  public AdaptiveThresholdController(int initialThreshold, int minThreshold, int maxThreshold) {
+    if (minThreshold < 1 || minThreshold > maxThreshold)
+      throw new IllegalArgumentException("Invalid bounds: [" + minThreshold + ", " + maxThreshold + "]");
+    this.minThreshold = minThreshold;
+    this.maxThreshold = maxThreshold;
+    threshold.set(clamp(initialThreshold));
+  }
+
+  @Override
+  public int getThreshold() {
+    return threshold.intValue();
+  }
+
+  @Override
+  public void batchCompleted(int numRecords, long batchNanos, long commitNanos) {
+    double rate = numRecords * 1e9 / Math.max(1, batchNanos);
+    long commitMs = commitNanos / 1000000;
+    double freeHeap = freeHeapFraction.getAsDouble();
+    recordsPerSec.set((long) rate);
+    commitMillis.set(commitMs);
+    freeHeapPercent.set((long) (freeHeap * 100));
+
+    int curr = getThreshold();
+    String reason;
+    boolean hold = false;
+    if (freeHeap < minFreeHeapFraction) {
+      growing = false;
+      healthyBatches = 0;
+      reason = "low free heap";
+    } else if (commitMs > maxCommitMillis) {
+      growing = false;
+      healthyBatches = 0;
+      reason = "slow commit";
+    } else if (healthyBatches >= 0 && ++healthyBatches < healthyBatchesToRegrow) {
+      hold = true;
+      reason = "healthy batch " + healthyBatches + " of " + healthyBatchesToRegrow + " before growing again";
+    } else if (healthyBatches >= 0) {
+      healthyBatches = -1;
+      growing = true;
+      reason = "recovered";
+    } else if (prevRate >= 0 && rate < prevRate * (1 - rateTolerance)) {
+      growing = !growing;
+      reason = "lower records/sec";
+    } else {
+      reason = "same or higher records/sec";
+    }
+    prevRate = rate;
+
+    if (hold) {
+      log.info("Threshold {} kept ({}): records/sec={} commitMillis={} freeHeap={}%",
+          curr, reason, (long) rate, commitMs, freeHeapPercent);
+      return;
+    }
+    int next = clamp(growing ? (long) (curr * growthFactor) : (long) (curr / growthFactor));
+    if (next > curr)
+      increases.incrementAndGet();
+    else if (next < curr)
+      decreases.incrementAndGet();
+    threshold.set(next);
+    log.info("Threshold {} -> {} ({}): records/sec={} commitMillis={} freeHeap={}%",
+        curr, next, reason, (long) rate, commitMs, freeHeapPercent);
+  }
+
+  private int clamp(long t) {
+    return (int) Math.max(minThreshold, Math.min(maxThreshold, t));
+  }
+
+  /**
+   * Uses the heap usage after the most recent collection of each heap memory pool, if available;
+   * otherwise, the current heap usage, which includes uncollected garbage.
+   */
+  static double freeHeapFractionAfterGc() {
+    long maxHeap = Runtime.getRuntime().maxMemory();
+    long used = 0;
+    boolean collected = false;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      MemoryUsage usage = (pool.getType() == MemoryType.HEAP) ? pool.getCollectionUsage() : null;
+      if (usage != null) {
+        used += usage.getUsed();
+        collected = true;
+      }
+    }
+    if (!collected) {
+      Runtime rt = Runtime.getRuntime();
+      used = rt.totalMemory() - rt.freeMemory();
+    }
+    return (double) (maxHeap - used) / maxHeap;
+  }
+
+  @Override
+  public void putMetrics(Map<String, Number> metrics) {
+    metrics.put("THRESHOLD", threshold);
+    metrics.put("THRESHOLD_INCREASES", increases);
+    metrics.put("THRESHOLD_DECREASES", decreases);
+    metrics.put("RECORDS_PER_SEC", recordsPerSec);
+    metrics.put("COMMIT_MILLIS", commitMillis);
+    metrics.put("FREE_HEAP_PERCENT", freeHeapPercent);
+  }
+
+}
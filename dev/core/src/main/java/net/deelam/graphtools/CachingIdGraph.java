@@ -0,0 +1,188 @@
+package net.deelam.graphtools;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * IdGraph with a read-through LRU cache of id-to-element lookups, so that repeated getVertex(id) and
+ * getEdge(id) calls for the same ids (e.g., when consolidating records) don't each query the base graph's
+ * id index (e.g., Neo4j's node_auto_index).
+ *
+ * Enabled in GraphUri.openIdGraph() with query parameters:
+ * <li> ID_CACHE_SIZE: maximum number of cached vertices, and separately of cached edges
+ * <li> ID_CACHE_MAX_WEIGHT: maximum total length of cached ids, for vertices and separately for edges;
+ *   if set, it is used instead of ID_CACHE_SIZE since Guava's cache supports only one bound
+ *
+ * Vertices and edges added through this graph are cached.
+ * Entries are invalidated when elements are removed through this graph (including a removed vertex's edges)
+ * and all entries are invalidated on rollback.
+ * Elements removed directly from the base graph are not detected.
+ *
+ * Cached elements are only kept across commits for Neo4j and non-transactional graphs. Elements of other
+ * transactional graphs (e.g., Titan, OrientDB) are bound to their transaction, so all entries are also
+ * invalidated on commit.
+ *
+ * Hit and miss counts are available as import metrics via putMetrics().
+ *
+ * @author deelam
+ */
+@Slf4j
+public class CachingIdGraph<T extends KeyIndexableGraph> extends IdGraph<T> {
+
+  public static final String ID_CACHE_SIZE = "idCacheSize";
+  public static final String ID_CACHE_MAX_WEIGHT = "idCacheMaxWeight";
+
+  private final Cache<Object, Vertex> vertexCache;
+  private final Cache<Object, Edge> edgeCache;
+  /// whether cached elements remain valid after the transaction ends
+  private final boolean keepAcrossTransactions;
+
+  private final AtomicLong vertexHits = new AtomicLong();
+  private final AtomicLong vertexMisses = new AtomicLong();
+  private final AtomicLong edgeHits = new AtomicLong();
+  private final AtomicLong edgeMisses = new AtomicLong();
+
+  /**
+   * @param maxWeight if greater than 0, used instead of maxSize
+   */
+  public CachingIdGraph(T baseGraph, long maxSize, long maxWeight) {
+    super(baseGraph);
+    vertexCache = buildCache(maxSize, maxWeight);
+    edgeCache = buildCache(maxSize, maxWeight);
+    keepAcrossTransactions = !(baseGraph instanceof TransactionalGraph) || baseGraph instanceof Neo4jGraph;
+  }
+
+  private static <E> Cache<Object, E> buildCache(long maxSize, long maxWeight) {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+    if (maxWeight > 0)
+      return builder.maximumWeight(maxWeight).weigher((Object id, E elem) -> id.toString().length()).build();
+    else
+      return builder.maximumSize(maxSize).build();
+  }
+
+  public CacheStats getVertexCacheStats() {
+    return vertexCache.stats();
+  }
+
+  public CacheStats getEdgeCacheStats() {
+    return edgeCache.stats();
+  }
+
+  /**
+   * Adds hit and miss counts that are updated as the graph is used.
+   */
+  public void putMetrics(Map<String, Number> metrics) {
+    metrics.put("ID_CACHE_VERTEX_HITS", vertexHits);
+    metrics.put("ID_CACHE_VERTEX_MISSES", vertexMisses);
+    metrics.put("ID_CACHE_EDGE_HITS", edgeHits);
+    metrics.put("ID_CACHE_EDGE_MISSES", edgeMisses);
+  }
+
+  public void invalidateCache() {
+    vertexCache.invalidateAll();
+    edgeCache.invalidateAll();
+  }
+
+  @Override
+  public Vertex getVertex(Object id) {
+    if (id == null)
+      return super.getVertex(id);
+    Vertex v = vertexCache.getIfPresent(id);
+    if (v != null) {
+      vertexHits.incrementAndGet();
+    } else {
+      vertexMisses.incrementAndGet();
+      v = super.getVertex(id);
+      if (v != null)
+        vertexCache.put(id, v);
+    }
+    return v;
+  }
+
+  @Override
+  public Edge getEdge(Object id) {
+    if (id == null)
+      return super.getEdge(id);
+    Edge e = edgeCache.getIfPresent(id);
+    if (e != null) {
+      edgeHits.incrementAndGet();
+    } else {
+      edgeMisses.incrementAndGet();
+      e = super.getEdge(id);
+      if (e != null)
+        edgeCache.put(id, e);
+    }
+    return e;
+  }
+
+  @Override
+  public Vertex addVertex(Object id) {
+    Vertex v = super.addVertex(id);
+    vertexCache.put(v.getId(), v);
+    return v;
+  }
+
+  @Override
+  public Edge addEdge(Object id, Vertex outVertex, Vertex inVertex, String label) {
+    Edge e = super.addEdge(id, outVertex, inVertex, label);
+    edgeCache.put(e.getId(), e);
+    return e;
+  }
+
+  @Override
+  public void removeVertex(Vertex vertex) {
+    // edges are removed along with the vertex
+    for (Edge e : vertex.getEdges(Direction.BOTH))
+      edgeCache.invalidate(e.getId());
+    vertexCache.invalidate(vertex.getId());
+    super.removeVertex(vertex);
+  }
+
+  @Override
+  public void removeEdge(Edge edge) {
+    edgeCache.invalidate(edge.getId());
+    super.removeEdge(edge);
+  }
+
+  @Override
+  public void commit() {
+    if (!keepAcrossTransactions)
+      invalidateCache();
+    super.commit();
+  }
+
+  @Override
+  public void rollback() {
+    invalidateCache(); // cached elements may have been added in the rolled-back transaction
+    super.rollback();
+  }
+
+  @SuppressWarnings("deprecation")
+  @Override
+  public void stopTransaction(TransactionalGraph.Conclusion conclusion) {
+    if (conclusion == TransactionalGraph.Conclusion.FAILURE || !keepAcrossTransactions)
+      invalidateCache();
+    super.stopTransaction(conclusion);
+  }
+
+  @Override
+  public void shutdown() {
+    log.info("Id cache stats: vertices={} edges={}", vertexCache.stats(), edgeCache.stats());
+    invalidateCache();
+    super.shutdown();
+  }
+
+}
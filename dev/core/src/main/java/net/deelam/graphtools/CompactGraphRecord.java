@@ -0,0 +1,103 @@
+package net.deelam.graphtools;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+import com.tinkerpop.blueprints.Edge;
+
+import lombok.Setter;
+import net.deelam.graphtools.util.ArrayMap;
+
+/**
+ * GraphRecord with a smaller memory footprint than GraphRecordImpl, for buffering many records during import.
+ * Properties and edges are kept in ArrayMaps, which allocate nothing until the first entry is added
+ * and only become HashMaps past a threshold.  Property keys and edge labels are shared
+ * across all records created by the same Factory.
+ *
+ * Use one Factory per import so that its key dictionary does not grow indefinitely.
+ *
+ * This reduces the retained heap per consolidated record by about a third (e.g., ~1410 to ~900 bytes
+ * for the CompanyContacts benchmark data).  Most of the remaining footprint is the id and value
+ * Strings themselves, which this class does not compact.
+ *
+ * @author deelam
+ */
+public class CompactGraphRecord extends GraphRecordImpl {
+  private static final long serialVersionUID = 201610180102L;
+
+  @Setter
+  private static int PROPS_HASH_THRESHOLD = 16;
+  @Setter
+  private static int EDGES_HASH_THRESHOLD = 8;
+
+  /**
+   * Thread-safe so it can be shared by multiple GraphRecordBuilders.
+   */
+  public static class Factory extends GraphRecord.Factory {
+    private final ConcurrentHashMap<String, String> dictionary = new ConcurrentHashMap<>();
+    private final UnaryOperator<String> interner = this::intern; // shared by all maps
+
+    String intern(String key) {
+      String existing = dictionary.putIfAbsent(key, key);
+      return (existing == null) ? key : existing;
+    }
+
+    public int getDictionarySize() {
+      return dictionary.size();
+    }
+
+    @Override
+    public CompactGraphRecord create(String id) {
+      return new CompactGraphRecord(id, this);
+    }
+
+    @Override
+    public CompactGraphRecord create(String id, String nodeType) {
+      CompactGraphRecord gr = new CompactGraphRecord(id, this);
+      setType(gr, nodeType);
+      return gr;
+    }
+
+    @Override
+    public CompactGraphRecordEdge createEdge(String id, String label, String outVertex, String inVertex) {
+      return new CompactGraphRecordEdge(id, intern(label), outVertex, inVertex, this);
+    }
+  }
+
+  private final transient Factory factory;
+
+  CompactGraphRecord(String id, Factory factory) {
+    super(id, newProps(factory), new ArrayMap<Edge>(EDGES_HASH_THRESHOLD, null),
+        new ArrayMap<Edge>(EDGES_HASH_THRESHOLD, null));
+    this.factory = factory;
+  }
+
+  @Override
+  protected GraphRecord.Factory edgeFactory() {
+    return (factory == null) ? super.edgeFactory() : factory;
+  }
+
+  private static ArrayMap<Object> newProps(Factory factory) {
+    return new ArrayMap<>(PROPS_HASH_THRESHOLD, (factory == null) ? null : factory.interner);
+  }
+
+  /**
+   * GraphRecordEdge whose properties are kept in an ArrayMap.
+   */
+  public static class CompactGraphRecordEdge extends GraphRecordEdgeImpl {
+    private static final long serialVersionUID = 201610180103L;
+
+    private final transient Factory factory;
+
+    CompactGraphRecordEdge(String id, String label, String outVertex, String inVertex, Factory factory) {
+      super(id, label, outVertex, inVertex, newProps(factory));
+      this.factory = factory;
+    }
+
+    @Override
+    public CompactGraphRecordEdge emptyCopy() {
+      return new CompactGraphRecordEdge(getStringId(), label, outVertexStringId, inVertexStringId, factory);
+    }
+  }
+
+}
@@ -0,0 +1,288 @@
+package net.deelam.graphtools;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Vertex and edge counts kept as properties of a graph's metadata node so that
+ * GraphUtils.getNodeCount(graph, true) and getEdgeCount(graph, true) don't have to iterate over the graph.  Edges are also counted by label and,
+ * if a node type property is given to init() or recount(), vertices are counted by type.
+ * The metadata node is included in the vertex counts, as it is when iterating over the graph.
+ *
+ * Counts are maintained by DefaultPopulator, Neo4jBatchPopulator and GraphUtils' write operations
+ * (using an instance of this class to accumulate changes), starting from an empty graph or from recount().
+ * Other writers (e.g., GraphCopier or direct addVertex() and removeVertex() calls) don't update the counts,
+ * so callers must opt in to using them; after modifying the graph in other ways, call recount() or invalidate().
+ * Counts by type are not updated when a vertex's type property changes.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class ElementCounts {
+
+  public static final String NODE_COUNT_PROP = "_NODE_COUNT_";
+  public static final String EDGE_COUNT_PROP = "_EDGE_COUNT_";
+  /// vertex property used to count vertices by type
+  public static final String NODE_TYPE_KEY_PROP = "_NODE_COUNT_TYPE_KEY_";
+  static final String NODE_TYPE_COUNT_PREFIX = "_NODE_COUNT_OF_";
+  static final String EDGE_LABEL_COUNT_PREFIX = "_EDGE_COUNT_OF_";
+
+  static final String NULL_TYPE = "null";
+
+  private static Vertex getMetaDataNode(Graph graph) {
+    if (graph instanceof IdGraph || graph instanceof WriteBehindGraph)
+      return graph.getVertex(GraphUtils.METADATA_VERTEXID);
+    return null;
+  }
+
+  /**
+   * @return null if counts are not maintained for the graph
+   */
+  public static Long getNodeCount(Graph graph) {
+    return getCount(getMetaDataNode(graph), NODE_COUNT_PROP);
+  }
+
+  /**
+   * @return null if counts are not maintained for the graph
+   */
+  public static Long getEdgeCount(Graph graph) {
+    return getCount(getMetaDataNode(graph), EDGE_COUNT_PROP);
+  }
+
+  private static Long getCount(Vertex mdV, String key) {
+    Number count = (mdV == null) ? null : mdV.getProperty(key);
+    return (count == null) ? null : count.longValue();
+  }
+
+  /**
+   * @return empty if vertices are not counted by type
+   */
+  public static Map<String, Long> getNodeTypeCounts(Graph graph) {
+    return getCountsWithPrefix(getMetaDataNode(graph), NODE_TYPE_COUNT_PREFIX);
+  }
+
+  /**
+   * @return empty if counts are not maintained for the graph
+   */
+  public static Map<String, Long> getEdgeLabelCounts(Graph graph) {
+    return getCountsWithPrefix(getMetaDataNode(graph), EDGE_LABEL_COUNT_PREFIX);
+  }
+
+  private static Map<String, Long> getCountsWithPrefix(Vertex mdV, String prefix) {
+    Map<String, Long> counts = new HashMap<>();
+    if (mdV != null && mdV.getProperty(NODE_COUNT_PROP) != null)
+      for (String key : mdV.getPropertyKeys())
+        if (key.startsWith(prefix))
+          counts.put(key.substring(prefix.length()), getCount(mdV, key));
+    return counts;
+  }
+
+  /**
+   * Starts maintaining counts if the graph only has the metadata node.
+   * @param nodeTypeKey if not null, vertices are also counted by this property
+   * @return whether counts are maintained for the graph
+   */
+  public static boolean init(IdGraph<?> graph, String nodeTypeKey) {
+    Vertex mdV = getMetaDataNode(graph);
+    if (mdV == null)
+      return false;
+    if (mdV.getProperty(NODE_COUNT_PROP) != null)
+      return true;
+
+    for (Vertex v : graph.getVertices())
+      if (!GraphUtils.METADATA_VERTEXID.equals(v.getId()))
+        return false;
+    mdV.setProperty(NODE_COUNT_PROP, 1L);
+    mdV.setProperty(EDGE_COUNT_PROP, 0L);
+    if (nodeTypeKey != null) {
+      mdV.setProperty(NODE_TYPE_KEY_PROP, nodeTypeKey);
+      mdV.setProperty(NODE_TYPE_COUNT_PREFIX + typeOf(mdV, nodeTypeKey), 1L);
+    }
+    return true;
+  }
+
+  /**
+   * Starts maintaining counts (without types or labels) for a graph whose counts are known,
+   * e.g., after adding elements using a Neo4j BatchInserter.
+   * @param nodeCount including the metadata node
+   */
+  public static void init(IdGraph<?> graph, long nodeCount, long edgeCount) {
+    Vertex mdV = getMetaDataNode(graph);
+    if (mdV == null)
+      throw new IllegalArgumentException("Graph has no metadata node: " + graph);
+    invalidate(graph);
+    mdV.setProperty(NODE_COUNT_PROP, nodeCount);
+    mdV.setProperty(EDGE_COUNT_PROP, edgeCount);
+  }
+
+  /**
+   * Counts the graph's elements by iterating over them and starts maintaining counts.
+   * @param nodeTypeKey if not null, vertices are also counted by this property
+   */
+  public static void recount(IdGraph<?> graph, String nodeTypeKey) {
+    Vertex mdV = getMetaDataNode(graph);
+    if (mdV == null)
+      throw new IllegalArgumentException("Graph has no metadata node: " + graph);
+    invalidate(graph);
+
+    ElementCounts counts = new ElementCounts(nodeTypeKey);
+    for (Vertex v : graph.getVertices())
+      counts.nodeAdded(v);
+    for (Edge e : graph.getEdges())
+      counts.edgeAdded(e);
+    log.info("Counted {} nodes and {} edges in {}", counts.nodes, counts.edges, graph);
+
+    mdV.setProperty(NODE_COUNT_PROP, 0L);
+    mdV.setProperty(EDGE_COUNT_PROP, 0L);
+    if (nodeTypeKey != null)
+      mdV.setProperty(NODE_TYPE_KEY_PROP, nodeTypeKey);
+    counts.applyTo(graph);
+  }
+
+  /**
+   * Stops maintaining counts, e.g., after modifying the graph in ways that don't update the counts.
+   */
+  public static void invalidate(Graph graph) {
+    Vertex mdV = getMetaDataNode(graph);
+    if (mdV == null)
+      return;
+    for (String key : mdV.getPropertyKeys())
+      if (key.startsWith(NODE_COUNT_PROP) || key.startsWith(EDGE_COUNT_PROP))
+        mdV.removeProperty(key);
+  }
+
+  /**
+   * @return an instance to accumulate changes, or null if counts are not maintained for the graph
+   */
+  public static ElementCounts forGraph(Graph graph) {
+    Vertex mdV = getMetaDataNode(graph);
+    if (mdV == null || mdV.getProperty(NODE_COUNT_PROP) == null)
+      return null;
+    return new ElementCounts(mdV.getProperty(NODE_TYPE_KEY_PROP));
+  }
+
+  ///
+
+  private final String nodeTypeKey;
+  private long nodes = 0, edges = 0;
+  private final Map<String, long[]> nodeTypes = new HashMap<>();
+  private final Map<String, long[]> edgeLabels = new HashMap<>();
+
+  private ElementCounts(String nodeTypeKey) {
+    this.nodeTypeKey = nodeTypeKey;
+  }
+
+  private static String typeOf(Element v, String nodeTypeKey) {
+    Object type = v.getProperty(nodeTypeKey);
+    return (type == null) ? NULL_TYPE : type.toString();
+  }
+
+  private static void increment(Map<String, long[]> counts, String key, long delta) {
+    long[] count = counts.get(key);
+    if (count == null)
+      counts.put(key, new long[] {delta});
+    else
+      count[0] += delta;
+  }
+
+  /**
+   * Call after the vertex's type property is set
+   */
+  public void nodeAdded(Vertex v) {
+    ++nodes;
+    if (nodeTypeKey != null)
+      increment(nodeTypes, typeOf(v, nodeTypeKey), 1);
+  }
+
+  /**
+   * Call before the vertex is removed
+   */
+  public void nodeRemoved(Vertex v) {
+    --nodes;
+    if (nodeTypeKey != null)
+      increment(nodeTypes, typeOf(v, nodeTypeKey), -1);
+  }
+
+  public void edgeAdded(Edge e) {
+    ++edges;
+    increment(edgeLabels, e.getLabel(), 1);
+  }
+
+  public void edgeRemoved(Edge e) {
+    --edges;
+    increment(edgeLabels, e.getLabel(), -1);
+  }
+
+  /**
+   * Adds counts without types or labels, e.g., for elements added to a Neo4j graph using a BatchInserter
+   */
+  public void add(long nodes, long edges) {
+    this.nodes += nodes;
+    this.edges += edges;
+  }
+
+  /**
+   * Moves the other instance's accumulated changes to this one, e.g., once the transaction with the changes is committed
+   */
+  public void addAll(ElementCounts other) {
+    nodes += other.nodes;
+    edges += other.edges;
+    for (Entry<String, long[]> e : other.nodeTypes.entrySet())
+      increment(nodeTypes, e.getKey(), e.getValue()[0]);
+    for (Entry<String, long[]> e : other.edgeLabels.entrySet())
+      increment(edgeLabels, e.getKey(), e.getValue()[0]);
+    other.clear();
+  }
+
+  public boolean isEmpty() {
+    return nodes == 0 && edges == 0 && nodeTypes.isEmpty() && edgeLabels.isEmpty();
+  }
+
+  /**
+   * Adds the accumulated changes to the counts on the metadata node and clears them.
+   * Call within the same transaction as the changes; if the changes are buffered in a WriteBehindGraph,
+   * pass that graph so the counts are flushed with them.
+   */
+  public void applyTo(Graph graph) {
+    if (isEmpty())
+      return;
+    Vertex mdV = getMetaDataNode(graph);
+    if (mdV == null || mdV.getProperty(NODE_COUNT_PROP) == null) {
+      log.warn("Counts are no longer maintained for graph={}", graph);
+    } else {
+      addTo(mdV, NODE_COUNT_PROP, nodes);
+      addTo(mdV, EDGE_COUNT_PROP, edges);
+      for (Entry<String, long[]> e : nodeTypes.entrySet())
+        addTo(mdV, NODE_TYPE_COUNT_PREFIX + e.getKey(), e.getValue()[0]);
+      for (Entry<String, long[]> e : edgeLabels.entrySet())
+        addTo(mdV, EDGE_LABEL_COUNT_PREFIX + e.getKey(), e.getValue()[0]);
+    }
+    clear();
+  }
+
+  private static void addTo(Vertex mdV, String key, long delta) {
+    if (delta == 0)
+      return;
+    Number count = mdV.getProperty(key);
+    mdV.setProperty(key, ((count == null) ? 0 : count.longValue()) + delta);
+  }
+
+  /**
+   * Discards accumulated changes, e.g., when the transaction is rolled back
+   */
+  public void clear() {
+    nodes = edges = 0;
+    nodeTypes.clear();
+    edgeLabels.clear();
+  }
+
+}
@@ -0,0 +1,27 @@
+package net.deelam.graphtools;
+
+import java.util.Map;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Always returns the same threshold.
+ *
+ * @author deelam
+ */
+@RequiredArgsConstructor
+public class FixedThresholdController implements ThresholdController {
+
+  @Getter
+  private final int threshold;
+
+  @Override
+  public void batchCompleted(int numRecords, long batchNanos, long commitNanos) {}
+
+  @Override
+  public void putMetrics(Map<String, Number> metrics) {
+    metrics.put("THRESHOLD", threshold);
+  }
+
+}
@@ -1,5 +1,6 @@
 package net.deelam.graphtools;
 
+import java.io.File;
 import java.io.IOException;
 
 import lombok.extern.slf4j.Slf4j;
@@ -8,6 +9,8 @@ import com.tinkerpop.blueprints.Graph;
 import com.tinkerpop.blueprints.util.io.graphml.GraphMLWriter;
 import com.tinkerpop.blueprints.util.io.graphson.GraphSONWriter;
 
+import net.deelam.graphtools.csr.CsrSnapshotWriter;
+
 @Slf4j
 public class GraphExporter {
 
@@ -25,6 +28,21 @@ public class GraphExporter {
     }
   }
 
+  /**
+   * Streams the graph as gzipped JSON lines with bounded memory; see StreamingGraphWriter for parallel part-files.
+   */
+  public static void exportJsonLines(Graph graph, String filename) throws IOException {
+    new StreamingGraphWriter().write(graph, filename);
+  }
+
+  /**
+   * Writes a read-only snapshot that can be opened using the "csr:" scheme; see IdGraphFactoryCsr.
+   */
+  public static void exportCsr(Graph graph, String dirname) throws IOException {
+    log.info("Exporting graph {} to {}", graph, dirname);
+    CsrSnapshotWriter.write(graph, new File(dirname));
+  }
+
   public static void exportGson(Graph graph, String filename) throws IOException {
     log.info("Exported graph {} to {}", graph, filename);
     GraphSONWriter.outputGraph(graph, filename);
@@ -0,0 +1,441 @@
+package net.deelam.graphtools;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Process-wide manager of open graphs, keyed by scheme and absolute path.
+ *
+ * Shared handles: GraphUris with query parameter SHARED_HANDLE=true acquire a reference-counted handle
+ * instead of opening the graph themselves.  Read-only GraphUris share the handle with each other;
+ * other GraphUris get exclusive use of it.  Waiting GraphUris are served in FIFO order, so a reader does not
+ * jump ahead of a waiting writer.  When the last holder calls GraphUri.shutdown(), the graph is kept open
+ * for idleTimeoutMillis so that GraphUris that open the same graph repeatedly (e.g., job workers)
+ * don't reopen it each time.  The first GraphUri's configuration is used to open the graph, except that
+ * a graph opened by a read-only GraphUri is reopened by the next writer (e.g., so the metadata node is created).
+ * Handles are removed once their graph is closed.
+ *
+ * Exclusive opens: factories for graphs that can only be opened once at a time (e.g., Neo4j) use
+ * openWhenAvailable(), which queues openers in FIFO order and wakes the next one when GraphUri.shutdown()
+ * closes the graph, instead of polling.  Graphs closed in other ways (e.g., by another process) are detected
+ * by retrying with exponential backoff.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class GraphHandleManager {
+
+  public static final String SHARED_HANDLE = "sharedHandle";
+
+  @Getter
+  private static final GraphHandleManager instance = new GraphHandleManager();
+
+  /// how long to keep an unused shared graph open; if 0, it is closed when released
+  @Setter
+  private long idleTimeoutMillis = 30000;
+
+  @Setter
+  private long minRetryMillis = 100;
+  @Setter
+  private long maxRetryMillis = 5000;
+
+  private final Map<String, Handle> handles = new HashMap<>();
+  private final Map<String, OpenQueue> openQueues = new HashMap<>();
+
+  private final ScheduledExecutorService idleCloser = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread t = new Thread(r, "GraphHandleManager-idleCloser");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private GraphHandleManager() {
+    Runtime.getRuntime().addShutdownHook(new Thread(this::closeAllIdle, "GraphHandleManager-shutdown"));
+  }
+
+  static String key(GraphUri gUri) {
+    String path = gUri.getUriPath();
+    if (path == null || path.length() == 0 || path.equals("/"))
+      throw new IllegalArgumentException("Graph must have a path to be managed: " + gUri);
+    return gUri.getScheme() + ":" + new File(path).getAbsolutePath();
+  }
+
+  private static class Waiter {
+    final boolean shared;
+    final Condition turn;
+
+    Waiter(boolean shared, Condition turn) {
+      this.shared = shared;
+      this.turn = turn;
+    }
+  }
+
+  /// reference-counted graph
+  private class Handle {
+    final String key;
+    final ReentrantLock lock = new ReentrantLock();
+    final Deque<Waiter> waiters = new ArrayDeque<>();
+    IdGraph<?> graph;
+    GraphUri openedBy;
+    boolean openedReadOnly;
+    int readers = 0;
+    boolean writer = false;
+    ScheduledFuture<?> idleClose;
+
+    Handle(String key) {
+      this.key = key;
+    }
+
+    boolean canGrant(Waiter w) {
+      return w.shared ? !writer : (!writer && readers == 0);
+    }
+
+    boolean isUnused() {
+      return readers == 0 && !writer && waiters.isEmpty();
+    }
+
+    void signalNext() {
+      Waiter next = waiters.peekFirst();
+      if (next != null)
+        next.turn.signal();
+    }
+
+    void close() {
+      if (idleClose != null) {
+        idleClose.cancel(false);
+        idleClose = null;
+      }
+      if (graph != null) {
+        log.info("Closing shared graph: {}", key);
+        try {
+          openedBy.shutdown(graph);
+        } finally {
+          graph = null;
+          openedBy = null;
+        }
+      }
+    }
+  }
+
+  private Handle getHandle(String key) {
+    synchronized (handles) {
+      return handles.computeIfAbsent(key, Handle::new);
+    }
+  }
+
+  /// @return null if the graph has no handle; unlike getHandle(), doesn't add one
+  private Handle findHandle(GraphUri gUri) {
+    synchronized (handles) {
+      return handles.get(key(gUri));
+    }
+  }
+
+  /// @return whether h is still the handle for its key, i.e., it was not removed before it was locked
+  private boolean isCurrent(Handle h) {
+    synchronized (handles) {
+      return handles.get(h.key) == h;
+    }
+  }
+
+  /// call while holding h.lock
+  private void closeAndRemove(Handle h) {
+    try {
+      h.close();
+    } finally {
+      synchronized (handles) {
+        handles.remove(h.key, h);
+      }
+    }
+  }
+
+  /**
+   * Blocks until the graph can be used, opening it if needed.
+   * @return shared graph, which must be released by calling release(); not by calling its shutdown()
+   */
+  IdGraph<?> acquire(GraphUri gUri) {
+    String key = key(gUri);
+    Handle h = getHandle(key);
+    h.lock.lock();
+    while (!isCurrent(h)) {
+      h.lock.unlock();
+      h = getHandle(key);
+      h.lock.lock();
+    }
+    try {
+      Waiter me = new Waiter(gUri.isReadOnly(), h.lock.newCondition());
+      h.waiters.addLast(me);
+      try {
+        while (h.waiters.peekFirst() != me || !h.canGrant(me))
+          me.turn.awaitUninterruptibly();
+      } finally {
+        h.waiters.remove(me);
+      }
+
+      if (h.idleClose != null) {
+        h.idleClose.cancel(false);
+        h.idleClose = null;
+      }
+      if (h.graph != null && h.openedReadOnly && !me.shared) {
+        log.info("Reopening shared graph for writing: {}", h.key);
+        h.close();
+      }
+      if (h.graph == null) {
+        log.info("Opening shared graph: {}", h.key);
+        try {
+          h.graph = gUri.openGraph();
+          h.openedBy = gUri;
+          h.openedReadOnly = gUri.isReadOnly();
+        } catch (RuntimeException re) {
+          if (h.isUnused())
+            closeAndRemove(h);
+          else
+            h.signalNext();
+          throw re;
+        }
+      }
+      if (me.shared)
+        ++h.readers;
+      else
+        h.writer = true;
+      log.debug("Acquired graph {}: readers={} writer={}", h.key, h.readers, h.writer);
+      h.signalNext(); // subsequent readers may share the graph
+      return h.graph;
+    } finally {
+      h.lock.unlock();
+    }
+  }
+
+  void release(GraphUri gUri) {
+    Handle h = findHandle(gUri);
+    if (h == null)
+      throw new IllegalStateException("Graph was not acquired: " + gUri);
+    h.lock.lock();
+    try {
+      if (h.writer)
+        h.writer = false;
+      else if (h.readers > 0)
+        --h.readers;
+      else
+        throw new IllegalStateException("Graph was not acquired: " + gUri);
+      log.debug("Released graph {}: readers={} writer={}", h.key, h.readers, h.writer);
+
+      if (h.isUnused()) {
+        if (idleTimeoutMillis > 0)
+          h.idleClose = idleCloser.schedule(() -> closeIfIdle(h), idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        else
+          closeAndRemove(h);
+      } else {
+        h.signalNext();
+      }
+    } finally {
+      h.lock.unlock();
+    }
+  }
+
+  private boolean closeIfIdle(Handle h) {
+    h.lock.lock();
+    try {
+      if (!h.isUnused())
+        return false;
+      closeAndRemove(h);
+      return true;
+    } finally {
+      h.lock.unlock();
+    }
+  }
+
+  /**
+   * Closes the graph if it is open but not used, e.g., before it is deleted or backed up.
+   * @throws IllegalStateException if the graph is being used
+   */
+  public void closeIdle(GraphUri gUri) {
+    Handle h = findHandle(gUri);
+    if (h != null && !closeIfIdle(h))
+      throw new IllegalStateException("Graph is in use: " + gUri);
+  }
+
+  public void closeAllIdle() {
+    Handle[] hs;
+    synchronized (handles) {
+      hs = handles.values().toArray(new Handle[handles.size()]);
+    }
+    for (Handle h : hs)
+      closeIfIdle(h);
+  }
+
+  public int getRefCount(GraphUri gUri) {
+    Handle h = findHandle(gUri);
+    if (h == null)
+      return 0;
+    h.lock.lock();
+    try {
+      return h.readers + (h.writer ? 1 : 0);
+    } finally {
+      h.lock.unlock();
+    }
+  }
+
+  public boolean isOpen(GraphUri gUri) {
+    Handle h = findHandle(gUri);
+    if (h == null)
+      return false;
+    h.lock.lock();
+    try {
+      return h.graph != null;
+    } finally {
+      h.lock.unlock();
+    }
+  }
+
+  /// number of graphs that have handles, which are removed when their graph is closed
+  int getHandleCount() {
+    synchronized (handles) {
+      return handles.size();
+    }
+  }
+
+  /// openers waiting for a graph that can only be opened once at a time
+  private static class OpenQueue {
+    final ReentrantLock lock = new ReentrantLock();
+    final Deque<Condition> openers = new ArrayDeque<>();
+    long closeCount = 0;
+    /// closeCount when the graph was last opened; the graph is assumed to be open until closeCount changes
+    long closeCountWhenOpened = -1;
+  }
+
+  private OpenQueue getOpenQueue(String key) {
+    synchronized (openQueues) {
+      return openQueues.computeIfAbsent(key, k -> new OpenQueue());
+    }
+  }
+
+  /// @return whether q is still the queue for key, i.e., it was not removed before it was locked
+  private boolean isCurrent(String key, OpenQueue q) {
+    synchronized (openQueues) {
+      return openQueues.get(key) == q;
+    }
+  }
+
+  /**
+   * Called by GraphUri after it closes a graph.
+   */
+  void graphClosed(GraphUri gUri) {
+    String key;
+    try {
+      key = key(gUri);
+    } catch (IllegalArgumentException e) {
+      return; // in-memory graph
+    }
+    OpenQueue q;
+    synchronized (openQueues) {
+      q = openQueues.get(key);
+    }
+    if (q == null)
+      return;
+    q.lock.lock();
+    try {
+      ++q.closeCount;
+      Condition next = q.openers.peekFirst();
+      if (next != null) {
+        next.signal();
+      } else {
+        synchronized (openQueues) { // no one is waiting to open the graph, which is now closed
+          openQueues.remove(key, q);
+        }
+      }
+    } finally {
+      q.lock.unlock();
+    }
+  }
+
+  /**
+   * Calls opener until it succeeds.  While the graph is in use (i.e., it was opened by this method and not yet
+   * closed by a GraphUri, or the opener throws an exception for which isInUse is true), the caller waits
+   * (in FIFO order with other openers of the same graph) until a GraphUri closes the graph or the retry time passes.
+   */
+  public <G> G openWhenAvailable(GraphUri gUri, Supplier<G> opener, Predicate<RuntimeException> isInUse) {
+    String key = key(gUri);
+    OpenQueue q = getOpenQueue(key);
+    q.lock.lock();
+    while (!isCurrent(key, q)) {
+      q.lock.unlock();
+      q = getOpenQueue(key);
+      q.lock.lock();
+    }
+    try {
+      // try immediately unless waiting behind other openers, one of which may have just opened the graph
+      boolean retry = q.openers.isEmpty();
+      Condition me = q.lock.newCondition();
+      q.openers.addLast(me);
+      try {
+        long retryMillis = minRetryMillis;
+        long waitedMillis = 0;
+        while (true) {
+          while (q.openers.peekFirst() != me)
+            me.awaitUninterruptibly();
+
+          long closeCount = q.closeCount;
+          if (retry || closeCount != q.closeCountWhenOpened) { // graph may have been closed
+            q.lock.unlock();
+            G graph = null;
+            try {
+              graph = opener.get();
+            } catch (RuntimeException re) {
+              if (!isInUse.test(re))
+                throw re;
+            } finally {
+              q.lock.lock();
+            }
+            if (graph != null) {
+              q.closeCountWhenOpened = closeCount;
+              if (waitedMillis > 0)
+                log.info("Opened graph after waiting {} ms: {}", waitedMillis, gUri);
+              return graph;
+            }
+          }
+
+          retry = false;
+          if (q.closeCount == closeCount) { // not closed in the meantime
+            if (waitedMillis == 0)
+              log.warn("Graph already opened; waiting for it to close: {}", gUri);
+            long start = System.currentTimeMillis();
+            try {
+              if (!me.await(retryMillis, TimeUnit.MILLISECONDS)) { // not closed by a GraphUri, so try anyway
+                retry = true;
+                retryMillis = Math.min(2 * retryMillis, maxRetryMillis);
+              }
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              throw new IllegalStateException("Interrupted while waiting to open " + gUri, e);
+            }
+            waitedMillis += System.currentTimeMillis() - start;
+          }
+        }
+      } finally {
+        q.openers.remove(me);
+        Condition next = q.openers.peekFirst();
+        if (next != null)
+          next.signal();
+      }
+    } finally {
+      q.lock.unlock();
+    }
+  }
+
+}
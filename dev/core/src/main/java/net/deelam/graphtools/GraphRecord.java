@@ -46,4 +46,10 @@ public interface GraphRecord extends Vertex, GraphRecordElement, Serializable {
 
   Long getLongId();
 
+  /**
+   * Called once this record has been populated or merged into another record and will no longer be used,
+   * so that resources (e.g., edges spilled to disk by SpillableEdgeMap) can be released.
+   */
+  default void discard() {}
+
 }
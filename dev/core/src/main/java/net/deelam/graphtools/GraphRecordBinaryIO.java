@@ -0,0 +1,319 @@
+package net.deelam.graphtools;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.tinkerpop.blueprints.Edge;
+
+/**
+ * Binary encoding of GraphRecords using DataOutput, so records can be written to local files
+ * (e.g., for external sorting) without Hadoop.
+ *
+ * The encoding is the one used by GraphRecordWriteable in the hadoop module,
+ * which delegates to this class.  Variable-length ints and longs are encoded like Hadoop's WritableUtils.
+ * In addition to GraphRecordWriteable's original types, Byte, Short, Character, Collections, and arrays
+ * are encoded element-wise so they can be read back with the same values.
+ *
+ * @author deelam
+ */
+public final class GraphRecordBinaryIO {
+
+  private GraphRecordBinaryIO() {}
+
+  public static void writeRecord(GraphRecord gr, DataOutput out) throws IOException {
+    writeElement(gr.getStringId(), gr.getProps(), out);
+    writeEdges(gr.getInEdges(), out);
+    writeEdges(gr.getOutEdges(), out);
+  }
+
+  public static GraphRecord readRecord(DataInput in, GraphRecord.Factory grFactory) throws IOException {
+    String id = in.readUTF();
+    GraphRecord gr = grFactory.create(id);
+    readProperties(gr.getProps(), in);
+    readEdges(in, gr.getInEdges(), grFactory);
+    readEdges(in, gr.getOutEdges(), grFactory);
+    return gr;
+  }
+
+  public static void writeEdge(GraphRecordEdge e, DataOutput out) throws IOException {
+    writeElement(e.getStringId(), e.getProps(), out);
+    out.writeUTF(e.getLabel());
+    out.writeUTF(e.getOutVertexStringId());
+    out.writeUTF(e.getInVertexStringId());
+  }
+
+  public static GraphRecordEdge readEdge(DataInput in, GraphRecord.Factory grFactory) throws IOException {
+    String id = in.readUTF();
+    Map<String, Object> props = new java.util.HashMap<>();
+    readProperties(props, in);
+    String label = in.readUTF();
+    String outVertexId = in.readUTF();
+    String inVertexId = in.readUTF();
+    GraphRecordEdge e = grFactory.createEdge(id, label, outVertexId, inVertexId);
+    e.getProps().putAll(props);
+    return e;
+  }
+
+  private static void writeEdges(Map<String, Edge> edges, DataOutput out) throws IOException {
+    out.writeInt(edges.size());
+    for (Edge e : edges.values())
+      writeEdge((GraphRecordEdge) e, out);
+  }
+
+  private static void readEdges(DataInput in, Map<String, Edge> edges, GraphRecord.Factory grFactory)
+      throws IOException {
+    int edgeCount = in.readInt();
+    for (int i = 0; i < edgeCount; ++i) {
+      GraphRecordEdge edge = readEdge(in, grFactory);
+      edges.put(edge.getStringId(), edge);
+    }
+  }
+
+  public static void writeElement(String id, Map<String, Object> props, DataOutput out) throws IOException {
+    out.writeUTF(id);
+    out.writeInt(props.size());
+    for (Entry<String, Object> e : props.entrySet()) {
+      out.writeUTF(e.getKey());
+      writePropertyValue(out, e.getKey(), e.getValue());
+    }
+  }
+
+  /**
+   * @return id of element
+   */
+  public static String readElementFields(Map<String, Object> props, DataInput in) throws IOException {
+    String id = in.readUTF();
+    readProperties(props, in);
+    return id;
+  }
+
+  private static void readProperties(Map<String, Object> props, DataInput in) throws IOException {
+    int propCount = in.readInt();
+    props.clear(); // same instance may be reused (e.g., by MapReduce), so must clear entries
+    for (int i = 0; i < propCount; ++i) {
+      String key = in.readUTF();
+      Object val = readPropertyValue(in);
+      if (val != null)
+        props.put(key, val);
+    }
+  }
+
+  /// ===== property values
+
+  private static final short NULL_TYPE = 0;
+  private static final short BOOL_TYPE = 1;
+  private static final short FLOAT_TYPE = 2;
+  private static final short INT_TYPE = 3;
+  private static final short LONG_TYPE = 4;
+  private static final short STRING_TYPE = 5;
+  private static final short DOUBLE_TYPE = 6;
+  private static final short BYTE_TYPE = 7;
+  private static final short SHORT_TYPE = 8;
+  private static final short CHAR_TYPE = 9;
+  private static final short DATE_TYPE = 20;
+  /// written by earlier versions of GraphRecordWriteable as a String
+  private static final short VALUESET_TYPE = 100;
+  private static final short SET_TYPE = 101;
+  private static final short LIST_TYPE = 102;
+  private static final short ARRAY_TYPE = 103;
+  private static final short PRIMITIVE_ARRAY_TYPE = 104;
+
+  public static void writePropertyValue(DataOutput out, String key, Object value) throws IOException {
+    if (value == null) {
+      out.writeShort(NULL_TYPE);
+      out.writeBoolean(false);
+    } else if (value instanceof String) {
+      out.writeShort(STRING_TYPE);
+      out.writeUTF((String) value);
+    } else if (value instanceof Boolean) {
+      out.writeShort(BOOL_TYPE);
+      out.writeBoolean(((Boolean) value).booleanValue());
+    } else if (value instanceof Float) {
+      out.writeShort(FLOAT_TYPE);
+      out.writeFloat(((Float) value).floatValue());
+    } else if (value instanceof Integer) {
+      out.writeShort(INT_TYPE);
+      writeVInt(out, ((Integer) value).intValue());
+    } else if (value instanceof Long) {
+      out.writeShort(LONG_TYPE);
+      writeVLong(out, ((Long) value).longValue());
+    } else if (value instanceof Double) {
+      out.writeShort(DOUBLE_TYPE);
+      out.writeDouble(((Double) value).doubleValue());
+    } else if (value instanceof Byte) {
+      out.writeShort(BYTE_TYPE);
+      out.writeByte(((Byte) value).byteValue());
+    } else if (value instanceof Short) {
+      out.writeShort(SHORT_TYPE);
+      out.writeShort(((Short) value).shortValue());
+    } else if (value instanceof Character) {
+      out.writeShort(CHAR_TYPE);
+      out.writeChar(((Character) value).charValue());
+    } else if (value instanceof Date) {
+      out.writeShort(DATE_TYPE);
+      writeVLong(out, ((Date) value).getTime());
+    } else if (value instanceof Collection) {
+      out.writeShort((value instanceof Set) ? SET_TYPE : LIST_TYPE);
+      Collection<?> coll = (Collection<?>) value;
+      writeVInt(out, coll.size());
+      for (Object v : coll)
+        writePropertyValue(out, key, v);
+    } else if (value.getClass().isArray()) {
+      Class<?> compClass = value.getClass().getComponentType();
+      out.writeShort(compClass.isPrimitive() ? PRIMITIVE_ARRAY_TYPE : ARRAY_TYPE);
+      out.writeUTF(compClass.getName());
+      int len = Array.getLength(value);
+      writeVInt(out, len);
+      for (int i = 0; i < len; ++i)
+        writePropertyValue(out, key, Array.get(value, i));
+    } else {
+      throw new UnsupportedOperationException("Unhandled property class=" + value.getClass()
+          + " for key=" + key);
+    }
+  }
+
+  public static Object readPropertyValue(DataInput in) throws IOException {
+    short valType = in.readShort();
+    switch (valType) {
+      case NULL_TYPE:
+        in.readBoolean();
+        return null;
+      case STRING_TYPE:
+        return in.readUTF();
+      case BOOL_TYPE:
+        return in.readBoolean();
+      case FLOAT_TYPE:
+        return in.readFloat();
+      case INT_TYPE:
+        return readVInt(in);
+      case LONG_TYPE:
+        return readVLong(in);
+      case DOUBLE_TYPE:
+        return in.readDouble();
+      case BYTE_TYPE:
+        return in.readByte();
+      case SHORT_TYPE:
+        return in.readShort();
+      case CHAR_TYPE:
+        return in.readChar();
+      case DATE_TYPE:
+        return new Date(readVLong(in));
+      case VALUESET_TYPE:
+        return in.readUTF();
+      case SET_TYPE:
+      case LIST_TYPE: {
+        int size = readVInt(in);
+        Collection<Object> coll = (valType == SET_TYPE) ? new LinkedHashSet<>() : new ArrayList<>(size);
+        for (int i = 0; i < size; ++i)
+          coll.add(readPropertyValue(in));
+        return coll;
+      }
+      case ARRAY_TYPE:
+      case PRIMITIVE_ARRAY_TYPE: {
+        Class<?> compClass = arrayComponentClass(in.readUTF());
+        int len = readVInt(in);
+        Object arr = Array.newInstance(compClass, len);
+        for (int i = 0; i < len; ++i)
+          Array.set(arr, i, readPropertyValue(in));
+        return arr;
+      }
+      default:
+        throw new UnsupportedOperationException("Unhandled property class=" + valType);
+    }
+  }
+
+  private static final List<Class<?>> PRIMITIVES = java.util.Arrays.asList(boolean.class, byte.class,
+      char.class, short.class, int.class, long.class, float.class, double.class);
+
+  private static Class<?> arrayComponentClass(String className) throws IOException {
+    for (Class<?> c : PRIMITIVES)
+      if (c.getName().equals(className))
+        return c;
+    try {
+      return Class.forName(className);
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Unknown array component class: " + className, e);
+    }
+  }
+
+  /// ===== variable-length encoding, same as Hadoop's WritableUtils
+
+  public static void writeVInt(DataOutput out, int i) throws IOException {
+    writeVLong(out, i);
+  }
+
+  public static void writeVLong(DataOutput out, long i) throws IOException {
+    if (i >= -112 && i <= 127) {
+      out.writeByte((byte) i);
+      return;
+    }
+
+    int len = -112;
+    if (i < 0) {
+      i ^= -1L; // take one's complement
+      len = -120;
+    }
+
+    long tmp = i;
+    while (tmp != 0) {
+      tmp = tmp >> 8;
+      len--;
+    }
+
+    out.writeByte((byte) len);
+
+    len = (len < -120) ? -(len + 120) : -(len + 112);
+
+    for (int idx = len; idx != 0; idx--) {
+      int shiftbits = (idx - 1) * 8;
+      long mask = 0xFFL << shiftbits;
+      out.writeByte((byte) ((i & mask) >> shiftbits));
+    }
+  }
+
+  public static int readVInt(DataInput in) throws IOException {
+    long n = readVLong(in);
+    if ((n > Integer.MAX_VALUE) || (n < Integer.MIN_VALUE)) {
+      throw new IOException("value too long to fit in integer");
+    }
+    return (int) n;
+  }
+
+  public static long readVLong(DataInput in) throws IOException {
+    byte firstByte = in.readByte();
+    int len = decodeVIntSize(firstByte);
+    if (len == 1) {
+      return firstByte;
+    }
+    long i = 0;
+    for (int idx = 0; idx < len - 1; idx++) {
+      byte b = in.readByte();
+      i = i << 8;
+      i = i | (b & 0xFF);
+    }
+    return (isNegativeVInt(firstByte) ? (i ^ -1L) : i);
+  }
+
+  private static boolean isNegativeVInt(byte value) {
+    return value < -120 || (value >= -112 && value < 0);
+  }
+
+  private static int decodeVIntSize(byte value) {
+    if (value >= -112) {
+      return 1;
+    } else if (value < -120) {
+      return -119 - value;
+    }
+    return -111 - value;
+  }
+}
@@ -1,5 +1,7 @@
 package net.deelam.graphtools;
 
+import java.util.Map;
+
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 
@@ -35,6 +37,17 @@ public class GraphRecordEdgeImpl extends GraphRecordElementImpl implements Graph
     inVertexStringId = inVertex;
   }
 
+  /**
+   * @param props initially empty map to hold properties, e.g., a more compact Map implementation
+   */
+  protected GraphRecordEdgeImpl(String id, String label, String outVertex, String inVertex,
+      Map<String, Object> props) {
+    super(id, props);
+    this.label = label;
+    outVertexStringId = outVertex;
+    inVertexStringId = inVertex;
+  }
+
   @Override
   public boolean equals(Object obj) {
     return super.equals(obj);
@@ -7,12 +7,10 @@ import java.util.Map;
 import java.util.Set;
 
 import lombok.Getter;
-import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
-@NoArgsConstructor
 @ToString
 @Slf4j
 public class GraphRecordElementImpl implements GraphRecordElement {
@@ -21,9 +19,21 @@ public class GraphRecordElementImpl implements GraphRecordElement {
   @Setter
   public static String LONG_ID_PROPKEY = "_longId";
 
+  public GraphRecordElementImpl() {
+    props = new HashMap<>();
+  }
+
   public GraphRecordElementImpl(String strId) {
+    this(strId, new HashMap<>());
+  }
+
+  /**
+   * @param props initially empty map to hold properties, e.g., a more compact Map implementation
+   */
+  protected GraphRecordElementImpl(String strId, Map<String, Object> props) {
     checkNotNull(strId);
     id = strId;
+    this.props = props;
   }
 
   protected String id;
@@ -52,7 +62,7 @@ public class GraphRecordElementImpl implements GraphRecordElement {
   }
 
   @Getter
-  protected Map<String, Object> props = new HashMap<>();
+  protected Map<String, Object> props;
 
   @Override
   public void setProperty(final String key, final Object value) {
@@ -1,8 +1,8 @@
 package net.deelam.graphtools;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -10,7 +10,6 @@ import java.util.Map;
 import java.util.Set;
 
 import lombok.Getter;
-import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -21,7 +20,6 @@ import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.VertexQuery;
 
 @Slf4j
-@NoArgsConstructor
 public class GraphRecordImpl extends GraphRecordElementImpl implements GraphRecord {
   private static final long serialVersionUID = 201508251201L;
 
@@ -41,6 +39,11 @@ public class GraphRecordImpl extends GraphRecordElementImpl implements GraphReco
   }
   
   static Factory factory=new Factory();
+
+  public GraphRecordImpl() {
+    inEdges = newEdgeMap(new HashMap<>());
+    outEdges = newEdgeMap(new HashMap<>());
+  }
   
   @Setter
   private static String NODE_TYPE_KEY = "_type";
@@ -58,21 +61,52 @@ public class GraphRecordImpl extends GraphRecordElementImpl implements GraphReco
 
   public GraphRecordImpl(String strId) {
     super(strId);
+    inEdges = newEdgeMap(new HashMap<>());
+    outEdges = newEdgeMap(new HashMap<>());
+  }
+
+  /**
+   * @param props, inEdges, outEdges initially empty maps, e.g., of a more compact Map implementation
+   */
+  protected GraphRecordImpl(String strId, Map<String, Object> props, Map<String, Edge> inEdges,
+      Map<String, Edge> outEdges) {
+    super(strId, props);
+    this.inEdges = newEdgeMap(inEdges);
+    this.outEdges = newEdgeMap(outEdges);
   }
 
   public GraphRecordImpl(final String strId, String nodeType) {
-    super(strId);
+    this(strId);
     setProperty(NODE_TYPE_KEY, nodeType);
   }
 
-  // TODO: 5: address supernode memory problem (i.e., in-memory Map of in and out edges) by splitting node.  How does Faunus/Gremlin address this?
   @Setter
   protected static int SUPERNODE_THRESHOLD = 100000;
 
+  /// if positive, edges in each direction beyond this number are spilled to disk; see SpillableEdgeMap
+  @Setter
+  protected static int SPILL_EDGES_THRESHOLD = 0;
+  /// where edges are spilled, or null for the system temp directory
+  @Setter
+  protected static File SPILL_DIR = null;
+
+  private Map<String, Edge> newEdgeMap(Map<String, Edge> edges) {
+    if (SPILL_EDGES_THRESHOLD <= 0)
+      return edges;
+    return new SpillableEdgeMap(edges, SPILL_EDGES_THRESHOLD, SPILL_DIR, this::edgeFactory);
+  }
+
+  /**
+   * @return factory to create this record's edges when they are read back from disk
+   */
+  protected GraphRecord.Factory edgeFactory() {
+    return factory;
+  }
+
   @Getter
-  protected Map<String, Edge> inEdges = new HashMap<>();
+  protected Map<String, Edge> inEdges;
   @Getter
-  protected Map<String, Edge> outEdges = new HashMap<>();
+  protected Map<String, Edge> outEdges;
 
   @Override
   public GraphRecordEdge getInEdge(String edgeId) {
@@ -113,7 +147,8 @@ public class GraphRecordImpl extends GraphRecordElementImpl implements GraphReco
       inEdges.put(edge.getStringId(), edge);
 
       if (inEdges.size() % SUPERNODE_THRESHOLD == 0) { // supernode warning
-        log.warn("Vertex id={} has at least {} in-edges!", getId(), inEdges.size());
+        log.warn("Vertex id={} has at least {} in-edges! spillEdgesThreshold={}", getId(), inEdges.size(),
+            SPILL_EDGES_THRESHOLD);
       }
 
     }
@@ -126,7 +161,8 @@ public class GraphRecordImpl extends GraphRecordElementImpl implements GraphReco
       outEdges.put(edge.getStringId(), edge);
 
       if (outEdges.size() % SUPERNODE_THRESHOLD == 0) { // supernode warning
-        log.warn("Vertex id={} has at least {} out-edges!", getId(), outEdges.size());
+        log.warn("Vertex id={} has at least {} out-edges! spillEdgesThreshold={}", getId(), outEdges.size(),
+            SPILL_EDGES_THRESHOLD);
       }
     }
     if (!valid) {
@@ -141,22 +177,27 @@ public class GraphRecordImpl extends GraphRecordElementImpl implements GraphReco
     Set<String> labelSet = new HashSet<>(Arrays.asList(labels));
 
     if (direction == Direction.IN) {
-      return filterEdges(inEdges.values(), labelSet);
+      return filterEdges(inEdges, labelSet);
     } else if (direction == Direction.OUT) {
-      return filterEdges(outEdges.values(), labelSet);
+      return filterEdges(outEdges, labelSet);
     } else {
-      List<Edge> bothEs = new ArrayList<>();
-      Iterable<Edge> inE = filterEdges(inEdges.values(), labelSet);
-      Iterables.addAll(bothEs, inE);
-      Iterable<Edge> outE = filterEdges(outEdges.values(), labelSet);
-      Iterables.addAll(bothEs, outE);
-      return bothEs;
+      return Iterables.concat(filterEdges(inEdges, labelSet), filterEdges(outEdges, labelSet));
     }
   }
 
-  Iterable<Edge> filterEdges(Collection<Edge> edges, Set<String> labelSet) {
+  /**
+   * @return copy of the edges, or a view if edges have been spilled so that they are streamed from disk
+   * rather than copied into memory
+   */
+  Iterable<Edge> filterEdges(Map<String, Edge> edges, Set<String> labelSet) {
+    if (edges instanceof SpillableEdgeMap && ((SpillableEdgeMap) edges).hasSpilled()) {
+      if (labelSet.isEmpty())
+        return Iterables.unmodifiableIterable(edges.values());
+      return Iterables.filter(edges.values(), e -> labelSet.contains(e.getLabel()));
+    }
+
     ArrayList<Edge> filteredEdges = new ArrayList<>(edges.size());
-    for (Edge e : edges) {
+    for (Edge e : edges.values()) {
       if (labelSet.size() > 0 && !labelSet.contains(e.getLabel()))
         continue;
       filteredEdges.add(e);
@@ -164,6 +205,17 @@ public class GraphRecordImpl extends GraphRecordElementImpl implements GraphReco
     return Iterables.unmodifiableIterable(filteredEdges);
   }
 
+  /**
+   * Deletes edges spilled to disk.
+   */
+  @Override
+  public void discard() {
+    if (inEdges instanceof SpillableEdgeMap)
+      inEdges.clear();
+    if (outEdges instanceof SpillableEdgeMap)
+      outEdges.clear();
+  }
+
   @Override
   public Iterable<Vertex> getVertices(Direction direction, String... labels) {
     Direction oppDir = getOppositeDirection(direction);
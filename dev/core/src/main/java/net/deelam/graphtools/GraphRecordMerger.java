@@ -9,4 +9,10 @@ public interface GraphRecordMerger {
 
   void mergeProperties(Element fromE, Element toE);
 
+  /// see PropertyMerger.beginMergeSession()
+  default void beginMergeSession() {}
+
+  /// see PropertyMerger.endMergeSession()
+  default void endMergeSession(boolean flush) {}
+
 }
@@ -1,34 +1,76 @@
 package net.deelam.graphtools;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.util.HyperLogLog;
 
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.mutable.MutableInt;
+import org.apache.commons.lang3.mutable.MutableLong;
 
-import com.google.common.collect.Iterables;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.TransactionalGraph;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
 
 /**
+ * Extracts a schema graph with a vertex per node type (and direction) and an edge per pair of connected types.
+ * Each schema element has counts (as MutableInts) and, for each property key, the value classes seen;
+ * key+DISTINCT_SUFFIX has an estimate of the number of distinct values
+ * and key+VALUE_TYPES_SUFFIX has a Map of the number of values of each class.
+ *
+ * Vertices are read by one or more threads, each of which builds a partial schema that is merged at the end.
+ * For huge graphs, only a sample of vertices (chosen by id) can be profiled, in which case counts are for the sample.
+ *
  * @author deelam
  */
 @RequiredArgsConstructor
 @Slf4j
 public final class GraphSchemaStats {
 
+  public static final String DISTINCT_SUFFIX = "__DISTINCT";
+  public static final String VALUE_TYPES_SUFFIX = "__VALUE_TYPES";
+
   final String nodeTypeProperty;
 
   @Setter
   private String[] subTypePropertyKeys = new String[0];
 
+  /// threads reading vertices; if more than 1, the graph must support concurrent reads (e.g., Neo4j or TinkerGraph but not OrientDB)
+  @Setter
+  private int threads = 1;
+
+  /// number of vertices given to a thread at a time
+  @Setter
+  private int batchSize = 1000;
+
+  /// fraction of vertices to profile
+  @Setter
+  private double sampleRate = 1.0;
+
+  /// HyperLogLog precision for distinct value estimates; 0 to not estimate them
+  @Setter
+  private int distinctPrecision = 10;
+
   public Graph getSchema(Graph inputGraph) throws IOException {
     //GraphSchemaStats util=new GraphSchemaStats(nodeTypeProperty);
     Graph schemaG = new IdGraph<>(new TinkerGraph());
@@ -37,73 +79,87 @@ public final class GraphSchemaStats {
   }
 
   public void extractSchema(Graph graph, Graph schema) {
-    long nodeCount = 0, edgeCount = 0;;
-    for (Vertex v : graph.getVertices()) {
-      ++nodeCount;
-      int outEdgeSize = Iterables.size(v.getEdges(Direction.OUT));
-      edgeCount += outEdgeSize;
-      boolean outEdgeCountEmpty = (outEdgeSize == 0);
-      boolean inEdgeCountEmpty = Iterables.isEmpty(v.getEdges(Direction.IN));
-      if (outEdgeCountEmpty) {
-        if (inEdgeCountEmpty) {
-          // unconnected node
-          Vertex typeV = getTypeVertex(schema, v, null);
-          extractProperties(v, typeV, "__NODES_WITH_NO_EDGES");
-        } else {
-          Vertex inTypeV = getTypeVertex(schema, v, Direction.IN);
-          // this inVertex will be considered during extractEdgeSchema()
-          extractProperties(v, inTypeV, "__NODES_WITH_IN_EDGES_ONLY");
-        }
-      } else {
-        Vertex typeV = getTypeVertex(schema, v, Direction.OUT);
-        incrementCount(typeV, "__NODES_WITH_OUT_EDGES");
-        if (inEdgeCountEmpty) {
-          extractProperties(v, typeV, "__NODES_WITH_OUT_EDGES_ONLY");
-        }
-
-        extractEdgeSchema(schema, v);
-      }
-      if (!inEdgeCountEmpty) {
-        Vertex inTypeV = getTypeVertex(schema, v, Direction.IN);
-        incrementCount(inTypeV, "__NODES_WITH_IN_EDGES");
-      }
+    PartialSchema result;
+    if (threads > 1) {
+      result = extractInParallel(graph);
+    } else {
+      result = new PartialSchema();
+      for (Vertex v : graph.getVertices())
+        if (isSampled(v))
+          result.add(v);
     }
-    log.debug("Total: {} nodes and {} edges", nodeCount, edgeCount);
+    log.debug("Total: {} nodes and {} edges", result.nodeCount, result.edgeCount);
+    result.writeTo(schema);
   }
 
-  private static final String ID_PROPKEY = "IdGraph." + IdGraph.ID;
-
-  private static void extractProperties(Element v, Element typeV, String countKey) {
-    incrementCount(typeV, countKey);
+  private boolean isSampled(Vertex v) {
+    if (sampleRate >= 1.0)
+      return true;
+    int hash = v.getId().hashCode() * 0x9E3779B9; // spread hashes of sequential ids
+    return (hash >>> 1) < sampleRate * Integer.MAX_VALUE;
+  }
 
-    for (String k : v.getPropertyKeys()) {
-      if (k.equals(IdGraph.ID)) {
-        String newKey = ID_PROPKEY;
-        typeV.setProperty(newKey, v.getId().getClass().getSimpleName());
-      } else {
-        String existingSimpleClassName = typeV.getProperty(k);
-        String className = v.getProperty(k).getClass().getSimpleName();
-        if (!existingSimpleClassName.contains(className)) {
-          typeV.setProperty(k, existingSimpleClassName + "," + className);
+  private PartialSchema extractInParallel(Graph graph) {
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    ConcurrentLinkedQueue<PartialSchema> partials = new ConcurrentLinkedQueue<>();
+    Semaphore pendingBatches = new Semaphore(2 * threads); // bounds vertices held in memory
+    List<Future<?>> futures = new ArrayList<>();
+    try {
+      List<Vertex> batch = new ArrayList<>(batchSize);
+      for (Vertex v : graph.getVertices()) {
+        if (!isSampled(v))
+          continue;
+        batch.add(v);
+        if (batch.size() >= batchSize) {
+          futures.add(submitBatch(graph, batch, pool, partials, pendingBatches));
+          batch = new ArrayList<>(batchSize);
         }
       }
+      if (!batch.isEmpty())
+        futures.add(submitBatch(graph, batch, pool, partials, pendingBatches));
+      for (Future<?> f : futures)
+        f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while extracting schema", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Could not extract schema", e.getCause());
+    } finally {
+      pool.shutdownNow();
     }
+
+    PartialSchema result = new PartialSchema();
+    for (PartialSchema partial : partials)
+      result.merge(partial);
+    return result;
   }
 
-  private static void incrementCount(Element typeV, String countKey) {
-    if (countKey != null) {
-      MutableInt counter = typeV.getProperty(countKey);
-      if (counter == null) {
-        counter = new MutableInt();
-        typeV.setProperty(countKey, counter);
+  private Future<?> submitBatch(Graph graph, List<Vertex> batch, ExecutorService pool,
+      ConcurrentLinkedQueue<PartialSchema> partials, Semaphore pendingBatches) throws InterruptedException {
+    pendingBatches.acquire();
+    return pool.submit(() -> {
+      PartialSchema partial = partials.poll(); // reuse a partial schema not being used by another thread
+      if (partial == null)
+        partial = new PartialSchema();
+      try {
+        for (Vertex v : batch)
+          partial.add(v);
+      } finally {
+        partials.add(partial);
+        if (graph instanceof TransactionalGraph)
+          ((TransactionalGraph) graph).commit(); // ends the read transaction started by this thread
+        pendingBatches.release();
       }
-      counter.increment();
-    }
+    });
   }
 
+  private static final String ID_PROPKEY = "IdGraph." + IdGraph.ID;
+
   static final String UNKNOWN_TYPE = "Unknown";
 
-  private Vertex getTypeVertex(Graph schema, Vertex v, Direction direction) {
+  static final String UNKNOWN_LABEL = "Unknown";
+
+  private String getTypeId(Vertex v, Direction direction) {
     Object type = v.getProperty(nodeTypeProperty);
     if (type == null) {
       type = UNKNOWN_TYPE;
@@ -115,8 +171,97 @@ public final class GraphSchemaStats {
       if (subType != null)
         idSB.append("_").append(subType);
     }
-    String id = idSB.append("_").append(direction).toString();
+    return idSB.append("_").append(direction).toString();
+  }
+
+  /// schema of the vertices read by one thread
+  private final class PartialSchema {
+    final Map<String, ElementStats> vertexTypes = new HashMap<>();
+    final Map<String, EdgeTypeStats> edgeTypes = new HashMap<>();
+    long nodeCount = 0, edgeCount = 0;
+
+    ElementStats getVertexType(String typeId) {
+      return vertexTypes.computeIfAbsent(typeId, k -> new ElementStats());
+    }
+
+    void add(Vertex v) {
+      ++nodeCount;
+      boolean inEdgeCountEmpty = !v.getEdges(Direction.IN).iterator().hasNext();
+
+      // each out-edge is visited once
+      String outTypeId = null;
+      ElementStats outTypeV = null;
+      for (Edge e : v.getEdges(Direction.OUT)) {
+        if (outTypeV == null) {
+          outTypeId = getTypeId(v, Direction.OUT);
+          outTypeV = getVertexType(outTypeId);
+        }
+        ++edgeCount;
+        outTypeV.incrementCount("__OUT_EDGES");
+
+        Vertex inV = e.getVertex(Direction.IN);
+        String inTypeId = getTypeId(inV, Direction.IN);
+        getVertexType(inTypeId).extractProperties(inV, "__IN_EDGES");
+
+        String edgeId = outTypeId + "->" + inTypeId;
+        EdgeTypeStats typeE = edgeTypes.get(edgeId);
+        if (typeE == null) {
+          String label = e.getLabel();
+          typeE = new EdgeTypeStats(outTypeId, inTypeId, (label == null) ? UNKNOWN_LABEL : label);
+          edgeTypes.put(edgeId, typeE);
+        }
+        typeE.extractProperties(e, "__EDGES");
+      }
+
+      if (outTypeV == null) {
+        if (inEdgeCountEmpty) {
+          // unconnected node
+          getVertexType(getTypeId(v, null)).extractProperties(v, "__NODES_WITH_NO_EDGES");
+        } else {
+          // this inVertex will be considered when its in-edges are visited
+          getVertexType(getTypeId(v, Direction.IN)).extractProperties(v, "__NODES_WITH_IN_EDGES_ONLY");
+        }
+      } else {
+        outTypeV.incrementCount("__NODES_WITH_OUT_EDGES");
+        if (inEdgeCountEmpty) {
+          outTypeV.extractProperties(v, "__NODES_WITH_OUT_EDGES_ONLY");
+        }
+      }
+      if (!inEdgeCountEmpty) {
+        getVertexType(getTypeId(v, Direction.IN)).incrementCount("__NODES_WITH_IN_EDGES");
+      }
+    }
+
+    void merge(PartialSchema other) {
+      nodeCount += other.nodeCount;
+      edgeCount += other.edgeCount;
+      other.vertexTypes.forEach((id, stats) -> getVertexType(id).merge(stats));
+      other.edgeTypes.forEach((id, stats) -> {
+        EdgeTypeStats typeE = edgeTypes.get(id);
+        if (typeE == null)
+          edgeTypes.put(id, stats);
+        else
+          typeE.merge(stats);
+      });
+    }
+
+    void writeTo(Graph schema) {
+      Map<String, Vertex> typeVs = new HashMap<>();
+      vertexTypes.forEach((id, stats) -> {
+        Vertex typeV = getOrAddVertex(schema, id);
+        typeVs.put(id, typeV);
+        stats.writeTo(typeV);
+      });
+      edgeTypes.forEach((id, stats) -> {
+        Edge typeE = schema.getEdge(id);
+        if (typeE == null)
+          typeE = schema.addEdge(id, typeVs.get(stats.outTypeId), typeVs.get(stats.inTypeId), stats.label);
+        stats.writeTo(typeE);
+      });
+    }
+  }
 
+  private static Vertex getOrAddVertex(Graph schema, String id) {
     Vertex typeV = schema.getVertex(id);
     if (typeV == null) {
       typeV = schema.addVertex(id);
@@ -124,36 +269,127 @@ public final class GraphSchemaStats {
     return typeV;
   }
 
-  static final String UNKNOWN_LABEL = "Unknown";
+  /// counts and property statistics of a schema element
+  private class ElementStats {
+    final Map<String, MutableLong> counts = new LinkedHashMap<>();
+    final Map<String, PropertyStats> props = new LinkedHashMap<>();
+    String idClassName;
+
+    void incrementCount(String countKey) {
+      MutableLong counter = counts.get(countKey);
+      if (counter == null)
+        counts.put(countKey, new MutableLong(1));
+      else
+        counter.increment();
+    }
+
+    void extractProperties(Element v, String countKey) {
+      incrementCount(countKey);
+
+      for (String k : v.getPropertyKeys()) {
+        if (k.equals(IdGraph.ID)) {
+          idClassName = v.getId().getClass().getSimpleName();
+        } else {
+          props.computeIfAbsent(k, key -> new PropertyStats()).add(v.getProperty(k));
+        }
+      }
+    }
+
+    void merge(ElementStats other) {
+      other.counts.forEach((k, count) -> {
+        MutableLong counter = counts.get(k);
+        if (counter == null)
+          counts.put(k, count);
+        else
+          counter.add(count.longValue());
+      });
+      other.props.forEach((k, stats) -> {
+        PropertyStats existing = props.get(k);
+        if (existing == null)
+          props.put(k, stats);
+        else
+          existing.merge(stats);
+      });
+      if (idClassName == null)
+        idClassName = other.idClassName;
+    }
 
-  private void extractEdgeSchema(Graph schema, Vertex outV) {
-    Vertex outTypeV = getTypeVertex(schema, outV, Direction.OUT);
-    for (Edge e : outV.getEdges(Direction.OUT)) {
-      incrementCount(outTypeV, "__OUT_EDGES");
+    /**
+     * Adds to counts and value types that are already in typeE, e.g., if extractSchema() was called before.
+     */
+    void writeTo(Element typeE) {
+      counts.forEach((k, count) -> {
+        MutableInt counter = typeE.getProperty(k);
+        if (counter == null) {
+          counter = new MutableInt();
+          typeE.setProperty(k, counter);
+        }
+        counter.add(count.intValue());
+      });
+      if (idClassName != null)
+        typeE.setProperty(ID_PROPKEY, idClassName);
+      props.forEach((k, stats) -> stats.writeTo(typeE, k));
+    }
+  }
 
-      Vertex inV = e.getVertex(Direction.IN);
-      Vertex inTypeV = getTypeVertex(schema, inV, Direction.IN);
-      extractProperties(inV, inTypeV, "__IN_EDGES");
+  private final class EdgeTypeStats extends ElementStats {
+    final String outTypeId, inTypeId, label;
 
-      Edge typeE = getTypeEdge(schema, outTypeV, e, inTypeV);
-      extractProperties(e, typeE, "__EDGES");
+    EdgeTypeStats(String outTypeId, String inTypeId, String label) {
+      this.outTypeId = outTypeId;
+      this.inTypeId = inTypeId;
+      this.label = label;
     }
   }
 
-  private Edge getTypeEdge(Graph schema, Vertex outTypeV, Edge e, Vertex inTypeV) {
-    String edgeId =
-        new StringBuilder(outTypeV.getId().toString()).append("->").append(inTypeV.getId())
-            .toString();
+  /// value classes and distinct values of a property
+  private final class PropertyStats {
+    final Map<String, MutableLong> valueTypes = new LinkedHashMap<>(4);
+    final HyperLogLog distinct = (distinctPrecision > 0) ? new HyperLogLog(distinctPrecision) : null;
+
+    void add(Object value) {
+      String className = value.getClass().getSimpleName();
+      MutableLong counter = valueTypes.get(className);
+      if (counter == null)
+        valueTypes.put(className, new MutableLong(1));
+      else
+        counter.increment();
+      if (distinct != null)
+        distinct.add(value.getClass().isArray() ? ArrayUtils.toString(value) : value.toString());
+    }
+
+    void merge(PropertyStats other) {
+      other.valueTypes.forEach((className, count) -> {
+        MutableLong counter = valueTypes.get(className);
+        if (counter == null)
+          valueTypes.put(className, count);
+        else
+          counter.add(count.longValue());
+      });
+      if (distinct != null)
+        distinct.merge(other.distinct);
+    }
 
-    Edge typeE = schema.getEdge(edgeId);
-    if (typeE == null) {
-      String label = e.getLabel();
-      if (label == null) {
-        label = UNKNOWN_LABEL;
+    void writeTo(Element typeE, String k) {
+      String classNames = typeE.getProperty(k);
+      for (String className : valueTypes.keySet()) {
+        if (classNames == null)
+          classNames = className;
+        else if (!classNames.contains(className))
+          classNames = classNames + "," + className;
       }
-      typeE = schema.addEdge(edgeId, outTypeV, inTypeV, label);
+      typeE.setProperty(k, classNames);
+
+      Map<String, Long> histogram = typeE.getProperty(k + VALUE_TYPES_SUFFIX);
+      if (histogram == null)
+        histogram = new LinkedHashMap<>();
+      for (Entry<String, MutableLong> e : valueTypes.entrySet())
+        histogram.merge(e.getKey(), e.getValue().longValue(), Long::sum);
+      typeE.setProperty(k + VALUE_TYPES_SUFFIX, histogram);
+
+      if (distinct != null) // estimate for this extraction only
+        typeE.setProperty(k + DISTINCT_SUFFIX, distinct.estimate());
     }
-    return typeE;
   }
 
 }
@@ -2,12 +2,15 @@ package net.deelam.graphtools;
 
 import static com.google.common.base.Preconditions.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.apache.commons.lang.mutable.MutableInt;
+import org.apache.commons.lang.mutable.MutableLong;
 
 import com.tinkerpop.blueprints.TransactionalGraph;
 
@@ -55,6 +58,9 @@ import com.tinkerpop.blueprints.TransactionalGraph;
  * When any of the nested transactions calls rollback(),
  * graph.rollback() actually occurs in the outermost transaction when commit() or rollback() is called.
  * 
+ * A nested transaction can be begun on a WriteBehindGraph that wraps the outermost transaction's graph,
+ * in which case the WriteBehindGraph's buffer is flushed before every commit (and cleared on rollback).
+ * 
  * @author deelam
  */
 @Slf4j
@@ -88,6 +94,23 @@ public class GraphTransaction {
     }
   };
 
+  /// if set, used instead of commitThreshold
+  protected static final ThreadLocal<ThresholdController> thresholdController = new ThreadLocal<>();
+
+  /// WriteBehindGraphs wrapping graphHolder's graph, to be flushed before each commit
+  protected static final ThreadLocal<List<WriteBehindGraph>> writeBehindGraphs =
+      new ThreadLocal<List<WriteBehindGraph>>() {
+        protected List<WriteBehindGraph> initialValue() {
+          return new ArrayList<>(1);
+        }
+      };
+
+  protected static final ThreadLocal<MutableLong> lastCommitNanos = new ThreadLocal<MutableLong>() {
+    protected MutableLong initialValue() {
+      return new MutableLong(System.nanoTime());
+    }
+  };
+
   /**
    * @return depth of transaction.
    */
@@ -101,6 +124,22 @@ public class GraphTransaction {
     return begin(currGraph);
   }
 
+  /**
+   * Like begin(currGraph, threshold) but commitIfFull() uses the controller's current threshold
+   * and reports each incremental commit to the controller.
+   * @return depth of transaction.
+   */
+  public static int begin(TransactionalGraph currGraph, ThresholdController controller) {
+    if (!isOuterMostTransaction()) {
+      throw new IllegalStateException(
+          "Must not already be in a transaction since graph.commit() must be repeated called.");
+    }
+
+    thresholdController.set(controller);
+    lastCommitNanos.get().setValue(System.nanoTime());
+    return begin(currGraph);
+  }
+
   /**
    * @return depth of transaction.
    */
@@ -120,6 +159,12 @@ public class GraphTransaction {
     } else if (GraphUtils.isWrappedWithin(g, currGraph)) {
       nestingCounter.get().increment();
       return nestingCounter.get().intValue();
+    } else if (currGraph instanceof WriteBehindGraph && GraphUtils.isWrappedWithin(currGraph, g)) {
+      List<WriteBehindGraph> wbGraphs = writeBehindGraphs.get();
+      if (!wbGraphs.contains(currGraph))
+        wbGraphs.add((WriteBehindGraph) currGraph);
+      nestingCounter.get().increment();
+      return nestingCounter.get().intValue();
     } else {
       log.error("This transaction only supports working with one graph ({}) at a time: {}\n"
           + "   Or maybe you forgot to commit() or rollback() the previous transaction?", g,
@@ -189,10 +234,27 @@ public class GraphTransaction {
   }
 
   public static boolean commitIfFull(int tx) {
-    operationsCounter.get().increment();
-    if (operationsCounter.get().intValue() >= commitThreshold.get().intValue()) {
+    return commitIfFull(tx, 1);
+  }
+
+  /**
+   * @param numOperations number of operations performed since the last call
+   */
+  public static boolean commitIfFull(int tx, int numOperations) {
+    operationsCounter.get().add(numOperations);
+    ThresholdController controller = thresholdController.get();
+    int threshold = (controller == null) ? commitThreshold.get().intValue() : controller.getThreshold();
+    if (operationsCounter.get().intValue() >= threshold) {
       log.info("Threshold {} reached; committing transaction on graph: {}", operationsCounter.get(), graphHolder.get());
+      long commitStart = System.nanoTime();
+      flushWriteBehindGraphs();
       graphHolder.get().commit();
+      if (controller != null) {
+        long now = System.nanoTime();
+        controller.batchCompleted(operationsCounter.get().intValue(), now - lastCommitNanos.get().longValue(),
+            now - commitStart);
+        lastCommitNanos.get().setValue(now);
+      }
       operationsCounter.get().setValue(0);
       return true;
     }
@@ -211,13 +273,25 @@ public class GraphTransaction {
     checkState(!isInTransaction());
   }
 
+  private static void flushWriteBehindGraphs() {
+    for (WriteBehindGraph wbGraph : writeBehindGraphs.get())
+      wbGraph.flush();
+  }
+
   private static boolean endTransaction() {
+    List<WriteBehindGraph> wbGraphs = writeBehindGraphs.get();
     /// remove all ThreadLocal variables so they can be GC'd
+    writeBehindGraphs.remove();
     nestingCounter.remove();
     commitThreshold.remove();
+    thresholdController.remove();
+    lastCommitNanos.remove();
+    operationsCounter.remove();
     if (rollbackCalled.get().get()) {
       rollbackCalled.remove();
       log.warn("Rolling back outer-most transaction on graph: {}", graphHolder.get());
+      for (WriteBehindGraph wbGraph : wbGraphs)
+        wbGraph.clearBuffer();
       if(graphHolder.get()!=null){
         graphHolder.get().rollback();
         graphHolder.remove();
@@ -226,6 +300,8 @@ public class GraphTransaction {
     } else {
       rollbackCalled.remove();
       log.debug("Committing outer-most transaction on graph: {}", graphHolder.get());
+      for (WriteBehindGraph wbGraph : wbGraphs)
+        wbGraph.flush();
       graphHolder.get().commit();
       graphHolder.remove();
       return true;
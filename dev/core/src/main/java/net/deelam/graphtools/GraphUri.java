@@ -3,6 +3,7 @@
  */
 package net.deelam.graphtools;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
@@ -16,7 +17,10 @@ import org.apache.commons.configuration.BaseConfiguration;
 import org.apache.commons.configuration.Configuration;
 
 import com.google.common.base.Preconditions;
+import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Parameter;
+import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
 
 import lombok.Getter;
@@ -25,6 +29,7 @@ import lombok.Setter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 import net.deelam.graphtools.GraphIndexConstants.PropertyKeys;
+import net.deelam.graphtools.util.IncrementalBackup;
 
 /**
  * GraphUri examples:
@@ -32,7 +37,8 @@ import net.deelam.graphtools.GraphIndexConstants.PropertyKeys;
  * <li> "tinker:/tmp/testGraphs/tGraph": on-disk TinkerGraph in absolute directory
  * <li> "tinker:./testGraphs/tGraph": on-disk TinkerGraph in relative directory
  * <li> "tinker:./testGraphs/tGraphML?fileType=graphml": on-disk TinkerGraph in GraphML format
- * 
+ * <li> "neo4j:./testGraphs/nGraph?idCacheSize=100000": caches id lookups (see CachingIdGraph)
+ *
  * See associated unit tests.
  * 
  * @author deelam
@@ -178,9 +184,10 @@ public class GraphUri {
   public <T extends KeyIndexableGraph> IdGraph<T> createNewIdGraph(boolean deleteExisting) throws IOException {
     checkNotOpen();
     if(getFactory().exists(this)){
-      if(deleteExisting)
+      if(deleteExisting){
+        closeIdleSharedGraph();
         getFactory().delete(this);
-      else
+      } else
         throw new FileAlreadyExistsException("Graph exists at: "+getUriPath());
     }
     graph = openIdGraph(KeyIndexableGraph.class);
@@ -190,6 +197,7 @@ public class GraphUri {
   public boolean delete() throws IOException{
     checkNotOpen();
     if(getFactory().exists(this)){
+      closeIdleSharedGraph();
       getFactory().delete(this);
       return true;
     } else {
@@ -197,6 +205,50 @@ public class GraphUri {
     }
   }
 
+  /**
+   * Removes all nodes and edges from the open graph using the factory's fast path (e.g., recreating the store)
+   * if it has one; otherwise, by removing elements in batches (see GraphUtils.clearGraph()).
+   * The metadata node and key indices (without their index parameters) are recreated,
+   * as are element counts if they were maintained.
+   * @return the emptied graph, which replaces the graph previously returned by getGraph()
+   */
+  public IdGraph<?> truncate() throws IOException {
+    if(!isOpen())
+      throw new IllegalStateException("Graph must be open to be truncated: "+this);
+    if(isReadOnly())
+      throw new IllegalStateException("Cannot truncate read-only graph: "+this);
+
+    IdGraph<?> origGraph = graph;
+    PropertyKeys pks = new PropertyKeys();
+    for(String key:origGraph.getIndexedKeys(Vertex.class))
+      if(!IdGraph.ID.equals(key))
+        pks.getVertexKeys().put(key, new Parameter[0]);
+    for(String key:origGraph.getIndexedKeys(Edge.class))
+      if(!IdGraph.ID.equals(key))
+        pks.getEdgeKeys().put(key, new Parameter[0]);
+    boolean counted = (ElementCounts.getNodeCount(origGraph) != null);
+    String nodeTypeKey = counted ? GraphUtils.getMetaData(origGraph, ElementCounts.NODE_TYPE_KEY_PROP) : null;
+
+    shutdown();
+    closeIdleSharedGraph();
+    boolean truncated = getFactory().truncate(this);
+    openIdGraph();
+    if(truncated){
+      log.info("Truncated graph: {}", this);
+    } else {
+      log.info("Clearing graph in batches: {}", this);
+      GraphUtils.clearGraph(graph);
+      if(config.getBoolean(CREATE_META_DATA_NODE, true))
+        GraphUtils.addMetaDataNode(this, graph);
+    }
+    getFactory().createIndices(this, graph, pks);
+    if(counted){
+      ElementCounts.init(graph, nodeTypeKey);
+      graph.commit();
+    }
+    return graph;
+  }
+
   @SuppressWarnings("rawtypes")
   @Getter
   private IdGraph graph;
@@ -209,7 +261,10 @@ public class GraphUri {
   
   public void shutdown(){
     if(graph!=null){
-      shutdown(graph);
+      if(isSharedHandle())
+        GraphHandleManager.getInstance().release(this);
+      else
+        shutdown(graph);
       graph=null;
     } else {
       //new IllegalArgumentException("Call shutdown(graph) instead since you didn't open the graph using this class.");
@@ -217,7 +272,7 @@ public class GraphUri {
     }
   }
   
-  private void shutdown(IdGraph<?> graph){
+  void shutdown(IdGraph<?> graph){
     log.info("Shutting down graph={}",graph);
     try {
       getFactory().shutdown(this, graph);
@@ -226,9 +281,20 @@ public class GraphUri {
     } finally {
       log.debug("  Shut down graphUri={}", this);
       System.gc(); // addresses problem with NFS files still being held by JVM 
+      GraphHandleManager.getInstance().graphClosed(this); // wake up threads waiting to open the graph
     }
   }
 
+  public boolean isSharedHandle() {
+    return config.getBoolean(GraphHandleManager.SHARED_HANDLE, false);
+  }
+
+  /// a shared graph may be kept open after the last GraphUri using it is shut down
+  private void closeIdleSharedGraph() {
+    if(isSharedHandle())
+      GraphHandleManager.getInstance().closeIdle(this);
+  }
+
   @Setter
   private Consumer<IdGraph<?>> openHook=null;
   
@@ -244,17 +310,10 @@ public class GraphUri {
     log.info("Opening graphUri={} using {}", this, getFactory());
     //printConfig(config);
     try{
-      graph = getFactory().open(this);
-      
-      if(!isReadOnly()){
-        boolean createMetaDataNode = config.getBoolean(CREATE_META_DATA_NODE, true);
-        log.debug("  Opened graph={}, createMetaDataNode={}", graph, createMetaDataNode);
-        if(createMetaDataNode)
-          GraphUtils.addMetaDataNode(this, graph);
-      }
-
-      if(openHook!=null)
-        openHook.accept(graph);
+      if(isSharedHandle())
+        graph = GraphHandleManager.getInstance().acquire(this);
+      else
+        graph = openGraph();
     }catch(RuntimeException re){
       log.error("Could not open graphUri="+this, re);
       throw re;
@@ -262,6 +321,38 @@ public class GraphUri {
     return graph;
   }
 
+  /**
+   * Opens the graph using the factory, without assigning it to this GraphUri (e.g., so it can be shared)
+   */
+  IdGraph<?> openGraph() {
+    IdGraph<?> graph = getFactory().open(this);
+
+    long idCacheSize = config.getLong(CachingIdGraph.ID_CACHE_SIZE, 0);
+    long idCacheMaxWeight = config.getLong(CachingIdGraph.ID_CACHE_MAX_WEIGHT, 0);
+    if (idCacheSize > 0 || idCacheMaxWeight > 0) {
+      if (graph.getClass() != IdGraph.class) {
+        // keep the factory's wrapper (e.g., ReadOnlyIdGraph for csr: graphs, whose lookups are already in memory)
+        log.info("  Not caching id lookups for {}", graph);
+      } else {
+        log.debug("  Caching id lookups: {}={} {}={}", CachingIdGraph.ID_CACHE_SIZE, idCacheSize,
+            CachingIdGraph.ID_CACHE_MAX_WEIGHT, idCacheMaxWeight);
+        // base graph already has the id indices created by the factory's IdGraph
+        graph = new CachingIdGraph<>(graph.getBaseGraph(), idCacheSize, idCacheMaxWeight);
+      }
+    }
+
+    if(!isReadOnly() && !(graph instanceof ReadOnlyIdGraph)){ // e.g., csr: graphs are always read-only
+      boolean createMetaDataNode = config.getBoolean(CREATE_META_DATA_NODE, true);
+      log.debug("  Opened graph={}, createMetaDataNode={}", graph, createMetaDataNode);
+      if(createMetaDataNode)
+        GraphUtils.addMetaDataNode(this, graph);
+    }
+
+    if(openHook!=null)
+      openHook.accept(graph);
+    return graph;
+  }
+
   @SuppressWarnings("unchecked")
   public static void printConfig(Configuration config) {
     StringBuilder sb=new StringBuilder();
@@ -329,13 +420,54 @@ public class GraphUri {
   }
 
   public void backupTo(GraphUri dstGraphUri) throws IOException {
+    checkCanBackupTo(dstGraphUri);
+    closeIdleSharedGraph();
+    getFactory().backup(this, dstGraphUri);
+  }
+
+  /**
+   * Backs up this graph as a snapshot in which files unchanged since previousBackup are hard-linked
+   * rather than copied (see IncrementalBackup), if the graph is stored as local files.
+   * Otherwise, same as backupTo(dstGraphUri).
+   * Snapshot files are shared, so use restoreFrom() rather than opening the snapshot as a graph.
+   * @param previousBackup snapshot previously created by this method, or null for the first snapshot
+   */
+  public void backupTo(GraphUri dstGraphUri, GraphUri previousBackup) throws IOException {
+    checkCanBackupTo(dstGraphUri);
+    File srcDir = getFactory().getStoreDirectory(this);
+    File dstDir = dstGraphUri.getFactory().getStoreDirectory(dstGraphUri);
+    if(srcDir==null || dstDir==null){
+      log.info("Graph is not stored as local files, so doing a full backup: {}", this);
+      backupTo(dstGraphUri);
+      return;
+    }
+    closeIdleSharedGraph();
+    File prevDir = (previousBackup==null) ? null : previousBackup.getFactory().getStoreDirectory(previousBackup);
+    new IncrementalBackup().backup(srcDir, dstDir, prevDir);
+  }
+
+  /**
+   * Replaces this graph's files with those in a snapshot created by backupTo(GraphUri, GraphUri),
+   * copying only files that differ.
+   */
+  public void restoreFrom(GraphUri snapshot) throws IOException {
+    if(this.isOpen())
+      throw new IllegalStateException("Graph must not be open so underlying files can be replaced.");
+    File snapshotDir = snapshot.getFactory().getStoreDirectory(snapshot);
+    File dstDir = getFactory().getStoreDirectory(this);
+    if(snapshotDir==null || dstDir==null)
+      throw new UnsupportedOperationException("Graph is not stored as local files: "+this);
+    closeIdleSharedGraph();
+    new IncrementalBackup().restore(snapshotDir, dstDir);
+  }
+
+  private void checkCanBackupTo(GraphUri dstGraphUri) {
     if(this.isOpen())
       throw new IllegalStateException("Source graph must not be open so underlying files can be copied.");
     if(dstGraphUri.isOpen())
       throw new IllegalStateException("Destination graph must not be open so underlying files can be copied.");
     if(dstGraphUri.exists())
       throw new IllegalStateException("Destination graph must not already exist so underlying files can be copied.");
-    getFactory().backup(this, dstGraphUri);
   }
 
   public PropertyMerger createPropertyMerger() {
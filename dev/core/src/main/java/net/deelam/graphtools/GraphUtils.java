@@ -2,11 +2,19 @@ package net.deelam.graphtools;
 
 import static com.google.common.base.Preconditions.*;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import lombok.extern.slf4j.Slf4j;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.tinkerpop.blueprints.*;
 import com.tinkerpop.blueprints.util.ElementHelper;
 import com.tinkerpop.blueprints.util.wrappers.WrapperGraph;
@@ -53,12 +61,43 @@ public final class GraphUtils {
     return equalsEndpoints;
   };
 
+  /**
+   * Iterates over the graph; see getNodeCount(graph, true) to use maintained counts instead.
+   */
   public static long getNodeCount(Graph graph) {
-    return Iterables.size(graph.getVertices());
+    return getNodeCount(graph, false);
   }
 
   public static long getEdgeCount(Graph graph) {
-    return Iterables.size(graph.getEdges());
+    return getEdgeCount(graph, false);
+  }
+
+  /**
+   * @param useElementCounts whether to use the counts on the metadata node if they are maintained
+   * (see ElementCounts). Only set this if the graph is modified solely by writers that update the counts;
+   * otherwise, the counts may be stale.  Iterates over the graph if not set or if counts are not maintained.
+   */
+  public static long getNodeCount(Graph graph, boolean useElementCounts) {
+    Long count = useElementCounts ? ElementCounts.getNodeCount(graph) : null;
+    return (count == null) ? Iterables.size(graph.getVertices()) : count;
+  }
+
+  public static long getEdgeCount(Graph graph, boolean useElementCounts) {
+    Long count = useElementCounts ? ElementCounts.getEdgeCount(graph) : null;
+    return (count == null) ? Iterables.size(graph.getEdges()) : count;
+  }
+
+  /**
+   * Prefers the backend's own count, if its IdGraphFactory provides one.
+   */
+  public static long getNodeCount(GraphUri gUri) {
+    Long count = gUri.getFactory().countVertices(gUri.getGraph());
+    return (count == null) ? getNodeCount(gUri.getGraph()) : count;
+  }
+
+  public static long getEdgeCount(GraphUri gUri) {
+    Long count = gUri.getFactory().countEdges(gUri.getGraph());
+    return (count == null) ? getEdgeCount(gUri.getGraph()) : count;
   }
 
   public static String count(Graph graph) {
@@ -208,16 +247,46 @@ public final class GraphUtils {
     }
   }
 
+  public static final int CLEAR_BATCH_SIZE = 10000;
+
+  /**
+   * Removes all elements using the graph's factory, which may recreate the store instead of removing elements one at a time.
+   * @return the emptied graph (see GraphUri.truncate())
+   */
+  public static IdGraph<?> clearGraph(GraphUri gUri) throws IOException {
+    return gUri.truncate();
+  }
+
   public static void clearGraph(TransactionalGraph graph) {
+    clearGraph(graph, CLEAR_BATCH_SIZE);
+  }
+
+  /**
+   * Removes elements in batches of batchSize, committing after each batch so that removing
+   * elements of a large graph doesn't exhaust memory.
+   * If the graph is already in a transaction, nothing is committed: elements are still removed in batches, but the
+   * caller's transaction includes all the removals, and the caller decides when to commit.
+   */
+  public static void clearGraph(TransactionalGraph graph, int batchSize) {
     checkNotNull(graph);
-    int tx = GraphTransaction.begin(graph);
+    boolean batched = GraphTransaction.isOuterMostTransaction();
+    int tx = batched ? GraphTransaction.begin(graph, batchSize) : GraphTransaction.begin(graph);
     try {
-      for (Edge e : graph.getEdges()) {
-        graph.removeEdge(e);
+      // restart iteration for each batch since iterators may not be valid after a commit
+      List<Edge> edges;
+      while (!(edges = Lists.newArrayList(Iterables.limit(graph.getEdges(), batchSize))).isEmpty()) {
+        for (Edge e : edges)
+          graph.removeEdge(e);
+        if (batched)
+          GraphTransaction.commitIfFull(tx, edges.size());
       }
 
-      for (Vertex v : graph.getVertices()) {
-        graph.removeVertex(v);
+      List<Vertex> vertices;
+      while (!(vertices = Lists.newArrayList(Iterables.limit(graph.getVertices(), batchSize))).isEmpty()) {
+        for (Vertex v : vertices)
+          graph.removeVertex(v);
+        if (batched)
+          GraphTransaction.commitIfFull(tx, vertices.size());
       }
       GraphTransaction.commit(tx);
     } catch (RuntimeException re) {
@@ -282,10 +351,15 @@ public final class GraphUtils {
     if (origV.equals(targetV)) {
       throw new IllegalArgumentException("origV and targetV are the same nodes (or at least have the same ids)");
     }
+    ElementCounts counts = ElementCounts.forGraph(graph);
     propMerger.mergeProperties(origV, targetV);
-    moveEdges(origV, targetV, excludeNewSelfEdges, graph);
+    moveEdges(origV, targetV, excludeNewSelfEdges, graph, counts);
 
     log.debug("Removing node={} that was merged into node={}", origV, targetV);
+    if (counts != null) {
+      counts.nodeRemoved(origV);
+      counts.applyTo(graph);
+    }
     graph.removeVertex(origV);
     graph.commit(); // must commit since vertex was removed in case this is called in a getVertices() loop so it will skip removed node
   }
@@ -302,6 +376,14 @@ public final class GraphUtils {
   }
 
   public static void moveEdges(Vertex origV, Vertex targetV, boolean excludeNewSelfEdges, IdGraph<?> graph) {
+    ElementCounts counts = ElementCounts.forGraph(graph);
+    moveEdges(origV, targetV, excludeNewSelfEdges, graph, counts);
+    if (counts != null)
+      counts.applyTo(graph);
+  }
+
+  private static void moveEdges(Vertex origV, Vertex targetV, boolean excludeNewSelfEdges, IdGraph<?> graph,
+      ElementCounts counts) {
     for (Direction dir : BOTHDIR)
       for (Edge edge : origV.getEdges(dir)) {
         Vertex neighbor = edge.getVertex(dir.opposite());
@@ -314,6 +396,8 @@ public final class GraphUtils {
         Edge eCopy;
         if (excludeNewSelfEdges && targetV.equals(neighbor)) { // whether to include the original edge from origV to targetV, which would be a self-edge
           // don't add edge back into graph
+          if (counts != null)
+            counts.edgeRemoved(inMemEdge);
         } else {
           if (dir == Direction.OUT) {
             eCopy = graph.addEdge(inMemEdge.getId(), targetV, neighbor, inMemEdge.getLabel());
@@ -326,6 +410,7 @@ public final class GraphUtils {
   }
   
   public static void copyEdges(Vertex origV, Vertex targetV, String edgePrefix, boolean excludeNewSelfEdges, IdGraph<?> graph) {
+    ElementCounts counts = ElementCounts.forGraph(graph);
     for (Direction dir : BOTHDIR)
       for (Edge edge : origV.getEdges(dir)) {
         Vertex neighbor = edge.getVertex(dir.opposite());
@@ -344,8 +429,175 @@ public final class GraphUtils {
             eCopy = graph.addEdge(edgePrefix+inMemEdge.getId(), neighbor, targetV, inMemEdge.getLabel());
           }
           ElementHelper.copyProperties(inMemEdge, eCopy);
+          if (counts != null)
+            counts.edgeAdded(eCopy);
         }
       }
+    if (counts != null)
+      counts.applyTo(graph);
   }
-  
+
+  ///
+
+  /**
+   * Resolves chains (a->b->c) and cycles (a->b->a) in a merge plan using union-find
+   * so that each node is merged directly into its final target.
+   * The final target of a chain is the node that is not merged into another node;
+   * for a cycle, it is the smallest id in the cycle's group.
+   * @param mergePlan map from the id of the node to be merged to the id of the node it is merged into
+   * @return map from the id of each node to be merged to the id of its final target, grouped by target
+   */
+  public static Map<String, String> resolveMergeTargets(Map<String, String> mergePlan) {
+    Map<String, String> parents = new HashMap<>();
+    for (Entry<String, String> e : mergePlan.entrySet())
+      union(parents, e.getKey(), e.getValue());
+
+    // choose a target for each group
+    Map<String, String> targets = new HashMap<>(); // group root -> target
+    for (String id : parents.keySet()) {
+      String root = find(parents, id);
+      String target = targets.get(root);
+      if (!mergePlan.containsKey(id)) // end of a chain
+        targets.put(root, id);
+      else if (target == null || (mergePlan.containsKey(target) && id.compareTo(target) < 0))
+        targets.put(root, id);
+    }
+
+    Map<String, List<String>> groups = new LinkedHashMap<>();
+    for (String id : parents.keySet()) {
+      String target = targets.get(find(parents, id));
+      if (!id.equals(target))
+        groups.computeIfAbsent(target, t -> new ArrayList<>()).add(id);
+    }
+    Map<String, String> resolved = new LinkedHashMap<>();
+    groups.forEach((target, ids) -> ids.forEach(id -> resolved.put(id, target)));
+    return resolved;
+  }
+
+  private static String find(Map<String, String> parents, String id) {
+    String root = id;
+    for (String p = parents.get(root); p != null && !p.equals(root); p = parents.get(root))
+      root = p;
+    // path compression
+    for (String curr = id; !curr.equals(root);) {
+      String next = parents.put(curr, root);
+      curr = next;
+    }
+    return root;
+  }
+
+  private static void union(Map<String, String> parents, String id1, String id2) {
+    parents.putIfAbsent(id1, id1);
+    parents.putIfAbsent(id2, id2);
+    String root1 = find(parents, id1);
+    String root2 = find(parents, id2);
+    if (!root1.equals(root2))
+      parents.put(root1, root2);
+  }
+
+  /**
+   * Merges many nodes in batches instead of committing after each merge like mergeNodesAndEdges().
+   * Edges are moved and properties are merged in transactions of about batchSize operations, with properties
+   * merged in a merge session (see PropertyMerger.beginMergeSession()) for each transaction so that merging many
+   * nodes into one doesn't rewrite its multivalued properties for every merged node;
+   * merged nodes are removed at the end, so the merge plan can be built while iterating over the graph.
+   * If the graph is already in a transaction, nothing is committed: the caller's transaction includes all the
+   * merges, and the caller decides when to commit.
+   * @param mergePlan map from the id of the node to be merged to the id of the node it is merged into;
+   *    chains and cycles are resolved by resolveMergeTargets()
+   * @param propMerger to merge node properties
+   * @return number of nodes merged and removed
+   */
+  public static int mergeNodesAndEdges(Map<String, String> mergePlan, boolean excludeNewSelfEdges, IdGraph<?> graph,
+      PropertyMerger propMerger, int batchSize) {
+    Map<String, String> targets = resolveMergeTargets(mergePlan);
+    ElementCounts counts = ElementCounts.forGraph(graph);
+    List<Object> mergedIds = new ArrayList<>(targets.size());
+    boolean batched = GraphTransaction.isOuterMostTransaction();
+    int tx = batched ? GraphTransaction.begin(graph, batchSize) : GraphTransaction.begin(graph);
+    // values merged into a target node are written once per batch rather than once per merged node
+    propMerger.beginMergeSession();
+    boolean inSession = true;
+    try {
+      Vertex targetV = null;
+      int batchOperations = 0;
+      for (Entry<String, String> e : targets.entrySet()) {
+        if (targetV == null || !targetV.getId().equals(e.getValue())) // targets are grouped
+          targetV = graph.getVertex(e.getValue());
+        Vertex origV = graph.getVertex(e.getKey());
+        if (targetV == null || origV == null) {
+          log.warn("Not merging node={} into node={} since one of them is not in the graph", e.getKey(), e.getValue());
+          continue;
+        }
+        propMerger.mergeProperties(origV, targetV);
+        int movedEdges = moveEdgesWithoutCopy(origV, targetV, excludeNewSelfEdges, graph, counts);
+        mergedIds.add(origV.getId());
+        if (counts != null)
+          counts.applyTo(graph);
+        batchOperations += 1 + movedEdges;
+        if (batched && batchOperations >= batchSize) { // write merged values before the batch is committed
+          inSession = false;
+          propMerger.endMergeSession(true);
+          GraphTransaction.commitIfFull(tx, batchOperations);
+          batchOperations = 0;
+          propMerger.beginMergeSession();
+          inSession = true;
+        }
+      }
+      inSession = false;
+      propMerger.endMergeSession(true);
+      if (batched)
+        GraphTransaction.commitIfFull(tx, batchOperations);
+
+      log.info("Removing {} merged nodes", mergedIds.size());
+      for (Object id : mergedIds) {
+        Vertex origV = graph.getVertex(id);
+        if (counts != null)
+          counts.nodeRemoved(origV);
+        graph.removeVertex(origV);
+        if (counts != null)
+          counts.applyTo(graph);
+        if (batched)
+          GraphTransaction.commitIfFull(tx);
+      }
+      GraphTransaction.commit(tx);
+    } catch (RuntimeException re) {
+      if (inSession)
+        propMerger.endMergeSession(false);
+      GraphTransaction.rollback(tx);
+      throw re;
+    }
+    return mergedIds.size();
+  }
+
+  /**
+   * Like moveEdges() but holds each edge's properties in a Map rather than a GraphRecordEdge.
+   * @return number of edges moved or removed
+   */
+  private static int moveEdgesWithoutCopy(Vertex origV, Vertex targetV, boolean excludeNewSelfEdges, IdGraph<?> graph,
+      ElementCounts counts) {
+    int count = 0;
+    for (Direction dir : BOTHDIR)
+      for (Edge edge : Lists.newArrayList(origV.getEdges(dir))) { // copy since edges are removed
+        Vertex neighbor = edge.getVertex(dir.opposite());
+        if (neighbor.equals(origV)) // self-edge of origV
+          neighbor = targetV;
+        boolean isNewSelfEdge = excludeNewSelfEdges && targetV.equals(neighbor);
+        if (isNewSelfEdge && counts != null)
+          counts.edgeRemoved(edge);
+
+        Object id = edge.getId();
+        String label = edge.getLabel();
+        Map<String, Object> props = ElementHelper.getProperties(edge);
+        graph.removeEdge(edge);
+        ++count;
+        if (!isNewSelfEdge) {
+          Edge eCopy = (dir == Direction.OUT) ? graph.addEdge(id, targetV, neighbor, label)
+              : graph.addEdge(id, neighbor, targetV, label);
+          ElementHelper.setProperties(eCopy, props);
+        }
+      }
+    return count;
+  }
+
 }
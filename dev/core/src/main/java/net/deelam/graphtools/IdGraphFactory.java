@@ -5,6 +5,7 @@ package net.deelam.graphtools;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.File;
 import java.io.IOException;
 
 import org.slf4j.Logger;
@@ -42,6 +43,24 @@ public interface IdGraphFactory {
    */
   public void delete(GraphUri gUri) throws IOException;
 
+  /**
+   * Removes all elements of the graph faster than removing them one at a time, e.g., by recreating the store.
+   * Called by GraphUri.truncate() while the graph is closed; the graph is reopened afterwards.
+   * @return false if the backend has no fast path, in which case the elements are removed in batches
+   * @throws IOException 
+   */
+  default public boolean truncate(GraphUri gUri) throws IOException{
+    return false;
+  }
+
+  /**
+   * @return the local directory holding all of the graph's files, which enables incremental backups
+   * (see GraphUri.backupTo(GraphUri, GraphUri)), or null if the graph is not stored as local files
+   */
+  default public File getStoreDirectory(GraphUri gUri){
+    return null;
+  }
+
   /**
    * backs up srcGraphUri to dstGraphUri
    * @throws IOException 
@@ -61,6 +80,22 @@ public interface IdGraphFactory {
 
   public PropertyMerger createPropertyMerger();
 
+  /**
+   * @return the number of vertices according to the backend without iterating over them,
+   * or null if the backend doesn't provide it
+   */
+  default public Long countVertices(IdGraph<?> graph){
+    return null;
+  }
+
+  /**
+   * @return the number of edges according to the backend without iterating over them,
+   * or null if the backend doesn't provide it
+   */
+  default public Long countEdges(IdGraph<?> graph){
+    return null;
+  }
+
   default public String asString(GraphUri graphUri){
     return graphUri.origUri;
   }
@@ -74,7 +74,6 @@ public class JavaSetPropertyMerger implements PropertyMerger {
       if (valueSet == null) {
         Object existingVal = toE.getProperty(key);
         valueSet = new LinkedHashSet<>();
-        toE.setProperty(key, valueSet);
         valueSet.add(existingVal);
         //toE.setProperty(key, SET_VALUE);
         //setPropertyValueClass(toE, key, existingVal);
@@ -84,6 +83,7 @@ public class JavaSetPropertyMerger implements PropertyMerger {
       } else {
         valueSet.add(fromValue); // hopefully, fromValue is the same type as other elements in the set
       }
+      toE.setProperty(key, valueSet); // so that graphs that log changes (e.g., WalTinkerGraph) see the new values
   }
   
   @Override
@@ -16,10 +16,14 @@ import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.MergeSessionCache.CachedValues;
 
 /**
  * store primitives and JSON arrays
  * 
+ * Within a merge session (see beginMergeSession()), multivalued properties of the target elements
+ * are parsed and serialized once (see MergeSessionCache), rather than for every merge.
+ * 
  * @author deelam
  */
 @RequiredArgsConstructor
@@ -35,14 +39,14 @@ public class JsonPropertyMerger implements PropertyMerger {
       if (key.equals(IdGraph.ID)) // needed, in case this method is called for GraphElements
         continue;
 
-      Object fromValue = fromE.getProperty(key);
+      Object fromValue = getProperty(fromE, key);
       if (fromValue == null) {
         continue;
       }
 
       // fromValue is not null at this point
-      Object toValue = toE.getProperty(key);
-      if (toValue == null) {
+      Object toValue = getProperty(toE, key);
+      if (toValue == null && !(fromValue instanceof CachedValues)) {
 //        if (isMultivalued(fromValue)) {
 //          if(fromValue instanceof Collection){ // created by JavaSetPropertyMerger
 //            toE.setProperty(key, mapper.toJson(fromValue));
@@ -52,7 +56,7 @@ public class JsonPropertyMerger implements PropertyMerger {
 //        } else
           setElementProperty(toE, key, fromValue);
         continue;
-      } else if (!key.endsWith(VALUELIST_SUFFIX) && toValue.equals(fromValue)) {
+      } else if (toValue != null && !key.endsWith(VALUELIST_SUFFIX) && toValue.equals(fromValue)) {
         // nothing to do; values are the same
         continue;
       } else try {
@@ -110,6 +114,11 @@ public class JsonPropertyMerger implements PropertyMerger {
 
   @SuppressWarnings("unchecked")
   public void mergeValues(Object fromValue, Element toE, String key) {
+    if (sessionCache.isActive()) {
+      mergeCachedValues(fromValue, toE, key);
+      return;
+    }
+
     // toValue and fromValue are not null and want to add fromValue to the list
     /* Possible cases:
      * fromValue=val toValue=val     ==> toValue__SET=Set<?>
@@ -225,10 +234,12 @@ public class JsonPropertyMerger implements PropertyMerger {
   @SuppressWarnings("unchecked")
   @Override
   public <T> List<T> getListProperty(Element elem, String key) {
-    final Object value = elem.getProperty(key);
+    final Object value = getProperty(elem, key);
     if(value==null)
       return null;
-    else if (isMultivalued(value)){
+    else if (value instanceof CachedValues){
+      return new ArrayList<>((List<T>) ((CachedValues) value).valueList);
+    } else if (isMultivalued(value)){
       return (List<T>) parseValue((String) value);
     } else {
       List<T> arr = new ArrayList<>();
@@ -239,16 +250,71 @@ public class JsonPropertyMerger implements PropertyMerger {
   
   @Override
   public int getListPropertySize(Element elem, String key){
-    final Object value = elem.getProperty(key);
+    final Object value = getProperty(elem, key);
     if(value==null)
       return 0;
-    else if (isMultivalued(value)){
+    else if (value instanceof CachedValues){
+      return ((CachedValues) value).valueList.size();
+    } else if (isMultivalued(value)){
       return ((List<?>) parseValue((String) value)).size();
     } else {
       return 1;
     }
   }
   
+  ///======================================== merge session
+
+  private final MergeSessionCache sessionCache = new MergeSessionCache(valueList -> mapper.toJson(valueList));
+
+  @Override
+  public void beginMergeSession() {
+    sessionCache.begin();
+  }
+
+  @Override
+  public void endMergeSession(boolean flush) {
+    sessionCache.end(flush);
+  }
+
+  /**
+   * @return CachedValues if the property is cached in the current thread's session
+   */
+  private Object getProperty(Element elem, String key) {
+    return sessionCache.getProperty(elem, key);
+  }
+
+  private void mergeCachedValues(Object fromValue, Element toE, String key) {
+    CachedValues cached = sessionCache.get(toE, key, key.endsWith(VALUELIST_SUFFIX), c -> {
+      // parse existing value only once per session
+      Object value = toE.getProperty(key);
+      Object parsedV = (value instanceof String) ? parseValue((String) value) : value;
+      if (parsedV == null) { // e.g., fromE's cached values are copied to toE
+        return;
+      } else if (isAllowedValue(parsedV)) {
+        c.add(value);
+        if (!key.endsWith(VALUELIST_SUFFIX) && !allowedMultivaluedProps.contains(key)) {
+          log.warn("Property has multiple values which is inefficient: key=" + key + " for node=" + toE.getId()
+              + " existingVal=" + value + " addedValue=" + fromValue);
+        }
+      } else {
+        List<?> valueList = (List<?>) parsedV;
+        for (int i = 0; i < valueList.size(); ++i)
+          c.add(valueList.get(i)); // get() converts lazily parsed values
+      }
+    });
+
+    if (fromValue instanceof CachedValues) { // fromE's values are also cached
+      for (Object fVal : ((CachedValues) fromValue).valueList)
+        cached.add(fVal);
+    } else if (isMultivalued(fromValue)) {
+      List<?> fromValueList = (List<?>) parseValue((String) fromValue);
+      for (int i = 0; i < fromValueList.size(); ++i)
+        cached.add(fromValueList.get(i));
+    } else {
+      cached.add(fromValue);
+    }
+  }
+
   // TODO: 3: set limit on size of Set
   // TODO: 3: add supernode detection and warning
 
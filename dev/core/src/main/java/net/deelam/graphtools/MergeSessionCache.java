@@ -0,0 +1,144 @@
+package net.deelam.graphtools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Per-thread cache of decoded multivalued properties for a PropertyMerger's merge sessions
+ * (see PropertyMerger.beginMergeSession()).
+ * Each (element, key) is decoded once, kept as a list with a HashSet for membership tests,
+ * and encoded and written back to the element once when the outermost session ends.
+ *
+ * Per thread so that the same PropertyMerger can be used by other threads (e.g., to merge GraphRecords).
+ *
+ * @author deelam
+ */
+@RequiredArgsConstructor
+class MergeSessionCache {
+
+  /// encodes the values to be stored as the element's property
+  private final Function<List<Object>, Object> encoder;
+
+  static class CachedValues {
+    Element elem;
+    final List<Object> valueList = new ArrayList<>();
+    /// for membership tests; null for VALUELIST_SUFFIX keys, which allow duplicates
+    final Set<Object> valueSet;
+    boolean changed = false;
+
+    CachedValues(Element elem, boolean allowDuplicates) {
+      this.elem = elem;
+      valueSet = allowDuplicates ? null : new HashSet<>();
+    }
+
+    void add(Object val) {
+      if (valueSet == null || valueSet.add(val)) {
+        valueList.add(val);
+        changed = true;
+      }
+    }
+  }
+
+  private static class Session {
+    int depth = 0;
+    /// vertices and edges are kept separately since their ids may be the same
+    final Map<Element, Map<String, CachedValues>> vertexValues = new HashMap<>();
+    final Map<Element, Map<String, CachedValues>> edgeValues = new HashMap<>();
+
+    Map<String, CachedValues> get(Element elem, boolean create) {
+      Map<Element, Map<String, CachedValues>> elemValues = (elem instanceof Vertex) ? vertexValues : edgeValues;
+      Map<String, CachedValues> keyValues = elemValues.get(elem);
+      if (keyValues == null && create) {
+        keyValues = new HashMap<>();
+        elemValues.put(elem, keyValues);
+      }
+      return keyValues;
+    }
+  }
+
+  private final ThreadLocal<Session> sessionHolder = new ThreadLocal<>();
+
+  boolean isActive() {
+    return sessionHolder.get() != null;
+  }
+
+  void begin() {
+    Session session = sessionHolder.get();
+    if (session == null) {
+      session = new Session();
+      sessionHolder.set(session);
+    }
+    ++session.depth;
+  }
+
+  void end(boolean flush) {
+    Session session = sessionHolder.get();
+    if (session == null)
+      throw new IllegalStateException("No merge session to end");
+    if (!flush) { // discard everything, even for outer sessions
+      session.vertexValues.clear();
+      session.edgeValues.clear();
+    }
+    if (--session.depth > 0)
+      return;
+
+    sessionHolder.remove();
+    writeCachedValues(session.vertexValues);
+    writeCachedValues(session.edgeValues);
+  }
+
+  private void writeCachedValues(Map<Element, Map<String, CachedValues>> elemValues) {
+    for (Map<String, CachedValues> keyValues : elemValues.values())
+      for (Entry<String, CachedValues> e : keyValues.entrySet()) {
+        CachedValues cached = e.getValue();
+        if (cached.changed)
+          cached.elem.setProperty(e.getKey(), encoder.apply(cached.valueList));
+      }
+  }
+
+  /**
+   * @return CachedValues if the property is cached in the current thread's session; otherwise the property value
+   */
+  Object getProperty(Element elem, String key) {
+    Session session = sessionHolder.get();
+    if (session != null) {
+      Map<String, CachedValues> keyValues = session.get(elem, false);
+      if (keyValues != null) {
+        CachedValues cached = keyValues.get(key);
+        if (cached != null)
+          return cached;
+      }
+    }
+    return elem.getProperty(key);
+  }
+
+  /**
+   * Must be called within a session.
+   * @param loader adds the element's existing values if the property is not yet cached
+   */
+  CachedValues get(Element elem, String key, boolean allowDuplicates, Consumer<CachedValues> loader) {
+    Map<String, CachedValues> keyValues = sessionHolder.get().get(elem, true);
+    CachedValues cached = keyValues.get(key);
+    if (cached == null) {
+      cached = new CachedValues(elem, allowDuplicates);
+      loader.accept(cached);
+      cached.changed = false;
+      keyValues.put(key, cached);
+    }
+    cached.elem = elem; // most recent instance is used to write back
+    return cached;
+  }
+
+}
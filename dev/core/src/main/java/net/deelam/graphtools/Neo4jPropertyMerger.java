@@ -4,17 +4,27 @@ import java.lang.reflect.Array;
 import java.util.*;
 import java.util.Map.Entry;
 
-import org.apache.commons.collections.iterators.ArrayIterator;
-
+import com.google.common.primitives.Primitives;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.MergeSessionCache.CachedValues;
 
 /**
  * store primitives or arrays of primitives
+ * 
+ * Multivalued properties of Numbers, Booleans, and Characters are stored as arrays of primitives
+ * (e.g., long[]) so values are not boxed.  Merging a value into an array scans the unboxed values
+ * and appends with a single array copy.
+ * Within a merge session (see beginMergeSession()), each multivalued property is decoded and
+ * encoded once (see MergeSessionCache), rather than for every merge.
+ * Outside a session, each merge must leave the element's property updated, so it rewrites the whole array and
+ * k merges into one property take O(k^2) time; callers that merge repeatedly into the same element
+ * (e.g., DefaultPopulator, ParallelPopulator and GraphUtils' bulk merge) do so within a session.
+ * 
  * @author deelam
  */
 @RequiredArgsConstructor
@@ -30,17 +40,17 @@ public class Neo4jPropertyMerger implements PropertyMerger {
       if (key.equals(IdGraph.ID)) // needed, in case this method is called for GraphElements
         continue;
 
-      Object fromValue = fromE.getProperty(key);
+      Object fromValue = sessionCache.getProperty(fromE, key);
       if (fromValue == null) {
         continue;
       }
 
       // fromValue is not null at this point
-      Object toValue = toE.getProperty(key);
-      if (toValue == null) {
+      Object toValue = sessionCache.getProperty(toE, key);
+      if (toValue == null && !(fromValue instanceof CachedValues)) {
         setElementProperty(toE, key, fromValue);
         continue;
-      } else if (!isMultivalued(fromValue) && toValue.equals(fromValue)) {
+      } else if (toValue != null && !(fromValue instanceof CachedValues) && !isMultivalued(fromValue) && toValue.equals(fromValue)) {
         // nothing to do; values are the same
         continue;
       } else try {
@@ -51,26 +61,75 @@ public class Neo4jPropertyMerger implements PropertyMerger {
     }
   }
   
-  private Object[] tryConvertCollectionToArray(final Collection<?> collection) {
-    Object[] array = null;
+  /**
+   * @return array of primitives (e.g., long[] for Longs) or Strings, based on the class of the first object
+   */
+  private Object tryConvertCollectionToArray(final Collection<?> collection) {
+    Object array = null;
     final Iterator<?> objects = collection.iterator();
     for (int i = 0; objects.hasNext(); i++) {
       Object object = objects.next();
       if(!validPropertyClasses.contains(object.getClass()))
         throw new IllegalArgumentException("Not valid: "+object.getClass()+" in "+collection);
       if (array == null)
-        array = (Object[]) Array.newInstance(object.getClass(), collection.size());
-      //assertEquals(object.getClass(), objArr.getClass().getComponentType());
+        array = Array.newInstance(Primitives.unwrap(object.getClass()), collection.size());
       try {
-        array[i] = object;
-      } catch (ArrayStoreException e) {
-        log.error("{}!={}", array[0].getClass(), object.getClass());
+        Array.set(array, i, object); // unboxes and widens if needed
+      } catch (IllegalArgumentException e) {
+        log.error("{}!={}", array.getClass().getComponentType(), object.getClass());
         throw e;
       }
     }
     return array;
   }
 
+  /**
+   * Compares unboxed values for long[], int[], and double[] arrays.
+   */
+  static boolean arrayContains(Object array, Object val) {
+    if (array instanceof long[] && val instanceof Long) {
+      long v = ((Long) val).longValue();
+      for (long e : (long[]) array)
+        if (e == v)
+          return true;
+      return false;
+    } else if (array instanceof int[] && val instanceof Integer) {
+      int v = ((Integer) val).intValue();
+      for (int e : (int[]) array)
+        if (e == v)
+          return true;
+      return false;
+    } else if (array instanceof double[] && val instanceof Double) {
+      long bits = Double.doubleToLongBits(((Double) val).doubleValue()); // same as Double.equals()
+      for (double e : (double[]) array)
+        if (Double.doubleToLongBits(e) == bits)
+          return true;
+      return false;
+    } else if (array instanceof Object[]) {
+      for (Object e : (Object[]) array)
+        if (val.equals(e))
+          return true;
+      return false;
+    }
+    int arrlength = Array.getLength(array);
+    for (int i = 0; i < arrlength; i++)
+      if (val.equals(Array.get(array, i)))
+        return true;
+    return false;
+  }
+
+  /**
+   * @return new array with the same component type as array, with values appended
+   */
+  static Object appendToArray(Object array, Collection<?> values) {
+    int arrlength = Array.getLength(array);
+    Object newArray = Array.newInstance(array.getClass().getComponentType(), arrlength + values.size());
+    System.arraycopy(array, 0, newArray, 0, arrlength);
+    for (Object val : values)
+      Array.set(newArray, arrlength++, val);
+    return newArray;
+  }
+
   @SuppressWarnings("unchecked")
   private <T> Collection<T> tryConvertArrayToCollection(final Object value) {
     if(value instanceof Collection)
@@ -116,7 +175,7 @@ public class Neo4jPropertyMerger implements PropertyMerger {
     }
     Class<?> valueClass=value.getClass();
     if (value.getClass().isArray()) {
-      valueClass=value.getClass().getComponentType();
+      valueClass=Primitives.wrap(value.getClass().getComponentType());
       if (Array.getLength(value) == 0) {
 //        elem.setProperty(key, value);
         return;
@@ -140,65 +199,103 @@ public class Neo4jPropertyMerger implements PropertyMerger {
   public void mergeValues(Object fromValue, Element toE, String key) {
     // toValue and fromValue are not null and want to add fromValue to the list
     /* Possible cases:
-     * fromValue=val toValue=val     ==> toValue__SET=Set<?>
-     * fromValue=Set<?> toValue=val  ==> toValue__SET=Set<?>
-     * fromValue=val toValue=Set<?>  ==> toValue__SET=Set<?>
-     * fromValue=Set<?> toValue=Set<?>  ==> toValue__SET=Set<?>
+     * fromValue=val toValue=val     ==> toValue=array
+     * fromValue=Set<?> toValue=val  ==> toValue=array
+     * fromValue=val toValue=array  ==> toValue=array
+     * fromValue=Set<?> toValue=array  ==> toValue=array
      */
+    if (sessionCache.isActive()) {
+      mergeCachedValues(fromValue, toE, key);
+      return;
+    }
 
-    // check special SET_SUFFIX property and create a Set if needed
     Object value = toE.getProperty(key);
-    Collection<Object> valueList=null;
-    if (isMultivalued(value))
-      valueList = tryConvertArrayToCollection(value);
-
-    if (valueList==null) {
-      valueList = new ArrayList<>();
+    Object valueArr;
+    if (value instanceof Collection) // e.g., Neo4j graphs return arrays as Lists
+      valueArr = tryConvertCollectionToArray((Collection<?>) value);
+    else if (value.getClass().isArray())
+      valueArr = value;
+    else {
       if(!validPropertyClasses.contains(value.getClass()))
         throw new IllegalArgumentException("Not valid: "+value.getClass());
-      valueList.add(value);
+      valueArr = tryConvertCollectionToArray(Collections.singletonList(value));
       if(!key.endsWith(VALUELIST_SUFFIX) && !allowedMultivaluedProps.contains(key)){
         log.warn("Property has multiple values which is inefficient: key="+key+" for node="+toE.getId()
             + " existingVal="+value+" addedValue="+fromValue/*, new Throwable("Call stack")*/);
       }
     }
+    if (valueArr == null || Array.getLength(valueArr) == 0) {
+      setElementProperty(toE, key, fromValue);
+      return;
+    }
 
-    /// check if fromValue is already in toValueList
-    boolean toValueChanged = false;
-    if (isMultivalued(fromValue)) {
-      Iterator<?> itr;
-      if (fromValue instanceof Collection)
-        itr=((Collection<?>)fromValue).iterator();
-      else if(fromValue.getClass().isArray())
-        itr=new ArrayIterator(fromValue); // Collection<?> fromValueList = tryConvertArrayToCollection(fromValue);
-      else
-        throw new IllegalArgumentException("How to iterate on "+fromValue.getClass());
-      while(itr.hasNext()) {
-        Object fVal=itr.next();
-        if(key.endsWith(VALUELIST_SUFFIX)){
-          valueList.add(fVal); // hopefully, fromValue is the same type as other elements in the set
-          toValueChanged = true;
-        } else { // treat as a Set 
-          if (!valueList.contains(fVal)) { // not efficient since searching in a list
-            valueList.add(fVal); // hopefully, fromValue is the same type as other elements in the set
-            toValueChanged = true;
-          }
+    /// check if fromValue is already in toValue's array
+    Collection<?> fromValues = isMultivalued(fromValue) ? tryConvertArrayToCollection(fromValue)
+        : Collections.singletonList(fromValue);
+    List<Object> addedValues = new ArrayList<>(fromValues.size());
+    Set<Object> valueSet = null; // only created if multiple values are merged
+    for (Object fVal : fromValues) {
+      if (!key.endsWith(VALUELIST_SUFFIX)) { // treat as a Set
+        if (fromValues.size() == 1) {
+          if (arrayContains(valueArr, fVal))
+            continue;
+        } else {
+          if (valueSet == null)
+            valueSet = new HashSet<>(tryConvertArrayToCollection(valueArr));
+          if (!valueSet.add(fVal))
+            continue;
         }
       }
-    } else { // fromValue is a single value
-      if(key.endsWith(VALUELIST_SUFFIX)){
-        valueList.add(fromValue); // hopefully, fromValue is the same type as other elements in the set
-        toValueChanged = true;
-      } else { // treat as a Set 
-        if (!valueList.contains(fromValue)) {
-          valueList.add(fromValue); // hopefully, fromValue is the same type as other elements in the set
-          toValueChanged = true;
+      addedValues.add(fVal); // hopefully, fromValue is the same type as other elements in the set
+    }
+
+    if (!addedValues.isEmpty())
+      toE.setProperty(key, appendToArray(valueArr, addedValues));
+  }
+
+  ///======================================== merge session
+
+  private final MergeSessionCache sessionCache = new MergeSessionCache(this::tryConvertCollectionToArray);
+
+  @Override
+  public void beginMergeSession() {
+    sessionCache.begin();
+  }
+
+  @Override
+  public void endMergeSession(boolean flush) {
+    sessionCache.end(flush);
+  }
+
+  private void mergeCachedValues(Object fromValue, Element toE, String key) {
+    CachedValues cached = sessionCache.get(toE, key, key.endsWith(VALUELIST_SUFFIX), c -> {
+      // convert existing value only once per session
+      Object value = toE.getProperty(key);
+      if (value == null) { // e.g., fromE's cached values are copied to toE
+        return;
+      } else if (isMultivalued(value)) {
+        for (Object val : tryConvertArrayToCollection(value))
+          c.add(val);
+      } else {
+        if(!validPropertyClasses.contains(value.getClass()))
+          throw new IllegalArgumentException("Not valid: "+value.getClass());
+        c.add(value);
+        if(!key.endsWith(VALUELIST_SUFFIX) && !allowedMultivaluedProps.contains(key)){
+          log.warn("Property has multiple values which is inefficient: key="+key+" for node="+toE.getId()
+              + " existingVal="+value+" addedValue="+fromValue);
         }
       }
-    }
+    });
 
-    if (toValueChanged)
-      toE.setProperty(key, tryConvertCollectionToArray(valueList));
+    if (fromValue instanceof CachedValues) { // fromE's values are also cached
+      for (Object fVal : ((CachedValues) fromValue).valueList)
+        cached.add(fVal);
+    } else if (isMultivalued(fromValue)) {
+      for (Object fVal : tryConvertArrayToCollection(fromValue))
+        cached.add(fVal);
+    } else {
+      cached.add(fromValue);
+    }
   }
 
   @Override
@@ -233,13 +330,17 @@ public class Neo4jPropertyMerger implements PropertyMerger {
   @SuppressWarnings("unchecked")
   @Override
   public <T> List<T> getListProperty(Element elem, String key) {
-    final Object value = elem.getProperty(key);
+    final Object value = sessionCache.getProperty(elem, key);
     if(value==null)
       return null;
+    else if (value instanceof CachedValues)
+      return new ArrayList<>((List<T>) ((CachedValues) value).valueList);
     else if (value instanceof List)
       return (List<T>) value;
-    else if (value.getClass().isArray()){
+    else if (value instanceof Object[]){
       return (List<T>) Arrays.asList((Object[])value);
+    } else if (value.getClass().isArray()){ // array of primitives
+      return (List<T>) tryConvertArrayToCollection(value);
     } else {
       List<T> arr = new ArrayList<>();
       arr.add((T) value);
@@ -249,13 +350,15 @@ public class Neo4jPropertyMerger implements PropertyMerger {
   
   @Override
   public int getListPropertySize(Element elem, String key){
-    final Object value = elem.getProperty(key);
+    final Object value = sessionCache.getProperty(elem, key);
     if(value==null)
       return 0;
+    else if (value instanceof CachedValues)
+      return ((CachedValues) value).valueList.size();
     else if (value instanceof List)
       return ((List<?>) value).size();
     else if (value.getClass().isArray()){
-      return ((Object[])value).length;
+      return Array.getLength(value);
     } else {
       return 1;
     }    
@@ -20,5 +20,17 @@ public interface PropertyMerger {
   boolean addProperty(Element elem, String key, Object value);
 
   boolean isMultivalued(Object value);
-  
+
+  /**
+   * Starts a merge session for the current thread, during which merged values may be cached
+   * and written to elements when the outermost session ends (e.g., before a transaction commit).
+   * Sessions can be nested.
+   */
+  default void beginMergeSession() {}
+
+  /**
+   * @param flush if false (e.g., if the transaction will be rolled back), cached values are discarded
+   */
+  default void endMergeSession(boolean flush) {}
+
 }
@@ -0,0 +1,263 @@
+package net.deelam.graphtools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.io.CountingInputStream;
+import com.tinkerpop.blueprints.Edge;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Edge map for GraphRecords that may be supernodes (e.g., a phone number shared by many records).
+ * Edges are kept in the given in-memory map until it holds spillThreshold edges, at which point they are
+ * appended to an on-disk segment file (using GraphRecordBinaryIO) and removed from memory.
+ * Only the ids and file offsets of spilled edges are kept in memory.
+ * Iterating over the map streams the spilled edges back from disk, followed by the in-memory edges,
+ * so populators and serializers never hold all the edges at once.
+ *
+ * As with a HashMap, each id maps to one edge:
+ * get() reads a spilled edge back into memory, so changes to it are kept (until it is spilled again), and
+ * put() replaces a spilled edge with the same id.
+ * Edges returned by iteration over spilled entries are copies, so changes to them are not saved.
+ * Spilled edges are read back in chunks of up to spillThreshold edges, and the segment file is closed after
+ * each chunk, so iterations that stop early don't hold a file descriptor.
+ *
+ * The segment file is deleted by clear(), which the owning GraphRecord calls when it is discarded
+ * (see GraphRecord.discard()).
+ *
+ * Not thread-safe.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class SpillableEdgeMap extends AbstractMap<String, Edge> implements Serializable {
+  private static final long serialVersionUID = 201610180104L;
+
+  private final Map<String, Edge> inMemory;
+  private final int spillThreshold;
+  private final File spillDir;
+  private final Supplier<GraphRecord.Factory> grFactory;
+
+  private transient Segment segment;
+  /// file offset of each spilled edge that is not in memory
+  private transient Map<String, Long> spilledOffsets;
+
+  /**
+   * @param inMemory initially empty map
+   * @param spillDir where to create segment files, or null for the system temp directory
+   * @param grFactory used to create edges read back from disk
+   */
+  public SpillableEdgeMap(Map<String, Edge> inMemory, int spillThreshold, File spillDir,
+      Supplier<GraphRecord.Factory> grFactory) {
+    this.inMemory = inMemory;
+    this.spillThreshold = spillThreshold;
+    this.spillDir = spillDir;
+    this.grFactory = grFactory;
+  }
+
+  public boolean hasSpilled() {
+    return spilledOffsets != null && !spilledOffsets.isEmpty();
+  }
+
+  @Override
+  public int size() {
+    return inMemory.size() + ((spilledOffsets == null) ? 0 : spilledOffsets.size());
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return inMemory.containsKey(key) || (spilledOffsets != null && spilledOffsets.containsKey(key));
+  }
+
+  @Override
+  public Edge get(Object key) {
+    Edge e = inMemory.get(key);
+    if (e == null && spilledOffsets != null) {
+      Long offset = spilledOffsets.remove(key);
+      if (offset != null) { // move back into memory
+        e = segment.read(offset);
+        inMemory.put((String) key, e);
+      }
+    }
+    return e;
+  }
+
+  @Override
+  public Edge put(String key, Edge value) {
+    Edge old = inMemory.put(key, value);
+    if (spilledOffsets != null)
+      spilledOffsets.remove(key); // replaced
+    if (inMemory.size() >= spillThreshold)
+      spill();
+    return old;
+  }
+
+  @Override
+  public Edge remove(Object key) {
+    Edge old = get(key);
+    inMemory.remove(key);
+    return old;
+  }
+
+  /**
+   * Also deletes the segment file.
+   */
+  @Override
+  public void clear() {
+    inMemory.clear();
+    if (segment != null) {
+      segment.delete();
+      segment = null;
+      spilledOffsets = null;
+    }
+  }
+
+  private void spill() {
+    try {
+      if (segment == null) {
+        segment = new Segment(File.createTempFile("edges-", ".seg", spillDir));
+        spilledOffsets = new HashMap<>();
+      }
+      log.info("Spilling {} edges to {}; {} edges spilled so far", inMemory.size(), segment.file,
+          spilledOffsets.size());
+      segment.append(inMemory.values(), spilledOffsets);
+      inMemory.clear();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public Set<Entry<String, Edge>> entrySet() {
+    return new AbstractSet<Entry<String, Edge>>() {
+      @Override
+      public Iterator<Entry<String, Edge>> iterator() {
+        if (!hasSpilled())
+          return inMemory.entrySet().iterator();
+        return Iterators.concat(Iterators.unmodifiableIterator(segment.iterator()),
+            inMemory.entrySet().iterator());
+      }
+
+      @Override
+      public int size() {
+        return SpillableEdgeMap.this.size();
+      }
+    };
+  }
+
+  /**
+   * Spilled edges are included when serialized.
+   */
+  private Object writeReplace() {
+    return new HashMap<>(this);
+  }
+
+  /**
+   * Append-only file of edges.  The file is only open while appending or reading.
+   */
+  private class Segment {
+    final File file;
+    long length = 0;
+
+    Segment(File file) {
+      this.file = file;
+      file.deleteOnExit();
+    }
+
+    /**
+     * @param offsets where the file offset of each edge is put
+     */
+    void append(Collection<Edge> edges, Map<String, Long> offsets) throws IOException {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16))) {
+        for (Edge e : edges) {
+          offsets.put(((GraphRecordEdge) e).getStringId(), length + out.size());
+          GraphRecordBinaryIO.writeEdge((GraphRecordEdge) e, out);
+        }
+        length += out.size();
+      }
+    }
+
+    Edge read(long offset) {
+      try (FileInputStream fileIn = new FileInputStream(file)) {
+        fileIn.getChannel().position(offset);
+        return GraphRecordBinaryIO.readEdge(new DataInputStream(new BufferedInputStream(fileIn)), grFactory.get());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    Iterator<Entry<String, Edge>> iterator() {
+      return new SegmentIterator(this);
+    }
+
+    void delete() {
+      if (!file.delete())
+        log.warn("Could not delete {}", file);
+    }
+  }
+
+  /**
+   * Reads the segment sequentially in chunks of up to spillThreshold edges, skipping edges that have been
+   * replaced or read back into memory. The file is only open while a chunk is read, so iterations that
+   * stop early don't leave it open.
+   */
+  private class SegmentIterator extends AbstractIterator<Entry<String, Edge>> {
+    final Segment seg;
+    final Deque<Entry<String, Edge>> chunk = new ArrayDeque<>();
+    long position = 0;
+
+    SegmentIterator(Segment seg) {
+      this.seg = seg;
+    }
+
+    @Override
+    protected Entry<String, Edge> computeNext() {
+      while (chunk.isEmpty() && position < seg.length)
+        readChunk();
+      return chunk.isEmpty() ? endOfData() : chunk.poll();
+    }
+
+    private void readChunk() {
+      try (FileInputStream fileIn = new FileInputStream(seg.file)) {
+        fileIn.getChannel().position(position);
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(fileIn, 1 << 16));
+        DataInputStream in = new DataInputStream(counter);
+        for (int i = 0; i < spillThreshold && position + counter.getCount() < seg.length; ++i) {
+          long offset = position + counter.getCount();
+          GraphRecordEdge e = GraphRecordBinaryIO.readEdge(in, grFactory.get());
+          if (spilledOffsets != null && Long.valueOf(offset).equals(spilledOffsets.get(e.getStringId())))
+            chunk.add(new SimpleImmutableEntry<>(e.getStringId(), e));
+        }
+        position += counter.getCount();
+      } catch (EOFException e) {
+        throw new IllegalStateException("Segment ended early: " + seg.file, e);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,310 @@
+package net.deelam.graphtools;
+
+import static net.deelam.graphtools.StreamingGraphWriter.EDGE_LINE_PREFIX;
+import static net.deelam.graphtools.StreamingGraphWriter.VERTEX_LINE_PREFIX;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.luben.zstd.ZstdInputStream;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.io.graphson.ElementFactory;
+import com.tinkerpop.blueprints.util.io.graphson.GraphElementFactory;
+import com.tinkerpop.blueprints.util.io.graphson.GraphSONMode;
+import com.tinkerpop.blueprints.util.io.graphson.GraphSONTokens;
+import com.tinkerpop.blueprints.util.io.graphson.GraphSONUtility;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Loads files written by StreamingGraphWriter, reading part-files in parallel: first the vertices of all parts,
+ * then their edges, so edges always find their vertices. Compression is detected from each file's header.
+ *
+ * Decompression and parsing run in parallel on pool threads; graph writes are done by the calling thread
+ * unless concurrentWrites is set for graphs that support concurrent writers (e.g., Neo4j).
+ * A metadata node already in the graph is kept.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class StreamingGraphReader {
+
+  @Setter
+  private int threads = Runtime.getRuntime().availableProcessors();
+  @Setter
+  private boolean concurrentWrites = false;
+  @Setter
+  private int batchSize = 1000; /// elements per transaction
+  @Setter
+  private GraphSONMode mode = GraphSONMode.EXTENDED;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  /**
+   * @return path if it is a file; otherwise, the part-files in directory path
+   */
+  public static List<File> getPartFiles(String path) throws IOException {
+    File file = new File(path);
+    if (!file.isDirectory())
+      return Arrays.asList(file);
+    File[] parts = file.listFiles((dir, name) -> name.startsWith(StreamingGraphWriter.PART_PREFIX));
+    if (parts == null || parts.length == 0)
+      throw new IOException("No part-files in " + path);
+    Arrays.sort(parts);
+    return Arrays.asList(parts);
+  }
+
+  public void read(Graph graph, String path) throws IOException {
+    List<File> files = getPartFiles(path);
+    long vertexCount = readParts(graph, files, true);
+    long edgeCount = readParts(graph, files, false);
+
+    ElementCounts.invalidate(graph); // any counts copied from the source graph are stale
+    if (graph instanceof TransactionalGraph)
+      ((TransactionalGraph) graph).commit();
+    log.info("Loaded {} vertices and {} edges from {} into graph {}", vertexCount, edgeCount, path, graph);
+  }
+
+  private long readParts(Graph graph, List<File> files, boolean vertices) throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, files.size())));
+    try {
+      if (concurrentWrites)
+        return writeConcurrently(graph, files, vertices, pool);
+      else
+        return writeOnCallingThread(graph, files, vertices, pool);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading " + files);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /// each pool thread parses a part-file and writes its elements in its own transactions
+  private long writeConcurrently(Graph graph, List<File> files, boolean vertices, ExecutorService pool)
+      throws IOException, InterruptedException {
+    List<Future<Long>> futures = new ArrayList<>();
+    for (File file : files)
+      futures.add(pool.submit(() -> {
+        ElementWriter writer = new ElementWriter(graph, vertices);
+        try {
+          parsePart(file, vertices, writer::write);
+          writer.commit();
+        } catch (IOException | RuntimeException e) {
+          writer.rollback();
+          throw e;
+        }
+        log.debug("Read {} {} from {}", writer.count, vertices ? "vertices" : "edges", file);
+        return writer.count;
+      }));
+    try {
+      long count = 0;
+      for (Future<Long> f : futures)
+        count += f.get();
+      return count;
+    } catch (ExecutionException e) {
+      throw new IOException("Could not read " + files, e.getCause());
+    }
+  }
+
+  /// pool threads parse the part-files; the calling thread writes the elements, as required by graphs
+  /// whose transactions are bound to a thread (e.g., OrientDB)
+  private long writeOnCallingThread(Graph graph, List<File> files, boolean vertices, ExecutorService pool)
+      throws IOException, InterruptedException {
+    BlockingQueue<ParsedBatch> queue = new ArrayBlockingQueue<>(4 * threads);
+    for (File file : files)
+      pool.execute(new PartParser(file, vertices, queue));
+
+    ElementWriter writer = new ElementWriter(graph, vertices);
+    try {
+      for (int remaining = files.size(); remaining > 0;) {
+        ParsedBatch batch = queue.take();
+        if (batch.failure != null)
+          throw batch.failure;
+        for (JsonNode json : batch.lines)
+          writer.write(json);
+        if (batch.last)
+          --remaining;
+      }
+      writer.commit();
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      writer.rollback();
+      throw e;
+    }
+    return writer.count;
+  }
+
+  private interface JsonHandler {
+    void handle(JsonNode json) throws IOException;
+  }
+
+  /// parses the vertex lines, which precede the edge lines, or the edge lines
+  private void parsePart(File file, boolean vertices, JsonHandler handler) throws IOException {
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(open(file), StandardCharsets.UTF_8))) {
+      boolean inEdges = false;
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        if (!inEdges)
+          inEdges = isEdge(line);
+        if (vertices == inEdges) {
+          if (vertices)
+            break;
+          continue;
+        }
+        handler.handle(mapper.readTree(line));
+      }
+    }
+  }
+
+  private static final int PARSED_BATCH_SIZE = 256;
+
+  /// lines parsed by a PartParser
+  private static class ParsedBatch {
+    final List<JsonNode> lines = new ArrayList<>(PARSED_BATCH_SIZE);
+    boolean last = false; /// no more batches for the part-file
+    IOException failure;
+  }
+
+  /**
+   * Parses a part-file on a pool thread and passes the parsed lines to the calling thread in batches.
+   */
+  @RequiredArgsConstructor
+  private class PartParser implements Runnable {
+    final File file;
+    final boolean vertices;
+    final BlockingQueue<ParsedBatch> queue;
+    ParsedBatch batch = new ParsedBatch();
+
+    @Override
+    public void run() {
+      try {
+        parsePart(file, vertices, json -> {
+          batch.lines.add(json);
+          if (batch.lines.size() == PARSED_BATCH_SIZE) {
+            put(batch);
+            batch = new ParsedBatch();
+          }
+        });
+      } catch (InterruptedIOException e) {
+        return; // calling thread has stopped
+      } catch (IOException | RuntimeException e) {
+        batch.failure = new IOException("Could not read " + file, e);
+      }
+      batch.last = true;
+      try {
+        put(batch);
+      } catch (InterruptedIOException e) {
+        // calling thread has stopped
+      }
+    }
+
+    private void put(ParsedBatch batch) throws InterruptedIOException {
+      try {
+        queue.put(batch);
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while reading " + file);
+      }
+    }
+  }
+
+  /**
+   * Writes elements on the current thread, committing every batchSize elements.
+   */
+  private class ElementWriter {
+    final Graph graph;
+    final boolean vertices;
+    final ElementFactory<Vertex, Edge> factory;
+    final TransactionalGraph txGraph;
+    final int tx;
+    long count = 0;
+
+    ElementWriter(Graph graph, boolean vertices) {
+      this.graph = graph;
+      this.vertices = vertices;
+      factory = new GraphElementFactory(graph);
+      txGraph = (graph instanceof TransactionalGraph) ? (TransactionalGraph) graph : null;
+      tx = (txGraph == null) ? -1 : GraphTransaction.begin(txGraph, batchSize);
+    }
+
+    void write(JsonNode json) throws IOException {
+      if (vertices)
+        addVertex(graph, factory, json);
+      else
+        addEdge(graph, factory, json);
+      if (txGraph != null)
+        GraphTransaction.commitIfFull(tx);
+      ++count;
+    }
+
+    void commit() {
+      if (txGraph != null)
+        GraphTransaction.commit(tx);
+    }
+
+    void rollback() {
+      if (txGraph != null)
+        GraphTransaction.rollback(tx);
+    }
+  }
+
+  private boolean isEdge(String line) throws IOException {
+    if (line.startsWith(EDGE_LINE_PREFIX))
+      return true;
+    if (line.startsWith(VERTEX_LINE_PREFIX))
+      return false;
+    return GraphSONTokens.EDGE.equals(mapper.readTree(line).path(GraphSONTokens._TYPE).asText());
+  }
+
+  private void addVertex(Graph graph, ElementFactory<Vertex, Edge> factory, JsonNode json) throws IOException {
+    if (GraphUtils.METADATA_VERTEXID.equals(json.path(GraphSONTokens._ID).asText())
+        && graph.getVertex(GraphUtils.METADATA_VERTEXID) != null)
+      return;
+    GraphSONUtility.vertexFromJson(json, factory, mode, null);
+  }
+
+  private void addEdge(Graph graph, ElementFactory<Vertex, Edge> factory, JsonNode json) throws IOException {
+    Vertex out = graph.getVertex(json.path(GraphSONTokens._OUT_V).asText());
+    Vertex in = graph.getVertex(json.path(GraphSONTokens._IN_V).asText());
+    if (out == null || in == null)
+      throw new IllegalStateException("Missing vertex for edge: " + json);
+    GraphSONUtility.edgeFromJson(json, out, in, factory, mode, null);
+  }
+
+  static InputStream open(File file) throws IOException {
+    InputStream is = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    is.mark(4);
+    byte[] magic = new byte[4];
+    int len = is.read(magic);
+    is.reset();
+    if (len >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b)
+      return new GZIPInputStream(is, 1 << 16);
+    if (len == 4 && (magic[0] & 0xff) == 0x28 && (magic[1] & 0xff) == 0xb5 && (magic[2] & 0xff) == 0x2f
+        && (magic[3] & 0xff) == 0xfd)
+      return new ZstdInputStream(is);
+    return is;
+  }
+
+}
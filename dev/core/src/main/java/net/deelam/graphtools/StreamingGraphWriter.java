@@ -0,0 +1,218 @@
+package net.deelam.graphtools;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.io.graphson.GraphSONMode;
+import com.tinkerpop.blueprints.util.io.graphson.GraphSONTokens;
+import com.tinkerpop.blueprints.util.io.graphson.GraphSONUtility;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams a graph as JSON lines, one GraphSON element per line (vertices, then edges), with bounded memory.
+ * Output is optionally compressed and partitioned into part-files that are compressed and written in parallel.
+ * Read them back using StreamingGraphReader.
+ *
+ * Elements are serialized by the calling thread (so backends with thread-bound transactions work) and handed
+ * to one writer thread per part through a bounded queue. Vertices are assigned to parts by hashing their id;
+ * edges go to the part of their out-vertex. Each part has all its vertices before its edges.
+ * As with GraphSONWriter, array property values are read back as lists.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class StreamingGraphWriter {
+
+  public enum Compression {
+    NONE(""), GZIP(".gz"), ZSTD(".zst"); // ZSTD requires zstd-jni on the classpath
+
+    final String extension;
+
+    Compression(String extension) {
+      this.extension = extension;
+    }
+  }
+
+  public static final String PART_PREFIX = "part-";
+
+  /// lets the reader find the first edge line without parsing
+  static final String VERTEX_LINE_PREFIX = "{\"" + GraphSONTokens._TYPE + "\":\"" + GraphSONTokens.VERTEX + "\"";
+  static final String EDGE_LINE_PREFIX = "{\"" + GraphSONTokens._TYPE + "\":\"" + GraphSONTokens.EDGE + "\"";
+
+  @Setter
+  private Compression compression = Compression.GZIP;
+  @Setter
+  private int zstdLevel = 3;
+  @Setter
+  private int parts = 1;
+  @Setter
+  private int queueCapacity = 10000; /// lines buffered per part
+  @Setter
+  private GraphSONMode mode = GraphSONMode.EXTENDED;
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  /**
+   * @param path the output file, or the directory of part-files if parts > 1
+   * @return the files written
+   */
+  public List<File> write(Graph graph, String path) throws IOException {
+    List<File> files = new ArrayList<>();
+    if (parts == 1) {
+      files.add(new File(path));
+    } else {
+      File dir = new File(path);
+      FileUtils.forceMkdir(dir);
+      for (int i = 0; i < parts; ++i)
+        files.add(new File(dir, String.format("%s%05d.jsonl%s", PART_PREFIX, i, compression.extension)));
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(parts);
+    List<PartWriter> writers = new ArrayList<>();
+    List<Future<Long>> futures = new ArrayList<>();
+    for (File file : files) {
+      PartWriter writer = new PartWriter(file);
+      writers.add(writer);
+      futures.add(pool.submit(writer));
+    }
+
+    long vertexCount = 0;
+    long edgeCount = 0;
+    try {
+      for (Vertex v : graph.getVertices()) {
+        writers.get(partOf(v.getId())).put(toLine(v));
+        ++vertexCount;
+      }
+      for (Edge e : graph.getEdges()) {
+        writers.get(partOf(e.getVertex(Direction.OUT).getId())).put(toLine(e));
+        ++edgeCount;
+      }
+    } finally {
+      for (PartWriter writer : writers)
+        writer.finish();
+      pool.shutdown();
+    }
+
+    for (Future<Long> f : futures) {
+      try {
+        f.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while writing " + path);
+      } catch (ExecutionException e) {
+        throw new IOException("Could not write " + path, e.getCause());
+      }
+    }
+    log.info("Exported {} vertices and {} edges of graph {} to {} part(s) at {}", vertexCount, edgeCount,
+        graph, parts, path);
+    return files;
+  }
+
+  private int partOf(Object vertexId) {
+    return Math.floorMod(vertexId.toString().hashCode(), parts);
+  }
+
+  private String toLine(Element elem) throws IOException {
+    ObjectNode json = GraphSONUtility.objectNodeFromElement(elem, null, mode);
+    ObjectNode line = mapper.createObjectNode();
+    line.put(GraphSONTokens._TYPE, json.remove(GraphSONTokens._TYPE)); // first, for the reader
+    line.putAll(json);
+    return mapper.writeValueAsString(line);
+  }
+
+  static OutputStream compress(OutputStream os, Compression compression, int zstdLevel) throws IOException {
+    switch (compression) {
+      case GZIP:
+        return new GZIPOutputStream(os, 1 << 16);
+      case ZSTD:
+        return new ZstdOutputStream(os, zstdLevel);
+      default:
+        return os;
+    }
+  }
+
+  private static final String END = new String("END"); /// compared by reference
+
+  private class PartWriter implements Callable<Long> {
+    private final File file;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(queueCapacity);
+    private volatile Exception failure;
+
+    PartWriter(File file) {
+      this.file = file;
+    }
+
+    void put(String line) throws IOException {
+      if (failure != null)
+        throw new IOException("Could not write " + file, failure);
+      try {
+        queue.put(line);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while writing " + file);
+      }
+    }
+
+    void finish() {
+      try {
+        queue.put(END);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public Long call() throws Exception {
+      long count = 0;
+      boolean ended = false;
+      try (Writer out = new BufferedWriter(new OutputStreamWriter(
+          compress(new BufferedOutputStream(new FileOutputStream(file), 1 << 16), compression, zstdLevel),
+          StandardCharsets.UTF_8), 1 << 16)) {
+        for (String line = queue.take(); line != END; line = queue.take()) {
+          out.write(line);
+          out.write('\n');
+          ++count;
+        }
+        ended = true;
+      } catch (Exception e) {
+        failure = e;
+        while (!ended) // so the producer doesn't block
+          ended = (queue.take() == END);
+        throw e;
+      }
+      log.debug("Wrote {} lines to {}", count, file);
+      return count;
+    }
+  }
+
+}
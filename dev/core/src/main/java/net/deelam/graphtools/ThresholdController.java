@@ -0,0 +1,30 @@
+package net.deelam.graphtools;
+
+import java.util.Map;
+
+/**
+ * Decides how many records or operations to accumulate before each commit or populate,
+ * e.g., for GraphTransaction.commitIfFull() and the importers' bufferThreshold.
+ *
+ * Callers report each completed batch so that implementations can adjust the threshold.
+ * Implementations are not expected to be thread-safe.
+ *
+ * @author deelam
+ */
+public interface ThresholdController {
+
+  int getThreshold();
+
+  /**
+   * @param numRecords number of records or operations in the batch
+   * @param batchNanos time since the previous batch completed, including commitNanos
+   * @param commitNanos time spent populating and committing the batch
+   */
+  void batchCompleted(int numRecords, long batchNanos, long commitNanos);
+
+  /**
+   * Adds metrics (e.g., current threshold) to the given map; values are updated as batches complete.
+   */
+  void putMetrics(Map<String, Number> metrics);
+
+}
@@ -0,0 +1,552 @@
+package net.deelam.graphtools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Parameter;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.blueprints.util.wrappers.event.EventGraph;
+import com.tinkerpop.blueprints.util.wrappers.event.listener.GraphChangedListener;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * On-disk TinkerGraph that appends element mutations to a write-ahead log on commit() instead of rewriting
+ * the whole graph on shutdown, so small updates to a large graph cost I/O proportional to the changes.
+ * When the log grows beyond checkpointBytes, the graph is serialized to a new snapshot and the log is restarted.
+ * Opening loads the snapshot and replays the log up to its last committed batch, ignoring the rest (e.g., after
+ * a crash).
+ *
+ * The log is a sequence of batches: [length][committed flag, next id, records][CRC32]. Uncommitted records are
+ * appended as a batch whenever they reach maxPendingBytes, and commit() appends the rest as a batch flagged as
+ * committed (possibly with no records). Replay stops at the last committed batch, so changes made after the last
+ * commit() are not replayed even if some of them were appended. Property values are encoded using
+ * GraphRecordBinaryIO. Collection and array values are encoded when the batch is written rather than when they
+ * are set, so changes made to them in place before then are included; a value changed in place after that must be
+ * set again (as JavaSetPropertyMerger does) to be logged. The snapshot and log each record a generation number so
+ * a log that was already checkpointed into the snapshot is not replayed again.
+ *
+ * Like TinkerGraph, rollback() cannot undo changes; they are kept and logged by the next commit().
+ * Not thread-safe.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class WalTinkerGraph extends EventGraph<TinkerGraph> implements KeyIndexableGraph, TransactionalGraph {
+
+  public static final String SNAPSHOT_FILE = "snapshot.dat";
+  public static final String LOG_FILE = "wal.log";
+
+  private static final int LOG_MAGIC = 0x57414c32; // "WAL2"
+  private static final int LOG_HEADER_LENGTH = 12;
+
+  private static final byte VERTEX_ADDED = 1;
+  private static final byte VERTEX_REMOVED = 2;
+  private static final byte VERTEX_PROPERTY_SET = 3;
+  private static final byte VERTEX_PROPERTY_REMOVED = 4;
+  private static final byte EDGE_ADDED = 5;
+  private static final byte EDGE_REMOVED = 6;
+  private static final byte EDGE_PROPERTY_SET = 7;
+  private static final byte EDGE_PROPERTY_REMOVED = 8;
+  private static final byte KEY_INDEX_CREATED = 9;
+  private static final byte KEY_INDEX_DROPPED = 10;
+
+  private final File dir;
+
+  /// log size that triggers a checkpoint on commit()
+  @Setter
+  private long checkpointBytes;
+  /// fsync the log on each commit()
+  @Setter
+  private boolean syncOnCommit = true;
+  /// bytes of uncommitted records written to the log without waiting for commit()
+  @Setter
+  private int maxPendingBytes = 1 << 22;
+
+  @Getter
+  private long generation;
+  private long nextId;
+  private FileChannel logChannel;
+
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  private final DataOutputStream pendingOut = new DataOutputStream(pending);
+  private int pendingRecords = 0;
+  /// whether uncommitted records have been appended to the log since the last committed batch
+  private boolean appendedUncommitted = false;
+  /// properties with collection or array values to encode when the batch is written
+  private final Set<PropertyRef> dirtyProperties = new LinkedHashSet<>();
+
+  @Value
+  private static class PropertyRef {
+    boolean vertex;
+    Object id;
+    String key;
+  }
+
+  /**
+   * Opens the graph stored in dir, creating it if needed.
+   */
+  public static WalTinkerGraph open(File dir, long checkpointBytes) throws IOException {
+    Files.createDirectories(dir.toPath());
+    File snapshotFile = new File(dir, SNAPSHOT_FILE);
+    TinkerGraph graph;
+    long generation = 0;
+    long nextId = 0;
+    if (snapshotFile.exists()) {
+      try (ObjectInputStream in =
+          new ObjectInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), 1 << 16))) {
+        generation = in.readLong();
+        nextId = in.readLong();
+        graph = (TinkerGraph) in.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Could not read snapshot " + snapshotFile, e);
+      }
+    } else {
+      graph = new TinkerGraph();
+    }
+
+    WalTinkerGraph walGraph = new WalTinkerGraph(graph, dir, generation, nextId, checkpointBytes);
+    walGraph.replayLog();
+    return walGraph;
+  }
+
+  private WalTinkerGraph(TinkerGraph graph, File dir, long generation, long nextId, long checkpointBytes) {
+    super(graph);
+    this.dir = dir;
+    this.generation = generation;
+    this.nextId = nextId;
+    this.checkpointBytes = checkpointBytes;
+    addListener(new LoggingListener());
+  }
+
+  /// replays the log into the base graph, then opens it for appending
+  private void replayLog() throws IOException {
+    File logFile = new File(dir, LOG_FILE);
+    long validLength = 0;
+    int batches = 0;
+    if (logFile.length() >= LOG_HEADER_LENGTH) {
+      try (DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(logFile), 1 << 16))) {
+        long logGeneration = readLogHeader(in, logFile);
+        if (logGeneration > generation)
+          throw new IOException("Log generation " + logGeneration + " is newer than snapshot generation "
+              + generation + " in " + dir);
+        if (logGeneration < generation) {
+          log.info("Ignoring log of generation {}, which is already in snapshot generation {}", logGeneration,
+              generation);
+        } else {
+          validLength = LOG_HEADER_LENGTH;
+          long readLength = validLength;
+          List<byte[]> uncommitted = new ArrayList<>(); // applied once a committed batch follows them
+          byte[] payload;
+          while ((payload = readBatch(in, logFile.length() - readLength)) != null) {
+            readLength += 4 + payload.length + 8;
+            uncommitted.add(payload);
+            if (payload[0] != 0) {
+              for (byte[] p : uncommitted)
+                applyBatch(p);
+              batches += uncommitted.size();
+              uncommitted.clear();
+              validLength = readLength;
+            }
+          }
+          if (!uncommitted.isEmpty())
+            log.warn("Ignoring {} uncommitted batches at end of {}", uncommitted.size(), logFile);
+        }
+      }
+    }
+
+    logChannel = new RandomAccessFile(logFile, "rw").getChannel();
+    if (validLength == 0) {
+      startLog();
+    } else {
+      if (logChannel.size() > validLength) {
+        log.warn("Truncating uncommitted or incomplete batches at end of {} from {} to {} bytes", logFile,
+            logChannel.size(),
+            validLength);
+        logChannel.truncate(validLength);
+      }
+      logChannel.position(validLength);
+    }
+    log.info("Opened graph at {}: generation={}, replayed {} batches ({} bytes) from log", dir, generation,
+        batches, validLength);
+  }
+
+  private static long readLogHeader(DataInputStream in, File logFile) throws IOException {
+    if (in.readInt() != LOG_MAGIC)
+      throw new IOException("Not a write-ahead log: " + logFile);
+    return in.readLong();
+  }
+
+  /// @return null if the rest of the log is not a complete batch
+  private static byte[] readBatch(DataInputStream in, long remaining) throws IOException {
+    try {
+      int length = in.readInt();
+      if (length <= 0 || length > remaining - 12) // a torn length
+        return null;
+      byte[] payload = new byte[length];
+      in.readFully(payload);
+      long crc = in.readLong();
+      return (crc == crc32(payload)) ? payload : null;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  private void startLog() throws IOException {
+    logChannel.truncate(0);
+    ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_LENGTH);
+    header.putInt(LOG_MAGIC).putLong(generation).flip();
+    logChannel.write(header, 0);
+    logChannel.position(LOG_HEADER_LENGTH);
+    logChannel.force(true);
+  }
+
+  private static long crc32(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length);
+    return crc.getValue();
+  }
+
+  /// applies records directly to the base graph so they are not logged again
+  private void applyBatch(byte[] payload) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    in.readBoolean(); // committed flag
+    nextId = GraphRecordBinaryIO.readVLong(in);
+    while (in.available() > 0) {
+      byte op = in.readByte();
+      switch (op) {
+        case VERTEX_ADDED:
+          baseGraph.addVertex(in.readUTF());
+          break;
+        case VERTEX_REMOVED:
+          baseGraph.removeVertex(baseGraph.getVertex(in.readUTF()));
+          break;
+        case VERTEX_PROPERTY_SET:
+          baseGraph.getVertex(in.readUTF()).setProperty(in.readUTF(), GraphRecordBinaryIO.readPropertyValue(in));
+          break;
+        case VERTEX_PROPERTY_REMOVED:
+          baseGraph.getVertex(in.readUTF()).removeProperty(in.readUTF());
+          break;
+        case EDGE_ADDED: {
+          String id = in.readUTF();
+          Vertex outV = baseGraph.getVertex(in.readUTF());
+          Vertex inV = baseGraph.getVertex(in.readUTF());
+          baseGraph.addEdge(id, outV, inV, in.readUTF());
+          break;
+        }
+        case EDGE_REMOVED:
+          baseGraph.removeEdge(baseGraph.getEdge(in.readUTF()));
+          break;
+        case EDGE_PROPERTY_SET:
+          baseGraph.getEdge(in.readUTF()).setProperty(in.readUTF(), GraphRecordBinaryIO.readPropertyValue(in));
+          break;
+        case EDGE_PROPERTY_REMOVED:
+          baseGraph.getEdge(in.readUTF()).removeProperty(in.readUTF());
+          break;
+        case KEY_INDEX_CREATED:
+          baseGraph.createKeyIndex(in.readUTF(), readElementClass(in));
+          break;
+        case KEY_INDEX_DROPPED:
+          baseGraph.dropKeyIndex(in.readUTF(), readElementClass(in));
+          break;
+        default:
+          throw new IOException("Unknown log record type=" + op + " in " + dir);
+      }
+    }
+  }
+
+  private static Class<? extends Element> readElementClass(DataInputStream in) throws IOException {
+    return in.readBoolean() ? Vertex.class : Edge.class;
+  }
+
+  private String newId() {
+    return String.valueOf(nextId++);
+  }
+
+  @Override
+  public Vertex addVertex(Object id) {
+    return super.addVertex(id == null ? newId() : id);
+  }
+
+  @Override
+  public Edge addEdge(Object id, Vertex outVertex, Vertex inVertex, String label) {
+    return super.addEdge(id == null ? newId() : id, outVertex, inVertex, label);
+  }
+
+  @Override
+  public <T extends Element> void createKeyIndex(String key, Class<T> elementClass,
+      @SuppressWarnings("rawtypes") Parameter... indexParameters) {
+    baseGraph.createKeyIndex(key, elementClass, indexParameters);
+    logKeyIndex(KEY_INDEX_CREATED, key, elementClass);
+  }
+
+  @Override
+  public <T extends Element> void dropKeyIndex(String key, Class<T> elementClass) {
+    baseGraph.dropKeyIndex(key, elementClass);
+    logKeyIndex(KEY_INDEX_DROPPED, key, elementClass);
+  }
+
+  @Override
+  public <T extends Element> Set<String> getIndexedKeys(Class<T> elementClass) {
+    return baseGraph.getIndexedKeys(elementClass);
+  }
+
+  private void logKeyIndex(byte op, String key, Class<?> elementClass) {
+    try {
+      pendingOut.writeByte(op);
+      pendingOut.writeUTF(key);
+      pendingOut.writeBoolean(Vertex.class.isAssignableFrom(elementClass));
+      recorded();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void recorded() throws IOException {
+    ++pendingRecords;
+    if (pending.size() >= maxPendingBytes)
+      appendPending(false, false);
+  }
+
+  @Override
+  public void commit() {
+    try {
+      appendPending(syncOnCommit, true);
+      if (logChannel.size() >= checkpointBytes)
+        checkpoint();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void rollback() {
+    if (pendingRecords > 0 || !dirtyProperties.isEmpty())
+      log.warn("Cannot roll back {} changes to TinkerGraph; they will be logged on the next commit",
+          pendingRecords + dirtyProperties.size());
+  }
+
+  @Override
+  @Deprecated
+  public void stopTransaction(Conclusion conclusion) {
+    if (conclusion == Conclusion.SUCCESS)
+      commit();
+    else
+      rollback();
+  }
+
+  /// @param commit whether to mark this and previously appended batches as committed
+  private void appendPending(boolean sync, boolean commit) throws IOException {
+    if (!dirtyProperties.isEmpty())
+      recordDirtyProperties();
+    if (pendingRecords > 0 || (commit && appendedUncommitted)) {
+      ByteArrayOutputStream batch = new ByteArrayOutputStream(pending.size() + 11);
+      batch.write(commit ? 1 : 0);
+      GraphRecordBinaryIO.writeVLong(new DataOutputStream(batch), nextId);
+      pending.writeTo(batch);
+      byte[] payload = batch.toByteArray();
+
+      ByteBuffer buf = ByteBuffer.allocate(4 + payload.length + 8);
+      buf.putInt(payload.length).put(payload).putLong(crc32(payload)).flip();
+      while (buf.hasRemaining())
+        logChannel.write(buf);
+      log.debug("Logged {} records ({} bytes), committed={}", pendingRecords, payload.length, commit);
+      pending.reset();
+      pendingRecords = 0;
+      appendedUncommitted = !commit;
+    }
+    if (sync)
+      logChannel.force(false);
+  }
+
+  /// records the current values, which may have been changed in place since they were set
+  private void recordDirtyProperties() throws IOException {
+    for (PropertyRef ref : dirtyProperties) {
+      Element elem = ref.vertex ? baseGraph.getVertex(ref.id) : baseGraph.getEdge(ref.id);
+      Object value = (elem == null) ? null : elem.getProperty(ref.key);
+      if (value == null) // removal of the element or property is already recorded
+        continue;
+      ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+      GraphRecordBinaryIO.writePropertyValue(new DataOutputStream(valueBytes), ref.key, value);
+      recordElement(ref.vertex ? VERTEX_PROPERTY_SET : EDGE_PROPERTY_SET, elem);
+      pendingOut.writeUTF(ref.key);
+      valueBytes.writeTo(pendingOut);
+      ++pendingRecords;
+    }
+    dirtyProperties.clear();
+  }
+
+  private static boolean isMutable(Object value) {
+    return value instanceof Collection || value.getClass().isArray();
+  }
+
+  /**
+   * Writes the graph to a new snapshot and restarts the log. Uncommitted changes are included.
+   */
+  public void checkpoint() throws IOException {
+    appendPending(true, true);
+    File snapshotFile = new File(dir, SNAPSHOT_FILE);
+    File tmpFile = new File(dir, SNAPSHOT_FILE + ".tmp");
+    try (FileOutputStream fos = new FileOutputStream(tmpFile);
+        ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+      out.writeLong(generation + 1);
+      out.writeLong(nextId);
+      out.writeObject(baseGraph);
+      out.flush();
+      fos.getFD().sync();
+    }
+    Files.move(tmpFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    // a crash here leaves the older log, which is ignored because its generation is older than the snapshot's
+    ++generation;
+    long logSize = logChannel.size();
+    startLog();
+    log.info("Checkpointed {} log bytes into snapshot generation {} of {} bytes", logSize, generation,
+        snapshotFile.length());
+  }
+
+  @Override
+  public void shutdown() {
+    try {
+      appendPending(true, true);
+      logChannel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    super.shutdown();
+  }
+
+  private void recordElement(byte op, Element elem) throws IOException {
+    pendingOut.writeByte(op);
+    pendingOut.writeUTF(elem.getId().toString());
+  }
+
+  /// records changes, which EventGraph reports as they are made to the base graph
+  private class LoggingListener implements GraphChangedListener {
+    @Override
+    public void vertexAdded(Vertex vertex) {
+      try {
+        recordElement(VERTEX_ADDED, vertex);
+        recorded();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void vertexPropertyChanged(Vertex vertex, String key, Object oldValue, Object setValue) {
+      propertySet(VERTEX_PROPERTY_SET, vertex, key, setValue);
+    }
+
+    @Override
+    public void vertexPropertyRemoved(Vertex vertex, String key, Object removedValue) {
+      propertyRemoved(VERTEX_PROPERTY_REMOVED, vertex, key);
+    }
+
+    @Override
+    public void vertexRemoved(Vertex vertex, Map<String, Object> props) {
+      try {
+        recordElement(VERTEX_REMOVED, vertex); // replaying also removes its edges, as TinkerGraph did
+        recorded();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void edgeAdded(Edge edge) {
+      try {
+        recordElement(EDGE_ADDED, edge);
+        pendingOut.writeUTF(edge.getVertex(Direction.OUT).getId().toString());
+        pendingOut.writeUTF(edge.getVertex(Direction.IN).getId().toString());
+        pendingOut.writeUTF(edge.getLabel());
+        recorded();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void edgePropertyChanged(Edge edge, String key, Object oldValue, Object setValue) {
+      propertySet(EDGE_PROPERTY_SET, edge, key, setValue);
+    }
+
+    @Override
+    public void edgePropertyRemoved(Edge edge, String key, Object removedValue) {
+      propertyRemoved(EDGE_PROPERTY_REMOVED, edge, key);
+    }
+
+    @Override
+    public void edgeRemoved(Edge edge, Map<String, Object> props) {
+      try {
+        recordElement(EDGE_REMOVED, edge);
+        recorded();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void propertySet(byte op, Element elem, String key, Object value) {
+      if (isMutable(value)) {
+        dirtyProperties.add(new PropertyRef(op == VERTEX_PROPERTY_SET, elem.getId(), key));
+        return;
+      }
+      try {
+        ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+        // encode first so an unsupported value doesn't leave a partial record
+        GraphRecordBinaryIO.writePropertyValue(new DataOutputStream(valueBytes), key, value);
+        recordElement(op, elem);
+        pendingOut.writeUTF(key);
+        valueBytes.writeTo(pendingOut);
+        recorded();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void propertyRemoved(byte op, Element elem, String key) {
+      try {
+        recordElement(op, elem);
+        pendingOut.writeUTF(key);
+        recorded();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+}
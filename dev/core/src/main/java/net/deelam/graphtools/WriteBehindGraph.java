@@ -0,0 +1,515 @@
+package net.deelam.graphtools;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Features;
+import com.tinkerpop.blueprints.GraphQuery;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.VertexQuery;
+import com.tinkerpop.blueprints.util.DefaultGraphQuery;
+import com.tinkerpop.blueprints.util.DefaultVertexQuery;
+import com.tinkerpop.blueprints.util.ElementHelper;
+import com.tinkerpop.blueprints.util.ExceptionFactory;
+import com.tinkerpop.blueprints.util.StringFactory;
+import com.tinkerpop.blueprints.util.wrappers.WrapperGraph;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Write-behind wrapper of an IdGraph:
+ * new vertices and edges (with non-null ids) and property changes are buffered in memory and applied to the
+ * base graph in a batch when flush() or commit() is called, or when maxBufferedOperations is reached.
+ * This reduces per-call overhead for backends where each setProperty() is a round trip to the store
+ * (e.g., OrientDB, Titan).
+ *
+ * Buffered changes are visible through this graph (read-your-writes): getVertex(), getEdge(), and
+ * the properties of this graph's elements check the buffer before the base graph.
+ * Operations that the buffer cannot answer (iterating over vertices or edges, queries, and removals)
+ * flush the buffer and then delegate to the base graph.
+ *
+ * Errors from the base graph (e.g., an edge id that already exists in the base graph) occur when the
+ * buffer is flushed.
+ *
+ * If a transaction is begun on the base graph, begin a nested transaction on this graph
+ * (see GraphTransaction.begin()) so that the buffer is flushed whenever GraphTransaction commits.
+ *
+ * Not thread-safe.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class WriteBehindGraph implements TransactionalGraph, WrapperGraph<IdGraph<?>> {
+
+  @Getter
+  private final IdGraph<?> baseGraph;
+
+  @Getter
+  @Setter
+  private int maxBufferedOperations = 10000;
+
+  /// changes keyed by element id, in order of first change
+  private final Map<Object, Changes> vertexChanges = new LinkedHashMap<>();
+  private final Map<Object, Changes> edgeChanges = new LinkedHashMap<>();
+  private int bufferedOperations = 0;
+
+  public WriteBehindGraph(IdGraph<?> baseGraph) {
+    this.baseGraph = baseGraph;
+  }
+
+  /**
+   * Buffered changes to an element.
+   */
+  private static class Changes {
+    /// null if the element is new
+    final Element base;
+    final Map<String, Object> setProps = new HashMap<>();
+    final Set<String> removedKeys = new HashSet<>();
+    /// for new edges
+    Object outVertexId, inVertexId;
+    String label;
+
+    Changes(Element base) {
+      this.base = base;
+    }
+
+    boolean isNew() {
+      return base == null;
+    }
+
+    void applyTo(Element elem) {
+      for (String key : removedKeys)
+        elem.removeProperty(key);
+      for (Entry<String, Object> e : setProps.entrySet())
+        elem.setProperty(e.getKey(), e.getValue());
+    }
+  }
+
+  public int getBufferedOperations() {
+    return bufferedOperations;
+  }
+
+  private void operationBuffered() {
+    if (++bufferedOperations >= maxBufferedOperations)
+      flush();
+  }
+
+  /**
+   * Applies buffered changes to the base graph, without committing.
+   */
+  public void flush() {
+    if (vertexChanges.isEmpty() && edgeChanges.isEmpty())
+      return;
+    log.debug("Flushing {} buffered operations on {} vertices and {} edges", bufferedOperations,
+        vertexChanges.size(), edgeChanges.size());
+
+    Map<Object, Vertex> newVertices = new HashMap<>();
+    for (Entry<Object, Changes> e : vertexChanges.entrySet()) {
+      Changes c = e.getValue();
+      Element v = c.base;
+      if (c.isNew()) {
+        Vertex newV = baseGraph.addVertex(e.getKey());
+        newVertices.put(e.getKey(), newV);
+        v = newV;
+      }
+      c.applyTo(v);
+    }
+    vertexChanges.clear();
+
+    for (Entry<Object, Changes> e : edgeChanges.entrySet()) {
+      Changes c = e.getValue();
+      Element edge = c.base;
+      if (c.isNew()) {
+        edge = baseGraph.addEdge(e.getKey(), getBaseVertex(newVertices, c.outVertexId),
+            getBaseVertex(newVertices, c.inVertexId), c.label);
+      }
+      c.applyTo(edge);
+    }
+    edgeChanges.clear();
+    bufferedOperations = 0;
+  }
+
+  private Vertex getBaseVertex(Map<Object, Vertex> newVertices, Object id) {
+    Vertex v = newVertices.get(id);
+    if (v == null)
+      v = baseGraph.getVertex(id);
+    if (v == null)
+      throw new IllegalStateException("Vertex not found: " + id);
+    return v;
+  }
+
+  /**
+   * Discards buffered changes.
+   */
+  public void clearBuffer() {
+    if (bufferedOperations > 0)
+      log.info("Discarding {} buffered operations", bufferedOperations);
+    vertexChanges.clear();
+    edgeChanges.clear();
+    bufferedOperations = 0;
+  }
+
+  @Override
+  public void commit() {
+    flush();
+    baseGraph.commit();
+  }
+
+  @Override
+  public void rollback() {
+    clearBuffer();
+    baseGraph.rollback();
+  }
+
+  @SuppressWarnings("deprecation")
+  @Override
+  public void stopTransaction(Conclusion conclusion) {
+    if (conclusion == Conclusion.SUCCESS)
+      commit();
+    else
+      rollback();
+  }
+
+  @Override
+  public Features getFeatures() {
+    return baseGraph.getFeatures();
+  }
+
+  @Override
+  public Vertex addVertex(Object id) {
+    if (id == null) { // let base graph create the id
+      flush();
+      return new BufferedVertex(baseGraph.addVertex(null));
+    }
+    if (vertexChanges.containsKey(id))
+      throw ExceptionFactory.vertexWithIdAlreadyExists(id);
+    vertexChanges.put(id, new Changes(null));
+    operationBuffered();
+    return new BufferedVertex(id, null);
+  }
+
+  @Override
+  public Vertex getVertex(Object id) {
+    if (id == null)
+      throw ExceptionFactory.vertexIdCanNotBeNull();
+    Changes c = vertexChanges.get(id);
+    if (c != null)
+      return new BufferedVertex(id, (Vertex) c.base);
+    Vertex v = baseGraph.getVertex(id);
+    return (v == null) ? null : new BufferedVertex(v);
+  }
+
+  @Override
+  public void removeVertex(Vertex vertex) {
+    flush();
+    baseGraph.removeVertex(getBase(vertex));
+  }
+
+  @Override
+  public Iterable<Vertex> getVertices() {
+    flush();
+    return wrapVertices(baseGraph.getVertices());
+  }
+
+  @Override
+  public Iterable<Vertex> getVertices(String key, Object value) {
+    flush();
+    return wrapVertices(baseGraph.getVertices(key, value));
+  }
+
+  @Override
+  public Edge addEdge(Object id, Vertex outVertex, Vertex inVertex, String label) {
+    if (label == null)
+      throw ExceptionFactory.edgeLabelCanNotBeNull();
+    if (id == null) { // let base graph create the id
+      flush();
+      return new BufferedEdge(baseGraph.addEdge(null, getBase(outVertex), getBase(inVertex), label));
+    }
+    if (edgeChanges.containsKey(id))
+      throw ExceptionFactory.edgeWithIdAlreadyExist(id);
+    Changes c = new Changes(null);
+    c.outVertexId = outVertex.getId();
+    c.inVertexId = inVertex.getId();
+    c.label = label;
+    edgeChanges.put(id, c);
+    operationBuffered();
+    return new BufferedEdge(id, null);
+  }
+
+  private Vertex getBase(Vertex v) {
+    return (v instanceof BufferedVertex) ? ((BufferedVertex) v).getBase() : v;
+  }
+
+  @Override
+  public Edge getEdge(Object id) {
+    if (id == null)
+      throw ExceptionFactory.edgeIdCanNotBeNull();
+    Changes c = edgeChanges.get(id);
+    if (c != null)
+      return new BufferedEdge(id, (Edge) c.base);
+    Edge e = baseGraph.getEdge(id);
+    return (e == null) ? null : new BufferedEdge(e);
+  }
+
+  @Override
+  public void removeEdge(Edge edge) {
+    flush();
+    baseGraph.removeEdge((edge instanceof BufferedEdge) ? ((BufferedEdge) edge).getBase() : edge);
+  }
+
+  @Override
+  public Iterable<Edge> getEdges() {
+    flush();
+    return wrapEdges(baseGraph.getEdges());
+  }
+
+  @Override
+  public Iterable<Edge> getEdges(String key, Object value) {
+    flush();
+    return wrapEdges(baseGraph.getEdges(key, value));
+  }
+
+  @Override
+  public GraphQuery query() {
+    return new DefaultGraphQuery(this); // calls getVertices() or getEdges(), which flush
+  }
+
+  @Override
+  public void shutdown() {
+    flush();
+    baseGraph.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return StringFactory.graphString(this, baseGraph.toString());
+  }
+
+  private Iterable<Vertex> wrapVertices(Iterable<Vertex> vertices) {
+    return Iterables.transform(vertices, v -> new BufferedVertex(v));
+  }
+
+  private Iterable<Edge> wrapEdges(Iterable<Edge> edges) {
+    return Iterables.transform(edges, e -> new BufferedEdge(e));
+  }
+
+  ///======================================== elements
+
+  /**
+   * Lightweight handle; buffered changes are kept by the graph so all handles of an element are consistent.
+   */
+  private abstract class BufferedElement<E extends Element> implements Element {
+    final Object id;
+    /// null until the element exists in the base graph
+    E base;
+
+    BufferedElement(Object id, E base) {
+      this.id = id;
+      this.base = base;
+    }
+
+    abstract Map<Object, Changes> changesMap();
+
+    abstract E lookupBase();
+
+    E getBase() {
+      if (base == null) {
+        Changes c = changesMap().get(id);
+        if (c != null && c.isNew())
+          flush();
+        base = lookupBase();
+        if (base == null)
+          throw new IllegalStateException("Element no longer exists: " + id);
+      }
+      return base;
+    }
+
+    private Changes changesForWrite() {
+      Changes c = changesMap().get(id);
+      if (c == null) {
+        c = new Changes(getBase());
+        changesMap().put(id, c);
+      }
+      return c;
+    }
+
+    @Override
+    public Object getId() {
+      return id;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T getProperty(String key) {
+      Changes c = changesMap().get(id);
+      if (c != null) {
+        Object value = c.setProps.get(key);
+        if (value != null)
+          return (T) value;
+        if (c.isNew() || c.removedKeys.contains(key))
+          return null;
+      }
+      return getBase().getProperty(key);
+    }
+
+    @Override
+    public Set<String> getPropertyKeys() {
+      Changes c = changesMap().get(id);
+      if (c == null)
+        return getBase().getPropertyKeys();
+      Set<String> keys = c.isNew() ? new HashSet<>() : new HashSet<>(getBase().getPropertyKeys());
+      keys.removeAll(c.removedKeys);
+      keys.addAll(c.setProps.keySet());
+      return keys;
+    }
+
+    @Override
+    public void setProperty(String key, Object value) {
+      if (key.equals(IdGraph.ID))
+        throw new IllegalArgumentException("Unable to set value for reserved property " + IdGraph.ID);
+      ElementHelper.validateProperty(this, key, value);
+      Changes c = changesForWrite();
+      c.setProps.put(key, value);
+      c.removedKeys.remove(key);
+      operationBuffered();
+    }
+
+    @Override
+    public <T> T removeProperty(String key) {
+      T oldValue = getProperty(key);
+      Changes c = changesForWrite();
+      c.setProps.remove(key);
+      if (!c.isNew())
+        c.removedKeys.add(key);
+      operationBuffered();
+      return oldValue;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return ElementHelper.areEqual(this, obj);
+    }
+
+    @Override
+    public int hashCode() {
+      return id.hashCode();
+    }
+  }
+
+  private class BufferedVertex extends BufferedElement<Vertex> implements Vertex {
+    BufferedVertex(Object id, Vertex base) {
+      super(id, base);
+    }
+
+    BufferedVertex(Vertex base) {
+      super(base.getId(), base);
+    }
+
+    @Override
+    Map<Object, Changes> changesMap() {
+      return vertexChanges;
+    }
+
+    @Override
+    Vertex lookupBase() {
+      return baseGraph.getVertex(id);
+    }
+
+    @Override
+    public void remove() {
+      removeVertex(this);
+    }
+
+    @Override
+    public Iterable<Edge> getEdges(Direction direction, String... labels) {
+      flush();
+      return wrapEdges(getBase().getEdges(direction, labels));
+    }
+
+    @Override
+    public Iterable<Vertex> getVertices(Direction direction, String... labels) {
+      flush();
+      return wrapVertices(getBase().getVertices(direction, labels));
+    }
+
+    @Override
+    public VertexQuery query() {
+      return new DefaultVertexQuery(this); // calls getEdges(), which flushes
+    }
+
+    @Override
+    public Edge addEdge(String label, Vertex inVertex) {
+      return WriteBehindGraph.this.addEdge(null, this, inVertex, label);
+    }
+
+    @Override
+    public String toString() {
+      return StringFactory.vertexString(this);
+    }
+  }
+
+  private class BufferedEdge extends BufferedElement<Edge> implements Edge {
+    BufferedEdge(Object id, Edge base) {
+      super(id, base);
+    }
+
+    BufferedEdge(Edge base) {
+      super(base.getId(), base);
+    }
+
+    @Override
+    Map<Object, Changes> changesMap() {
+      return edgeChanges;
+    }
+
+    @Override
+    Edge lookupBase() {
+      return baseGraph.getEdge(id);
+    }
+
+    @Override
+    public void remove() {
+      removeEdge(this);
+    }
+
+    @Override
+    public Vertex getVertex(Direction direction) throws IllegalArgumentException {
+      if (direction == Direction.BOTH)
+        throw ExceptionFactory.bothIsNotSupported();
+      Changes c = edgeChanges.get(id);
+      if (c != null && c.isNew())
+        return getVertex((direction == Direction.OUT) ? c.outVertexId : c.inVertexId);
+      return new BufferedVertex(getBase().getVertex(direction));
+    }
+
+    private Vertex getVertex(Object vertexId) {
+      return WriteBehindGraph.this.getVertex(vertexId);
+    }
+
+    @Override
+    public String getLabel() {
+      Changes c = edgeChanges.get(id);
+      if (c != null && c.isNew())
+        return c.label;
+      return getBase().getLabel();
+    }
+
+    @Override
+    public String toString() {
+      return StringFactory.edgeString(this);
+    }
+  }
+
+}
@@ -0,0 +1,52 @@
+package net.deelam.graphtools.csr;
+
+import java.util.Map;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.ExceptionFactory;
+import com.tinkerpop.blueprints.util.StringFactory;
+
+/**
+ * @author deelam
+ */
+class CsrEdge extends CsrElement implements Edge {
+
+  CsrEdge(CsrGraph graph, int index) {
+    super(graph, index);
+  }
+
+  @Override
+  protected CsrGraph.StringTable ids() {
+    return graph.edgeIds;
+  }
+
+  @Override
+  protected Map<String, CsrGraph.Column> columns() {
+    return graph.edgeColumns;
+  }
+
+  @Override
+  public Vertex getVertex(Direction direction) {
+    switch (direction) {
+      case OUT:
+        return new CsrVertex(graph, graph.edgeOut.get(index));
+      case IN:
+        return new CsrVertex(graph, graph.edgeIn.get(index));
+      default:
+        throw ExceptionFactory.bothIsNotSupported();
+    }
+  }
+
+  @Override
+  public String getLabel() {
+    return graph.getLabel(graph.edgeLabel.get(index));
+  }
+
+  @Override
+  public String toString() {
+    return StringFactory.edgeString(this);
+  }
+
+}
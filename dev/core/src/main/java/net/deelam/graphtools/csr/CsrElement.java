@@ -0,0 +1,81 @@
+package net.deelam.graphtools.csr;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+import com.tinkerpop.blueprints.util.wrappers.readonly.ReadOnlyTokens;
+
+/**
+ * @author deelam
+ */
+abstract class CsrElement implements Element {
+
+  protected final CsrGraph graph;
+  protected final int index;
+
+  CsrElement(CsrGraph graph, int index) {
+    this.graph = graph;
+    this.index = index;
+  }
+
+  protected abstract CsrGraph.StringTable ids();
+
+  protected abstract Map<String, CsrGraph.Column> columns();
+
+  @Override
+  public Object getId() {
+    return new CsrId(index);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T> T getProperty(String key) {
+    if (IdGraph.ID.equals(key))
+      return (T) ids().get(index);
+    CsrGraph.Column col = columns().get(key);
+    return (col == null) ? null : (T) col.get(index);
+  }
+
+  @Override
+  public Set<String> getPropertyKeys() {
+    Set<String> keys = new HashSet<>();
+    keys.add(IdGraph.ID);
+    columns().forEach((key, col) -> {
+      if (col.has(index))
+        keys.add(key);
+    });
+    return keys;
+  }
+
+  @Override
+  public void setProperty(String key, Object value) {
+    throw new UnsupportedOperationException(ReadOnlyTokens.MUTATE_ERROR_MESSAGE + ": " + this);
+  }
+
+  @Override
+  public <T> T removeProperty(String key) {
+    throw new UnsupportedOperationException(ReadOnlyTokens.MUTATE_ERROR_MESSAGE + ": " + this);
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException(ReadOnlyTokens.MUTATE_ERROR_MESSAGE + ": " + this);
+  }
+
+  @Override
+  public int hashCode() {
+    return index;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == null || obj.getClass() != getClass())
+      return false;
+    CsrElement other = (CsrElement) obj;
+    return other.index == index && other.graph == graph;
+  }
+
+}
@@ -0,0 +1,203 @@
+package net.deelam.graphtools.csr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * File layout and value encoding shared by CsrSnapshotWriter and CsrGraph.
+ *
+ * A snapshot is a directory of flat files, each memory-mapped as a whole (so each must be under 2GB):
+ * <pre>
+ * csr.properties                     counts, edge labels, and property keys
+ * vertex.ids.offsets, .bytes, .hash  UTF-8 vertex ids and an open-addressing table of id -> vertex index
+ * edge.ids.offsets, .bytes, .hash    same for edge ids
+ * out.offsets                        out-edges of vertex v are edges out.offsets[v] until out.offsets[v+1]
+ * in.offsets, in.edges               in-edges of vertex v are in.edges[in.offsets[v]] until in.edges[in.offsets[v+1]]
+ * edge.out, edge.in, edge.label      per edge: out-vertex index, in-vertex index, label index
+ * vertex.prop.K.elements, .offsets, .bytes   column for the K-th vertex property key:
+ *                                    ascending indices of elements that have the property and their encoded values
+ * edge.prop.K.*                      same for edge properties
+ * </pre>
+ * All ints are big-endian.
+ *
+ * @author deelam
+ */
+final class CsrFormat {
+
+  static final int VERSION = 1;
+
+  static final String META_FILE = "csr.properties";
+  static final String VERSION_PROP = "version";
+  static final String VERTEX_COUNT_PROP = "vertexCount";
+  static final String EDGE_COUNT_PROP = "edgeCount";
+  static final String LABEL_PROP_PREFIX = "label.";
+  static final String VERTEX_KEY_PROP_PREFIX = "vertexKey.";
+  static final String EDGE_KEY_PROP_PREFIX = "edgeKey.";
+
+  static final String VERTEX_IDS = "vertex.ids";
+  static final String EDGE_IDS = "edge.ids";
+  static final String OUT_OFFSETS = "out.offsets";
+  static final String IN_OFFSETS = "in.offsets";
+  static final String IN_EDGES = "in.edges";
+  static final String EDGE_OUT = "edge.out";
+  static final String EDGE_IN = "edge.in";
+  static final String EDGE_LABEL = "edge.label";
+  static final String VERTEX_PROP_PREFIX = "vertex.prop.";
+  static final String EDGE_PROP_PREFIX = "edge.prop.";
+
+  static final String OFFSETS_SUFFIX = ".offsets";
+  static final String BYTES_SUFFIX = ".bytes";
+  static final String HASH_SUFFIX = ".hash";
+  static final String ELEMENTS_SUFFIX = ".elements";
+
+  private CsrFormat() {}
+
+  /// hash table capacity: a power of two at least twice the number of entries
+  static int hashCapacity(int count) {
+    long cap = Integer.highestOneBit(Math.max(1, count)) * 4L;
+    if (cap > (1 << 30))
+      throw new IllegalArgumentException("Too many ids for hash table: " + count);
+    return (int) cap;
+  }
+
+  /// given String.hashCode(), which is specified, so the table is portable across JVMs
+  static int hashSlot(int h, int mask) {
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  static ByteBuffer map(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return buffer; // remains valid after the channel is closed
+    }
+  }
+
+  static IntBuffer mapInts(File file) throws IOException {
+    return map(file).asIntBuffer();
+  }
+
+  /// copies bytes using absolute gets so that buffers can be read concurrently
+  static byte[] getBytes(ByteBuffer buffer, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    for (int i = 0; i < bytes.length; ++i)
+      bytes[i] = buffer.get(start + i);
+    return bytes;
+  }
+
+  static boolean bytesEqual(ByteBuffer buffer, int start, int end, byte[] bytes) {
+    if (end - start != bytes.length)
+      return false;
+    for (int i = 0; i < bytes.length; ++i)
+      if (buffer.get(start + i) != bytes[i])
+        return false;
+    return true;
+  }
+
+  /// finds index in a sorted int column, or -1
+  static int binarySearch(IntBuffer sorted, int key) {
+    int lo = 0;
+    int hi = sorted.limit() - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int val = sorted.get(mid);
+      if (val < key)
+        lo = mid + 1;
+      else if (val > key)
+        hi = mid - 1;
+      else
+        return mid;
+    }
+    return -1;
+  }
+
+  private static final byte STRING = 0, INTEGER = 1, LONG = 2, DOUBLE = 3, FLOAT = 4, BOOLEAN = 5,
+      SHORT = 6, BYTE = 7, CHARACTER = 8, SERIALIZED = 9;
+
+  static byte[] encode(Object value) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(baos);
+    if (value instanceof String) {
+      out.writeByte(STRING);
+      out.write(((String) value).getBytes(StandardCharsets.UTF_8));
+    } else if (value instanceof Integer) {
+      out.writeByte(INTEGER);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Float) {
+      out.writeByte(FLOAT);
+      out.writeFloat((Float) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof Short) {
+      out.writeByte(SHORT);
+      out.writeShort((Short) value);
+    } else if (value instanceof Byte) {
+      out.writeByte(BYTE);
+      out.writeByte((Byte) value);
+    } else if (value instanceof Character) {
+      out.writeByte(CHARACTER);
+      out.writeChar((Character) value);
+    } else if (value instanceof Serializable) {
+      out.writeByte(SERIALIZED);
+      try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+        oos.writeObject(value);
+      }
+    } else {
+      throw new IllegalArgumentException("Cannot store property value of " + value.getClass());
+    }
+    out.flush();
+    return baos.toByteArray();
+  }
+
+  static Object decode(byte[] bytes) {
+    ByteBuffer bb = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+    switch (bytes[0]) {
+      case STRING:
+        return new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+      case INTEGER:
+        return bb.getInt();
+      case LONG:
+        return bb.getLong();
+      case DOUBLE:
+        return bb.getDouble();
+      case FLOAT:
+        return bb.getFloat();
+      case BOOLEAN:
+        return bb.get() != 0;
+      case SHORT:
+        return bb.getShort();
+      case BYTE:
+        return bb.get();
+      case CHARACTER:
+        return bb.getChar();
+      case SERIALIZED:
+        try (ObjectInputStream ois =
+            new ObjectInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1))) {
+          return ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+          throw new IllegalStateException("Could not deserialize property value", e);
+        }
+      default:
+        throw new IllegalStateException("Unknown value type: " + bytes[0]);
+    }
+  }
+
+}
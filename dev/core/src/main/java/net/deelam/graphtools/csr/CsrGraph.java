@@ -0,0 +1,354 @@
+package net.deelam.graphtools.csr;
+
+import static net.deelam.graphtools.csr.CsrFormat.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Range;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Features;
+import com.tinkerpop.blueprints.GraphQuery;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Parameter;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.DefaultGraphQuery;
+import com.tinkerpop.blueprints.util.StringFactory;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+import com.tinkerpop.blueprints.util.wrappers.readonly.ReadOnlyTokens;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Read-only graph over a snapshot written by CsrSnapshotWriter.
+ * Files are memory-mapped, so opening only reads csr.properties, pages are shared between processes
+ * reading the same snapshot, and only the pages touched are loaded.
+ *
+ * Native ids are vertex and edge indices (CsrIds); the original ids are served as the IdGraph.ID property,
+ * which is reported as key-indexed so the graph can be wrapped by an IdGraph (see IdGraphFactoryCsr).
+ * Reads are thread-safe.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class CsrGraph implements KeyIndexableGraph {
+
+  private static final Features FEATURES = new Features();
+
+  static {
+    FEATURES.supportsDuplicateEdges = true;
+    FEATURES.supportsSelfLoops = true;
+    FEATURES.isPersistent = true;
+    FEATURES.supportsVertexIteration = true;
+    FEATURES.supportsEdgeIteration = true;
+    FEATURES.supportsVertexIndex = false;
+    FEATURES.supportsEdgeIndex = false;
+    FEATURES.ignoresSuppliedIds = true;
+    FEATURES.supportsTransactions = false;
+    FEATURES.supportsIndices = false;
+    FEATURES.supportsKeyIndices = true;
+    FEATURES.supportsVertexKeyIndex = true;
+    FEATURES.supportsEdgeKeyIndex = true;
+    FEATURES.supportsEdgeRetrieval = true;
+    FEATURES.supportsVertexProperties = true;
+    FEATURES.supportsEdgeProperties = true;
+    FEATURES.supportsThreadedTransactions = false;
+    FEATURES.isWrapper = false;
+
+    FEATURES.supportsSerializableObjectProperty = true;
+    FEATURES.supportsBooleanProperty = true;
+    FEATURES.supportsDoubleProperty = true;
+    FEATURES.supportsFloatProperty = true;
+    FEATURES.supportsIntegerProperty = true;
+    FEATURES.supportsPrimitiveArrayProperty = true;
+    FEATURES.supportsUniformListProperty = true;
+    FEATURES.supportsMixedListProperty = true;
+    FEATURES.supportsLongProperty = true;
+    FEATURES.supportsMapProperty = true;
+    FEATURES.supportsStringProperty = true;
+  }
+
+  @Getter
+  private final File directory;
+  @Getter
+  private final int vertexCount;
+  @Getter
+  private final int edgeCount;
+
+  private final String[] labels;
+  private final Map<String, Integer> labelIndex = new HashMap<>();
+
+  final StringTable vertexIds;
+  final StringTable edgeIds;
+  final IntBuffer outOffsets;
+  final IntBuffer inOffsets;
+  final IntBuffer inEdges;
+  final IntBuffer edgeOut;
+  final IntBuffer edgeIn;
+  final IntBuffer edgeLabel;
+  final Map<String, Column> vertexColumns;
+  final Map<String, Column> edgeColumns;
+
+  public CsrGraph(File directory) throws IOException {
+    this.directory = directory;
+    if (!isSnapshot(directory))
+      throw new IOException("Not a CSR snapshot: " + directory);
+    Properties meta = new Properties();
+    try (InputStream is = new FileInputStream(new File(directory, META_FILE))) {
+      meta.load(is);
+    }
+    int version = Integer.parseInt(meta.getProperty(VERSION_PROP));
+    if (version != VERSION)
+      throw new IOException("Unsupported CSR snapshot version " + version + ": " + directory);
+    vertexCount = Integer.parseInt(meta.getProperty(VERTEX_COUNT_PROP));
+    edgeCount = Integer.parseInt(meta.getProperty(EDGE_COUNT_PROP));
+
+    int labelCount = 0;
+    while (meta.getProperty(LABEL_PROP_PREFIX + labelCount) != null)
+      ++labelCount;
+    labels = new String[labelCount];
+    for (int i = 0; i < labelCount; ++i) {
+      labels[i] = meta.getProperty(LABEL_PROP_PREFIX + i);
+      labelIndex.put(labels[i], i);
+    }
+
+    vertexIds = new StringTable(directory, VERTEX_IDS);
+    edgeIds = new StringTable(directory, EDGE_IDS);
+    outOffsets = mapInts(new File(directory, OUT_OFFSETS));
+    inOffsets = mapInts(new File(directory, IN_OFFSETS));
+    inEdges = mapInts(new File(directory, IN_EDGES));
+    edgeOut = mapInts(new File(directory, EDGE_OUT));
+    edgeIn = mapInts(new File(directory, EDGE_IN));
+    edgeLabel = mapInts(new File(directory, EDGE_LABEL));
+    vertexColumns = mapColumns(meta, VERTEX_KEY_PROP_PREFIX, VERTEX_PROP_PREFIX);
+    edgeColumns = mapColumns(meta, EDGE_KEY_PROP_PREFIX, EDGE_PROP_PREFIX);
+    log.debug("Opened CSR snapshot with {} vertices and {} edges at {}", vertexCount, edgeCount, directory);
+  }
+
+  public static boolean isSnapshot(File directory) {
+    return new File(directory, META_FILE).exists();
+  }
+
+  private Map<String, Column> mapColumns(Properties meta, String keyPropPrefix, String filePrefix)
+      throws IOException {
+    Map<String, Column> columns = new LinkedHashMap<>();
+    for (int k = 0; meta.getProperty(keyPropPrefix + k) != null; ++k)
+      columns.put(meta.getProperty(keyPropPrefix + k), new Column(directory, filePrefix + k));
+    return columns;
+  }
+
+  String getLabel(int labelId) {
+    return labels[labelId];
+  }
+
+  /// label ids for the given labels, or null to match all labels
+  int[] getLabelIds(String... edgeLabels) {
+    if (edgeLabels == null || edgeLabels.length == 0)
+      return null;
+    int[] ids = new int[edgeLabels.length];
+    int n = 0;
+    for (String label : edgeLabels) {
+      Integer id = labelIndex.get(label);
+      if (id != null)
+        ids[n++] = id;
+    }
+    return Arrays.copyOf(ids, n);
+  }
+
+  static Iterable<Integer> range(int start, int end) {
+    if (start >= end)
+      return Collections.emptyList();
+    return ContiguousSet.create(Range.closedOpen(start, end), DiscreteDomain.integers());
+  }
+
+  @Override
+  public Features getFeatures() {
+    return FEATURES;
+  }
+
+  /**
+   * @param id a CsrId or the original vertex id; other ids, including numbers, are looked up as original ids
+   */
+  @Override
+  public Vertex getVertex(Object id) {
+    if (id == null)
+      throw new IllegalArgumentException("Vertex id cannot be null");
+    int index = (id instanceof CsrId) ? ((CsrId) id).getIndex() : vertexIds.indexOf(id.toString());
+    return (index >= 0 && index < vertexCount) ? new CsrVertex(this, index) : null;
+  }
+
+  @Override
+  public Iterable<Vertex> getVertices() {
+    return Iterables.transform(range(0, vertexCount), i -> new CsrVertex(this, i));
+  }
+
+  @Override
+  public Iterable<Vertex> getVertices(String key, Object value) {
+    if (IdGraph.ID.equals(key)) {
+      int index = vertexIds.indexOf(value.toString());
+      return (index < 0) ? Collections.emptyList() : Collections.singletonList(new CsrVertex(this, index));
+    }
+    Column col = vertexColumns.get(key);
+    if (col == null)
+      return Collections.emptyList();
+    return Iterables.transform(col.find(value), i -> new CsrVertex(this, i));
+  }
+
+  /**
+   * @param id a CsrId or the original edge id; other ids, including numbers, are looked up as original ids
+   */
+  @Override
+  public Edge getEdge(Object id) {
+    if (id == null)
+      throw new IllegalArgumentException("Edge id cannot be null");
+    int index = (id instanceof CsrId) ? ((CsrId) id).getIndex() : edgeIds.indexOf(id.toString());
+    return (index >= 0 && index < edgeCount) ? new CsrEdge(this, index) : null;
+  }
+
+  @Override
+  public Iterable<Edge> getEdges() {
+    return Iterables.transform(range(0, edgeCount), i -> new CsrEdge(this, i));
+  }
+
+  @Override
+  public Iterable<Edge> getEdges(String key, Object value) {
+    if (IdGraph.ID.equals(key)) {
+      int index = edgeIds.indexOf(value.toString());
+      return (index < 0) ? Collections.emptyList() : Collections.singletonList(new CsrEdge(this, index));
+    }
+    Column col = edgeColumns.get(key);
+    if (col == null)
+      return Collections.emptyList();
+    return Iterables.transform(col.find(value), i -> new CsrEdge(this, i));
+  }
+
+  @Override
+  public GraphQuery query() {
+    return new DefaultGraphQuery(this);
+  }
+
+  /// the original ids are looked up using the snapshot's hash tables
+  @Override
+  public <T extends Element> Set<String> getIndexedKeys(Class<T> elementClass) {
+    return Collections.singleton(IdGraph.ID);
+  }
+
+  @Override
+  public <T extends Element> void createKeyIndex(String key, Class<T> elementClass,
+      @SuppressWarnings("rawtypes") Parameter... indexParameters) {
+    throw new UnsupportedOperationException(ReadOnlyTokens.MUTATE_ERROR_MESSAGE + ": " + this);
+  }
+
+  @Override
+  public <T extends Element> void dropKeyIndex(String key, Class<T> elementClass) {
+    throw new UnsupportedOperationException(ReadOnlyTokens.MUTATE_ERROR_MESSAGE + ": " + this);
+  }
+
+  @Override
+  public Vertex addVertex(Object id) {
+    throw new UnsupportedOperationException(ReadOnlyTokens.MUTATE_ERROR_MESSAGE + ": " + this);
+  }
+
+  @Override
+  public void removeVertex(Vertex vertex) {
+    throw new UnsupportedOperationException(ReadOnlyTokens.MUTATE_ERROR_MESSAGE + ": " + this);
+  }
+
+  @Override
+  public Edge addEdge(Object id, Vertex outVertex, Vertex inVertex, String label) {
+    throw new UnsupportedOperationException(ReadOnlyTokens.MUTATE_ERROR_MESSAGE + ": " + this);
+  }
+
+  @Override
+  public void removeEdge(Edge edge) {
+    throw new UnsupportedOperationException(ReadOnlyTokens.MUTATE_ERROR_MESSAGE + ": " + this);
+  }
+
+  /// mapped files are released when the buffers are garbage-collected
+  @Override
+  public void shutdown() {}
+
+  @Override
+  public String toString() {
+    return StringFactory.graphString(this, directory + " vertices:" + vertexCount + " edges:" + edgeCount);
+  }
+
+  /// strings with a hash table of string -> index
+  static class StringTable {
+    final IntBuffer offsets;
+    final ByteBuffer bytes;
+    final IntBuffer hash;
+
+    StringTable(File dir, String name) throws IOException {
+      offsets = mapInts(new File(dir, name + OFFSETS_SUFFIX));
+      bytes = map(new File(dir, name + BYTES_SUFFIX));
+      hash = mapInts(new File(dir, name + HASH_SUFFIX));
+    }
+
+    String get(int index) {
+      return new String(getBytes(bytes, offsets.get(index), offsets.get(index + 1)), StandardCharsets.UTF_8);
+    }
+
+    int indexOf(String str) {
+      byte[] b = str.getBytes(StandardCharsets.UTF_8);
+      int mask = hash.limit() - 1;
+      for (int slot = hashSlot(str.hashCode(), mask); hash.get(slot) != 0; slot = (slot + 1) & mask) {
+        int index = hash.get(slot) - 1;
+        if (bytesEqual(bytes, offsets.get(index), offsets.get(index + 1), b))
+          return index;
+      }
+      return -1;
+    }
+  }
+
+  /// property values for the elements that have the property
+  static class Column {
+    final IntBuffer elements;
+    final IntBuffer offsets;
+    final ByteBuffer bytes;
+
+    Column(File dir, String name) throws IOException {
+      elements = mapInts(new File(dir, name + ELEMENTS_SUFFIX));
+      offsets = mapInts(new File(dir, name + OFFSETS_SUFFIX));
+      bytes = map(new File(dir, name + BYTES_SUFFIX));
+    }
+
+    boolean has(int elemIndex) {
+      return binarySearch(elements, elemIndex) >= 0;
+    }
+
+    Object get(int elemIndex) {
+      int pos = binarySearch(elements, elemIndex);
+      return (pos < 0) ? null : getAt(pos);
+    }
+
+    private Object getAt(int pos) {
+      return decode(getBytes(bytes, offsets.get(pos), offsets.get(pos + 1)));
+    }
+
+    /// scans only the elements that have the property
+    Iterable<Integer> find(Object value) {
+      return Iterables.transform(
+          Iterables.filter(range(0, elements.limit()), pos -> value.equals(getAt(pos))),
+          elements::get);
+    }
+  }
+
+}
@@ -0,0 +1,14 @@
+package net.deelam.graphtools.csr;
+
+import lombok.Value;
+
+/**
+ * Native id of a CsrGraph vertex or edge, i.e., its index in the snapshot.
+ * A distinct type so that an original id that is a number is not mistaken for an index.
+ *
+ * @author deelam
+ */
+@Value
+public class CsrId {
+  int index;
+}
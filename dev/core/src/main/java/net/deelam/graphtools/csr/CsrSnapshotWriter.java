@@ -0,0 +1,267 @@
+package net.deelam.graphtools.csr;
+
+import static net.deelam.graphtools.csr.CsrFormat.*;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Writes a graph (typically an IdGraph, whose string ids are kept) into a read-only snapshot
+ * directory that CsrGraph memory-maps; see CsrFormat for the layout.
+ *
+ * Vertices are read in two passes: the first assigns vertex indices and writes ids and properties;
+ * the second looks up each vertex by id to write its out-edges, so edges are grouped by out-vertex.
+ * Memory use is proportional to the number of vertices (the id-to-index map) plus 4 bytes per edge
+ * to build the in-edge arrays; property values are streamed to their columns.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class CsrSnapshotWriter {
+
+  public static void write(Graph graph, File dir) throws IOException {
+    FileUtils.forceMkdir(dir);
+    File metaFile = new File(dir, META_FILE);
+    FileUtils.deleteQuietly(metaFile); // snapshot is incomplete until metaFile is written
+
+    // pass 1: vertex ids and properties
+    Map<String, Integer> vIndex = new HashMap<>();
+    List<Object> vIds = new ArrayList<>();
+    List<String> vertexKeys;
+    try (StringTableWriter ids = new StringTableWriter(dir, VERTEX_IDS);
+        ColumnsWriter props = new ColumnsWriter(dir, VERTEX_PROP_PREFIX)) {
+      for (Vertex v : graph.getVertices()) {
+        String id = v.getId().toString();
+        int i = vIds.size();
+        if (vIndex.putIfAbsent(id, i) != null)
+          throw new IllegalStateException("Duplicate vertex id: " + id);
+        vIds.add(v.getId());
+        ids.add(id);
+        props.add(i, v);
+      }
+      vertexKeys = props.getKeys();
+    }
+    int vertexCount = vIds.size();
+
+    // pass 2: edges grouped by out-vertex
+    int[] inDegree = new int[vertexCount];
+    Map<String, Integer> labels = new LinkedHashMap<>();
+    List<String> edgeKeys;
+    int edgeCount = 0;
+    try (DataOutputStream outOffsets = openInts(dir, OUT_OFFSETS);
+        DataOutputStream edgeOut = openInts(dir, EDGE_OUT);
+        DataOutputStream edgeIn = openInts(dir, EDGE_IN);
+        DataOutputStream edgeLabel = openInts(dir, EDGE_LABEL);
+        StringTableWriter ids = new StringTableWriter(dir, EDGE_IDS);
+        ColumnsWriter props = new ColumnsWriter(dir, EDGE_PROP_PREFIX)) {
+      for (int i = 0; i < vertexCount; ++i) {
+        outOffsets.writeInt(edgeCount);
+        Vertex v = graph.getVertex(vIds.get(i));
+        if (v == null)
+          throw new IllegalStateException("Vertex removed while writing snapshot: " + vIds.get(i));
+        for (Edge e : v.getEdges(Direction.OUT)) {
+          String inId = e.getVertex(Direction.IN).getId().toString();
+          Integer in = vIndex.get(inId);
+          if (in == null)
+            throw new IllegalStateException("Vertex added while writing snapshot: " + inId);
+          ids.add(e.getId().toString());
+          edgeOut.writeInt(i);
+          edgeIn.writeInt(in);
+          edgeLabel.writeInt(labels.computeIfAbsent(e.getLabel(), l -> labels.size()));
+          props.add(edgeCount, e);
+          ++inDegree[in];
+          ++edgeCount;
+        }
+      }
+      outOffsets.writeInt(edgeCount);
+      edgeKeys = props.getKeys();
+    }
+    vIndex = null;
+    vIds = null;
+
+    writeInEdges(dir, inDegree, edgeCount);
+
+    Properties meta = new Properties();
+    meta.setProperty(VERSION_PROP, String.valueOf(VERSION));
+    meta.setProperty(VERTEX_COUNT_PROP, String.valueOf(vertexCount));
+    meta.setProperty(EDGE_COUNT_PROP, String.valueOf(edgeCount));
+    labels.forEach((label, i) -> meta.setProperty(LABEL_PROP_PREFIX + i, label));
+    for (int k = 0; k < vertexKeys.size(); ++k)
+      meta.setProperty(VERTEX_KEY_PROP_PREFIX + k, vertexKeys.get(k));
+    for (int k = 0; k < edgeKeys.size(); ++k)
+      meta.setProperty(EDGE_KEY_PROP_PREFIX + k, edgeKeys.get(k));
+    try (OutputStream os = new FileOutputStream(metaFile)) {
+      meta.store(os, "CSR graph snapshot");
+    }
+    log.info("Wrote CSR snapshot of {} vertices and {} edges to {}", vertexCount, edgeCount, dir);
+  }
+
+  /// counting sort of edge indices by in-vertex
+  private static void writeInEdges(File dir, int[] inDegree, int edgeCount) throws IOException {
+    int[] next = new int[inDegree.length];
+    try (DataOutputStream inOffsets = openInts(dir, IN_OFFSETS)) {
+      int offset = 0;
+      for (int v = 0; v < inDegree.length; ++v) {
+        inOffsets.writeInt(offset);
+        next[v] = offset;
+        offset += inDegree[v];
+      }
+      inOffsets.writeInt(offset);
+    }
+
+    IntBuffer edgeIn = mapInts(new File(dir, EDGE_IN));
+    int[] inEdges = new int[edgeCount];
+    for (int e = 0; e < edgeCount; ++e)
+      inEdges[next[edgeIn.get(e)]++] = e;
+    try (DataOutputStream out = openInts(dir, IN_EDGES)) {
+      for (int e : inEdges)
+        out.writeInt(e);
+    }
+  }
+
+  private static DataOutputStream openInts(File dir, String name) throws IOException {
+    return new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(new File(dir, name)), 1 << 16));
+  }
+
+  /// writes strings in order, then a hash table of string -> index
+  private static class StringTableWriter implements Closeable {
+    private final File dir;
+    private final String name;
+    private final DataOutputStream offsets;
+    private final DataOutputStream bytes;
+    private int offset = 0;
+    private int[] hashCodes = new int[1024];
+    private int count = 0;
+
+    StringTableWriter(File dir, String name) throws IOException {
+      this.dir = dir;
+      this.name = name;
+      offsets = openInts(dir, name + OFFSETS_SUFFIX);
+      bytes = openInts(dir, name + BYTES_SUFFIX);
+    }
+
+    void add(String str) throws IOException {
+      byte[] b = str.getBytes(StandardCharsets.UTF_8);
+      offsets.writeInt(offset);
+      bytes.write(b);
+      offset = Math.addExact(offset, b.length);
+      if (count == hashCodes.length)
+        hashCodes = Arrays.copyOf(hashCodes, count * 2);
+      hashCodes[count++] = str.hashCode();
+    }
+
+    @Override
+    public void close() throws IOException {
+      offsets.writeInt(offset);
+      offsets.close();
+      bytes.close();
+
+      int[] table = new int[hashCapacity(count)];
+      int mask = table.length - 1;
+      for (int i = 0; i < count; ++i) {
+        int slot = hashSlot(hashCodes[i], mask);
+        while (table[slot] != 0)
+          slot = (slot + 1) & mask;
+        table[slot] = i + 1; // 0 marks an empty slot
+      }
+      hashCodes = null;
+      try (DataOutputStream out = openInts(dir, name + HASH_SUFFIX)) {
+        for (int t : table)
+          out.writeInt(t);
+      }
+    }
+  }
+
+  /// one column per property key, created when the key is first seen
+  private static class ColumnsWriter implements Closeable {
+    private final File dir;
+    private final String prefix;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+
+    ColumnsWriter(File dir, String prefix) {
+      this.dir = dir;
+      this.prefix = prefix;
+    }
+
+    void add(int elemIndex, Element elem) throws IOException {
+      for (String key : elem.getPropertyKeys()) {
+        if (IdGraph.ID.equals(key))
+          continue; // already stored as the element's id
+        Object value = elem.getProperty(key);
+        if (value == null)
+          continue;
+        Column col = columns.get(key);
+        if (col == null) {
+          col = new Column(prefix + columns.size());
+          columns.put(key, col);
+        }
+        col.add(elemIndex, encode(value));
+      }
+    }
+
+    List<String> getKeys() {
+      return new ArrayList<>(columns.keySet());
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (Column col : columns.values())
+        col.close();
+    }
+
+    private class Column implements Closeable {
+      final DataOutputStream elements;
+      final DataOutputStream offsets;
+      final DataOutputStream bytes;
+      int offset = 0;
+
+      Column(String name) throws IOException {
+        elements = openInts(dir, name + ELEMENTS_SUFFIX);
+        offsets = openInts(dir, name + OFFSETS_SUFFIX);
+        bytes = openInts(dir, name + BYTES_SUFFIX);
+      }
+
+      void add(int elemIndex, byte[] value) throws IOException {
+        elements.writeInt(elemIndex);
+        offsets.writeInt(offset);
+        bytes.write(value);
+        offset = Math.addExact(offset, value.length);
+      }
+
+      @Override
+      public void close() throws IOException {
+        offsets.writeInt(offset);
+        elements.close();
+        offsets.close();
+        bytes.close();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,86 @@
+package net.deelam.graphtools.csr;
+
+import java.util.Map;
+
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.Ints;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.VertexQuery;
+import com.tinkerpop.blueprints.util.DefaultVertexQuery;
+import com.tinkerpop.blueprints.util.StringFactory;
+import com.tinkerpop.blueprints.util.VerticesFromEdgesIterable;
+import com.tinkerpop.blueprints.util.wrappers.readonly.ReadOnlyTokens;
+
+/**
+ * @author deelam
+ */
+class CsrVertex extends CsrElement implements Vertex {
+
+  CsrVertex(CsrGraph graph, int index) {
+    super(graph, index);
+  }
+
+  @Override
+  protected CsrGraph.StringTable ids() {
+    return graph.vertexIds;
+  }
+
+  @Override
+  protected Map<String, CsrGraph.Column> columns() {
+    return graph.vertexColumns;
+  }
+
+  @Override
+  public Iterable<Edge> getEdges(Direction direction, String... labels) {
+    int[] labelIds = graph.getLabelIds(labels);
+    switch (direction) {
+      case OUT:
+        return getOutEdges(labelIds);
+      case IN:
+        return getInEdges(labelIds);
+      default:
+        return Iterables.concat(getOutEdges(labelIds), getInEdges(labelIds));
+    }
+  }
+
+  /// out-edges are stored contiguously
+  private Iterable<Edge> getOutEdges(int[] labelIds) {
+    Iterable<Integer> edges = CsrGraph.range(graph.outOffsets.get(index), graph.outOffsets.get(index + 1));
+    return toEdges(edges, labelIds);
+  }
+
+  private Iterable<Edge> getInEdges(int[] labelIds) {
+    Iterable<Integer> edges = Iterables.transform(
+        CsrGraph.range(graph.inOffsets.get(index), graph.inOffsets.get(index + 1)), graph.inEdges::get);
+    return toEdges(edges, labelIds);
+  }
+
+  private Iterable<Edge> toEdges(Iterable<Integer> edges, int[] labelIds) {
+    if (labelIds != null)
+      edges = Iterables.filter(edges, e -> Ints.contains(labelIds, graph.edgeLabel.get(e)));
+    return Iterables.transform(edges, e -> new CsrEdge(graph, e));
+  }
+
+  @Override
+  public Iterable<Vertex> getVertices(Direction direction, String... labels) {
+    return new VerticesFromEdgesIterable(this, direction, labels);
+  }
+
+  @Override
+  public VertexQuery query() {
+    return new DefaultVertexQuery(this);
+  }
+
+  @Override
+  public Edge addEdge(String label, Vertex inVertex) {
+    throw new UnsupportedOperationException(ReadOnlyTokens.MUTATE_ERROR_MESSAGE + ": " + this);
+  }
+
+  @Override
+  public String toString() {
+    return StringFactory.vertexString(this);
+  }
+
+}
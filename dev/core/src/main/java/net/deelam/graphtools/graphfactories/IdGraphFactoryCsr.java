@@ -0,0 +1,91 @@
+package net.deelam.graphtools.graphfactories;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.apache.commons.io.FileUtils;
+
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.IdGraphFactory;
+import net.deelam.graphtools.JavaSetPropertyMerger;
+import net.deelam.graphtools.PropertyMerger;
+import net.deelam.graphtools.ReadOnlyIdGraph;
+import net.deelam.graphtools.csr.CsrGraph;
+
+/**
+ * Opens snapshots written by CsrSnapshotWriter (or GraphExporter.exportCsr()), e.g., "csr:./target/snapshot",
+ * for jobs that only read their input graph. Graphs are always opened read-only (as ReadOnlyIdGraphs),
+ * even if the GraphUri is not read-only.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class IdGraphFactoryCsr implements IdGraphFactory {
+
+  public static final String SCHEME = "csr";
+
+  public static void register() {
+    GraphUri.register(new IdGraphFactoryCsr());
+  }
+
+  @Override
+  public String getScheme() {
+    return SCHEME;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <T extends KeyIndexableGraph> IdGraph<T> open(GraphUri gUri) {
+    File dir = new File(gUri.getUriPath());
+    log.debug("Opening CSR snapshot at {}", dir);
+    try {
+      return (IdGraph<T>) new ReadOnlyIdGraph(new CsrGraph(dir));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void delete(GraphUri gUri) throws IOException {
+    File pathFile = new File(gUri.getUriPath());
+    log.info("Deleting CSR snapshot at {}", pathFile);
+    FileUtils.deleteDirectory(pathFile);
+  }
+
+  @Override
+  public void backup(GraphUri srcGraphUri, GraphUri dstGraphUri) throws IOException {
+    File srcFile = new File(srcGraphUri.getUriPath());
+    File destFile = new File(dstGraphUri.getUriPath());
+    FileUtils.copyDirectory(srcFile, destFile);
+  }
+
+  @Override
+  public File getStoreDirectory(GraphUri gUri) {
+    return new File(gUri.getUriPath());
+  }
+
+  @Override
+  public boolean exists(GraphUri gUri) {
+    return CsrGraph.isSnapshot(new File(gUri.getUriPath()));
+  }
+
+  @Override
+  public Long countVertices(IdGraph<?> graph) {
+    return (long) ((CsrGraph) graph.getBaseGraph()).getVertexCount();
+  }
+
+  @Override
+  public Long countEdges(IdGraph<?> graph) {
+    return (long) ((CsrGraph) graph.getBaseGraph()).getEdgeCount();
+  }
+
+  @Override
+  public PropertyMerger createPropertyMerger() {
+    return new JavaSetPropertyMerger();
+  }
+}
@@ -19,6 +19,7 @@ import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
 
 import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.GraphHandleManager;
 import net.deelam.graphtools.GraphUri;
 import net.deelam.graphtools.IdGraphFactory;
 import net.deelam.graphtools.JsonPropertyMerger;
@@ -108,30 +109,17 @@ public class IdGraphFactoryNeo4j implements IdGraphFactory {
   }
 
   protected IdGraph<?> openNeo4jGraph(GraphUri gUri) {
-    long waitTime=0;
-    while(true){
-      try{
-        if(waitTime>0)
-          log.info("Trying to open Neo4j graph at path={}",  gUri.getConfig().getProperty(BLUEPRINTS_NEO4J_DIRECTORY));
-        IdGraph<Neo4jGraph> graph = new IdGraph<>(new Neo4jGraph(gUri.getConfig()));
-        if(waitTime>0)
-          log.info("Done waiting time={}; opened {}", waitTime, graph);
-        return graph;
-      }catch(RuntimeException re){
-        if(re.getCause().getCause() instanceof org.neo4j.kernel.lifecycle.LifecycleException){
-          log.warn("Graph already opened; waiting for it to close: {}", gUri);
-          try {
-            Thread.sleep(5000); // TODO: 4: sleeping may be unfair if some other Thread opens it before this wakes up.  Queue would be fair but only works within a single JVM.  
-            waitTime+=5;
-          } catch (InterruptedException e) {
-            e.printStackTrace();
-          }
-        }else{
-          log.error("Exception cause={}", re.getCause().getCause().getClass());
-          throw re;
-        }
-      }
-    }
+    // waits for other GraphUris in this JVM to close the graph; retries if opened by another process
+    return GraphHandleManager.getInstance().openWhenAvailable(gUri,
+        () -> new IdGraph<>(new Neo4jGraph(gUri.getConfig())),
+        IdGraphFactoryNeo4j::isAlreadyOpened);
+  }
+
+  private static boolean isAlreadyOpened(RuntimeException re) {
+    if (re.getCause() != null && re.getCause().getCause() instanceof org.neo4j.kernel.lifecycle.LifecycleException)
+      return true;
+    log.error("Exception cause={}", (re.getCause() == null) ? re : re.getCause().getCause());
+    return false;
   }
   
   public static void main1(String[] args) throws InterruptedException {
@@ -184,6 +172,12 @@ public class IdGraphFactoryNeo4j implements IdGraphFactory {
     }
   }
 
+  @Override
+  public boolean truncate(GraphUri gUri) throws IOException {
+    delete(gUri); // store directory is recreated when reopened
+    return true;
+  }
+
   @Override
   public boolean exists(GraphUri gUri) {
     File pathFile = new File(gUri.getUriPath());
@@ -198,6 +192,11 @@ public class IdGraphFactoryNeo4j implements IdGraphFactory {
     FileUtils.copyDirectory(srcFile, destFile);
   }
 
+  @Override
+  public File getStoreDirectory(GraphUri gUri) {
+    return new File(gUri.getUriPath());
+  }
+
   @Override
   public PropertyMerger createPropertyMerger() {
     return new Neo4jPropertyMerger();
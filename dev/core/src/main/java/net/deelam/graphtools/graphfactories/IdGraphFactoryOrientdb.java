@@ -73,6 +73,17 @@ public class IdGraphFactoryOrientdb implements IdGraphFactory {
     graph.shutdown();
   }
 
+  /// counts committed elements using OrientDB's cluster sizes
+  @Override
+  public Long countVertices(IdGraph<?> graph) {
+    return ((OrientGraph) graph.getBaseGraph()).countVertices();
+  }
+
+  @Override
+  public Long countEdges(IdGraph<?> graph) {
+    return ((OrientGraph) graph.getBaseGraph()).countEdges();
+  }
+
   private void setDefaultAuthentication(Configuration conf) {
     String username = conf.getString(CONFIG_PREFIX+"username");
     if(username==null){
@@ -105,12 +116,25 @@ public class IdGraphFactoryOrientdb implements IdGraphFactory {
     }
   }
 
+  @Override
+  public boolean truncate(GraphUri gUri) throws IOException {
+    if (getDBType(gUri) != DB_TYPE.plocal)
+      return false;
+    delete(gUri); // database is recreated when reopened
+    return true;
+  }
+
   @Override
   public void backup(GraphUri srcGraphUri, GraphUri dstGraphUri) throws IOException {
     File srcFile = new File(srcGraphUri.getUriPath());
     File destFile = new File(dstGraphUri.getUriPath());
     FileUtils.copyDirectory(srcFile, destFile);
   }
+
+  @Override
+  public File getStoreDirectory(GraphUri gUri) {
+    return (getDBType(gUri) == DB_TYPE.plocal) ? new File(gUri.getUriPath()) : null;
+  }
   
   @Override
   public boolean exists(GraphUri gUri) {
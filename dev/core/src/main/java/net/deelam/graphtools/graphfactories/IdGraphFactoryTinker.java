@@ -2,6 +2,7 @@ package net.deelam.graphtools.graphfactories;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 
 import lombok.extern.slf4j.Slf4j;
@@ -10,9 +11,11 @@ import net.deelam.graphtools.IdGraphFactory;
 import net.deelam.graphtools.JavaSetPropertyMerger;
 import net.deelam.graphtools.PrettyPrintXml;
 import net.deelam.graphtools.PropertyMerger;
+import net.deelam.graphtools.WalTinkerGraph;
 
 import org.apache.commons.io.FileUtils;
 
+import com.tinkerpop.blueprints.KeyIndexableGraph;
 import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
 import com.tinkerpop.blueprints.impls.tg.TinkerGraph.FileType;
 import com.tinkerpop.blueprints.util.GraphHelper;
@@ -30,21 +33,35 @@ public class IdGraphFactoryTinker implements IdGraphFactory {
     return "tinker";
   }
 
+  /// fileType (or secondary scheme, e.g., "tinker:wal:./target/tGraph") for a graph with a write-ahead log
+  public static final String WAL_FILE_TYPE = "wal";
+  /// log size in bytes at which a WAL graph is checkpointed
+  public static final String WAL_CHECKPOINT_BYTES = "walCheckpointBytes";
+
   @SuppressWarnings("unchecked")
   @Override
-  public IdGraph<TinkerGraph> open(GraphUri gUri) {
+  public <T extends KeyIndexableGraph> IdGraph<T> open(GraphUri gUri) {
     // check desired output format
     FileType fileType = getFileSaveType(gUri);
 
     // open graph
-    IdGraph<TinkerGraph> graph;
+    IdGraph<T> graph;
     if (fileType == null) {
       log.debug("Opening Tinker graph in memory");
-      graph = new IdGraph<>(new TinkerGraph());
+      graph = (IdGraph<T>) new IdGraph<>(new TinkerGraph());
+    } else if (isWal(gUri)) {
+      String path = gUri.getUriPath();
+      log.debug("Opening Tinker graph with write-ahead log at path={}", path);
+      long checkpointBytes = gUri.getConfig().getLong(WAL_CHECKPOINT_BYTES, 64L << 20);
+      try {
+        graph = (IdGraph<T>) new IdGraph<>(WalTinkerGraph.open(new File(path), checkpointBytes));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
     } else {
       String path = gUri.getUriPath();
       log.debug("Opening Tinker graph at path={} of type={}", path, fileType);
-      graph = new IdGraph<>(new TinkerGraph(path, fileType));
+      graph = (IdGraph<T>) new IdGraph<>(new TinkerGraph(path, fileType));
     }
     return graph;
   }
@@ -80,6 +97,8 @@ public class IdGraphFactoryTinker implements IdGraphFactory {
       if (fileTypeStr.equalsIgnoreCase("prettyGraphml")) {
         prettify = true;
         fileType = TinkerGraph.FileType.GRAPHML;
+      } else if (fileTypeStr.equalsIgnoreCase(WAL_FILE_TYPE)) {
+        fileType = TinkerGraph.FileType.JAVA; // not used by WalTinkerGraph, but indicates an on-disk graph
       } else {
         fileType = TinkerGraph.FileType.valueOf(fileTypeStr.toUpperCase());
       }
@@ -87,6 +106,13 @@ public class IdGraphFactoryTinker implements IdGraphFactory {
     return fileType;
   }
 
+  private boolean isWal(GraphUri gUri) {
+    String fileTypeStr = gUri.getUri().getScheme();
+    if (fileTypeStr == null)
+      fileTypeStr = gUri.getConfig().getString("fileType");
+    return WAL_FILE_TYPE.equalsIgnoreCase(fileTypeStr);
+  }
+
   @Override
   public void delete(GraphUri gUri) throws IOException {
     FileType fileType = getFileSaveType(gUri);
@@ -98,6 +124,12 @@ public class IdGraphFactoryTinker implements IdGraphFactory {
     FileUtils.deleteDirectory(pathFile);
   }
 
+  @Override
+  public boolean truncate(GraphUri gUri) throws IOException {
+    delete(gUri); // an in-memory graph is replaced when reopened
+    return true;
+  }
+
   @Override
   public void backup(GraphUri srcGraphUri, GraphUri dstGraphUri) throws IOException {
     FileType fileType = getFileSaveType(srcGraphUri);
@@ -111,6 +143,11 @@ public class IdGraphFactoryTinker implements IdGraphFactory {
     }
   }
 
+  @Override
+  public File getStoreDirectory(GraphUri gUri) {
+    return (getFileSaveType(gUri) == null) ? null : new File(gUri.getUriPath());
+  }
+
   @Override
   public boolean exists(GraphUri gUri) {
     FileType fileType = getFileSaveType(gUri);
@@ -0,0 +1,303 @@
+package net.deelam.graphtools.util;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Map with String keys for a few entries, stored as alternating keys and values in one array
+ * that is allocated on first put() and searched linearly.
+ * Once more than hashThreshold entries are added, entries are moved to a HashMap.
+ *
+ * If a keyInterner is provided, keys are replaced by its result before being stored
+ * (e.g., to share key Strings across many maps), and lookups first compare keys by reference.
+ *
+ * Not thread-safe.  Iterators do not detect concurrent modification.
+ *
+ * @author deelam
+ */
+public class ArrayMap<V> extends AbstractMap<String, V> implements Serializable {
+  private static final long serialVersionUID = 201610180101L;
+
+  private static final int INITIAL_CAPACITY = 2;
+
+  private final int hashThreshold;
+  private final transient UnaryOperator<String> keyInterner;
+
+  /// key at 2*i, value at 2*i+1
+  private Object[] table;
+  private int size;
+  private HashMap<String, V> hashed;
+
+  public ArrayMap(int hashThreshold, UnaryOperator<String> keyInterner) {
+    this.hashThreshold = hashThreshold;
+    this.keyInterner = keyInterner;
+  }
+
+  private int indexOf(Object key) {
+    for (int i = 0; i < size; ++i)
+      if (table[2 * i] == key)
+        return i;
+    if (key != null)
+      for (int i = 0; i < size; ++i)
+        if (key.equals(table[2 * i]))
+          return i;
+    return -1;
+  }
+
+  @Override
+  public int size() {
+    return (hashed == null) ? size : hashed.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return (hashed == null) ? indexOf(key) >= 0 : hashed.containsKey(key);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public V get(Object key) {
+    if (hashed != null)
+      return hashed.get(key);
+    int i = indexOf(key);
+    return (i < 0) ? null : (V) table[2 * i + 1];
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public V put(String key, V value) {
+    if (keyInterner != null)
+      key = keyInterner.apply(key);
+    if (hashed != null)
+      return hashed.put(key, value);
+
+    int i = indexOf(key);
+    if (i >= 0) {
+      V old = (V) table[2 * i + 1];
+      table[2 * i + 1] = value;
+      return old;
+    }
+
+    if (size == hashThreshold) {
+      hashed = new HashMap<>(2 * hashThreshold);
+      for (int j = 0; j < size; ++j)
+        hashed.put((String) table[2 * j], (V) table[2 * j + 1]);
+      table = null;
+      size = 0;
+      return hashed.put(key, value);
+    }
+
+    if (table == null) {
+      table = new Object[2 * Math.min(INITIAL_CAPACITY, hashThreshold)];
+    } else if (2 * size == table.length) {
+      Object[] newTable = new Object[2 * Math.min(2 * size, hashThreshold)];
+      System.arraycopy(table, 0, newTable, 0, 2 * size);
+      table = newTable;
+    }
+    table[2 * size] = key;
+    table[2 * size + 1] = value;
+    ++size;
+    return null;
+  }
+
+  @Override
+  public V remove(Object key) {
+    if (hashed != null)
+      return hashed.remove(key);
+    int i = indexOf(key);
+    return (i < 0) ? null : removeAt(i);
+  }
+
+  @SuppressWarnings("unchecked")
+  private V removeAt(int i) {
+    V old = (V) table[2 * i + 1];
+    int numMoved = size - i - 1;
+    if (numMoved > 0)
+      System.arraycopy(table, 2 * (i + 1), table, 2 * i, 2 * numMoved);
+    --size;
+    table[2 * size] = null;
+    table[2 * size + 1] = null;
+    return old;
+  }
+
+  @Override
+  public void clear() {
+    table = null;
+    size = 0;
+    hashed = null;
+  }
+
+  /// Views are not cached (unlike AbstractMap's) so they don't add to the footprint of each map.
+
+  @Override
+  public Set<String> keySet() {
+    if (hashed != null)
+      return hashed.keySet();
+    return new AbstractSet<String>() {
+      @Override
+      public Iterator<String> iterator() {
+        Iterator<Entry<String, V>> itr = new ArrayIterator();
+        return new Iterator<String>() {
+          public boolean hasNext() {
+            return itr.hasNext();
+          }
+
+          public String next() {
+            return itr.next().getKey();
+          }
+
+          public void remove() {
+            itr.remove();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return ArrayMap.this.size();
+      }
+
+      @Override
+      public boolean contains(Object o) {
+        return containsKey(o);
+      }
+    };
+  }
+
+  @Override
+  public Collection<V> values() {
+    if (hashed != null)
+      return hashed.values();
+    return new AbstractCollection<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        Iterator<Entry<String, V>> itr = new ArrayIterator();
+        return new Iterator<V>() {
+          public boolean hasNext() {
+            return itr.hasNext();
+          }
+
+          public V next() {
+            return itr.next().getValue();
+          }
+
+          public void remove() {
+            itr.remove();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return ArrayMap.this.size();
+      }
+    };
+  }
+
+  @Override
+  public Set<Entry<String, V>> entrySet() {
+    if (hashed != null)
+      return hashed.entrySet();
+    return new AbstractSet<Entry<String, V>>() {
+      @Override
+      public Iterator<Entry<String, V>> iterator() {
+        return new ArrayIterator();
+      }
+
+      @Override
+      public int size() {
+        return ArrayMap.this.size();
+      }
+    };
+  }
+
+  private class ArrayIterator implements Iterator<Entry<String, V>> {
+    int next = 0;
+    int last = -1;
+
+    @Override
+    public boolean hasNext() {
+      return next < size;
+    }
+
+    @Override
+    public Entry<String, V> next() {
+      if (next >= size)
+        throw new NoSuchElementException();
+      last = next++;
+      return new ArrayEntry(last);
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0)
+        throw new IllegalStateException();
+      removeAt(last);
+      next = last;
+      last = -1;
+    }
+  }
+
+  private class ArrayEntry implements Map.Entry<String, V> {
+    final int index;
+    final String key;
+
+    ArrayEntry(int index) {
+      this.index = index;
+      key = (String) table[2 * index];
+    }
+
+    @Override
+    public String getKey() {
+      return key;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V getValue() {
+      return (V) table[2 * index + 1];
+    }
+
+    @Override
+    public V setValue(V value) {
+      V old = getValue();
+      table[2 * index + 1] = value;
+      return old;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry))
+        return false;
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      Object v = getValue();
+      return key.equals(e.getKey()) && (v == null ? e.getValue() == null : v.equals(e.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      Object v = getValue();
+      return key.hashCode() ^ (v == null ? 0 : v.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + getValue();
+    }
+  }
+
+}
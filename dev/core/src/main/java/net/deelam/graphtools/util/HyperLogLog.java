@@ -0,0 +1,67 @@
+package net.deelam.graphtools.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.charset.StandardCharsets;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Estimates the number of distinct values added using 2^precision one-byte registers
+ * (Flajolet et al., "HyperLogLog"), with linear counting for small cardinalities.
+ * The relative standard error is about 1.04/sqrt(2^precision), e.g., 3% for precision 10.
+ *
+ * Not thread-safe; use merge() to combine sketches built by different threads.
+ *
+ * @author deelam
+ */
+public class HyperLogLog {
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private final int precision;
+  private final byte[] registers;
+
+  public HyperLogLog(int precision) {
+    checkArgument(precision >= 4 && precision <= 18, "precision must be between 4 and 18: " + precision);
+    this.precision = precision;
+    registers = new byte[1 << precision];
+  }
+
+  public void add(String value) {
+    addHash(HASH.hashString(value, StandardCharsets.UTF_8).asLong());
+  }
+
+  private void addHash(long hash) {
+    int index = (int) (hash >>> (64 - precision));
+    long rest = (hash << precision) | (1L << (precision - 1)); // sentinel bit bounds the rank
+    byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+    if (registers[index] < rank)
+      registers[index] = rank;
+  }
+
+  public void merge(HyperLogLog other) {
+    checkArgument(other.precision == precision, "Cannot merge sketches of different precision");
+    for (int i = 0; i < registers.length; ++i)
+      if (registers[i] < other.registers[i])
+        registers[i] = other.registers[i];
+  }
+
+  public long estimate() {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte r : registers) {
+      sum += 1.0 / (1L << r);
+      if (r == 0)
+        ++zeros;
+    }
+    double alpha = (m == 16) ? 0.673 : (m == 32) ? 0.697 : (m == 64) ? 0.709 : 0.7213 / (1 + 1.079 / m);
+    double estimate = alpha * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0)
+      estimate = m * Math.log((double) m / zeros); // linear counting
+    return Math.round(estimate);
+  }
+
+}
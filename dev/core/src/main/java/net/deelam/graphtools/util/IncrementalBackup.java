@@ -0,0 +1,233 @@
+package net.deelam.graphtools.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Snapshots a directory of store files (e.g., a Neo4j database), hard-linking files that are unchanged since
+ * a previous snapshot and copying the rest. A manifest in each snapshot records each file's size,
+ * modification time and content hash. A file is unchanged only if all three match: store files can be rewritten
+ * in place at the same size within the file system's modification time granularity, so the content of each
+ * candidate is hashed before it is linked or skipped on restore.
+ *
+ * Files may be shared by several snapshots, so they are made read-only; restore a snapshot rather than
+ * opening it as a graph. Files are copied when they cannot be linked, e.g., across file systems.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class IncrementalBackup {
+
+  public static final String MANIFEST_FILE = "backup.manifest";
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+  private static final String DIRECTORY_HASH = "-";
+
+  @Value
+  static class Entry {
+    long size;
+    long modified;
+    String hash;
+
+    boolean isDirectory() {
+      return DIRECTORY_HASH.equals(hash);
+    }
+  }
+
+  public static boolean isSnapshot(File dir) {
+    return new File(dir, MANIFEST_FILE).exists();
+  }
+
+  /**
+   * @param prevSnapshot snapshot whose unchanged files are linked, or null to copy all files
+   */
+  public void backup(File srcDir, File dstDir, File prevSnapshot) throws IOException {
+    if (dstDir.exists())
+      throw new IllegalStateException("Snapshot destination already exists: " + dstDir);
+    Map<String, Entry> prevManifest = (prevSnapshot == null) ? null : readManifest(prevSnapshot);
+
+    Path src = srcDir.toPath();
+    Path dst = dstDir.toPath();
+    Files.createDirectories(dst);
+    Map<String, Entry> manifest = new LinkedHashMap<>();
+    long linkedBytes = 0, copiedBytes = 0;
+    int linked = 0, copied = 0;
+    for (Path p : listRecursively(src)) {
+      String relPath = toRelPath(src, p);
+      Path target = dst.resolve(relPath);
+      BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+      if (attrs.isDirectory()) {
+        Files.createDirectories(target);
+        manifest.put(relPath, new Entry(0, attrs.lastModifiedTime().toMillis(), DIRECTORY_HASH));
+        continue;
+      }
+
+      Entry prev = (prevManifest == null) ? null : prevManifest.get(relPath);
+      if (prev != null && matches(p, attrs, prev) && link(target, prevSnapshot.toPath().resolve(relPath))) {
+        manifest.put(relPath, prev);
+        linkedBytes += prev.size;
+        ++linked;
+      } else {
+        Entry entry = copy(p, target, attrs.lastModifiedTime());
+        target.toFile().setReadOnly();
+        manifest.put(relPath, entry);
+        copiedBytes += entry.size;
+        ++copied;
+      }
+    }
+    writeManifest(dstDir, manifest);
+    log.info("Snapshot of {} at {}: linked {} files ({} bytes) from {}, copied {} files ({} bytes)", srcDir,
+        dstDir, linked, linkedBytes, prevSnapshot, copied, copiedBytes);
+  }
+
+  /**
+   * Makes dstDir the same as the snapshot, copying only files that differ and deleting files not in the snapshot.
+   */
+  public void restore(File snapshot, File dstDir) throws IOException {
+    Map<String, Entry> manifest = readManifest(snapshot);
+    Path dst = dstDir.toPath();
+    Files.createDirectories(dst);
+
+    List<Path> existing = listRecursively(dst);
+    existing.sort(Comparator.reverseOrder()); // files before their directories
+    for (Path p : existing) {
+      if (!manifest.containsKey(toRelPath(dst, p))) {
+        log.debug("Deleting {}", p);
+        FileUtils.forceDelete(p.toFile());
+      }
+    }
+
+    int restored = 0;
+    for (Map.Entry<String, Entry> e : manifest.entrySet()) {
+      Path target = dst.resolve(e.getKey());
+      Entry entry = e.getValue();
+      if (entry.isDirectory()) {
+        if (Files.isRegularFile(target))
+          Files.delete(target);
+        Files.createDirectories(target);
+      } else if (!Files.isRegularFile(target)
+          || !matches(target, Files.readAttributes(target, BasicFileAttributes.class), entry)) {
+        if (Files.isDirectory(target))
+          FileUtils.deleteDirectory(target.toFile());
+        Files.copy(snapshot.toPath().resolve(e.getKey()), target, StandardCopyOption.REPLACE_EXISTING);
+        Files.setLastModifiedTime(target, FileTime.fromMillis(entry.modified));
+        target.toFile().setWritable(true);
+        ++restored;
+      }
+    }
+    log.info("Restored {} of {} entries from snapshot {} to {}", restored, manifest.size(), snapshot, dstDir);
+  }
+
+  /**
+   * Deletes all but the latest keepCount snapshots in parentDir. Since unchanged files are hard-linked,
+   * deleting a snapshot doesn't affect the others.
+   * @return the deleted snapshots
+   */
+  public static List<File> prune(File parentDir, int keepCount) throws IOException {
+    File[] dirs = parentDir.listFiles(f -> f.isDirectory() && isSnapshot(f));
+    List<File> snapshots = new ArrayList<>();
+    if (dirs != null)
+      for (File dir : dirs)
+        snapshots.add(dir);
+    snapshots.sort(Comparator.comparingLong((File dir) -> new File(dir, MANIFEST_FILE).lastModified()).reversed());
+
+    List<File> deleted = new ArrayList<>();
+    for (File dir : snapshots.subList(Math.min(keepCount, snapshots.size()), snapshots.size())) {
+      log.info("Pruning snapshot {}", dir);
+      FileUtils.deleteDirectory(dir);
+      deleted.add(dir);
+    }
+    return deleted;
+  }
+
+  /// size and modification time are checked first so that only candidates are hashed
+  private static boolean matches(Path p, BasicFileAttributes attrs, Entry entry) throws IOException {
+    if (attrs.size() != entry.size || attrs.lastModifiedTime().toMillis() != entry.modified)
+      return false;
+    try (HashingInputStream in = new HashingInputStream(HASH, Files.newInputStream(p))) {
+      byte[] buffer = new byte[1 << 16];
+      while (in.read(buffer) >= 0)
+        ;
+      return in.hash().toString().equals(entry.hash);
+    }
+  }
+
+  private static boolean link(Path target, Path existing) {
+    try {
+      Files.createLink(target, existing);
+      return true;
+    } catch (IOException | UnsupportedOperationException e) {
+      log.debug("Could not link {}; copying instead: {}", target, e.toString());
+      return false;
+    }
+  }
+
+  /// copies while computing the content hash
+  private static Entry copy(Path src, Path target, FileTime modified) throws IOException {
+    long size;
+    String hash;
+    try (InputStream is = Files.newInputStream(src); HashingInputStream in = new HashingInputStream(HASH, is)) {
+      size = Files.copy(in, target);
+      hash = in.hash().toString();
+    }
+    Files.setLastModifiedTime(target, modified);
+    return new Entry(size, modified.toMillis(), hash);
+  }
+
+  private static List<Path> listRecursively(Path dir) throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      return paths.filter(p -> !p.equals(dir)).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static String toRelPath(Path dir, Path p) {
+    return dir.relativize(p).toString().replace(File.separatorChar, '/');
+  }
+
+  private static void writeManifest(File dir, Map<String, Entry> manifest) throws IOException {
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(new File(dir, MANIFEST_FILE).toPath(),
+        StandardCharsets.UTF_8))) {
+      manifest.forEach((relPath, e) -> out.println(e.size + "\t" + e.modified + "\t" + e.hash + "\t" + relPath));
+    }
+  }
+
+  static Map<String, Entry> readManifest(File snapshot) throws IOException {
+    if (!isSnapshot(snapshot))
+      throw new IOException("Not a snapshot (no " + MANIFEST_FILE + "): " + snapshot);
+    Map<String, Entry> manifest = new LinkedHashMap<>();
+    try (BufferedReader in = Files.newBufferedReader(new File(snapshot, MANIFEST_FILE).toPath(),
+        StandardCharsets.UTF_8)) {
+      for (String line = in.readLine(); line != null; line = in.readLine()) {
+        String[] fields = line.split("\t", 4);
+        manifest.put(fields[3], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]));
+      }
+    }
+    return manifest;
+  }
+
+}
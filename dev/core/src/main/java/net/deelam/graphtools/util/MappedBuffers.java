@@ -0,0 +1,57 @@
+package net.deelam.graphtools.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Releases memory-mapped buffers without waiting for them to be garbage collected, so that
+ * the mapped files' address space and page cache are freed when the file is no longer used.
+ *
+ * The buffer must not be accessed after it is unmapped; doing so crashes the JVM.
+ *
+ * @author deelam
+ */
+@Slf4j
+public final class MappedBuffers {
+
+  private MappedBuffers() {}
+
+  /**
+   * Unmaps a direct buffer (e.g., from FileChannel.map()).  If it cannot be unmapped on this JVM,
+   * it is released when garbage collected.
+   */
+  public static void unmap(ByteBuffer buffer) {
+    if (buffer == null || !buffer.isDirect())
+      return;
+    try {
+      // Java 9+
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+      return;
+    } catch (NoSuchMethodException e) {
+      // Java 8
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      log.debug("Could not unmap buffer: {}", e.toString());
+      return;
+    }
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        Method clean = cleaner.getClass().getMethod("clean");
+        clean.setAccessible(true);
+        clean.invoke(cleaner);
+      }
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      log.debug("Could not unmap buffer: {}", e.toString());
+    }
+  }
+
+}
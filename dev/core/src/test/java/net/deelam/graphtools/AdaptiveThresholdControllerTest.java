@@ -0,0 +1,104 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author deelam
+ */
+public class AdaptiveThresholdControllerTest {
+
+  static final long SEC = 1000000000L;
+
+  AdaptiveThresholdController controller;
+  Map<String, Number> metrics = new HashMap<>();
+
+  @Before
+  public void setUp() {
+    controller = new AdaptiveThresholdController(1000, 100, 4000);
+    controller.setGrowthFactor(2);
+    controller.setMinFreeHeapFraction(0);
+    controller.setMaxCommitMillis(1000);
+    controller.putMetrics(metrics);
+  }
+
+  @Test
+  public void testGrowsWhileThroughputImproves() {
+    controller.batchCompleted(1000, SEC, SEC / 10);
+    assertEquals(2000, controller.getThreshold());
+    controller.batchCompleted(2000, SEC, SEC / 10);
+    assertEquals(4000, controller.getThreshold());
+    controller.batchCompleted(4000, SEC, SEC / 10);
+    assertEquals(4000, controller.getThreshold()); // maxThreshold
+    assertEquals(2L, metrics.get("THRESHOLD_INCREASES").longValue());
+    assertEquals(4000L, metrics.get("RECORDS_PER_SEC").longValue());
+  }
+
+  @Test
+  public void testReversesWhenThroughputDrops() {
+    controller.batchCompleted(1000, SEC, SEC / 10);
+    assertEquals(2000, controller.getThreshold());
+    controller.batchCompleted(2000, 4 * SEC, SEC / 10); // slower
+    assertEquals(1000, controller.getThreshold());
+    controller.batchCompleted(1000, SEC, SEC / 10); // faster, so keep shrinking
+    assertEquals(500, controller.getThreshold());
+    assertEquals(2L, metrics.get("THRESHOLD_DECREASES").longValue());
+    assertEquals(500L, metrics.get("THRESHOLD").longValue());
+  }
+
+  @Test
+  public void testShrinksOnSlowCommit() {
+    controller.batchCompleted(1000, 10 * SEC, 5 * SEC);
+    assertEquals(500, controller.getThreshold());
+    controller.batchCompleted(500, 10 * SEC, 5 * SEC);
+    controller.batchCompleted(500, 10 * SEC, 5 * SEC);
+    controller.batchCompleted(500, 10 * SEC, 5 * SEC);
+    assertEquals(100, controller.getThreshold()); // minThreshold
+    assertEquals(5000L, metrics.get("COMMIT_MILLIS").longValue());
+  }
+
+  @Test
+  public void testGrowsAgainAfterHealthyBatches() {
+    controller.setHealthyBatchesToRegrow(3);
+    controller.batchCompleted(1000, 10 * SEC, 5 * SEC);
+    assertEquals(500, controller.getThreshold());
+    controller.batchCompleted(500, SEC, SEC / 10);
+    controller.batchCompleted(500, SEC, SEC / 10);
+    assertEquals(500, controller.getThreshold()); // kept while recovering
+    controller.batchCompleted(500, SEC, SEC / 10);
+    assertEquals(1000, controller.getThreshold());
+    controller.batchCompleted(1000, SEC, SEC / 10);
+    assertEquals(2000, controller.getThreshold());
+  }
+
+  @Test
+  public void testShrinksOnLowHeap() {
+    double[] freeHeap = {0.1};
+    controller.setMinFreeHeapFraction(0.2);
+    controller.setHealthyBatchesToRegrow(1);
+    controller.setFreeHeapFraction(() -> freeHeap[0]);
+    controller.batchCompleted(1000, SEC, SEC / 10);
+    assertEquals(500, controller.getThreshold());
+    assertEquals(10L, metrics.get("FREE_HEAP_PERCENT").longValue());
+    freeHeap[0] = 0.5;
+    controller.batchCompleted(500, SEC, SEC / 10);
+    assertEquals(1000, controller.getThreshold());
+  }
+
+  @Test
+  public void testFreeHeapFractionAfterGc() {
+    double free = AdaptiveThresholdController.freeHeapFractionAfterGc();
+    assertTrue(free > 0 && free <= 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidBounds() {
+    new AdaptiveThresholdController(10, 20, 10);
+  }
+}
@@ -0,0 +1,133 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+
+import net.deelam.graphtools.graphfactories.IdGraphFactoryTinker;
+
+/**
+ * @author deelam
+ */
+public class CachingIdGraphTest {
+
+  GraphUri gUri;
+  CachingIdGraph<?> graph;
+
+  @Before
+  public void setUp() throws IOException {
+    IdGraphFactoryTinker.register();
+    gUri = new GraphUri("tinker:/?idCacheSize=2");
+    graph = (CachingIdGraph<?>) gUri.createNewIdGraph(true);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    gUri.shutdown();
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    Vertex a = graph.addVertex("a");
+    graph.getBaseGraph().addVertex(null).setProperty(CachingIdGraph.ID, "b"); // not cached
+    long hits = graph.getVertexCacheStats().hitCount();
+    long misses = graph.getVertexCacheStats().missCount();
+
+    assertSame(a, graph.getVertex("a"));
+    assertEquals(hits + 1, graph.getVertexCacheStats().hitCount());
+
+    Vertex b = graph.getVertex("b");
+    assertEquals("b", b.getId());
+    assertEquals(misses + 1, graph.getVertexCacheStats().missCount());
+    assertSame(b, graph.getVertex("b"));
+    assertEquals(hits + 2, graph.getVertexCacheStats().hitCount());
+
+    assertNull(graph.getVertex("none"));
+    assertEquals(misses + 2, graph.getVertexCacheStats().missCount());
+  }
+
+  @Test
+  public void testBounded() {
+    for (int i = 0; i < 10; ++i)
+      graph.addVertex("v" + i);
+    long misses = graph.getVertexCacheStats().missCount();
+    for (int i = 0; i < 10; ++i)
+      assertEquals("v" + i, graph.getVertex("v" + i).getId());
+    assertTrue(graph.getVertexCacheStats().missCount() - misses >= 8);
+  }
+
+  @Test
+  public void testInvalidation() {
+    Vertex a = graph.addVertex("a");
+    Vertex b = graph.addVertex("b");
+    Edge e = graph.addEdge("e", a, b, "knows");
+    assertSame(e, graph.getEdge("e"));
+
+    graph.removeVertex(a);
+    assertNull(graph.getVertex("a"));
+    assertNull(graph.getEdge("e"));
+
+    graph.getVertex("b");
+    long hits = graph.getVertexCacheStats().hitCount();
+    graph.rollback();
+    graph.getVertex("b");
+    assertEquals(hits, graph.getVertexCacheStats().hitCount());
+  }
+
+  @Test
+  public void testMetrics() {
+    Map<String, Number> metrics = new HashMap<>();
+    graph.putMetrics(metrics);
+    long hits = metrics.get("ID_CACHE_VERTEX_HITS").longValue();
+    long misses = metrics.get("ID_CACHE_VERTEX_MISSES").longValue();
+    graph.addVertex("a");
+    graph.getVertex("a");
+    graph.getVertex("none");
+    assertEquals(hits + 1, metrics.get("ID_CACHE_VERTEX_HITS").longValue()); // updated as the graph is used
+    assertEquals(misses + 2, metrics.get("ID_CACHE_VERTEX_MISSES").longValue()); // addVertex() checks the id is new
+  }
+
+  /// transactional graph whose elements, like Titan's, are not kept across transactions
+  static class TransactionalTinkerGraph extends TinkerGraph implements TransactionalGraph {
+    @Override
+    public void commit() {}
+
+    @Override
+    public void rollback() {}
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void stopTransaction(Conclusion conclusion) {}
+  }
+
+  @Test
+  public void testInvalidatedOnCommitForTransactionBoundElements() {
+    CachingIdGraph<?> txGraph = new CachingIdGraph<>(new TransactionalTinkerGraph(), 10, 0);
+    txGraph.addVertex("a");
+    txGraph.commit();
+    long hits = txGraph.getVertexCacheStats().hitCount();
+    txGraph.getVertex("a");
+    assertEquals(hits, txGraph.getVertexCacheStats().hitCount());
+
+    graph.addVertex("a"); // non-transactional TinkerGraph: kept
+    graph.commit();
+    hits = graph.getVertexCacheStats().hitCount();
+    graph.getVertex("a");
+    assertEquals(hits + 1, graph.getVertexCacheStats().hitCount());
+  }
+
+}
@@ -0,0 +1,96 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.Direction;
+
+/**
+ * @author deelam
+ */
+public class CompactGraphRecordTest {
+
+  CompactGraphRecord.Factory factory = new CompactGraphRecord.Factory();
+
+  @Test
+  public void testPropertiesPastHashThreshold() {
+    GraphRecord gr = factory.create("v1", "person");
+    Map<String, Object> expected = new HashMap<>();
+    expected.put("_type", "person");
+    for (int i = 0; i < 40; ++i) {
+      gr.setProperty("key" + i, i);
+      expected.put("key" + i, i);
+      assertEquals(expected, gr.getProps());
+    }
+    assertEquals(expected.keySet(), gr.getPropertyKeys());
+    assertEquals(Integer.valueOf(7), gr.removeProperty("key7"));
+    assertNull(gr.getProperty("key7"));
+    assertEquals(40, gr.getProps().size());
+    gr.clearProperties();
+    assertTrue(gr.getProps().isEmpty());
+  }
+
+  @Test
+  public void testKeysAndLabelsShared() {
+    GraphRecord gr1 = factory.create("v1");
+    GraphRecord gr2 = factory.create("v2");
+    gr1.setProperty(new String("name"), "a");
+    gr2.setProperty(new String("name"), "b");
+    assertSame(gr1.getPropertyKeys().iterator().next(), gr2.getPropertyKeys().iterator().next());
+
+    GraphRecordEdge e1 = factory.createEdge("e1", new String("knows"), "v1", "v2");
+    GraphRecordEdge e2 = factory.createEdge("e2", new String("knows"), "v2", "v1");
+    assertSame(e1.getLabel(), e2.getLabel());
+    assertEquals(2, factory.getDictionarySize());
+  }
+
+  @Test
+  public void testEdges() {
+    GraphRecord gr = factory.create("v0");
+    for (int i = 1; i <= 20; ++i) {
+      GraphRecordEdge e = factory.createEdge("e" + i, "knows", "v0", "v" + i);
+      e.setProperty("weight", i);
+      gr.addEdge(e);
+    }
+    gr.addEdge(factory.createEdge("in1", "knows", "v1", "v0"));
+    assertEquals(20, gr.getOutEdges().size());
+    assertEquals(1, gr.getInEdges().size());
+    assertEquals(20, Iterables.size(gr.getEdges(Direction.OUT, "knows")));
+    assertEquals(Integer.valueOf(5), gr.getOutEdge("e5").getProperty("weight"));
+    assertEquals("v1", gr.getVertices(Direction.IN).iterator().next().getId());
+
+    Iterator<?> itr = gr.getInEdges().values().iterator();
+    itr.next();
+    itr.remove();
+    assertTrue(gr.getInEdges().isEmpty());
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws IOException {
+    GraphRecord gr = factory.create("v1", "person");
+    gr.setProperty("name", "a");
+    gr.addEdge(factory.createEdge("e1", "knows", "v1", "v2"));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GraphRecordBinaryIO.writeRecord(gr, new DataOutputStream(bytes));
+    GraphRecord gr2 = GraphRecordBinaryIO.readRecord(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), factory);
+    assertTrue(gr2 instanceof CompactGraphRecord);
+    assertEquals(gr.getProps(), gr2.getProps());
+    assertEquals(gr.getOutEdges().keySet(), gr2.getOutEdges().keySet());
+  }
+}
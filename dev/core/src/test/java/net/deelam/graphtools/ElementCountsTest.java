@@ -0,0 +1,120 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import net.deelam.graphtools.graphfactories.IdGraphFactoryTinker;
+
+/**
+ * @author deelam
+ */
+public class ElementCountsTest {
+
+  GraphUri gUri;
+  IdGraph<?> graph;
+
+  @Before
+  public void setUp() throws IOException {
+    IdGraphFactoryTinker.register();
+    gUri = new GraphUri("tinker:/");
+    graph = gUri.createNewIdGraph(true);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    gUri.shutdown();
+  }
+
+  private void addNodesAndEdges(ElementCounts counts) {
+    Vertex a = graph.addVertex("a");
+    a.setProperty("type", "person");
+    Vertex b = graph.addVertex("b");
+    b.setProperty("type", "person");
+    Vertex c = graph.addVertex("c");
+    c.setProperty("type", "company");
+    counts.nodeAdded(a);
+    counts.nodeAdded(b);
+    counts.nodeAdded(c);
+    counts.edgeAdded(graph.addEdge("ab", a, b, "knows"));
+    counts.edgeAdded(graph.addEdge("ac", a, c, "worksAt"));
+    counts.edgeAdded(graph.addEdge("bc", b, c, "worksAt"));
+    counts.applyTo(graph);
+  }
+
+  private void assertCountsMatchGraph() {
+    assertEquals(Iterables.size(graph.getVertices()), ElementCounts.getNodeCount(graph).longValue());
+    assertEquals(Iterables.size(graph.getEdges()), ElementCounts.getEdgeCount(graph).longValue());
+  }
+
+  @Test
+  public void testMaintainedCounts() {
+    assertNull(ElementCounts.getNodeCount(graph));
+    assertNull(ElementCounts.forGraph(graph));
+    assertTrue(ElementCounts.init(graph, "type"));
+
+    addNodesAndEdges(ElementCounts.forGraph(graph));
+    assertCountsMatchGraph();
+    assertEquals(4, GraphUtils.getNodeCount(graph, true));
+    assertEquals(2, ElementCounts.getNodeTypeCounts(graph).get("person").longValue());
+    assertEquals(1, ElementCounts.getNodeTypeCounts(graph).get("company").longValue());
+    assertEquals(2, ElementCounts.getEdgeLabelCounts(graph).get("worksAt").longValue());
+
+    // merging b into a removes b and the self-edge
+    GraphUtils.mergeNodesAndEdges(graph.getVertex("b"), graph.getVertex("a"), true, graph,
+        new JavaSetPropertyMerger());
+    assertCountsMatchGraph();
+    assertEquals(1, ElementCounts.getNodeTypeCounts(graph).get("person").longValue());
+    assertEquals(0, ElementCounts.getEdgeLabelCounts(graph).get("knows").longValue());
+
+    GraphUtils.copyEdges(graph.getVertex("a"), graph.getVertex("c"), "copy:", true, graph);
+    assertCountsMatchGraph();
+  }
+
+  @Test
+  public void testCountsAreOptIn() {
+    ElementCounts.init(graph, null);
+    graph.addVertex("a"); // not counted
+    assertEquals(2, GraphUtils.getNodeCount(graph));
+    assertEquals(1, GraphUtils.getNodeCount(graph, true));
+  }
+
+  @Test
+  public void testCountsBufferedWithWrites() {
+    ElementCounts.init(graph, null);
+    WriteBehindGraph wbGraph = new WriteBehindGraph(graph);
+    ElementCounts counts = ElementCounts.forGraph(wbGraph);
+    counts.nodeAdded(wbGraph.addVertex("a"));
+    counts.applyTo(wbGraph);
+    assertEquals(1, ElementCounts.getNodeCount(graph).longValue()); // not flushed yet
+    assertEquals(2, ElementCounts.getNodeCount(wbGraph).longValue());
+    wbGraph.flush();
+    assertCountsMatchGraph();
+  }
+
+  @Test
+  public void testInitOnlyIfEmpty() {
+    ElementCounts.init(graph, null);
+    ElementCounts.invalidate(graph);
+    graph.addVertex("a");
+    assertFalse(ElementCounts.init(graph, null));
+    assertNull(ElementCounts.getNodeCount(graph));
+    assertEquals(2, GraphUtils.getNodeCount(graph, true)); // by iterating
+
+    ElementCounts.recount(graph, null);
+    assertCountsMatchGraph();
+    assertTrue(ElementCounts.getNodeTypeCounts(graph).isEmpty());
+  }
+
+}
@@ -0,0 +1,160 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import net.deelam.graphtools.graphfactories.IdGraphFactoryTinker;
+
+/**
+ * @author deelam
+ */
+public class GraphHandleManagerTest {
+
+  static final String URI = "tinker:./target/handleManagerTest?sharedHandle=true";
+
+  GraphHandleManager mgr = GraphHandleManager.getInstance();
+  ExecutorService threads = Executors.newCachedThreadPool();
+
+  @Before
+  public void setUp() throws IOException {
+    IdGraphFactoryTinker.register();
+    GraphUri gUri = new GraphUri(URI);
+    gUri.createNewIdGraph(true);
+    gUri.shutdown();
+  }
+
+  @After
+  public void tearDown() {
+    threads.shutdownNow();
+    mgr.closeIdle(new GraphUri(URI));
+    mgr.setIdleTimeoutMillis(30000);
+    mgr.setMinRetryMillis(100);
+  }
+
+  @Test
+  public void testSharedReaders() {
+    mgr.closeIdle(new GraphUri(URI)); // opened for writing by setUp()
+    GraphUri r1 = new GraphUri(URI).readOnly();
+    GraphUri r2 = new GraphUri(URI).readOnly();
+    IdGraph<?> g1 = r1.openIdGraph();
+    IdGraph<?> g2 = r2.openIdGraph();
+    assertSame(g1, g2);
+    assertEquals(2, mgr.getRefCount(r1));
+
+    r1.shutdown();
+    r2.shutdown();
+    assertEquals(0, mgr.getRefCount(r1));
+    assertTrue(mgr.isOpen(r1)); // kept open until idle timeout
+
+    GraphUri w = new GraphUri(URI);
+    IdGraph<?> wg = w.openIdGraph();
+    assertNotSame(g1, wg); // reopened since readers opened it read-only
+    w.shutdown();
+
+    GraphUri r3 = new GraphUri(URI).readOnly();
+    assertSame(wg, r3.openIdGraph()); // readers share the writer's graph
+    r3.shutdown();
+
+    mgr.closeIdle(w);
+    assertFalse(mgr.isOpen(w));
+  }
+
+  @Test
+  public void testHandlesRemovedWhenClosed() throws IOException {
+    mgr.closeIdle(new GraphUri(URI));
+    int handleCount = mgr.getHandleCount();
+    GraphUri gUri = new GraphUri("tinker:./target/handleManagerTest2?sharedHandle=true");
+    assertFalse(mgr.isOpen(gUri));
+    assertEquals(0, mgr.getRefCount(gUri));
+    assertEquals(handleCount, mgr.getHandleCount());
+
+    gUri.openIdGraph();
+    assertEquals(handleCount + 1, mgr.getHandleCount());
+    gUri.shutdown();
+    mgr.closeIdle(gUri);
+    assertEquals(handleCount, mgr.getHandleCount());
+    gUri.delete();
+  }
+
+  @Test
+  public void testIdleTimeout() throws InterruptedException {
+    mgr.setIdleTimeoutMillis(50);
+    GraphUri r = new GraphUri(URI).readOnly();
+    r.openIdGraph();
+    r.shutdown();
+    for (int i = 0; i < 100 && mgr.isOpen(r); ++i)
+      Thread.sleep(20);
+    assertFalse(mgr.isOpen(r));
+  }
+
+  @Test
+  public void testWriterQueuedFairly() throws Exception {
+    GraphUri r1 = new GraphUri(URI).readOnly();
+    r1.openIdGraph();
+
+    GraphUri w = new GraphUri(URI);
+    Future<?> writer = threads.submit(() -> w.openIdGraph());
+    assertBlocked(writer);
+
+    // reader arriving after the writer waits for it
+    GraphUri r2 = new GraphUri(URI).readOnly();
+    Future<?> reader = threads.submit(() -> r2.openIdGraph());
+    assertBlocked(reader);
+
+    r1.shutdown();
+    writer.get(5, TimeUnit.SECONDS);
+    assertBlocked(reader);
+
+    threads.submit(() -> w.shutdown()).get(5, TimeUnit.SECONDS);
+    reader.get(5, TimeUnit.SECONDS);
+    r2.shutdown();
+  }
+
+  private static void assertBlocked(Future<?> f) throws Exception {
+    try {
+      f.get(200, TimeUnit.MILLISECONDS);
+      throw new AssertionError("Expected to be blocked");
+    } catch (TimeoutException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testOpenWhenAvailable() throws Exception {
+    mgr.setMinRetryMillis(60000); // so only a close wakes up the waiting opener
+    GraphUri gUri = new GraphUri("tinker:./target/openWhenAvailableTest");
+    AtomicBoolean opened = new AtomicBoolean();
+    Runnable open = () -> mgr.openWhenAvailable(gUri, () -> {
+      if (!opened.compareAndSet(false, true))
+        throw new IllegalStateException("already opened");
+      return opened;
+    }, re -> true);
+
+    open.run();
+    Future<?> second = threads.submit(open);
+    assertBlocked(second);
+
+    opened.set(false);
+    mgr.graphClosed(gUri);
+    second.get(5, TimeUnit.SECONDS);
+    assertTrue(opened.get());
+  }
+
+}
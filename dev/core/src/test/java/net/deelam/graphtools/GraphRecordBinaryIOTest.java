@@ -0,0 +1,56 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+
+/**
+ * @author deelam
+ */
+public class GraphRecordBinaryIOTest {
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    GraphRecordImpl.Factory factory = new GraphRecordImpl.Factory();
+    GraphRecord gr = factory.create("v1");
+    gr.setProperty("str", "abc");
+    gr.setProperty("int", -123456);
+    gr.setProperty("long", Long.MAX_VALUE);
+    gr.setProperty("double", 1.5);
+    gr.setProperty("date", new Date(1000L));
+    gr.setProperty("set", new LinkedHashSet<>(Arrays.asList("b", "a", 3)));
+    gr.setProperty("ints", new int[] {1, 2, 300});
+    gr.setProperty("strs", new String[] {"x", "y"});
+    GraphRecordEdge e = factory.createEdge("e1", "knows", "v1", "v2");
+    e.setProperty("weight", 2.0f);
+    gr.addEdge(e);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GraphRecordBinaryIO.writeRecord(gr, new DataOutputStream(bytes));
+    GraphRecord gr2 = GraphRecordBinaryIO.readRecord(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), factory);
+
+    assertEquals("v1", gr2.getStringId());
+    assertEquals(gr.getPropertyKeys(), gr2.getPropertyKeys());
+    for (String key : Arrays.asList("str", "int", "long", "double", "date", "set"))
+      assertEquals(key, (Object) gr.getProperty(key), (Object) gr2.getProperty(key));
+    assertArrayEquals((int[]) gr.getProperty("ints"), (int[]) gr2.getProperty("ints"));
+    assertArrayEquals((String[]) gr.getProperty("strs"), (String[]) gr2.getProperty("strs"));
+
+    assertEquals(0, gr2.getInEdges().size());
+    GraphRecordEdge e2 = (GraphRecordEdge) gr2.getOutEdges().get("e1");
+    assertEquals("knows", e2.getLabel());
+    assertEquals("v2", e2.getInVertexStringId());
+    assertEquals(2.0f, (Float) e2.getProperty("weight"), 0);
+  }
+}
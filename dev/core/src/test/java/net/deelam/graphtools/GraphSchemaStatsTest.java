@@ -0,0 +1,114 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.commons.lang3.mutable.MutableInt;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import net.deelam.graphtools.util.HyperLogLog;
+
+/**
+ * @author deelam
+ */
+public class GraphSchemaStatsTest {
+
+  static final int PEOPLE = 2000;
+
+  IdGraph<TinkerGraph> graph;
+
+  @Before
+  public void setUp() {
+    graph = new IdGraph<>(new TinkerGraph());
+    Vertex company = graph.addVertex("acme");
+    company.setProperty("type", "company");
+    for (int i = 0; i < PEOPLE; ++i) {
+      Vertex v = graph.addVertex("p" + i);
+      v.setProperty("type", "person");
+      v.setProperty("name", "name" + (i % 500));
+      v.setProperty("age", (i % 2 == 0) ? Integer.valueOf(i % 90) : String.valueOf(i % 90));
+      Edge e = graph.addEdge("e" + i, v, company, "worksAt");
+      e.setProperty("since", 1990 + i % 20);
+    }
+    graph.addVertex("loner").setProperty("type", "person");
+  }
+
+  private static int count(Graph schema, String id, String countKey) {
+    MutableInt count = schema.getVertex(id).getProperty(countKey);
+    return (count == null) ? 0 : count.intValue();
+  }
+
+  private void assertSchema(Graph schema) {
+    assertEquals(PEOPLE, count(schema, "person_OUT", "__NODES_WITH_OUT_EDGES"));
+    assertEquals(PEOPLE, count(schema, "person_OUT", "__NODES_WITH_OUT_EDGES_ONLY"));
+    assertEquals(1, count(schema, "person_null", "__NODES_WITH_NO_EDGES"));
+    assertEquals(PEOPLE, count(schema, "company_IN", "__IN_EDGES"));
+    assertEquals(1, count(schema, "company_IN", "__NODES_WITH_IN_EDGES"));
+
+    Vertex personV = schema.getVertex("person_OUT");
+    String ageTypes = personV.getProperty("age");
+    assertTrue(ageTypes, ageTypes.contains("Integer") && ageTypes.contains("String"));
+    Map<String, Long> histogram = personV.getProperty("age" + GraphSchemaStats.VALUE_TYPES_SUFFIX);
+    assertEquals(PEOPLE / 2, histogram.get("Integer").longValue());
+    assertEquals(PEOPLE / 2, histogram.get("String").longValue());
+
+    long distinctNames = personV.getProperty("name" + GraphSchemaStats.DISTINCT_SUFFIX);
+    assertEquals(500, distinctNames, 50);
+
+    Edge typeE = schema.getEdge("person_OUT->company_IN");
+    assertNotNull(typeE);
+    assertEquals("worksAt", typeE.getLabel());
+    assertEquals(PEOPLE, ((MutableInt) typeE.getProperty("__EDGES")).intValue());
+    assertEquals(20, (long) typeE.getProperty("since" + GraphSchemaStats.DISTINCT_SUFFIX), 2);
+  }
+
+  @Test
+  public void testSingleThread() throws IOException {
+    assertSchema(new GraphSchemaStats("type").getSchema(graph));
+  }
+
+  @Test
+  public void testParallel() throws IOException {
+    GraphSchemaStats stats = new GraphSchemaStats("type");
+    stats.setThreads(4);
+    stats.setBatchSize(100);
+    assertSchema(stats.getSchema(graph));
+  }
+
+  @Test
+  public void testSampled() throws IOException {
+    GraphSchemaStats stats = new GraphSchemaStats("type");
+    stats.setSampleRate(0.25);
+    Graph schema = stats.getSchema(graph);
+    int sampled = count(schema, "person_OUT", "__NODES_WITH_OUT_EDGES");
+    assertTrue("sampled=" + sampled, sampled > PEOPLE / 8 && sampled < PEOPLE / 2);
+  }
+
+  @Test
+  public void testHyperLogLog() {
+    HyperLogLog hll = new HyperLogLog(12);
+    HyperLogLog hll2 = new HyperLogLog(12);
+    for (int i = 0; i < 100000; ++i)
+      ((i < 60000) ? hll : hll2).add("value" + i);
+    hll2.add("value0");
+    hll.merge(hll2);
+    assertEquals(100000, hll.estimate(), 100000 * 0.05);
+
+    HyperLogLog small = new HyperLogLog(10);
+    for (int i = 0; i < 10; ++i)
+      small.add("v" + (i % 5));
+    assertEquals(5, small.estimate());
+  }
+
+}
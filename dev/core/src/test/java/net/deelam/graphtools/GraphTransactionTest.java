@@ -1,6 +1,7 @@
 package net.deelam.graphtools;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
@@ -147,4 +148,24 @@ public class GraphTransactionTest {
     }
   }
 
+  @Test
+  public void testCommitIfFullWithController() {
+    AdaptiveThresholdController controller = new AdaptiveThresholdController(2, 2, 8);
+    controller.setGrowthFactor(2);
+    controller.setMinFreeHeapFraction(0);
+    int tx = GraphTransaction.begin(outGraph, controller);
+    int commits = 0;
+    for (int i = 0; i < 20; ++i) {
+      proc();
+      if (GraphTransaction.commitIfFull(tx))
+        ++commits;
+    }
+    GraphTransaction.commit(tx);
+    assertEquals(21, Iterables.size(outGraph.getVertices()));
+    // threshold changes after each commit but stays within bounds
+    assertTrue(commits >= 20 / 8 && commits <= 20 / 2);
+    assertTrue(controller.getThreshold() >= 2 && controller.getThreshold() <= 8);
+    GraphTransaction.checkTransactionsClosed();
+  }
+
 }
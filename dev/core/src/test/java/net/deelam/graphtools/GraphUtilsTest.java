@@ -0,0 +1,133 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import net.deelam.graphtools.graphfactories.IdGraphFactoryTinker;
+
+/**
+ * @author deelam
+ */
+public class GraphUtilsTest {
+
+  GraphUri gUri;
+  IdGraph<?> graph;
+
+  @Before
+  public void setUp() throws IOException {
+    IdGraphFactoryTinker.register();
+    gUri = new GraphUri("tinker:/");
+    graph = gUri.createNewIdGraph(true);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    gUri.shutdown();
+  }
+
+  @Test
+  public void testResolveMergeTargets() {
+    Map<String, String> plan = new HashMap<>();
+    plan.put("a", "b"); // chain a->b->c
+    plan.put("b", "c");
+    plan.put("x", "y"); // cycle x->y->z->x
+    plan.put("y", "z");
+    plan.put("z", "x");
+    plan.put("w", "y");
+    plan.put("s", "s");
+
+    Map<String, String> targets = GraphUtils.resolveMergeTargets(plan);
+    assertEquals(ImmutableMap.builder().put("a", "c").put("b", "c")
+        .put("x", "w").put("y", "w").put("z", "w").build(), new HashMap<>(targets));
+  }
+
+  @Test
+  public void testBulkMerge() {
+    for (String id : new String[] {"a", "b", "c", "d"}) {
+      Vertex v = graph.addVertex(id);
+      v.setProperty("name", id);
+    }
+    graph.addEdge("ab", graph.getVertex("a"), graph.getVertex("b"), "knows");
+    graph.addEdge("bd", graph.getVertex("b"), graph.getVertex("d"), "knows");
+    Edge cd = graph.addEdge("cd", graph.getVertex("c"), graph.getVertex("d"), "knows");
+    cd.setProperty("since", 2000);
+    graph.addEdge("dc", graph.getVertex("d"), graph.getVertex("c"), "knows");
+    graph.commit();
+    ElementCounts.recount(graph, null);
+
+    Map<String, String> plan = ImmutableMap.of("a", "b", "b", "c");
+    int merged = GraphUtils.mergeNodesAndEdges(plan, true, graph, new JavaSetPropertyMerger(), 2);
+    assertEquals(2, merged);
+    assertNull(graph.getVertex("a"));
+    assertNull(graph.getVertex("b"));
+
+    Vertex c = graph.getVertex("c");
+    assertNotNull(graph.getEdge("bd"));
+    assertEquals(c, graph.getEdge("bd").getVertex(Direction.OUT));
+    assertNull(graph.getEdge("ab")); // new self-edge excluded
+    assertEquals(2000, (int) graph.getEdge("cd").getProperty("since"));
+    assertEquals(2, Iterables.size(c.getEdges(Direction.OUT)));
+
+    assertEquals(Iterables.size(graph.getVertices()), GraphUtils.getNodeCount(graph, true));
+    assertEquals(Iterables.size(graph.getEdges()), GraphUtils.getEdgeCount(graph, true));
+    GraphTransaction.checkTransactionsClosed();
+  }
+
+  @Test
+  public void testBulkMergeIntoOneNode() {
+    graph.addVertex("t").setProperty("name", "t");
+    Map<String, String> plan = new HashMap<>();
+    for (int i = 0; i < 20; ++i) {
+      graph.addVertex("v" + i).setProperty("name", "v" + i);
+      plan.put("v" + i, "t");
+    }
+    graph.commit();
+
+    Neo4jPropertyMerger pm = new Neo4jPropertyMerger();
+    assertEquals(20, GraphUtils.mergeNodesAndEdges(plan, true, graph, pm, 5));
+    assertEquals(21, pm.getListPropertySize(graph.getVertex("t"), "name"));
+    assertEquals(2, Iterables.size(graph.getVertices())); // and the metadata node
+    GraphTransaction.checkTransactionsClosed();
+  }
+
+  @Test
+  public void testClearGraphInBatches() {
+    for (int i = 0; i < 5; ++i)
+      graph.addVertex("v" + i);
+    for (int i = 1; i < 5; ++i)
+      graph.addEdge("e" + i, graph.getVertex("v0"), graph.getVertex("v" + i), "knows");
+    graph.commit();
+
+    GraphUtils.clearGraph(graph, 2);
+    assertEquals(0, Iterables.size(graph.getVertices()));
+    assertEquals(0, Iterables.size(graph.getEdges()));
+    GraphTransaction.checkTransactionsClosed();
+  }
+
+  @Test
+  public void testClearGraphUsingFactory() throws IOException {
+    graph.addVertex("a");
+    ElementCounts.recount(graph, null);
+    graph = GraphUtils.clearGraph(gUri);
+    assertEquals(1, Iterables.size(graph.getVertices())); // recreated metadata node
+    assertEquals(1, GraphUtils.getNodeCount(graph, true));
+    assertNotNull(ElementCounts.getNodeCount(graph));
+  }
+
+}
@@ -1,5 +1,6 @@
 package net.deelam.graphtools;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
@@ -89,6 +90,56 @@ public class PropertyMergerTest {
     assertEquals(String.class, ((Object[]) toE.getProperty("prop"))[0].getClass());
   }
   
+  @Test
+  public void testNeo4jPMPrimitiveArrays() throws IOException {
+    gUri = new GraphUri("tinker:/");
+    IdGraph<TinkerGraph> graph = gUri.createNewIdGraph(true);
+    Neo4jPropertyMerger pm=new Neo4jPropertyMerger();
+    Vertex toV=graph.addVertex("toV");
+    toV.setProperty("num", 0L);
+    for(long i=0; i<10; ++i){
+      GraphRecord from=new GraphRecordImpl("from"+i);
+      from.setProperty("num", i%5);
+      pm.mergeProperties(from, toV);
+    }
+    assertArrayEquals(new long[]{0, 1, 2, 3, 4}, (long[]) toV.getProperty("num"));
+    assertEquals(Long.valueOf(4), pm.getListProperty(toV,"num").get(4));
+    assertEquals(5, pm.getListPropertySize(toV,"num"));
+
+    // merge multiple values at once
+    GraphRecord from=new GraphRecordImpl("fromSet");
+    from.setProperty("num", new LinkedHashSet<>(Arrays.asList(3L, 5L, 6L, 5L)));
+    pm.mergeProperties(from, toV);
+    assertArrayEquals(new long[]{0, 1, 2, 3, 4, 5, 6}, (long[]) toV.getProperty("num"));
+
+    // within a session, values are written back at the end
+    pm.beginMergeSession();
+    for(int i=0; i<100; ++i){
+      GraphRecord fromI=new GraphRecordImpl("from"+i);
+      fromI.setProperty("num", (long) i);
+      fromI.setProperty("dbl"+PropertyMerger.VALUELIST_SUFFIX, (i % 10) + 0.5); // duplicates allowed
+      pm.mergeProperties(fromI, graph.getVertex("toV"));
+    }
+    assertEquals(7, ((long[]) toV.getProperty("num")).length);
+    assertEquals(100, pm.getListPropertySize(toV,"num"));
+    pm.endMergeSession(true);
+    assertEquals(100, ((long[]) toV.getProperty("num")).length);
+    assertEquals(99L, ((long[]) toV.getProperty("num"))[99]);
+    assertEquals(100, ((double[]) toV.getProperty("dbl"+PropertyMerger.VALUELIST_SUFFIX)).length);
+
+    // cached values are copied to an element without the property
+    Vertex toV3=graph.addVertex("toV3");
+    pm.beginMergeSession();
+    GraphRecord from100=new GraphRecordImpl("from100");
+    from100.setProperty("num", 100L);
+    pm.mergeProperties(from100, toV);
+    pm.mergeProperties(toV, toV3);
+    assertEquals(101, pm.getListPropertySize(toV3,"num"));
+    pm.endMergeSession(true);
+    assertEquals(101, ((long[]) toV3.getProperty("num")).length);
+    assertEquals(100L, ((long[]) toV3.getProperty("num"))[100]);
+  }
+
   @Test
   public void testJsonPM() throws IOException {
     gUri = new GraphUri("tinker:/");
@@ -111,6 +162,62 @@ public class PropertyMergerTest {
     assertEquals("[\"2\",\"1\"]", toE2.getProperty("prop"));
   }
   
+  @Test
+  public void testJsonPMSession() throws IOException {
+    gUri = new GraphUri("tinker:/");
+    IdGraph<TinkerGraph> graph = gUri.createNewIdGraph(true);
+    PropertyMerger pm=new JsonPropertyMerger();
+    Vertex toV=graph.addVertex("toV");
+    toV.setProperty("prop", "[\"a\",\"b\"]");
+
+    pm.beginMergeSession();
+    for(int i=0; i<100; ++i){
+      Vertex fromV=graph.addVertex("fromV"+i);
+      fromV.setProperty("prop", (i%2==0) ? "b" : "c"+i);
+      pm.mergeProperties(fromV, graph.getVertex("toV"));
+    }
+    // values are written back at the end of the session
+    assertEquals("[\"a\",\"b\"]", toV.getProperty("prop"));
+    assertEquals(52, pm.getListPropertySize(toV,"prop"));
+    assertEquals("c1", pm.getListProperty(toV,"prop").get(2));
+    pm.endMergeSession(true);
+
+    assertEquals(52, pm.getListPropertySize(toV,"prop"));
+    assertEquals("c99", pm.getListProperty(toV,"prop").get(51));
+    assertEquals(String.class, pm.getListProperty(toV,"prop").get(0).getClass());
+
+    // same as without a session
+    Vertex toV2=graph.addVertex("toV2");
+    toV2.setProperty("prop", "2");
+    pm.beginMergeSession();
+    pm.mergeProperties(toV, toV2);
+    pm.mergeProperties(toV, toV2);
+    pm.endMergeSession(true);
+    assertEquals(53, pm.getListPropertySize(toV2,"prop"));
+    assertEquals("2", pm.getListProperty(toV2,"prop").get(0));
+
+    // cached values are copied to an element without the property
+    Vertex toV3=graph.addVertex("toV3");
+    pm.beginMergeSession();
+    pm.mergeProperties(graph.getVertex("fromV1"), toV2);
+    pm.mergeProperties(toV2, toV3);
+    assertEquals(53, pm.getListPropertySize(toV3,"prop"));
+    pm.endMergeSession(true);
+    assertEquals(53, pm.getListPropertySize(toV3,"prop"));
+    assertEquals("2", pm.getListProperty(toV3,"prop").get(0));
+
+    // discarded
+    pm.beginMergeSession();
+    pm.addProperty(toV2, "prop", "new");
+    pm.mergeProperties(graph.getVertex("fromV1"), toV);
+    Vertex fromV=graph.addVertex("fromV");
+    fromV.setProperty("prop", "d");
+    pm.mergeProperties(fromV, toV);
+    assertEquals(53, pm.getListPropertySize(toV,"prop"));
+    pm.endMergeSession(false);
+    assertEquals(52, pm.getListPropertySize(toV,"prop"));
+  }
+
   private void testPropMerger(IdGraph<?> graph, PropertyMerger pm, int extraProps) throws IOException {
 //    System.out.println("pm="+pm);
     Vertex fromE=graph.addVertex("fromV");
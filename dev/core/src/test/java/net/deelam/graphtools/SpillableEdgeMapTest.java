@@ -0,0 +1,174 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+
+/**
+ * @author deelam
+ */
+public class SpillableEdgeMapTest {
+
+  static final File SPILL_DIR = new File("target/spilledEdges");
+
+  @Before
+  public void setUp() throws IOException {
+    FileUtils.deleteDirectory(SPILL_DIR);
+    SPILL_DIR.mkdirs();
+    GraphRecordImpl.setSPILL_EDGES_THRESHOLD(10);
+    GraphRecordImpl.setSPILL_DIR(SPILL_DIR);
+  }
+
+  @After
+  public void tearDown() {
+    GraphRecordImpl.setSPILL_EDGES_THRESHOLD(0);
+    GraphRecordImpl.setSPILL_DIR(null);
+  }
+
+  static GraphRecord createHub(GraphRecord.Factory factory, int numEdges) {
+    GraphRecord hub = factory.create("hub");
+    for (int i = 0; i < numEdges; ++i) {
+      GraphRecordEdge e = factory.createEdge("e" + i, (i % 2 == 0) ? "even" : "odd", "v" + i, "hub");
+      e.setProperty("i", i);
+      hub.addEdge(e);
+    }
+    return hub;
+  }
+
+  @Test
+  public void testEdgesStreamedBack() {
+    for (GraphRecord.Factory factory : new GraphRecord.Factory[] {new GraphRecordImpl.Factory(),
+        new CompactGraphRecord.Factory()}) {
+      GraphRecord hub = createHub(factory, 95);
+      SpillableEdgeMap inEdges = (SpillableEdgeMap) hub.getInEdges();
+      assertTrue(inEdges.hasSpilled());
+      assertEquals(95, inEdges.size());
+      assertEquals(0, hub.getOutEdges().size());
+
+      Set<String> ids = new HashSet<>();
+      for (Edge e : hub.getEdges(Direction.IN)) {
+        assertTrue(ids.add((String) e.getId()));
+        assertEquals("e" + e.getProperty("i"), e.getId());
+        assertEquals("hub", ((GraphRecordEdge) e).getInVertexStringId());
+      }
+      assertEquals(95, ids.size());
+      assertEquals(48, Iterables.size(hub.getEdges(Direction.IN, "even")));
+      assertEquals(95, Iterables.size(hub.getEdges(Direction.BOTH)));
+
+      assertEquals(Integer.valueOf(94), hub.getInEdge("e94").getProperty("i")); // in memory
+
+      hub.discard();
+      assertFalse(inEdges.hasSpilled());
+      assertEquals(0, Iterables.size(hub.getEdges(Direction.BOTH)));
+      assertEquals(0, SPILL_DIR.list().length);
+    }
+  }
+
+  @Test
+  public void testSpilledEdgesAreUnique() {
+    GraphRecord.Factory factory = new GraphRecordImpl.Factory();
+    GraphRecord hub = createHub(factory, 25);
+    Map<String, Edge> inEdges = hub.getInEdges();
+    assertTrue(((SpillableEdgeMap) inEdges).hasSpilled());
+    assertEquals(1, SPILL_DIR.list().length);
+
+    // edges from iteration are copies
+    for (Edge e : hub.getEdges(Direction.IN))
+      e.setProperty("copy", true);
+    assertNull(Iterables.getFirst(hub.getEdges(Direction.IN), null).getProperty("copy"));
+
+    // get() reads a spilled edge back into memory, so changes are kept
+    assertTrue(inEdges.containsKey("e0"));
+    hub.getInEdge("e0").setProperty("changed", true);
+    assertEquals(true, hub.getInEdge("e0").getProperty("changed"));
+    assertNull(hub.getInEdge("missing"));
+
+    // put() replaces a spilled edge
+    GraphRecordEdge e1 = factory.createEdge("e1", "other", "v1", "hub");
+    inEdges.put("e1", e1);
+    for (int i = 25; i < 50; ++i) // spill again, including e0 and e1
+      hub.addEdge(factory.createEdge("e" + i, "odd", "v" + i, "hub"));
+    assertEquals(50, inEdges.size());
+
+    Set<String> ids = new HashSet<>();
+    for (Edge e : hub.getEdges(Direction.IN))
+      assertTrue(ids.add((String) e.getId()));
+    assertEquals(50, ids.size());
+    assertEquals("other", hub.getInEdge("e1").getLabel());
+    assertEquals(true, hub.getInEdge("e0").getProperty("changed"));
+
+    assertEquals(Integer.valueOf(2), inEdges.remove("e2").getProperty("i"));
+    assertFalse(inEdges.containsKey("e2"));
+    assertEquals(49, Iterables.size(hub.getEdges(Direction.IN)));
+
+    hub.discard();
+    assertEquals(0, SPILL_DIR.list().length);
+  }
+
+  @Test
+  public void testGetEdgesCopiesUnlessSpilled() {
+    GraphRecord.Factory factory = new GraphRecordImpl.Factory();
+    GraphRecord hub = createHub(factory, 5);
+    Iterable<Edge> edges = hub.getEdges(Direction.IN);
+    hub.addEdge(factory.createEdge("e5", "odd", "v5", "hub"));
+    assertEquals(5, Iterables.size(edges)); // copy
+
+    hub = createHub(factory, 15);
+    edges = hub.getEdges(Direction.IN);
+    hub.addEdge(factory.createEdge("e15", "odd", "v15", "hub"));
+    assertEquals(16, Iterables.size(edges)); // view streamed from disk
+    hub.discard();
+  }
+
+  @Test
+  public void testEarlyStopClosesSegment() throws IOException {
+    File fdDir = new File("/proc/self/fd");
+    Assume.assumeTrue(fdDir.isDirectory());
+    GraphRecord hub = createHub(new GraphRecordImpl.Factory(), 45);
+    File segFile = SPILL_DIR.listFiles()[0];
+
+    Iterator<Edge> itr = hub.getEdges(Direction.IN).iterator();
+    assertTrue(itr.hasNext());
+    itr.next();
+    for (File fd : fdDir.listFiles())
+      assertFalse(segFile.getCanonicalFile().equals(fd.getCanonicalFile()));
+    hub.discard();
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws IOException {
+    GraphRecordImpl.Factory factory = new GraphRecordImpl.Factory();
+    GraphRecord hub = createHub(factory, 25);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GraphRecordBinaryIO.writeRecord(hub, new DataOutputStream(bytes));
+    GraphRecord hub2 = GraphRecordBinaryIO.readRecord(
+        new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), factory);
+    assertTrue(((SpillableEdgeMap) hub2.getInEdges()).hasSpilled());
+    assertEquals(25, Iterables.size(hub2.getEdges(Direction.IN)));
+    hub.discard();
+    hub2.discard();
+  }
+}
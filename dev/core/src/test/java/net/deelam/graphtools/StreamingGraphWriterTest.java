@@ -0,0 +1,142 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.blueprints.util.wrappers.event.EventGraph;
+import com.tinkerpop.blueprints.util.wrappers.event.listener.StubGraphChangedListener;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import net.deelam.graphtools.StreamingGraphWriter.Compression;
+import net.deelam.graphtools.graphfactories.IdGraphFactoryTinker;
+
+/**
+ * @author deelam
+ */
+public class StreamingGraphWriterTest {
+
+  static final int NODES = 500;
+  static final String EXPORT_PATH = "./target/streamingExport";
+
+  GraphUri srcUri;
+  IdGraph<?> src;
+
+  @Before
+  public void setUp() throws IOException {
+    IdGraphFactoryTinker.register();
+    srcUri = new GraphUri("tinker:/");
+    src = srcUri.createNewIdGraph(true);
+    for (int i = 0; i < NODES; ++i) {
+      Vertex v = src.addVertex("v" + i);
+      v.setProperty("name", "name\n" + i);
+      v.setProperty("num", i);
+      if (i > 0) {
+        Edge e = src.addEdge("e" + i, src.getVertex("v" + (i / 2)), v, "parentOf");
+        e.setProperty("weight", i * 0.5);
+      }
+    }
+    src.getVertex("v1").setProperty("scores", new int[] {1, 2});
+    src.commit();
+    FileUtils.deleteQuietly(new File(EXPORT_PATH));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    srcUri.shutdown();
+  }
+
+  private void assertSameGraph(IdGraph<?> graph) {
+    assertEquals(Iterables.size(src.getVertices()), Iterables.size(graph.getVertices()));
+    assertEquals(NODES - 1, Iterables.size(graph.getEdges()));
+    Vertex v7 = graph.getVertex("v7");
+    assertEquals("name\n7", v7.getProperty("name"));
+    assertEquals(7, (int) v7.getProperty("num"));
+    assertEquals(Arrays.asList(1, 2), graph.getVertex("v1").getProperty("scores")); // GraphSON reads arrays as lists
+    Edge e7 = graph.getEdge("e7");
+    assertEquals("parentOf", e7.getLabel());
+    assertEquals(3.5, (double) e7.getProperty("weight"), 0);
+    assertEquals("v3", e7.getVertex(Direction.OUT).getId());
+    assertEquals(v7, e7.getVertex(Direction.IN));
+  }
+
+  @Test
+  public void testSingleGzipFile() throws IOException {
+    List<File> files = new StreamingGraphWriter().write(src, EXPORT_PATH);
+    assertEquals(1, files.size());
+
+    IdGraph<TinkerGraph> graph = new IdGraph<>(new TinkerGraph());
+    new StreamingGraphReader().read(graph, EXPORT_PATH);
+    assertSameGraph(graph);
+  }
+
+  @Test
+  public void testParallelParts() throws IOException {
+    for (Compression compression : Compression.values()) {
+      StreamingGraphWriter writer = new StreamingGraphWriter();
+      writer.setParts(3);
+      writer.setQueueCapacity(10);
+      writer.setCompression(compression);
+      List<File> files = writer.write(src, EXPORT_PATH);
+      assertEquals(3, files.size());
+
+      GraphUri dstUri = new GraphUri("tinker:/");
+      IdGraph<?> graph = dstUri.createNewIdGraph(true);
+      ElementCounts.init(graph, null);
+      StreamingGraphReader reader = new StreamingGraphReader();
+      reader.setThreads(3);
+      reader.setBatchSize(50);
+      reader.read(graph, EXPORT_PATH);
+      assertSameGraph(graph);
+      assertNotNull(GraphUtils.getMetaDataNode(graph)); // kept rather than duplicated
+      assertEquals(Iterables.size(graph.getVertices()), GraphUtils.getNodeCount(graph, true));
+      dstUri.shutdown();
+      FileUtils.deleteDirectory(new File(EXPORT_PATH));
+    }
+    GraphTransaction.checkTransactionsClosed();
+  }
+
+  @Test
+  public void testWritesOnCallingThread() throws IOException {
+    StreamingGraphWriter writer = new StreamingGraphWriter();
+    writer.setParts(3);
+    writer.write(src, EXPORT_PATH);
+
+    Set<Thread> writingThreads = ConcurrentHashMap.newKeySet();
+    EventGraph<TinkerGraph> graph = new EventGraph<>(new TinkerGraph());
+    graph.addListener(new StubGraphChangedListener() {
+      @Override
+      public void vertexAdded(Vertex vertex) {
+        writingThreads.add(Thread.currentThread());
+      }
+
+      @Override
+      public void edgeAdded(Edge edge) {
+        writingThreads.add(Thread.currentThread());
+      }
+    });
+    StreamingGraphReader reader = new StreamingGraphReader();
+    reader.setThreads(3);
+    reader.read(graph, EXPORT_PATH);
+    assertEquals(NODES - 1, Iterables.size(graph.getEdges()));
+    assertEquals(Collections.singleton(Thread.currentThread()), writingThreads);
+  }
+
+}
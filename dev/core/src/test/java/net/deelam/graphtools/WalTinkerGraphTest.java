@@ -0,0 +1,199 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import net.deelam.graphtools.graphfactories.IdGraphFactoryTinker;
+
+/**
+ * @author deelam
+ */
+public class WalTinkerGraphTest {
+
+  static final File DIR = new File("./target/walGraph");
+
+  @Before
+  public void setUp() throws IOException {
+    FileUtils.deleteDirectory(DIR);
+    IdGraphFactoryTinker.register();
+  }
+
+  @Test
+  public void testReopenWithGraphUri() throws IOException {
+    GraphUri gUri = new GraphUri("tinker:wal:" + DIR.getPath());
+    IdGraph<?> graph = gUri.createNewIdGraph(true);
+    assertTrue(graph.getBaseGraph() instanceof WalTinkerGraph);
+    Vertex a = graph.addVertex("a");
+    a.setProperty("name", "Alice");
+    a.setProperty("tags", new ArrayList<>(Arrays.asList("x")));
+    a.<List<String>>getProperty("tags").add("y"); // changed in place before commit
+    Vertex b = graph.addVertex("b");
+    b.setProperty("age", 30);
+    graph.addEdge("ab", a, b, "knows").setProperty("since", 2001L);
+    graph.commit();
+    gUri.shutdown();
+    assertTrue(new File(DIR, WalTinkerGraph.LOG_FILE).exists());
+
+    graph = gUri.openIdGraph();
+    a = graph.getVertex("a");
+    assertEquals("Alice", a.getProperty("name"));
+    assertEquals(Arrays.asList("x", "y"), a.getProperty("tags"));
+    assertEquals(30, (int) graph.getVertex("b").getProperty("age"));
+    Edge ab = graph.getEdge("ab");
+    assertEquals(2001L, (long) ab.getProperty("since"));
+    assertEquals("b", ab.getVertex(Direction.IN).getId());
+
+    a.removeProperty("tags");
+    graph.removeEdge(ab);
+    graph.addVertex("c");
+    graph.commit();
+    gUri.shutdown();
+
+    graph = gUri.openIdGraph();
+    assertNull(graph.getVertex("a").getProperty("tags"));
+    assertNull(graph.getEdge("ab"));
+    assertNotNull(graph.getVertex("c"));
+    assertNotNull(GraphUtils.getMetaDataNode(graph));
+    gUri.shutdown();
+  }
+
+  @Test
+  public void testReopenAfterMergingSets() throws IOException {
+    GraphUri gUri = new GraphUri("tinker:wal:" + DIR.getPath());
+    IdGraph<?> graph = gUri.createNewIdGraph(true);
+    PropertyMerger merger = gUri.createPropertyMerger();
+    assertTrue(merger instanceof JavaSetPropertyMerger);
+    Vertex v = graph.addVertex("v");
+    for (String value : new String[] {"a", "b", "c"}) {
+      GraphRecord gr = new GraphRecordImpl("v");
+      gr.setProperty("name", value);
+      merger.mergeProperties(gr, v);
+    }
+    assertEquals(Sets.newHashSet("a", "b", "c"), v.getProperty("name"));
+    graph.commit();
+    gUri.shutdown();
+
+    graph = gUri.openIdGraph();
+    v = graph.getVertex("v");
+    assertEquals(Sets.newHashSet("a", "b", "c"), v.getProperty("name"));
+    GraphRecord gr = new GraphRecordImpl("v");
+    gr.setProperty("name", "d"); // merged into the existing set in a later commit
+    merger.mergeProperties(gr, v);
+    graph.commit();
+    gUri.shutdown();
+
+    graph = gUri.openIdGraph();
+    assertEquals(Sets.newHashSet("a", "b", "c", "d"), graph.getVertex("v").getProperty("name"));
+    gUri.shutdown();
+  }
+
+  @Test
+  public void testReplayAfterCrash() throws IOException {
+    IdGraph<WalTinkerGraph> graph = new IdGraph<>(WalTinkerGraph.open(DIR, Long.MAX_VALUE));
+    graph.addVertex("a").setProperty("name", "Alice");
+    graph.commit();
+    graph.addVertex("b");
+    graph.commit();
+    graph.addVertex("uncommitted");
+    // no shutdown; simulate a partially written batch
+    try (FileOutputStream out = new FileOutputStream(new File(DIR, WalTinkerGraph.LOG_FILE), true)) {
+      out.write(new byte[] {0, 0, 0, 100, 1, 2, 3});
+    }
+
+    graph = new IdGraph<>(WalTinkerGraph.open(DIR, Long.MAX_VALUE));
+    assertEquals("Alice", graph.getVertex("a").getProperty("name"));
+    assertNotNull(graph.getVertex("b"));
+    assertNull(graph.getVertex("uncommitted"));
+    graph.addVertex("c");
+    graph.shutdown();
+
+    graph = new IdGraph<>(WalTinkerGraph.open(DIR, Long.MAX_VALUE));
+    assertEquals(3, Iterables.size(graph.getVertices()));
+    graph.shutdown();
+  }
+
+  @Test
+  public void testUncommittedBatchNotReplayed() throws IOException {
+    WalTinkerGraph walGraph = WalTinkerGraph.open(DIR, Long.MAX_VALUE);
+    walGraph.setMaxPendingBytes(100);
+    IdGraph<WalTinkerGraph> graph = new IdGraph<>(walGraph);
+    graph.addVertex("a");
+    graph.commit();
+    long committedLength = new File(DIR, WalTinkerGraph.LOG_FILE).length();
+    for (int i = 0; i < 20; ++i)
+      graph.addVertex("uncommitted" + i);
+    // no commit or shutdown; records beyond maxPendingBytes were appended without a commit marker
+    assertTrue(new File(DIR, WalTinkerGraph.LOG_FILE).length() > committedLength);
+
+    graph = new IdGraph<>(WalTinkerGraph.open(DIR, Long.MAX_VALUE));
+    assertNotNull(graph.getVertex("a"));
+    assertNull(graph.getVertex("uncommitted0"));
+    assertEquals(committedLength, new File(DIR, WalTinkerGraph.LOG_FILE).length()); // truncated
+    graph.addVertex("b");
+    graph.commit();
+    graph.shutdown();
+
+    walGraph = WalTinkerGraph.open(DIR, Long.MAX_VALUE);
+    walGraph.setMaxPendingBytes(100);
+    graph = new IdGraph<>(walGraph);
+    for (int i = 0; i < 20; ++i)
+      graph.addVertex("c" + i);
+    graph.commit(); // commits the batches that were already appended
+    graph = new IdGraph<>(WalTinkerGraph.open(DIR, Long.MAX_VALUE));
+    assertNotNull(graph.getVertex("b"));
+    assertNotNull(graph.getVertex("c0"));
+    assertNotNull(graph.getVertex("c19"));
+    graph.shutdown();
+  }
+
+  @Test
+  public void testCheckpoint() throws IOException {
+    WalTinkerGraph walGraph = WalTinkerGraph.open(DIR, 1000);
+    IdGraph<WalTinkerGraph> graph = new IdGraph<>(walGraph);
+    for (int i = 0; i < 100; ++i) {
+      graph.addVertex("v" + i).setProperty("i", i);
+      graph.commit();
+    }
+    assertTrue(walGraph.getGeneration() > 0);
+    assertTrue(new File(DIR, WalTinkerGraph.SNAPSHOT_FILE).exists());
+    assertTrue(new File(DIR, WalTinkerGraph.LOG_FILE).length() < 1000);
+    long generation = walGraph.getGeneration();
+    graph.shutdown();
+
+    walGraph = WalTinkerGraph.open(DIR, 1000);
+    graph = new IdGraph<>(walGraph);
+    assertEquals(generation, walGraph.getGeneration());
+    assertEquals(100, Iterables.size(graph.getVertices()));
+    assertEquals(42, (int) graph.getVertex("v42").getProperty("i"));
+    Vertex v = graph.addVertex(null); // base ids don't collide with replayed ones
+    graph.addEdge(null, v, graph.getVertex("v0"), "next");
+    graph.commit();
+    graph.shutdown();
+
+    graph = new IdGraph<>(WalTinkerGraph.open(DIR, 1000));
+    assertEquals(101, Iterables.size(graph.getVertices()));
+    assertEquals(1, Iterables.size(graph.getVertex("v0").getEdges(Direction.IN)));
+    graph.shutdown();
+  }
+
+}
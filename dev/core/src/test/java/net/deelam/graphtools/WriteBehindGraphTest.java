@@ -0,0 +1,119 @@
+package net.deelam.graphtools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import net.deelam.graphtools.graphfactories.IdGraphFactoryTinker;
+
+/**
+ * @author deelam
+ */
+public class WriteBehindGraphTest {
+
+  GraphUri gUri;
+  IdGraph<?> graph;
+  WriteBehindGraph wbGraph;
+
+  @Before
+  public void setUp() throws IOException {
+    IdGraphFactoryTinker.register();
+    gUri = new GraphUri("tinker:/");
+    graph = gUri.createNewIdGraph(true);
+    wbGraph = new WriteBehindGraph(graph);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    GraphTransaction.checkTransactionsClosed();
+    gUri.shutdown();
+  }
+
+  @Test
+  public void testReadYourWrites() {
+    Vertex existing = graph.addVertex("existing");
+    existing.setProperty("a", 1);
+    existing.setProperty("b", 2);
+
+    Vertex v = wbGraph.addVertex("new");
+    v.setProperty("name", "x");
+    Vertex v2 = wbGraph.getVertex("existing");
+    v2.setProperty("a", 10);
+    assertEquals(Integer.valueOf(2), v2.removeProperty("b"));
+    Edge e = wbGraph.addEdge("e1", v, v2, "knows");
+    e.setProperty("w", 0.5);
+
+    // not yet in base graph
+    assertNull(graph.getVertex("new"));
+    assertNull(graph.getEdge("e1"));
+    assertEquals(Integer.valueOf(1), existing.getProperty("a"));
+
+    // but visible through wbGraph
+    assertEquals("x", wbGraph.getVertex("new").getProperty("name"));
+    assertEquals(Integer.valueOf(10), wbGraph.getVertex("existing").getProperty("a"));
+    assertNull(wbGraph.getVertex("existing").getProperty("b"));
+    assertEquals(Sets.newHashSet("a"), wbGraph.getVertex("existing").getPropertyKeys());
+    Edge e2 = wbGraph.getEdge("e1");
+    assertEquals("knows", e2.getLabel());
+    assertEquals(v, e2.getVertex(Direction.OUT));
+    assertEquals(existing.getId(), e2.getVertex(Direction.IN).getId());
+    assertEquals(6, wbGraph.getBufferedOperations());
+
+    // traversal flushes
+    assertEquals(1, Iterables.size(wbGraph.getVertex("new").getEdges(Direction.OUT, "knows")));
+    assertEquals(0, wbGraph.getBufferedOperations());
+    assertEquals("x", graph.getVertex("new").getProperty("name"));
+    assertEquals((Object) 0.5, graph.getEdge("e1").getProperty("w"));
+    assertEquals(Integer.valueOf(10), existing.getProperty("a"));
+    assertNull(existing.getProperty("b"));
+
+    // handles remain valid after flush
+    v.setProperty("name", "y");
+    assertEquals("y", wbGraph.getVertex("new").getProperty("name"));
+    assertEquals("x", graph.getVertex("new").getProperty("name"));
+  }
+
+  @Test
+  public void testFlushedByGraphTransaction() {
+    int tx = GraphTransaction.begin(graph);
+    int wbTx = GraphTransaction.begin(wbGraph);
+    wbGraph.addVertex("v1").setProperty("p", "1");
+    GraphTransaction.commit(wbTx);
+    assertNull(graph.getVertex("v1")); // nested commit doesn't flush
+    GraphTransaction.commit(tx);
+    assertEquals("1", graph.getVertex("v1").getProperty("p"));
+
+    tx = GraphTransaction.begin(graph);
+    wbTx = GraphTransaction.begin(wbGraph);
+    wbGraph.addVertex("v2");
+    GraphTransaction.rollback(wbTx);
+    GraphTransaction.rollback(tx);
+    assertEquals(0, wbGraph.getBufferedOperations());
+    assertNull(wbGraph.getVertex("v2"));
+  }
+
+  @Test
+  public void testMaxBufferedOperations() {
+    wbGraph.setMaxBufferedOperations(10);
+    for (int i = 0; i < 25; ++i)
+      wbGraph.addVertex("v" + i);
+    assertEquals(5, wbGraph.getBufferedOperations());
+    assertNotNull(graph.getVertex("v19"));
+    assertNull(graph.getVertex("v20"));
+    wbGraph.commit();
+    assertNotNull(graph.getVertex("v24"));
+  }
+}
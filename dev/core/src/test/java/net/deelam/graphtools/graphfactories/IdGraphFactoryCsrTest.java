@@ -0,0 +1,172 @@
+package net.deelam.graphtools.graphfactories;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import net.deelam.graphtools.GraphExporter;
+import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.GraphUtils;
+import net.deelam.graphtools.ReadOnlyIdGraph;
+import net.deelam.graphtools.csr.CsrGraph;
+
+public class IdGraphFactoryCsrTest {
+
+  static final String SNAPSHOT_PATH = "./target/csrSnapshot";
+
+  GraphUri srcUri;
+  GraphUri csrUri;
+
+  @Before
+  public void setUp() throws IOException {
+    IdGraphFactoryTinker.register();
+    IdGraphFactoryCsr.register();
+    srcUri = new GraphUri("tinker:/");
+    IdGraph<?> src = srcUri.createNewIdGraph(true);
+    Vertex a = src.addVertex("a");
+    a.setProperty("name", "Alice");
+    a.setProperty("age", 30);
+    a.setProperty("tags", new String[] {"x", "y"});
+    Vertex b = src.addVertex("b");
+    b.setProperty("name", "Bob");
+    b.setProperty("score", 1.5d);
+    Vertex c = src.addVertex("c");
+    c.setProperty("name", "Alice");
+    src.addEdge("ab", a, b, "knows").setProperty("since", 2001L);
+    src.addEdge("ac", a, c, "worksWith");
+    src.addEdge("cb", c, b, "knows");
+    src.addEdge("aa", a, a, "self");
+    src.commit();
+
+    csrUri = new GraphUri("csr:" + SNAPSHOT_PATH);
+    csrUri.delete();
+    GraphExporter.exportCsr(src, SNAPSHOT_PATH);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    srcUri.shutdown();
+    if (csrUri.isOpen())
+      csrUri.shutdown();
+  }
+
+  @Test
+  public void testIdCacheKeepsReadOnlyGraph() {
+    GraphUri cachedUri = new GraphUri("csr:" + SNAPSHOT_PATH + "?idCacheSize=10");
+    IdGraph<?> graph = cachedUri.openIdGraph();
+    try {
+      assertTrue(graph instanceof ReadOnlyIdGraph);
+      assertEquals("Alice", graph.getVertex("a").getProperty("name"));
+      try {
+        graph.addVertex("d");
+        fail("Expected read-only graph");
+      } catch (UnsupportedOperationException e) {
+        // expected
+      }
+    } finally {
+      cachedUri.shutdown();
+    }
+  }
+
+  @Test
+  public void testOpenSnapshot() {
+    assertTrue(csrUri.exists());
+    IdGraph<?> graph = csrUri.openIdGraph();
+    assertTrue(graph instanceof ReadOnlyIdGraph);
+    assertFalse(csrUri.isReadOnly()); // caller's GraphUri is not changed
+
+    IdGraph<?> src = srcUri.getGraph();
+    assertEquals(Iterables.size(src.getVertices()), Iterables.size(graph.getVertices()));
+    assertEquals(4, Iterables.size(graph.getEdges()));
+    assertEquals(Iterables.size(src.getVertices()), GraphUtils.getNodeCount(csrUri));
+    assertEquals(4, GraphUtils.getEdgeCount(csrUri));
+    assertNotNull(GraphUtils.getMetaDataNode(graph)); // copied from the source graph
+
+    Vertex a = graph.getVertex("a");
+    assertEquals("a", a.getId());
+    assertEquals("Alice", a.getProperty("name"));
+    assertEquals(30, (int) a.getProperty("age"));
+    assertArrayEquals(new String[] {"x", "y"}, (String[]) a.getProperty("tags"));
+    assertEquals(new HashSet<>(Arrays.asList("name", "age", "tags")), a.getPropertyKeys());
+    assertEquals(1.5d, (double) graph.getVertex("b").getProperty("score"), 0);
+    assertNull(graph.getVertex("z"));
+
+    assertEquals(3, Iterables.size(a.getEdges(Direction.OUT)));
+    assertEquals(1, Iterables.size(a.getEdges(Direction.IN)));
+    assertEquals(4, Iterables.size(a.getEdges(Direction.BOTH)));
+    assertEquals(1, Iterables.size(a.getEdges(Direction.OUT, "knows")));
+    assertEquals(0, Iterables.size(a.getEdges(Direction.OUT, "unknownLabel")));
+    assertEquals(Sets.newHashSet("a", "c"),
+        Sets.newHashSet(Iterables.transform(graph.getVertex("b").getVertices(Direction.IN), Vertex::getId)));
+    assertEquals(2, Iterables.size(graph.getVertex("b").query().direction(Direction.IN).labels("knows").edges()));
+
+    Edge ab = graph.getEdge("ab");
+    assertEquals("knows", ab.getLabel());
+    assertEquals(2001L, (long) ab.getProperty("since"));
+    assertEquals(a, ab.getVertex(Direction.OUT));
+    assertEquals("b", ab.getVertex(Direction.IN).getId());
+    assertEquals(a, graph.getEdge("aa").getVertex(Direction.IN));
+
+    assertEquals(Sets.newHashSet("a", "c"),
+        Sets.newHashSet(Iterables.transform(graph.getVertices("name", "Alice"), Vertex::getId)));
+    assertEquals(0, Iterables.size(graph.getVertices("name", "Carol")));
+  }
+
+  @Test
+  public void testReadOnly() {
+    IdGraph<?> graph = csrUri.openIdGraph();
+    try {
+      graph.addVertex("d");
+      fail();
+    } catch (UnsupportedOperationException e) {
+    }
+    try {
+      graph.getVertex("a").setProperty("name", "Carol");
+      fail();
+    } catch (UnsupportedOperationException e) {
+    }
+  }
+
+  @Test
+  public void testNumericIdsAreNotIndices() throws IOException {
+    IdGraph<TinkerGraph> src = new IdGraph<>(new TinkerGraph());
+    src.addVertex("a");
+    src.addVertex("5");
+    src.addEdge("9", src.getVertex("a"), src.getVertex("5"), "knows");
+    GraphExporter.exportCsr(src, SNAPSHOT_PATH);
+
+    CsrGraph base = (CsrGraph) csrUri.openIdGraph().getBaseGraph();
+    Vertex v5 = base.getVertex(5L);
+    assertEquals("5", v5.getProperty(IdGraph.ID));
+    assertNull(base.getVertex(0)); // not the vertex at index 0
+    assertEquals(v5, base.getVertex(v5.getId())); // native id
+    Edge e9 = base.getEdge(9L);
+    assertEquals("9", e9.getProperty(IdGraph.ID));
+    assertEquals(e9, base.getEdge(e9.getId()));
+    assertNull(base.getEdge(0));
+  }
+
+  @Test
+  public void testEmptyGraph() throws IOException {
+    GraphExporter.exportCsr(new TinkerGraph(), SNAPSHOT_PATH);
+
+    IdGraph<?> graph = csrUri.openIdGraph();
+    assertEquals(0, Iterables.size(graph.getVertices()));
+    assertNull(graph.getVertex("a"));
+  }
+
+}
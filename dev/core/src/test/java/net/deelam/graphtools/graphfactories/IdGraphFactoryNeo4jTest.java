@@ -10,13 +10,16 @@ import java.util.List;
 import net.deelam.graphtools.GraphTransaction;
 import net.deelam.graphtools.GraphUri;
 import net.deelam.graphtools.GraphUtils;
+import net.deelam.graphtools.JavaSetPropertyMerger;
 
 import org.apache.commons.configuration.BaseConfiguration;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.neo4j.Neo4jGraph;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
@@ -128,6 +131,62 @@ public class IdGraphFactoryNeo4jTest {
     graph2.shutdown();
   }
 
+  @Test
+  public void testTruncate() throws IOException {
+    GraphUri gUri = new GraphUri("neo4j:./target/myTruncatedDb");
+    IdGraph<?> graph = gUri.createNewIdGraph(true);
+    graph.createKeyIndex("name", Vertex.class);
+    Vertex a = graph.addVertex("A");
+    a.setProperty("name", "a");
+    graph.addEdge("E", a, graph.addVertex("B"), "edgey");
+    graph.commit();
+
+    graph = gUri.truncate();
+    assertEquals(1, Iterables.size(graph.getVertices())); // metadata node
+    assertNotNull(GraphUtils.getMetaDataNode(graph));
+    assertEquals(0, Iterables.size(graph.getEdges()));
+    assertTrue(graph.getIndexedKeys(Vertex.class).contains("name"));
+    gUri.shutdown();
+  }
+
+  @Test
+  public void testNestedBatchMergeLeavesCommitToCaller() throws IOException {
+    GraphUri gUri = new GraphUri("neo4j:./target/myNestedMergeDb");
+    IdGraph<?> graph = gUri.createNewIdGraph(true);
+    for (String id : new String[] {"a", "b", "c", "d"})
+      graph.addVertex(id);
+    graph.addEdge("ad", graph.getVertex("a"), graph.getVertex("d"), "knows");
+    graph.commit();
+
+    int tx = GraphTransaction.begin(graph);
+    assertEquals(2, GraphUtils.mergeNodesAndEdges(ImmutableMap.of("a", "b", "c", "b"), true, graph,
+        new JavaSetPropertyMerger(), 1));
+    GraphTransaction.rollback(tx); // nothing was committed by the nested call
+    assertNotNull(graph.getVertex("a"));
+    assertNotNull(graph.getVertex("c"));
+    assertEquals("a", graph.getEdge("ad").getVertex(Direction.OUT).getId());
+    gUri.shutdown();
+  }
+
+  @Test
+  public void testNestedClearGraphLeavesCommitToCaller() throws IOException {
+    GraphUri gUri = new GraphUri("neo4j:./target/myNestedClearDb");
+    IdGraph<?> graph = gUri.createNewIdGraph(true);
+    for (int i = 0; i < 5; ++i)
+      graph.addVertex("v" + i);
+    for (int i = 1; i < 5; ++i)
+      graph.addEdge("e" + i, graph.getVertex("v0"), graph.getVertex("v" + i), "knows");
+    graph.commit();
+
+    int tx = GraphTransaction.begin(graph);
+    GraphUtils.clearGraph(graph, 2);
+    assertEquals(0, Iterables.size(graph.getVertices()));
+    GraphTransaction.rollback(tx); // nothing was committed by the nested call
+    assertEquals(6, Iterables.size(graph.getVertices()));
+    assertEquals(4, Iterables.size(graph.getEdges()));
+    gUri.shutdown();
+  }
+
   @Test
   public void testUriReuse() throws IOException {
     //FileUtils.deleteDirectory(new File("target/myDb2")); // make sure graph doesn't exist
@@ -0,0 +1,124 @@
+package net.deelam.graphtools.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.graphfactories.IdGraphFactoryTinker;
+
+/**
+ * @author deelam
+ */
+public class IncrementalBackupTest {
+
+  static final File ROOT = new File("./target/incrementalBackup");
+
+  File src;
+  File snapshots;
+
+  @Before
+  public void setUp() throws IOException {
+    FileUtils.deleteDirectory(ROOT);
+    src = new File(ROOT, "store");
+    snapshots = new File(ROOT, "snapshots");
+    write("a.db", "version1");
+    write("index/b.db", "unchanged");
+    new File(src, "logs").mkdirs();
+  }
+
+  private void write(String relPath, String content) throws IOException {
+    FileUtils.write(new File(src, relPath), content, StandardCharsets.UTF_8);
+  }
+
+  private static String read(File file) throws IOException {
+    return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testBackupRestorePrune() throws IOException {
+    IncrementalBackup backup = new IncrementalBackup();
+    File snap1 = new File(snapshots, "1");
+    backup.backup(src, snap1, null);
+
+    write("a.db", "version2");
+    Files.setLastModifiedTime(new File(src, "a.db").toPath(), FileTime.fromMillis(System.currentTimeMillis() + 5000));
+    write("c.db", "new");
+    File snap2 = new File(snapshots, "2");
+    backup.backup(src, snap2, snap1);
+    new File(snap2, IncrementalBackup.MANIFEST_FILE).setLastModified(System.currentTimeMillis() + 5000);
+
+    assertTrue(Files.isSameFile(new File(snap1, "index/b.db").toPath(), new File(snap2, "index/b.db").toPath()));
+    assertFalse(Files.isSameFile(new File(snap1, "a.db").toPath(), new File(snap2, "a.db").toPath()));
+    assertEquals("version2", read(new File(snap2, "a.db")));
+    assertFalse(Files.getPosixFilePermissions(new File(snap2, "a.db").toPath())
+        .contains(PosixFilePermission.OWNER_WRITE)); // canWrite() is true for root
+    assertTrue(new File(snap2, "logs").isDirectory());
+
+    backup.restore(snap1, src);
+    assertEquals("version1", read(new File(src, "a.db")));
+    assertFalse(new File(src, "c.db").exists());
+    assertTrue(Files.getPosixFilePermissions(new File(src, "a.db").toPath())
+        .contains(PosixFilePermission.OWNER_WRITE));
+    assertTrue(new File(src, "logs").isDirectory());
+
+    assertEquals(1, IncrementalBackup.prune(snapshots, 1).size());
+    assertFalse(snap1.exists());
+    assertEquals("unchanged", read(new File(snap2, "index/b.db")));
+  }
+
+  @Test
+  public void testSameSizeAndTimeRewriteIsCopied() throws IOException {
+    IncrementalBackup backup = new IncrementalBackup();
+    File snap1 = new File(snapshots, "1");
+    backup.backup(src, snap1, null);
+
+    File a = new File(src, "a.db");
+    FileTime modified = Files.getLastModifiedTime(a.toPath());
+    write("a.db", "versionX");
+    Files.setLastModifiedTime(a.toPath(), modified);
+    File snap2 = new File(snapshots, "2");
+    backup.backup(src, snap2, snap1);
+
+    assertFalse(Files.isSameFile(new File(snap1, "a.db").toPath(), new File(snap2, "a.db").toPath()));
+    assertEquals("versionX", read(new File(snap2, "a.db")));
+    assertEquals("version1", read(new File(snap1, "a.db")));
+
+    backup.restore(snap1, src);
+    assertEquals("version1", read(a));
+  }
+
+  @Test
+  public void testGraphUriBackupAndRestore()throws IOException {
+    IdGraphFactoryTinker.register();
+    GraphUri gUri = new GraphUri("tinker:" + new File(ROOT, "tinker").getPath());
+    gUri.createNewIdGraph(true).addVertex("a");
+    gUri.shutdown();
+
+    GraphUri snap1 = new GraphUri("tinker:" + new File(snapshots, "g1").getPath());
+    gUri.backupTo(snap1, null);
+    gUri.openIdGraph().addVertex("b");
+    gUri.shutdown();
+    GraphUri snap2 = new GraphUri("tinker:" + new File(snapshots, "g2").getPath());
+    gUri.backupTo(snap2, snap1);
+
+    gUri.restoreFrom(snap1);
+    assertNotNull(gUri.openIdGraph().getVertex("a"));
+    assertNull(gUri.getGraph().getVertex("b"));
+    gUri.shutdown();
+  }
+
+}
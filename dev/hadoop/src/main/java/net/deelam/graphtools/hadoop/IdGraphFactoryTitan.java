@@ -361,6 +361,15 @@ public class IdGraphFactoryTitan implements IdGraphFactory {
     }
   }
 
+  @Override
+  public boolean truncate(GraphUri gUri) throws IOException {
+    TitanGraph tgraph = TitanFactory.open(getConfig(gUri).htConfigs.getTitanConfig());
+    tgraph.shutdown();
+    log.info("Clearing graph: {}", gUri);
+    TitanCleanup.clear(tgraph); // clears the table, which is reinitialized when reopened
+    return true;
+  }
+
   @Override
   public boolean exists(GraphUri gUri) {
     /*
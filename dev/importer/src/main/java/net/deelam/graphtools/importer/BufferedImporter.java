@@ -44,6 +44,7 @@ public class BufferedImporter<B> implements Importer<B> {
   public void importFile(SourceData<B> sourceData, GraphUri graphUri, Map<String, Number> metrics) throws IOException {
     encoder.reinit(sourceData);
     populator.reinit(graphUri, sourceData);
+    populator.putMetrics(metrics);
 //    graphUri.createNewIdGraph(true);
     int tx = GraphTransaction.begin(graphUri.getGraph());
     try {
@@ -75,6 +76,7 @@ public class BufferedImporter<B> implements Importer<B> {
 
   private void populateAndCommit(GraphUri graphUri, int tx, Collection<GraphRecord> gRecordsBuffered) throws IOException {
     populator.populateGraph(graphUri, gRecordsBuffered);
+    gRecordsBuffered.forEach(GraphRecord::discard);
     GraphTransaction.commit(tx);
     GraphTransaction.begin(graphUri.getGraph()); // should be the same tx number
     gRecordsBuffered.clear();
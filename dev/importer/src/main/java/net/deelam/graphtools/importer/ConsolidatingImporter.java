@@ -14,9 +14,11 @@ import javax.inject.Inject;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.FixedThresholdController;
 import net.deelam.graphtools.GraphRecord;
 import net.deelam.graphtools.GraphTransaction;
 import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.ThresholdController;
 
 /**
  * Given sourceData, iterates through ioRecord of type B 
@@ -36,6 +38,10 @@ public class ConsolidatingImporter<B> implements Importer<B> {
 
   @Setter
   private int bufferThreshold=10000;
+
+  /// if set, overrides bufferThreshold
+  @Setter
+  private ThresholdController thresholdController;
   
   @Inject
   public ConsolidatingImporter(Encoder<B> encoder, Populator populator, GraphRecord.Factory grFactory) {
@@ -57,13 +63,19 @@ public class ConsolidatingImporter<B> implements Importer<B> {
       metrics.put("ELEMENTS_CREATED", createdCounter);
 
     }
+    ThresholdController controller =
+        (thresholdController == null) ? new FixedThresholdController(bufferThreshold) : thresholdController;
+    controller.putMetrics(metrics);
+    populator.putMetrics(metrics);
+    populator.setThresholdController(controller);
 //    graphUri.createNewIdGraph(true);
     int tx = GraphTransaction.begin(graphUri.getGraph());
     try {
       int gRecCounter = 0;
-      Map<String,GraphRecord> gRecordsBuffered=new HashMap<>(bufferThreshold+100);
+      Map<String,GraphRecord> gRecordsBuffered=new HashMap<>(controller.getThreshold()+100);
       B inRecord;
       long recordNum=0;
+      long lastFlushNanos=System.nanoTime();
       while ((inRecord = sourceData.getNextRecord()) != null) {
         recordCounter.incrementAndGet();
         ++recordNum;
@@ -78,9 +90,13 @@ public class ConsolidatingImporter<B> implements Importer<B> {
           // merge records before adding to graph
           mergeRecords(gRecordsBuffered, gRecords);
 
-          if (gRecCounter > bufferThreshold) {
+          if (gRecCounter > controller.getThreshold()) {
             log.info("Incremental graph populate and transaction commit");
+            long flushStart=System.nanoTime();
             populateAndCommit(graphUri, tx, gRecordsBuffered);
+            long now=System.nanoTime();
+            controller.batchCompleted(gRecCounter, now-lastFlushNanos, now-flushStart);
+            lastFlushNanos=now;
             log.info("  commit done.");
             gRecCounter = 0;
           }
@@ -105,6 +121,7 @@ public class ConsolidatingImporter<B> implements Importer<B> {
 
   private void populateAndCommit(GraphUri graphUri, int tx, Map<String, GraphRecord> gRecordsBuffered) throws IOException {
     populator.populateGraph(graphUri, gRecordsBuffered.values());
+    gRecordsBuffered.values().forEach(GraphRecord::discard);
     GraphTransaction.commit(tx);
     GraphTransaction.begin(graphUri.getGraph()); // should be the same tx number
     gRecordsBuffered.clear();
@@ -117,6 +134,7 @@ public class ConsolidatingImporter<B> implements Importer<B> {
         gRecordsBuffered.put(gr.getStringId(),gr);
       } else {
         populator.getGraphRecordMerger().merge(gr, existingGR);
+        gr.discard();
       }
     }
   }
@@ -8,6 +8,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.deelam.graphtools.GraphRecordImpl;
 import net.deelam.graphtools.PropertyMerger;
+import net.deelam.graphtools.ThresholdController;
 
 @RequiredArgsConstructor
 @AllArgsConstructor
@@ -20,6 +21,9 @@ public class ConsolidatingImporterFactory<B> implements ImporterFactory {
   Function<SourceData,Integer> bufferSizeFunction=sd->{
     return 10000;
   };
+
+  /// returns null to use a fixed bufferSize
+  Function<SourceData,ThresholdController> thresholdControllerFunction=sd->null;
   
   @Override
   public Importer<B> create(SourceData sd) {
@@ -31,6 +35,7 @@ public class ConsolidatingImporterFactory<B> implements ImporterFactory {
     Integer bufferSize = bufferSizeFunction.apply(sd);
     log.info("Using bufferSize={}", bufferSize);
     importer.setBufferThreshold(bufferSize.intValue());
+    importer.setThresholdController(thresholdControllerFunction.apply(sd));
     
     return importer;
   }
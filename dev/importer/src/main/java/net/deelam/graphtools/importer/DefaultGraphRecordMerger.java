@@ -49,6 +49,16 @@ public class DefaultGraphRecordMerger implements GraphRecordMerger {
   public void mergeProperties(Element fromE, Element toE) {
     propertyMerger.mergeProperties(fromE, toE);
   }
+
+  @Override
+  public void beginMergeSession() {
+    propertyMerger.beginMergeSession();
+  }
+
+  @Override
+  public void endMergeSession(boolean flush) {
+    propertyMerger.endMergeSession(flush);
+  }
   
 
   private void merge(Map<String, Edge> fromEdges, Map<String, Edge> toEdges) {
@@ -10,9 +10,11 @@ import java.util.Map;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.FixedThresholdController;
 import net.deelam.graphtools.GraphRecord;
 import net.deelam.graphtools.GraphTransaction;
 import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.ThresholdController;
 
 /**
  * Given sourceData, iterates through ioRecord of type B 
@@ -32,6 +34,10 @@ public class DefaultImporter<B> implements Importer<B> {
   @Setter
   private int commitThreshold=1000;
 
+  /// if set, overrides commitThreshold
+  @Setter
+  private ThresholdController thresholdController;
+
   public DefaultImporter(Encoder<B> encoder, Populator populator, GraphRecord.Factory grFactory) {
     super();
     this.encoder = encoder;
@@ -43,22 +49,22 @@ public class DefaultImporter<B> implements Importer<B> {
   public void importFile(SourceData<B> sourceData, GraphUri graphUri, Map<String, Number> metrics) throws IOException {
     encoder.reinit(sourceData);
     populator.reinit(graphUri, sourceData);
+    ThresholdController controller =
+        (thresholdController == null) ? new FixedThresholdController(commitThreshold) : thresholdController;
+    controller.putMetrics(metrics);
+    populator.putMetrics(metrics);
+    populator.setThresholdController(controller);
     //graphUri.createNewIdGraph(true);
-    int tx = GraphTransaction.begin(graphUri.getGraph());
+    int tx = GraphTransaction.begin(graphUri.getGraph(), controller);
     try {
-      int gRecCounter = 0;
       B inRecord;
       while ((inRecord = sourceData.getNextRecord()) != null) {
         log.debug("-------------- row={}", inRecord);
         Collection<GraphRecord> gRecords = grBuilder.build(inRecord);
         log.debug("graphRecords=", gRecords);
-        gRecCounter += gRecords.size();
         populator.populateGraph(graphUri, gRecords);
-        if (gRecCounter > commitThreshold) {
-          GraphTransaction.commit(tx);
-          tx = GraphTransaction.begin(graphUri.getGraph());
-          gRecCounter = 0;
-        }
+        gRecords.forEach(GraphRecord::discard);
+        GraphTransaction.commitIfFull(tx, gRecords.size());
       }
       GraphTransaction.commit(tx);
     } catch (RuntimeException re) {
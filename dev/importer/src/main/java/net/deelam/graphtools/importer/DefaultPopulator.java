@@ -1,20 +1,27 @@
 package net.deelam.graphtools.importer;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import net.deelam.graphtools.*;
 
+import com.google.common.util.concurrent.AtomicDouble;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Graph;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
 
 @RequiredArgsConstructor
-//@Slf4j
+@Slf4j
 public class DefaultPopulator implements Populator {
 
   @Getter
@@ -38,26 +45,166 @@ public class DefaultPopulator implements Populator {
 //      markRecords(gRecords);
     }
 
-    // add to graph
-    for (GraphRecord gr : gRecords) {
-      Vertex newV = importVertex(graphUri.getGraph(), gr);
-      importEdges(graphUri.getGraph(), Direction.OUT, newV, gr);
-      importEdges(graphUri.getGraph(), Direction.IN, newV, gr);
+    if (idFilter == null) {
+      populate(graphUri, gRecords);
+      return;
+    }
+    // this populator checks for existing ids itself; check is restored even if populating fails
+    graphUri.getGraph().enforceUniqueIds(false);
+    try {
+      populate(graphUri, gRecords);
+    } finally {
+      graphUri.getGraph().enforceUniqueIds(true);
+    }
+  }
+
+  private void populate(GraphUri graphUri, Collection<GraphRecord> gRecords) {
+    // add to graph; merged values are written to the graph once at the end of the batch
+    Graph graph = (writeBehindGraph == null) ? graphUri.getGraph() : writeBehindGraph;
+    int tx = (writeBehindGraph == null) ? -1 : GraphTransaction.begin(writeBehindGraph);
+    boolean populated = false;
+    graphRecordMerger.beginMergeSession();
+    try {
+      for (GraphRecord gr : gRecords) {
+        Vertex newV = importVertex(graph, gr);
+        importEdges(graph, Direction.OUT, newV, gr);
+        importEdges(graph, Direction.IN, newV, gr);
+      }
+      populated = true;
+    } finally {
+      if (counts != null) {
+        if (populated) // buffered with the element writes, if any
+          counts.applyTo(graph);
+        else
+          counts.clear();
+      }
+      updateFalsePositiveRate();
+      graphRecordMerger.endMergeSession(populated);
+      if (tx >= 0) { // buffer is flushed when the outer-most transaction commits
+        if (populated)
+          GraphTransaction.commit(tx);
+        else
+          GraphTransaction.rollback(tx);
+      }
     }
   }
 
+  /// if positive, graph writes are buffered in a WriteBehindGraph of this size
+  @Setter
+  private int writeBehindBufferSize = 0;
+
+  private WriteBehindGraph writeBehindGraph;
+
+  /// if positive, ids are added to a ScalableBloomFilter of this initial capacity
+  /// so that lookups of ids that are definitely not in the graph are skipped
+  @Setter
+  private int bloomFilterCapacity = 0;
+  @Setter
+  private double bloomFilterFpp = 0.01;
+  /// if true, ids already in the graph are added to the filter in reinit(), e.g., when appending to a graph;
+  /// otherwise the filter is not used for non-empty graphs
+  @Setter
+  private boolean bloomFilterWarmUp = false;
+
+  /// if set, vertices are also counted by this property when counts are started for a new graph (see ElementCounts)
+  @Setter
+  private String countNodeTypesBy = null;
+
+  private ElementCounts counts;
+
+  private ScalableBloomFilter idFilter;
+  private final AtomicLong lookupsSkipped = new AtomicLong();
+  private final AtomicLong falsePositives = new AtomicLong();
+  private final AtomicDouble falsePositiveRate = new AtomicDouble();
+
   private GraphUri graphUri;
   private long createdNodes = 0, createdEdges = 0;
   
   public void reinit(GraphUri graphUri, SourceData sourceData){
     this.graphUri = graphUri;
     graphUri.openIdGraph();
+    writeBehindGraph = null;
+    if (writeBehindBufferSize > 0) {
+      writeBehindGraph = new WriteBehindGraph(graphUri.getGraph());
+      writeBehindGraph.setMaxBufferedOperations(writeBehindBufferSize);
+    }
     createdNodes=0;
     createdEdges=0;
+    counts = ElementCounts.init(graphUri.getGraph(), countNodeTypesBy) ? ElementCounts.forGraph(graphUri.getGraph()) : null;
+
+    lookupsSkipped.set(0);
+    falsePositives.set(0);
+    falsePositiveRate.set(0);
+    idFilter = (bloomFilterCapacity > 0) ? createIdFilter(graphUri.getGraph()) : null;
+  }
+
+  private ScalableBloomFilter createIdFilter(IdGraph<?> graph) {
+    ScalableBloomFilter filter = new ScalableBloomFilter(bloomFilterCapacity, bloomFilterFpp);
+    if (bloomFilterWarmUp) {
+      long count = 0;
+      for (Vertex v : graph.getVertices()) {
+        filter.put(v.getId().toString());
+        ++count;
+      }
+      for (Edge e : graph.getEdges()) {
+        filter.put(e.getId().toString());
+        ++count;
+      }
+      log.info("Added {} existing ids to Bloom filter", count);
+    } else {
+      for (Vertex v : graph.getVertices()) {
+        if (!GraphUtils.METADATA_VERTEXID.equals(v.getId())) {
+          log.warn("Not using Bloom filter since graph is not empty and bloomFilterWarmUp=false: {}", graphUri);
+          return null;
+        }
+      }
+    }
+    return filter;
+  }
+
+  @Override
+  public void putMetrics(Map<String, Number> metrics) {
+    if (graphUri.getGraph() instanceof CachingIdGraph)
+      ((CachingIdGraph<?>) graphUri.getGraph()).putMetrics(metrics);
+    if (bloomFilterCapacity > 0) {
+      metrics.put("LOOKUPS_SKIPPED", lookupsSkipped);
+      metrics.put("BLOOM_FALSE_POSITIVES", falsePositives);
+      metrics.put("BLOOM_FALSE_POSITIVE_RATE", falsePositiveRate);
+    }
+  }
+
+  private void updateFalsePositiveRate() {
+    long negatives = lookupsSkipped.get() + falsePositives.get(); // ids that were not in the graph
+    if (negatives > 0)
+      falsePositiveRate.set((double) falsePositives.get() / negatives);
+  }
+
+  /**
+   * @return null if the filter indicates that the id is definitely not in the graph
+   */
+  private <E extends Element> E lookup(String id, Function<String, E> getter) {
+    if (idFilter == null)
+      return getter.apply(id);
+    if (!idFilter.mightContain(id)) {
+      lookupsSkipped.incrementAndGet();
+      return null;
+    }
+    E elem = getter.apply(id);
+    if (elem == null)
+      falsePositives.incrementAndGet();
+    return elem;
   }
 
   public void shutdown() {
+    if (idFilter != null) {
+      log.info("Bloom filter skipped {} lookups; false-positive rate={} (expected {})", lookupsSkipped,
+          falsePositiveRate, idFilter.expectedFpp());
+      idFilter = null;
+    }
     if (this.graphUri != null) {
+      if (counts != null) // in case importVertex() or importEdge() was called directly
+        counts.applyTo(graphUri.getGraph());
+      counts = null;
       Vertex mdV = GraphUtils.getMetaDataNode(graphUri.getGraph());
       mdV.setProperty("createdNodes", createdNodes);
       mdV.setProperty("createdEdges", createdEdges);
@@ -69,7 +216,7 @@ public class DefaultPopulator implements Populator {
     }
   }
 
-  private void importEdges(IdGraph<?> graph, Direction direction, Vertex newV, GraphRecord gr) {
+  private void importEdges(Graph graph, Direction direction, Vertex newV, GraphRecord gr) {
     for (Edge e : gr.getEdges(direction)) {
       GraphRecord oppV = (GraphRecord) e.getVertex(direction.opposite());
       Vertex newOppV = importVertex(graph, oppV);
@@ -77,27 +224,36 @@ public class DefaultPopulator implements Populator {
     }
   }
 
-  public Vertex importVertex(IdGraph<?> graph, GraphRecord gr) {
+  public Vertex importVertex(Graph graph, GraphRecord gr) {
     String id = gr.getStringId();
-    Vertex newV = graph.getVertex(id);
-    if (newV == null) {
+    Vertex newV = lookup(id, graph::getVertex);
+    boolean created = (newV == null);
+    if (created) {
       newV = graph.addVertex(id);
       ++createdNodes;
+      if (idFilter != null)
+        idFilter.put(id);
     }
     copyProperties(gr, newV);
+    if (created && counts != null) // after copying the type property
+      counts.nodeAdded(newV);
     return newV;
   }
 
-  public Edge importEdge(IdGraph<?> graph, GraphRecordEdge grE, Direction direction,
+  public Edge importEdge(Graph graph, GraphRecordEdge grE, Direction direction,
       Vertex v1inGraph, Vertex v2inGraph) {
     String edgeId = grE.getStringId();
-    Edge newEdge = graph.getEdge(edgeId);
+    Edge newEdge = lookup(edgeId, graph::getEdge);
     if (newEdge == null) {
       if (direction == Direction.OUT)
         newEdge = graph.addEdge(edgeId, v1inGraph, v2inGraph, grE.getLabel());
       else
         newEdge = graph.addEdge(edgeId, v2inGraph, v1inGraph, grE.getLabel());
       ++createdEdges;
+      if (idFilter != null)
+        idFilter.put(edgeId);
+      if (counts != null)
+        counts.edgeAdded(newEdge);
     } else {
       if (!newEdge.getLabel().equals(grE.getLabel()))
         throw new IllegalArgumentException("Expecting " + grE.getLabel() + " but got "
@@ -0,0 +1,296 @@
+/**
+ *
+ */
+package net.deelam.graphtools.importer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.GraphRecord;
+import net.deelam.graphtools.GraphRecordBinaryIO;
+import net.deelam.graphtools.GraphRecordMerger;
+import net.deelam.graphtools.GraphTransaction;
+import net.deelam.graphtools.GraphUri;
+
+/**
+ * Like ConsolidatingImporter but consolidates GraphRecords across the whole sourceData with bounded heap:
+ * <li> GraphRecords with the same id are merged in memory until bufferThreshold (number of *unique* records)
+ *   is reached, then the buffer is written to spillDir as a run sorted by id (using GraphRecordBinaryIO)
+ * <li> after all ioRecords are read, the runs are k-way merged so that records with the same id from
+ *   different runs are merged by the Populator's GraphRecordMerger
+ * <li> each id is populated exactly once, in id order, so the Populator never has to merge
+ *   a record with what is already in the graph
+ *
+ * If the sourceData fits within bufferThreshold, nothing is spilled.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class ExternalSortImporter<B> implements Importer<B> {
+
+  @Getter
+  private final Encoder<B> encoder;
+  @Getter
+  private final Populator populator;
+  @Getter
+  private final GraphRecordBuilder<B> grBuilder;
+  @Getter
+  private final GraphRecord.Factory grFactory;
+
+  @Setter
+  private int bufferThreshold = 100000;
+
+  /// number of merged records passed to populator.populateGraph() at a time
+  @Setter
+  private int populateBatchSize = 10000;
+
+  /// where run files are written; null for the system temp directory
+  @Setter
+  private File spillDir = null;
+
+  public ExternalSortImporter(Encoder<B> encoder, Populator populator, GraphRecord.Factory grFactory) {
+    super();
+    this.encoder = encoder;
+    this.populator = populator;
+    this.grFactory = grFactory;
+    grBuilder = new GraphRecordBuilder<>(encoder, grFactory);
+  }
+
+  @Override
+  public void importFile(SourceData<B> sourceData, GraphUri graphUri, Map<String, Number> metrics) throws IOException {
+    encoder.reinit(sourceData);
+    populator.reinit(graphUri, sourceData);
+
+    AtomicLong recordCounter = new AtomicLong();
+    AtomicLong createdCounter = new AtomicLong();
+    AtomicLong runCounter = new AtomicLong();
+    {
+      metrics.put("RECORDS", recordCounter);
+      metrics.put("ELEMENTS_CREATED", createdCounter);
+      metrics.put("SPILLED_RUNS", runCounter);
+    }
+    populator.putMetrics(metrics);
+
+    List<File> runFiles = new ArrayList<>();
+    try {
+      Map<String, GraphRecord> gRecordsBuffered = new HashMap<>(bufferThreshold + 100);
+      B inRecord;
+      long recordNum = 0;
+      while ((inRecord = sourceData.getNextRecord()) != null) {
+        recordCounter.incrementAndGet();
+        ++recordNum;
+        log.debug("{}: record={}", recordNum, inRecord);
+        try {
+          Collection<GraphRecord> gRecords = grBuilder.build(inRecord);
+          createdCounter.addAndGet(gRecords.size());
+          mergeRecords(gRecordsBuffered, gRecords);
+        } catch (Exception e) {
+          log.warn("Skipping record; got exception for recordNum=~" + recordNum + ": " + inRecord, e);
+        }
+
+        if (gRecordsBuffered.size() >= bufferThreshold) {
+          runFiles.add(spillRun(gRecordsBuffered));
+          runCounter.incrementAndGet();
+          gRecordsBuffered.clear();
+        }
+      }
+
+      if (runFiles.isEmpty()) {
+        log.info("All {} unique records fit in buffer; populating without spilling", gRecordsBuffered.size());
+        List<GraphRecord> sorted = new ArrayList<>(gRecordsBuffered.values());
+        gRecordsBuffered.clear();
+        sorted.sort((a, b) -> a.getStringId().compareTo(b.getStringId()));
+        populateInBatches(graphUri, sorted);
+      } else {
+        if (!gRecordsBuffered.isEmpty()) {
+          runFiles.add(spillRun(gRecordsBuffered));
+          runCounter.incrementAndGet();
+          gRecordsBuffered.clear();
+        }
+        log.info("Merging {} runs", runFiles.size());
+        mergeRunsAndPopulate(graphUri, runFiles);
+      }
+    } finally {
+      for (File runFile : runFiles)
+        if (!runFile.delete())
+          log.warn("Could not delete run file: {}", runFile);
+      populator.shutdown();
+      encoder.close(sourceData);
+    }
+  }
+
+  private void mergeRecords(Map<String, GraphRecord> gRecordsBuffered, Collection<GraphRecord> gRecords) {
+    for (GraphRecord gr : gRecords) {
+      GraphRecord existingGR = gRecordsBuffered.get(gr.getStringId());
+      if (existingGR == null) {
+        gRecordsBuffered.put(gr.getStringId(), gr);
+      } else {
+        populator.getGraphRecordMerger().merge(gr, existingGR);
+        gr.discard();
+      }
+    }
+  }
+
+  private File spillRun(Map<String, GraphRecord> gRecordsBuffered) throws IOException {
+    List<String> ids = new ArrayList<>(gRecordsBuffered.keySet());
+    ids.sort(null);
+    File runFile = File.createTempFile("graphRecords-", ".run", spillDir);
+    runFile.deleteOnExit();
+    log.info("Spilling {} records to {}", ids.size(), runFile);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), 1 << 16))) {
+      out.writeInt(ids.size());
+      for (String id : ids)
+        GraphRecordBinaryIO.writeRecord(gRecordsBuffered.get(id), out);
+    }
+    gRecordsBuffered.values().forEach(GraphRecord::discard);
+    return runFile;
+  }
+
+  private void mergeRunsAndPopulate(GraphUri graphUri, List<File> runFiles) throws IOException {
+    GraphRecordMerger merger = populator.getGraphRecordMerger();
+    PriorityQueue<RunReader> heap = new PriorityQueue<>(runFiles.size(),
+        (a, b) -> a.current.getStringId().compareTo(b.current.getStringId()));
+    List<RunReader> readers = new ArrayList<>(runFiles.size());
+    try {
+      for (File runFile : runFiles) {
+        RunReader reader = new RunReader(runFile);
+        readers.add(reader);
+        if (reader.advance())
+          heap.add(reader);
+      }
+
+      Batcher batcher = new Batcher(graphUri);
+      try {
+        while (!heap.isEmpty()) {
+          RunReader reader = heap.poll();
+          GraphRecord merged = reader.current;
+          if (reader.advance())
+            heap.add(reader);
+          while (!heap.isEmpty() && heap.peek().current.getStringId().equals(merged.getStringId())) {
+            RunReader sameIdReader = heap.poll();
+            merger.merge(sameIdReader.current, merged);
+            sameIdReader.current.discard();
+            if (sameIdReader.advance())
+              heap.add(sameIdReader);
+          }
+          batcher.add(merged);
+        }
+        batcher.finish();
+      } catch (RuntimeException | IOException e) {
+        batcher.abort(e);
+        throw e;
+      }
+    } finally {
+      for (RunReader reader : readers)
+        reader.close();
+    }
+  }
+
+  private void populateInBatches(GraphUri graphUri, List<GraphRecord> sorted) throws IOException {
+    Batcher batcher = new Batcher(graphUri);
+    try {
+      for (GraphRecord gr : sorted)
+        batcher.add(gr);
+      batcher.finish();
+    } catch (RuntimeException | IOException e) {
+      batcher.abort(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Populates records populateBatchSize at a time, committing after each batch
+   * if the graph is opened as a TransactionalGraph (unlike for Neo4jBatchPopulator).
+   */
+  private class Batcher {
+    final GraphUri graphUri;
+    final int tx;
+    final List<GraphRecord> batch = new ArrayList<>(populateBatchSize);
+
+    Batcher(GraphUri graphUri) {
+      this.graphUri = graphUri;
+      tx = graphUri.isOpen() ? GraphTransaction.begin(graphUri.getGraph()) : -1;
+    }
+
+    void add(GraphRecord gr) throws IOException {
+      batch.add(gr);
+      if (batch.size() >= populateBatchSize)
+        populateAndCommit();
+    }
+
+    private void populateAndCommit() throws IOException {
+      log.debug("Incremental graph populate and transaction commit: {} records", batch.size());
+      populator.populateGraph(graphUri, batch);
+      batch.forEach(GraphRecord::discard);
+      batch.clear();
+      if (tx >= 0) {
+        GraphTransaction.commit(tx);
+        GraphTransaction.begin(graphUri.getGraph()); // should be the same tx number
+      }
+    }
+
+    void finish() throws IOException {
+      populator.populateGraph(graphUri, batch);
+      batch.forEach(GraphRecord::discard);
+      batch.clear();
+      if (tx >= 0)
+        GraphTransaction.commit(tx);
+    }
+
+    void abort(Exception e) {
+      log.warn("Got exception during graph population", e);
+      if (tx >= 0)
+        GraphTransaction.rollback(tx);
+    }
+  }
+
+  /**
+   * Sequentially reads a run file written by spillRun().
+   */
+  private class RunReader implements Closeable {
+    final DataInputStream in;
+    int remaining;
+    GraphRecord current;
+
+    RunReader(File runFile) throws IOException {
+      in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), 1 << 16));
+      remaining = in.readInt();
+    }
+
+    /**
+     * @return false if there are no more records
+     */
+    boolean advance() throws IOException {
+      if (remaining == 0) {
+        current = null;
+        return false;
+      }
+      --remaining;
+      current = GraphRecordBinaryIO.readRecord(in, grFactory);
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+}
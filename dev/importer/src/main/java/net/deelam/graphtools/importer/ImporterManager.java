@@ -1,5 +1,6 @@
 package net.deelam.graphtools.importer;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
@@ -76,7 +77,11 @@ public class ImporterManager {
     Importer importer=importerF.create(sData);
     
 //    log.info("{}  {}", sData.toString(), importer);
-    importData(sData, importer, graphUri, metrics);
+    try {
+      importData(sData, importer, graphUri, metrics);
+    } finally {
+      close(sData);
+    }
     sData=null;
     openSourceDatas.put(file, COMPLETED_SD);
   }
@@ -90,10 +95,20 @@ public class ImporterManager {
     SourceData sData = factories.sourceDataFactory.createFrom(readable);
     final ImporterFactory importerF = factories.importerFactory;
     
-    importData(sData, importerF.create(sData), graphUri, metrics);
+    try {
+      importData(sData, importerF.create(sData), graphUri, metrics);
+    } finally {
+      close(sData);
+    }
     sData=null;
   }
   
+  /// releases resources (e.g., the memory-mapped file of a CsvMappedFileToBeanSourceData) of SourceDatas created here
+  private static void close(SourceData<?> sData) throws IOException {
+    if (sData instanceof Closeable)
+      ((Closeable) sData).close();
+  }
+
   public <B> void importData(SourceData<B> sData, final Importer<B> importer, GraphUri graphUri, Map<String, Number> metrics)
       throws IOException {
     Preconditions.checkNotNull(graphUri);
@@ -12,8 +12,10 @@ import java.util.concurrent.atomic.AtomicLong;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.FixedThresholdController;
 import net.deelam.graphtools.GraphRecord;
 import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.ThresholdController;
 
 /**
  * Given sourceData, iterates through ioRecord of type B 
@@ -32,7 +34,11 @@ public class Neo4jBatchImporter<B> implements Importer<B> {
   private final GraphRecordBuilder<B> grBuilder;
 
   @Setter
-  private int bufferThreshold=200000; // TODO: 4: create benchmark to determine best threshold given installation
+  private int bufferThreshold=200000;
+
+  /// if set, overrides bufferThreshold, e.g., to adapt it to the installation
+  @Setter
+  private ThresholdController thresholdController;
   
   public Neo4jBatchImporter(Encoder<B> encoder, Populator populator, GraphRecord.Factory grFactory) {
     this.encoder = encoder;
@@ -57,11 +63,16 @@ public class Neo4jBatchImporter<B> implements Importer<B> {
       metrics.put("RECORDS_MERGED", recordMergeCounter);
       metrics.put("ELEMENTS_CREATED", createdCounter);
     }
+    ThresholdController controller =
+        (thresholdController == null) ? new FixedThresholdController(bufferThreshold) : thresholdController;
+    controller.putMetrics(metrics);
+    populator.putMetrics(metrics);
 
     int gRecCounter = 0;
     long recordNum=0;
+    long lastFlushNanos=System.nanoTime();
     try {
-      Map<String,GraphRecord> gRecordsBuffered=new HashMap<>(bufferThreshold+100);
+      Map<String,GraphRecord> gRecordsBuffered=new HashMap<>(controller.getThreshold()+100);
       while (true) {
         //log.info("{} {}", inRecord.getClass(), ((net.deelam.graphtools.importer.csv.CsvFileToBeanSourceData) sourceData).getParser().getBeanClass().getSimpleName());
         ++recordNum;
@@ -80,9 +91,13 @@ public class Neo4jBatchImporter<B> implements Importer<B> {
           // merge records before adding to graph
           mergeRecords(gRecordsBuffered, gRecords, recordMergeCounter);
 
-          if (gRecCounter > bufferThreshold) {
+          if (gRecCounter > controller.getThreshold()) {
             log.debug("Incremental graph populate and transaction commit: {}", recordNum);
+            long flushStart=System.nanoTime();
             populateAndCommit(graphUri, gRecordsBuffered);
+            long now=System.nanoTime();
+            controller.batchCompleted(gRecCounter, now-lastFlushNanos, now-flushStart);
+            lastFlushNanos=now;
             log.debug("  commit done.");
             gRecCounter = 0;
           }
@@ -105,6 +120,7 @@ public class Neo4jBatchImporter<B> implements Importer<B> {
 
   private void populateAndCommit(GraphUri graphUri, Map<String, GraphRecord> gRecordsBuffered) throws IOException {
     populator.populateGraph(graphUri, gRecordsBuffered.values());
+    gRecordsBuffered.values().forEach(GraphRecord::discard);
     gRecordsBuffered.clear();
   }
 
@@ -116,6 +132,7 @@ public class Neo4jBatchImporter<B> implements Importer<B> {
         gRecordsBuffered.put(gr.getStringId(),gr);
       } else {
         populator.getGraphRecordMerger().merge(gr, existingGR);
+        gr.discard();
         recordMergeCounter.incrementAndGet();
       }
     }
@@ -1,24 +1,33 @@
 package net.deelam.graphtools.importer;
 
+import java.util.function.Function;
 import java.util.function.Supplier;
 
+import lombok.AllArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.deelam.graphtools.GraphRecordImpl;
+import net.deelam.graphtools.ThresholdController;
 
 @RequiredArgsConstructor
+@AllArgsConstructor
 @Slf4j
 public class Neo4jBatchImporterFactory<B> implements ImporterFactory{
   final Supplier<Encoder<B>> encoderFactory;
   final String importerPropertyVal;
+
+  /// returns null to use Neo4jBatchImporter's fixed bufferThreshold
+  Function<SourceData,ThresholdController> thresholdControllerFunction=sd->null;
   
   @Override
   public Importer<B> create(SourceData sd) {
     Encoder<B> encoder = encoderFactory.get();
     log.info("Creating Neo4jBatchImporter: "+encoder);
-    return new Neo4jBatchImporter<B>(encoder, 
+    Neo4jBatchImporter<B> importer = new Neo4jBatchImporter<B>(encoder, 
         new Neo4jBatchPopulator(importerPropertyVal),
         new GraphRecordImpl.Factory()
     );
+    importer.setThresholdController(thresholdControllerFunction.apply(sd));
+    return importer;
   }
 }
\ No newline at end of file
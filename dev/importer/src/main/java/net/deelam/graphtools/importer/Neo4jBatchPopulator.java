@@ -1,8 +1,15 @@
 package net.deelam.graphtools.importer;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -30,8 +37,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import net.deelam.graphtools.*;
-import net.openhft.chronicle.map.ChronicleMap;
-import net.openhft.chronicle.map.ChronicleMapBuilder;
 
 @RequiredArgsConstructor
 @Slf4j
@@ -71,23 +76,10 @@ public class Neo4jBatchPopulator implements Populator {
   900k chronmap w neoindexing  9:40mins 58:41-08:19
   90k chronmap.file w neoindexing  60s
   900k chronmap.file w neoindexing ~10 mins 16:44-26:35
+
+   * ChronicleMap was replaced by OffHeapIdMap, which grows as needed instead of requiring a max size.
    */
-  private Map<String, Long> idMap = null;
-
-  private Map<String, Long> createIdMap(long maxNumNodes) {
-    Map<String, Long> mapDb;
-    try {
-      File mapFile = File.createTempFile("batchImporter-", ".map");
-      mapFile.deleteOnExit();
-      log.info("Creating temp file: " + mapFile.getAbsolutePath());
-      mapDb = ChronicleMapBuilder.of(String.class, Long.class)
-          .entries(maxNumNodes).createPersistedTo(mapFile);
-    } catch (IOException e) {
-      log.warn("Could not create file-based map, using in-memory map instead.");
-      mapDb = new HashMap<>();
-    }
-    return mapDb;
-  }
+  private OffHeapIdMap idMap = null;
 
   private BatchInserter inserter = null;
 
@@ -115,6 +107,76 @@ public class Neo4jBatchPopulator implements Populator {
 
   private static final String ROOT_ID = "root";
 
+  /**
+   * If true, string ids are appended to spill files during populateGraph() 
+   * and the node_auto_index and relationship_auto_index are built in one pass during shutdown().
+   * Indexing each element as it is inserted roughly doubles insertion time (see timings above).
+   */
+  @Setter
+  private boolean deferIndexing = false;
+
+  private IdSpillFile nodeIdSpill;
+  private IdSpillFile edgeIdSpill;
+
+  /**
+   * (long id, string id) pairs in insertion order, which is ascending long id.
+   */
+  private static class IdSpillFile {
+    final File file;
+    final DataOutputStream out;
+    long count = 0;
+
+    IdSpillFile(String prefix) throws IOException {
+      file = File.createTempFile(prefix, ".ids");
+      file.deleteOnExit();
+      out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 20));
+    }
+
+    void append(long longId, String stringId) throws IOException {
+      byte[] bytes = stringId.getBytes(StandardCharsets.UTF_8);
+      out.writeLong(longId);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      ++count;
+    }
+
+    /**
+     * Adds all ids to stringIdIndex, then deletes the file
+     */
+    void addAllToIndex(BatchInserterIndex stringIdIndex) throws IOException {
+      out.close();
+      Map<String, Object> props = new HashMap<>();
+      try (DataInputStream in =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 20))) {
+        byte[] bytes = new byte[256];
+        for (long i = 0; i < count; ++i) {
+          long longId = in.readLong();
+          int len = in.readInt();
+          if (bytes.length < len)
+            bytes = new byte[len];
+          in.readFully(bytes, 0, len);
+          props.put(IdGraph.ID, new String(bytes, 0, len, StandardCharsets.UTF_8));
+          stringIdIndex.add(longId, props);
+        }
+      }
+      stringIdIndex.flush();
+      delete();
+    }
+
+    /**
+     * Can be called more than once, e.g., after addAllToIndex()
+     */
+    void delete() {
+      try {
+        out.close();
+      } catch (IOException e) {
+        log.warn("Could not close " + file, e);
+      }
+      if (!file.delete() && file.exists())
+        log.warn("Could not delete {}", file);
+    }
+  }
+
   private BatchInserter createBatchInserter(GraphUri graphUri) throws IOException {
     graphUri.delete();
     BatchInserter inserter = BatchInserters.inserter(graphUri.getUriPath());
@@ -135,18 +197,28 @@ public class Neo4jBatchPopulator implements Populator {
 
       rootNodeProps.put(IdGraph.ID, ROOT_ID);
       inserter.setNodeProperties(0l, rootNodeProps);
-      addStringIdToIndex(nodeStringIdIndex, 0l, ROOT_ID);
+      addStringIdToIndex(nodeStringIdIndex, nodeIdSpill, 0l, ROOT_ID);
     }
     return inserter;
   }
 
   private GraphUri graphUri;
   private long createdNodes = 0, createdEdges = 0;
+  /// optional override of the initial idMap size, which is otherwise estimated from sourceData 
   public static final String MAX_IDMAP_SIZE_PROP = "neoBatchPopulator.maxIdMapSize";
-  
+
+  /// rough average, e.g., a 100-byte CSV row that produces 3 nodes and 2 edges
+  static final int BYTES_PER_ELEMENT_ESTIMATE = 20;
+  /// the idMap grows as needed, so it starts at most this size rather than at the number of elements estimated
+  /// from the input size, which for large inputs with many repeated ids is far more than the number of distinct ids
+  static final int MAX_INITIAL_IDMAP_SIZE = 1 << 22;
+
   @Setter
   Function<SourceData,Integer> idMapSizeFunction=sd->{
-    return 1_000_000;
+    long bytes = (sd == null) ? -1 : sd.getSizeInBytes();
+    if (bytes < 0)
+      return 1_000_000;
+    return (int) Math.min(MAX_INITIAL_IDMAP_SIZE, bytes / BYTES_PER_ELEMENT_ESTIMATE);
   };
 
   public void reinit(GraphUri graphUri, SourceData sourceData) throws IOException {
@@ -156,16 +228,19 @@ public class Neo4jBatchPopulator implements Populator {
     if (inserter != null || idMap != null)
       throw new IllegalStateException("Populator was not shutdown() from previous use: " + this);
 
-    long maxSize=1_000_000;
+    long idMapSize = idMapSizeFunction.apply(sourceData);
     // TODO: get from graphUri.config
     String maxSizeStr=System.getProperty(MAX_IDMAP_SIZE_PROP);
     log.info("System property maxSizeStr={}", maxSizeStr);
     if(maxSizeStr!=null)
-      maxSize=Long.parseLong(maxSizeStr);
-    log.info("Using maxMapSize={}", maxSize);
+      idMapSize=Long.parseLong(maxSizeStr);
+    log.info("Using initial idMapSize={}", idMapSize);
+    idMap = new OffHeapIdMap(idMapSize, null);
 
-    Integer idMapSize = idMapSizeFunction.apply(sourceData);
-    idMap = createIdMap(idMapSize);
+    if (deferIndexing) {
+      nodeIdSpill = new IdSpillFile("batchImporter-nodes-");
+      edgeIdSpill = new IdSpillFile("batchImporter-edges-");
+    }
 
     log.debug("Creating BatchInserter={}", graphUri);
     inserter = createBatchInserter(graphUri);
@@ -175,18 +250,35 @@ public class Neo4jBatchPopulator implements Populator {
     //String storeDir = inserter.getStoreDir();
     if (inserter != null) {
       log.info("Shutting down BatchInserter={}", inserter);
-      if (indexProvider != null) {
-        nodeStringIdIndex.flush();
-        edgeStringIdIndex.flush();
-        indexProvider.shutdown();
+      try {
+        if (nodeIdSpill != null) {
+          log.info("Indexing {} nodes and {} edges", nodeIdSpill.count, edgeIdSpill.count);
+          nodeIdSpill.addAllToIndex(nodeStringIdIndex);
+          edgeIdSpill.addAllToIndex(edgeStringIdIndex);
+          log.info("  indexing done.");
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not build index from spilled ids", e);
+      } finally {
+        if (nodeIdSpill != null) {
+          nodeIdSpill.delete();
+          edgeIdSpill.delete();
+          nodeIdSpill = edgeIdSpill = null;
+        }
+        if (indexProvider != null) {
+          nodeStringIdIndex.flush();
+          edgeStringIdIndex.flush();
+          indexProvider.shutdown();
+        }
+        inserter.shutdown();
+        inserter = null;
       }
-      inserter.shutdown();
-      inserter = null;
       System.gc(); // addresses problem with NFS files still being held by JVM 
     }
 
     if (idMap != null) {
-      ((ChronicleMap<String, Long>) idMap).close();
+      log.info("Closing idMap: size={} hashCollisions={}", idMap.getSize(), idMap.getHashCollisions());
+      idMap.close();
       idMap = null;
     }
 
@@ -198,6 +290,8 @@ public class Neo4jBatchPopulator implements Populator {
         log.warn("Could not find Neo4j's root node to remove");
       else 
         idGraph.getBaseGraph().removeVertex(neo4jRootNode);
+      // graph was created by createBatchInserter(), so it only has the created elements and the metadata node
+      ElementCounts.init(idGraph, createdNodes + 1, createdEdges);
       
       Vertex mdV = GraphUtils.getMetaDataNode(idGraph);
       mdV.setProperty("createdNodes", createdNodes);
@@ -255,7 +349,7 @@ public class Neo4jBatchPopulator implements Populator {
     }*/
   }
 
-  private void importEdges(BatchInserter graph, Direction direction, long newVLongId, GraphRecord gr) {
+  private void importEdges(BatchInserter graph, Direction direction, long newVLongId, GraphRecord gr) throws IOException {
     for (Edge e : gr.getEdges(direction)) {
       GraphRecord oppV = (GraphRecord) e.getVertex(direction.opposite());
       long newOppVLongId = importVertex(graph, oppV);
@@ -265,17 +359,17 @@ public class Neo4jBatchPopulator implements Populator {
 
   private Neo4jPropertyMerger neoPropMerger = new Neo4jPropertyMerger();
 
-  public long importVertex(BatchInserter graph, GraphRecord gr) {
+  public long importVertex(BatchInserter graph, GraphRecord gr) throws IOException {
     String id = gr.getStringId();
     //long longId=getLongId(id);
-    Long longId = (Long) idMap.get(id);
-    if (longId == null) {
+    long longId = idMap.get(id);
+    if (longId == OffHeapIdMap.NOT_FOUND) {
       Map<String, Object> cProps = neoPropMerger.convertToNeo4j(gr.getProps());
       cProps.put(IdGraph.ID, id);
       longId = graph.createNode(cProps);
       ++createdNodes;
       //log.info("Create node: {} {}",longId, id);
-      addStringIdToIndex(nodeStringIdIndex, longId, id);
+      addStringIdToIndex(nodeStringIdIndex, nodeIdSpill, longId, id);
       idMap.put(id, longId);
     } else {
       Map<String, Object> existingProps = graph.getNodeProperties(longId);
@@ -284,7 +378,7 @@ public class Neo4jBatchPopulator implements Populator {
       if (props != null)
         graph.setNodeProperties(longId, props);
     }
-    return longId.longValue();
+    return longId;
   }
 
   private NeoPropsHolder neoPropsHolder = new NeoPropsHolder("neoTemp");
@@ -329,10 +423,10 @@ public class Neo4jBatchPopulator implements Populator {
   //  }
 
   public void importEdge(BatchInserter graph, GraphRecordEdge grE, Direction direction,
-      long v1inGraphLongId, long v2inGraphLongId) {
+      long v1inGraphLongId, long v2inGraphLongId) throws IOException {
     String edgeId = grE.getStringId();
-    Long edgeLongId = (Long) idMap.get(edgeId);
-    if (edgeLongId == null) {
+    long edgeLongId = idMap.get(edgeId);
+    if (edgeLongId == OffHeapIdMap.NOT_FOUND) {
       RelationshipType type = DynamicRelationshipType.withName(grE.getLabel());
       Map<String, Object> cProps = neoPropMerger.convertToNeo4j(grE.getProps());
       cProps.put(IdGraph.ID, edgeId);
@@ -342,7 +436,7 @@ public class Neo4jBatchPopulator implements Populator {
         edgeLongId = graph.createRelationship(v2inGraphLongId, v1inGraphLongId, type, cProps);
       }
       ++createdEdges;
-      addStringIdToIndex(edgeStringIdIndex, edgeLongId, edgeId);
+      addStringIdToIndex(edgeStringIdIndex, edgeIdSpill, edgeLongId, edgeId);
       idMap.put(edgeId, edgeLongId);
     } else {
       BatchRelationship newEdge = graph.getRelationshipById(edgeLongId);
@@ -374,8 +468,11 @@ public class Neo4jBatchPopulator implements Populator {
 
   private Map<String, Object> props = new HashMap<>();
 
-  private void addStringIdToIndex(BatchInserterIndex stringIdIndex, Long longId, String stringId) {
-    if (stringIdIndex != null) {
+  private void addStringIdToIndex(BatchInserterIndex stringIdIndex, IdSpillFile idSpill, Long longId, String stringId)
+      throws IOException {
+    if (idSpill != null) {
+      idSpill.append(longId.longValue(), stringId);
+    } else if (stringIdIndex != null) {
       props.clear();
       props.put(IdGraph.ID, stringId);
       stringIdIndex.add(longId.longValue(), props);
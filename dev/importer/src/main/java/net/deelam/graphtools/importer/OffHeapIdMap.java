@@ -0,0 +1,278 @@
+package net.deelam.graphtools.importer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.util.MappedBuffers;
+
+/**
+ * Maps String ids to long ids (e.g., Neo4j node and relationship ids) using memory-mapped files
+ * so that large imports don't fill the heap.
+ *
+ * An open-addressing (linear probing) table of slots (64-bit hash of the String id, offset of the id in the
+ * key file, long value) is kept in one file; the String ids are appended to a second file
+ * and compared on lookup to verify hash matches.
+ * When the table is more than LOAD_FACTOR full, it is rehashed into a new file twice the size,
+ * using the stored hashes, so the String ids are not re-read; the old table is unmapped and deleted
+ * right away rather than when it is garbage collected.
+ * Since the table grows as needed, start with a modest expectedSize rather than an upper bound.
+ *
+ * Not thread-safe.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class OffHeapIdMap implements Closeable {
+
+  public static final long NOT_FOUND = -1;
+
+  private static final float LOAD_FACTOR = 0.6f;
+  private static final int SLOT_BYTES = 24; // hash, keyOffset, value
+  private static final int MAX_SLOTS_PER_SEGMENT = 1 << 22;
+  private static final int KEY_SEGMENT_BYTES = 1 << 28;
+
+  private static final HashFunction hashFunction = Hashing.murmur3_128();
+
+  private final File dir;
+  private final String filePrefix;
+
+  private Table table;
+  private final KeyStore keys;
+
+  @Getter
+  private long size = 0;
+  @Getter
+  private long hashCollisions = 0;
+
+  /**
+   * @param expectedSize number of ids expected; the map grows as needed
+   * @param dir where to create the map files, or null for the system temp directory
+   */
+  public OffHeapIdMap(long expectedSize, File dir) throws IOException {
+    this.dir = dir;
+    File keyFile = File.createTempFile("idMap-", ".keys", dir);
+    filePrefix = keyFile.getName().substring(0, keyFile.getName().length() - ".keys".length());
+    keys = new KeyStore(keyFile);
+    table = new Table(tableCapacityFor(expectedSize));
+    log.info("Created idMap with capacity={} in {}", table.capacity, keyFile.getParentFile());
+  }
+
+  static long tableCapacityFor(long expectedSize) {
+    long minCapacity = (long) (Math.max(expectedSize, 1024) / LOAD_FACTOR) + 1;
+    return Long.highestOneBit(minCapacity - 1) << 1;
+  }
+
+  private static long hash(byte[] keyBytes) {
+    long hash = hashFunction.hashBytes(keyBytes).asLong();
+    return (hash == 0) ? 1 : hash; // 0 marks an empty slot
+  }
+
+  /**
+   * @return value for id or NOT_FOUND
+   */
+  public long get(String id) {
+    byte[] keyBytes = id.getBytes(StandardCharsets.UTF_8);
+    long slot = findSlot(hash(keyBytes), keyBytes);
+    return (slot < 0) ? NOT_FOUND : table.getValue(slot);
+  }
+
+  public void put(String id, long value) throws IOException {
+    byte[] keyBytes = id.getBytes(StandardCharsets.UTF_8);
+    long hash = hash(keyBytes);
+    long slot = findSlot(hash, keyBytes);
+    if (slot >= 0) {
+      table.setValue(slot, value);
+      return;
+    }
+
+    if (size + 1 > table.capacity * LOAD_FACTOR)
+      grow();
+    table.insert(hash, keys.append(keyBytes), value);
+    ++size;
+  }
+
+  /**
+   * @return slot containing the key or -1
+   */
+  private long findSlot(long hash, byte[] keyBytes) {
+    long mask = table.capacity - 1;
+    for (long slot = hash & mask;; slot = (slot + 1) & mask) {
+      long slotHash = table.getHash(slot);
+      if (slotHash == 0)
+        return -1;
+      if (slotHash == hash) {
+        if (keys.equals(table.getKeyOffset(slot), keyBytes))
+          return slot;
+        ++hashCollisions;
+      }
+    }
+  }
+
+  private void grow() throws IOException {
+    Table oldTable = table;
+    Table newTable = new Table(oldTable.capacity * 2);
+    log.info("Growing idMap from capacity={} to {} at size={}", oldTable.capacity, newTable.capacity, size);
+    for (long slot = 0; slot < oldTable.capacity; ++slot) {
+      long hash = oldTable.getHash(slot);
+      if (hash != 0)
+        newTable.insert(hash, oldTable.getKeyOffset(slot), oldTable.getValue(slot));
+    }
+    table = newTable;
+    oldTable.close();
+  }
+
+  @Override
+  public void close() {
+    table.close();
+    keys.close();
+  }
+
+  /**
+   * Slots in one or more mapped segments of a file.
+   */
+  private class Table {
+    final long capacity;
+    final int slotsPerSegment;
+    final int segmentShift;
+    final File file;
+    final MappedByteBuffer[] segments;
+
+    Table(long capacity) throws IOException {
+      this.capacity = capacity;
+      slotsPerSegment = (int) Math.min(capacity, MAX_SLOTS_PER_SEGMENT);
+      segmentShift = Integer.numberOfTrailingZeros(slotsPerSegment);
+      file = new File(dir == null ? new File(System.getProperty("java.io.tmpdir")) : dir,
+          filePrefix + "-" + capacity + ".table");
+      file.deleteOnExit();
+      segments = new MappedByteBuffer[(int) (capacity / slotsPerSegment)];
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(0); // new file is zero-filled, i.e., all slots are empty
+        FileChannel channel = raf.getChannel();
+        long segmentBytes = (long) slotsPerSegment * SLOT_BYTES;
+        for (int i = 0; i < segments.length; ++i)
+          segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+      }
+    }
+
+    private MappedByteBuffer segment(long slot) {
+      return segments[(int) (slot >>> segmentShift)];
+    }
+
+    private int offset(long slot) {
+      return (int) (slot & (slotsPerSegment - 1)) * SLOT_BYTES;
+    }
+
+    long getHash(long slot) {
+      return segment(slot).getLong(offset(slot));
+    }
+
+    long getKeyOffset(long slot) {
+      return segment(slot).getLong(offset(slot) + 8);
+    }
+
+    long getValue(long slot) {
+      return segment(slot).getLong(offset(slot) + 16);
+    }
+
+    void setValue(long slot, long value) {
+      segment(slot).putLong(offset(slot) + 16, value);
+    }
+
+    void insert(long hash, long keyOffset, long value) {
+      long mask = capacity - 1;
+      long slot = hash & mask;
+      while (getHash(slot) != 0)
+        slot = (slot + 1) & mask;
+      MappedByteBuffer seg = segment(slot);
+      int offset = offset(slot);
+      seg.putLong(offset, hash);
+      seg.putLong(offset + 8, keyOffset);
+      seg.putLong(offset + 16, value);
+    }
+
+    void close() {
+      for (int i = 0; i < segments.length; ++i) {
+        MappedBuffers.unmap(segments[i]);
+        segments[i] = null;
+      }
+      if (!file.delete())
+        log.debug("Could not delete {}", file);
+    }
+  }
+
+  /**
+   * Append-only store of length-prefixed keys in mapped segments.
+   * A key does not span segments.
+   */
+  private static class KeyStore {
+    final File file;
+    final RandomAccessFile raf;
+    final List<MappedByteBuffer> segments = new ArrayList<>();
+    long nextOffset = 0;
+
+    KeyStore(File file) throws IOException {
+      this.file = file;
+      file.deleteOnExit();
+      raf = new RandomAccessFile(file, "rw");
+    }
+
+    long append(byte[] keyBytes) throws IOException {
+      int len = 4 + keyBytes.length;
+      if (len > KEY_SEGMENT_BYTES)
+        throw new IllegalArgumentException("Id is too long: " + keyBytes.length + " bytes");
+      int posInSegment = (int) (nextOffset % KEY_SEGMENT_BYTES);
+      if (posInSegment + len > KEY_SEGMENT_BYTES) // skip to next segment
+        nextOffset += KEY_SEGMENT_BYTES - posInSegment;
+
+      int segIndex = (int) (nextOffset / KEY_SEGMENT_BYTES);
+      while (segments.size() <= segIndex) {
+        segments.add(raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+            (long) segments.size() * KEY_SEGMENT_BYTES, KEY_SEGMENT_BYTES));
+      }
+      MappedByteBuffer seg = segments.get(segIndex);
+      int pos = (int) (nextOffset % KEY_SEGMENT_BYTES);
+      seg.putInt(pos, keyBytes.length);
+      for (int i = 0; i < keyBytes.length; ++i)
+        seg.put(pos + 4 + i, keyBytes[i]);
+
+      long keyOffset = nextOffset;
+      nextOffset += len;
+      return keyOffset;
+    }
+
+    boolean equals(long keyOffset, byte[] keyBytes) {
+      MappedByteBuffer seg = segments.get((int) (keyOffset / KEY_SEGMENT_BYTES));
+      int pos = (int) (keyOffset % KEY_SEGMENT_BYTES);
+      if (seg.getInt(pos) != keyBytes.length)
+        return false;
+      for (int i = 0; i < keyBytes.length; ++i)
+        if (seg.get(pos + 4 + i) != keyBytes[i])
+          return false;
+      return true;
+    }
+
+    void close() {
+      try {
+        raf.close();
+      } catch (IOException e) {
+        log.warn("Could not close " + file, e);
+      }
+      segments.forEach(MappedBuffers::unmap);
+      segments.clear();
+      if (!file.delete())
+        log.debug("Could not delete {}", file);
+    }
+  }
+}
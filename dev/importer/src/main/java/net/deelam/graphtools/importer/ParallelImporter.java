@@ -0,0 +1,330 @@
+/**
+ *
+ */
+package net.deelam.graphtools.importer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.FixedThresholdController;
+import net.deelam.graphtools.GraphRecord;
+import net.deelam.graphtools.GraphRecordMerger;
+import net.deelam.graphtools.GraphTransaction;
+import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.ThresholdController;
+
+/**
+ * Like ConsolidatingImporter but pipelined across threads:
+ * <li> one reader thread reads ioRecords of type B from sourceData into a bounded queue
+ * <li> numWorkers threads, each with its own Encoder and GraphRecordBuilder (neither is thread-safe),
+ *   build GraphRecords and merge them into partitions chosen by hashing GraphRecord.getStringId()
+ * <li> the calling thread is the single writer: each time bufferThreshold (number of *unique* records)
+ *   is reached, it swaps out the partitions and populates the graph with them while workers continue
+ *
+ * Records built from one ioRecord share edge objects, so a worker locks all partitions touched by
+ * an ioRecord (in partition order) while merging them.  This also guarantees each populate call
+ * sees all records built from an ioRecord, as with the single-threaded importers.
+ *
+ * The Populator is only called from the calling thread since GraphTransaction is per-thread.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class ParallelImporter<B> implements Importer<B> {
+
+  @Getter
+  private final Supplier<Encoder<B>> encoderFactory;
+  @Getter
+  private final Populator populator;
+  @Getter
+  private final GraphRecord.Factory grFactory;
+
+  @Setter
+  private int bufferThreshold = 10000;
+
+  /// if set, overrides bufferThreshold; only batchCompleted() is called from a single thread
+  @Setter
+  private ThresholdController thresholdController;
+
+  @Setter
+  private int numWorkers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+  /// number of ioRecords passed from reader to a worker at a time
+  @Setter
+  private int batchSize = 100;
+
+  /// max number of batches waiting for a worker
+  @Setter
+  private int queueCapacity = 64;
+
+  public ParallelImporter(Supplier<Encoder<B>> encoderFactory, Populator populator, GraphRecord.Factory grFactory) {
+    super();
+    this.encoderFactory = encoderFactory;
+    this.populator = populator;
+    this.grFactory = grFactory;
+  }
+
+  private static final List<?> END_OF_DATA = Collections.emptyList();
+
+  @Override
+  public void importFile(SourceData<B> sourceData, GraphUri graphUri, Map<String, Number> metrics) throws IOException {
+    populator.reinit(graphUri, sourceData);
+
+    AtomicLong recordCounter = new AtomicLong();
+    AtomicLong createdCounter = new AtomicLong();
+    {
+      metrics.put("RECORDS", recordCounter);
+      metrics.put("ELEMENTS_CREATED", createdCounter);
+    }
+    ThresholdController controller =
+        (thresholdController == null) ? new FixedThresholdController(bufferThreshold) : thresholdController;
+    controller.putMetrics(metrics);
+    populator.putMetrics(metrics);
+    populator.setThresholdController(controller);
+
+    Partitions partitions = new Partitions(numWorkers * 4);
+    BlockingQueue<List<B>> queue = new ArrayBlockingQueue<>(queueCapacity);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    AtomicInteger activeWorkers = new AtomicInteger(numWorkers);
+
+    ExecutorService threadPool = Executors.newFixedThreadPool(numWorkers + 1);
+    try {
+      threadPool.execute(() -> readRecords(sourceData, queue, failure));
+      for (int i = 0; i < numWorkers; ++i) {
+        threadPool.execute(() -> {
+          try {
+            buildRecords(sourceData, queue, partitions, controller, recordCounter, createdCounter);
+          } catch (Throwable t) {
+            failure.compareAndSet(null, t);
+          } finally {
+            activeWorkers.decrementAndGet();
+            partitions.signal();
+          }
+        });
+      }
+
+      int tx = GraphTransaction.begin(graphUri.getGraph());
+      try {
+        boolean workersDone;
+        long lastFlushNanos = System.nanoTime();
+        do {
+          workersDone = partitions.awaitFlush(controller.getThreshold(), activeWorkers, failure);
+          checkFailure(failure);
+          log.info("Incremental graph populate and transaction commit");
+          long flushStart = System.nanoTime();
+          Collection<GraphRecord> gRecords = partitions.swap();
+          populator.populateGraph(graphUri, gRecords);
+          gRecords.forEach(GraphRecord::discard);
+          GraphTransaction.commit(tx);
+          GraphTransaction.begin(graphUri.getGraph()); // should be the same tx number
+          long now = System.nanoTime();
+          controller.batchCompleted(gRecords.size(), now - lastFlushNanos, now - flushStart);
+          lastFlushNanos = now;
+          log.info("  commit done.");
+        } while (!workersDone);
+        GraphTransaction.commit(tx);
+      } catch (RuntimeException | IOException e) {
+        log.warn("Got exception during graph population", e);
+        GraphTransaction.rollback(tx);
+        throw e;
+      }
+    } finally {
+      failure.compareAndSet(null, new IllegalStateException("Import ended early"));
+      partitions.signal();
+      threadPool.shutdownNow();
+      populator.shutdown();
+    }
+  }
+
+  private static void checkFailure(AtomicReference<Throwable> failure) throws IOException {
+    Throwable t = failure.get();
+    if (t == null)
+      return;
+    if (t instanceof IOException)
+      throw (IOException) t;
+    if (t instanceof RuntimeException)
+      throw (RuntimeException) t;
+    throw new IllegalStateException(t);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void readRecords(SourceData<B> sourceData, BlockingQueue<List<B>> queue, AtomicReference<Throwable> failure) {
+    try {
+      try {
+        List<B> batch = new ArrayList<>(batchSize);
+        B inRecord;
+        while ((inRecord = sourceData.getNextRecord()) != null) {
+          batch.add(inRecord);
+          if (batch.size() == batchSize) {
+            queue.put(batch);
+            batch = new ArrayList<>(batchSize);
+          }
+        }
+        if (!batch.isEmpty())
+          queue.put(batch);
+      } catch (IOException | RuntimeException e) {
+        log.warn("Could not read from sourceData=" + sourceData, e);
+        failure.compareAndSet(null, e);
+      } finally {
+        for (int i = 0; i < numWorkers; ++i)
+          queue.put((List<B>) END_OF_DATA);
+      }
+    } catch (InterruptedException e) {
+      // importFile() has ended
+    }
+  }
+
+  private void buildRecords(SourceData<B> sourceData, BlockingQueue<List<B>> queue, Partitions partitions,
+      ThresholdController controller, AtomicLong recordCounter, AtomicLong createdCounter)
+      throws InterruptedException {
+    Encoder<B> encoder = encoderFactory.get();
+    encoder.reinit(sourceData);
+    try {
+      GraphRecordBuilder<B> grBuilder = new GraphRecordBuilder<>(encoder, grFactory);
+      List<B> batch;
+      while ((batch = queue.take()) != END_OF_DATA) {
+        for (B inRecord : batch) {
+          long recordNum = recordCounter.incrementAndGet();
+          log.debug("{}: record={}", recordNum, inRecord);
+          try {
+            Collection<GraphRecord> gRecords = grBuilder.build(inRecord);
+            createdCounter.addAndGet(gRecords.size());
+            partitions.merge(gRecords, populator.getGraphRecordMerger());
+          } catch (InterruptedException e) {
+            throw e;
+          } catch (Exception e) {
+            log.warn("Skipping record; got exception for recordNum=~" + recordNum + ": " + inRecord, e);
+          }
+        }
+        partitions.awaitCapacity(2 * controller.getThreshold());
+      }
+    } finally {
+      encoder.close(sourceData);
+    }
+  }
+
+  /**
+   * Consolidation maps partitioned by record id, each guarded by its own lock.
+   */
+  private static class Partitions {
+    private final ReentrantLock[] locks;
+    private Map<String, GraphRecord>[] maps;
+    private final AtomicInteger uniqueCount = new AtomicInteger();
+
+    @SuppressWarnings("unchecked")
+    Partitions(int numPartitions) {
+      locks = new ReentrantLock[numPartitions];
+      maps = new Map[numPartitions];
+      for (int i = 0; i < numPartitions; ++i) {
+        locks[i] = new ReentrantLock();
+        maps[i] = new HashMap<>();
+      }
+    }
+
+    int partitionOf(String id) {
+      return (id.hashCode() & Integer.MAX_VALUE) % locks.length;
+    }
+
+    void merge(Collection<GraphRecord> gRecords, GraphRecordMerger merger) throws InterruptedException {
+      int[] parts = new int[gRecords.size()];
+      int i = 0;
+      for (GraphRecord gr : gRecords)
+        parts[i++] = partitionOf(gr.getStringId());
+      Arrays.sort(parts);
+
+      int locked = 0;
+      try {
+        for (; locked < parts.length; ++locked)
+          if (locked == 0 || parts[locked] != parts[locked - 1])
+            locks[parts[locked]].lockInterruptibly();
+
+        int added = 0;
+        for (GraphRecord gr : gRecords) {
+          Map<String, GraphRecord> map = maps[partitionOf(gr.getStringId())];
+          GraphRecord existingGR = map.get(gr.getStringId());
+          if (existingGR == null) {
+            map.put(gr.getStringId(), gr);
+            ++added;
+          } else {
+            merger.merge(gr, existingGR);
+            gr.discard();
+          }
+        }
+        uniqueCount.addAndGet(added);
+      } finally {
+        for (int j = locked - 1; j >= 0; --j)
+          if (j == 0 || parts[j] != parts[j - 1])
+            locks[parts[j]].unlock();
+      }
+    }
+
+    /**
+     * Blocks until there are at least threshold unique records or no workers remain.
+     * @return true if all workers are done
+     */
+    synchronized boolean awaitFlush(int threshold, AtomicInteger activeWorkers,
+        AtomicReference<Throwable> failure) {
+      try {
+        while (uniqueCount.get() < threshold && activeWorkers.get() > 0 && failure.get() == null)
+          wait(1000);
+      } catch (InterruptedException e) {
+        failure.compareAndSet(null, e);
+      }
+      return activeWorkers.get() == 0;
+    }
+
+    /**
+     * Throttles workers while the writer is behind.
+     */
+    synchronized void awaitCapacity(int maxUnique) throws InterruptedException {
+      while (uniqueCount.get() > maxUnique)
+        wait(1000);
+      notifyAll(); // wake writer if threshold was reached
+    }
+
+    synchronized void signal() {
+      notifyAll();
+    }
+
+    /**
+     * @return records merged so far, after replacing them with empty maps
+     */
+    Collection<GraphRecord> swap() {
+      List<GraphRecord> records;
+      for (ReentrantLock lock : locks)
+        lock.lock();
+      try {
+        records = new ArrayList<>(uniqueCount.get());
+        for (int i = 0; i < maps.length; ++i) {
+          records.addAll(maps[i].values());
+          maps[i] = new HashMap<>();
+        }
+        uniqueCount.set(0);
+      } finally {
+        for (int i = locks.length - 1; i >= 0; --i)
+          locks[i].unlock();
+      }
+      signal();
+      return records;
+    }
+  }
+
+}
@@ -0,0 +1,60 @@
+package net.deelam.graphtools.importer;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.GraphRecordImpl;
+import net.deelam.graphtools.PropertyMerger;
+import net.deelam.graphtools.ThresholdController;
+
+@RequiredArgsConstructor
+@AllArgsConstructor
+@Slf4j
+public class ParallelImporterFactory<B> implements ImporterFactory {
+  final Supplier<Encoder<B>> encoderFactory;
+  final String importerPropertyVal;
+  final PropertyMerger propMerger;
+
+  Function<SourceData,Integer> bufferSizeFunction=sd->{
+    return 10000;
+  };
+
+  /// returns null to use a fixed bufferSize
+  Function<SourceData,ThresholdController> thresholdControllerFunction=sd->null;
+
+  Function<SourceData,Integer> numWorkersFunction=sd->{
+    return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+  };
+
+  /// if greater than 1, a ParallelPopulator with this many writer threads is used
+  Function<SourceData,Integer> numWritersFunction=sd->1;
+
+  @Override
+  public Importer<B> create(SourceData sd) {
+    log.info("Creating ParallelImporter");
+    Integer numWriters = numWritersFunction.apply(sd);
+    Populator populator;
+    if (numWriters.intValue() > 1) {
+      ParallelPopulator parallelPopulator =
+          new ParallelPopulator(importerPropertyVal, new DefaultGraphRecordMerger(propMerger));
+      parallelPopulator.setNumWriters(numWriters.intValue());
+      populator = parallelPopulator;
+    } else {
+      populator = new DefaultPopulator(importerPropertyVal, new DefaultGraphRecordMerger(propMerger));
+    }
+    ParallelImporter<B> importer = new ParallelImporter<B>(encoderFactory, populator,
+        new GraphRecordImpl.Factory());
+
+    Integer bufferSize = bufferSizeFunction.apply(sd);
+    Integer numWorkers = numWorkersFunction.apply(sd);
+    log.info("Using bufferSize={} numWorkers={} numWriters={}", bufferSize, numWorkers, numWriters);
+    importer.setBufferThreshold(bufferSize.intValue());
+    importer.setThresholdController(thresholdControllerFunction.apply(sd));
+    importer.setNumWorkers(numWorkers.intValue());
+
+    return importer;
+  }
+}
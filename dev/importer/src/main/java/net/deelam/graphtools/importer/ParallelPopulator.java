@@ -0,0 +1,394 @@
+package net.deelam.graphtools.importer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.google.common.collect.ImmutableSet;
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.ThreadedTransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.CachingIdGraph;
+import net.deelam.graphtools.ElementCounts;
+import net.deelam.graphtools.GraphRecord;
+import net.deelam.graphtools.GraphRecordEdge;
+import net.deelam.graphtools.GraphRecordMerger;
+import net.deelam.graphtools.GraphTransaction;
+import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.GraphUtils;
+import net.deelam.graphtools.ThresholdController;
+
+/**
+ * Populates the graph using numWriters threads, each running its own GraphTransaction, for backends that support
+ * concurrent transactions (e.g., Titan, Neo4j).  Each populateGraph() call has two phases:
+ * <li> vertices (including the endpoints of the records' edges) are sharded by id across the writers,
+ *   which also add the edges whose endpoints are both in their shard
+ * <li> after all writers have committed, the remaining cross-shard edges are sharded by out-vertex id
+ * Since each vertex is written by only one writer, writers only contend on cross-shard edges.
+ * A shard is committed in transactions of at most the importer's threshold (see setThresholdController()) elements.
+ * A transaction that fails due to a conflict with another writer (e.g., a Titan locking exception or a Neo4j
+ * deadlock) is rolled back and retried with exponential backoff, up to maxRetries times; other failures are not retried.
+ *
+ * Each writer uses a graph handle from writerGraphOpener if set (e.g., an OrientGraph per thread); otherwise a
+ * newTransaction() if the graph is a ThreadedTransactionalGraph (e.g., Titan); otherwise the GraphUri's graph,
+ * whose transactions are per-thread (e.g., Neo4j).  Graphs without transactions (e.g., Tinker) get one writer.
+ *
+ * Element counts are applied to the GraphUri's graph by the calling thread, as with DefaultPopulator.
+ *
+ * @author deelam
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class ParallelPopulator implements Populator {
+
+  @Getter
+  private final String importerName;
+
+  @Getter
+  final GraphRecordMerger graphRecordMerger;
+
+  @Setter
+  private int numWriters = Runtime.getRuntime().availableProcessors();
+
+  @Setter
+  private int maxRetries = 5;
+  @Setter
+  private long minRetryMillis = 50;
+  @Setter
+  private long maxRetryMillis = 5000;
+
+  /// if set, opens a graph handle for a writer's transaction; the handle is shut down after the transaction
+  @Setter
+  private Function<GraphUri, IdGraph<?>> writerGraphOpener = null;
+
+  /// if set, vertices are also counted by this property when counts are started for a new graph (see ElementCounts)
+  @Setter
+  private String countNodeTypesBy = null;
+
+  /// if set, limits the number of elements in each writer transaction
+  private ThresholdController thresholdController = null;
+
+  private GraphUri graphUri;
+  private int shardCount;
+  private boolean threadedTransactions;
+  private boolean countsMaintained;
+  private ExecutorService writers;
+
+  private final AtomicLong createdNodes = new AtomicLong();
+  private final AtomicLong createdEdges = new AtomicLong();
+  private final AtomicLong crossShardEdges = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+
+  @Override
+  public void reinit(GraphUri graphUri, SourceData sourceData) {
+    this.graphUri = graphUri;
+    IdGraph<?> graph = graphUri.openIdGraph();
+    threadedTransactions = graph.getBaseGraph() instanceof ThreadedTransactionalGraph;
+    shardCount = Math.max(1, numWriters);
+    if (shardCount > 1 && writerGraphOpener == null && !threadedTransactions
+        && !graph.getFeatures().supportsTransactions) {
+      log.warn("Using 1 writer since graph does not support concurrent transactions: {}", graphUri);
+      shardCount = 1;
+    }
+    countsMaintained = ElementCounts.init(graph, countNodeTypesBy);
+
+    createdNodes.set(0);
+    createdEdges.set(0);
+    crossShardEdges.set(0);
+    retries.set(0);
+    if (writers != null)
+      writers.shutdownNow();
+    writers = Executors.newFixedThreadPool(shardCount);
+    log.info("Populating {} using {} writers", graphUri, shardCount);
+  }
+
+  @Override
+  public void putMetrics(Map<String, Number> metrics) {
+    if (graphUri.getGraph() instanceof CachingIdGraph)
+      ((CachingIdGraph<?>) graphUri.getGraph()).putMetrics(metrics);
+    metrics.put("CROSS_SHARD_EDGES", crossShardEdges);
+    metrics.put("WRITE_RETRIES", retries);
+  }
+
+  @Override
+  public void setThresholdController(ThresholdController controller) {
+    thresholdController = controller;
+  }
+
+  private int shardOf(String id) {
+    return (id.hashCode() & Integer.MAX_VALUE) % shardCount;
+  }
+
+  /// elements for one writer, committed in one or more transactions
+  private static class Shard {
+    final List<GraphRecord> vertices = new ArrayList<>();
+    final List<GraphRecordEdge> edges = new ArrayList<>();
+    /// number of elements (vertices, then edges) committed so far
+    int committed;
+    /// changes to counts from committed transactions and from the current transaction
+    ElementCounts counts, txCounts;
+    /// elements created in the current transaction
+    long nodes, edgesCreated;
+
+    int size() {
+      return vertices.size() + edges.size();
+    }
+
+    boolean isEmpty() {
+      return size() == 0;
+    }
+
+    void clear() {
+      nodes = edgesCreated = 0;
+      if (txCounts != null)
+        txCounts.clear();
+    }
+  }
+
+  @Override
+  public void populateGraph(GraphUri graphUri, Collection<GraphRecord> gRecords) throws IOException {
+    List<Shard> vertexShards = newShards();
+    List<Shard> edgeShards = newShards();
+
+    // a record may be referenced by several edges; the same id may occur in different records to be merged
+    Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (GraphRecord gr : gRecords)
+      if (seen.add(gr))
+        vertexShards.get(shardOf(gr.getStringId())).vertices.add(gr);
+    for (GraphRecord gr : gRecords) {
+      for (Direction dir : new Direction[] {Direction.OUT, Direction.IN}) {
+        for (Edge e : gr.getEdges(dir)) {
+          GraphRecord oppV = (GraphRecord) e.getVertex(dir.opposite());
+          if (seen.add(oppV))
+            vertexShards.get(shardOf(oppV.getStringId())).vertices.add(oppV);
+          if (seen.add(e)) {
+            GraphRecordEdge grE = (GraphRecordEdge) e;
+            int outShard = shardOf(grE.getOutVertexStringId());
+            if (outShard == shardOf(grE.getInVertexStringId())) {
+              vertexShards.get(outShard).edges.add(grE);
+            } else {
+              edgeShards.get(outShard).edges.add(grE);
+              crossShardEdges.incrementAndGet();
+            }
+          }
+        }
+      }
+    }
+
+    IdGraph<?> graph = graphUri.getGraph();
+    writeShards(graph, vertexShards);
+    writeShards(graph, edgeShards); // all endpoints have been committed
+    for (Shard shard : vertexShards)
+      applyCounts(graph, shard);
+    for (Shard shard : edgeShards)
+      applyCounts(graph, shard);
+  }
+
+  private List<Shard> newShards() {
+    List<Shard> shards = new ArrayList<>(shardCount);
+    for (int i = 0; i < shardCount; ++i)
+      shards.add(new Shard());
+    return shards;
+  }
+
+  private void applyCounts(IdGraph<?> graph, Shard shard) {
+    if (shard.counts != null)
+      shard.counts.applyTo(graph);
+  }
+
+  private void writeShards(IdGraph<?> graph, List<Shard> shards) throws IOException {
+    List<Future<?>> futures = new ArrayList<>();
+    for (Shard shard : shards) {
+      if (shard.isEmpty())
+        continue;
+      shard.counts = countsMaintained ? ElementCounts.forGraph(graph) : null;
+      shard.txCounts = countsMaintained ? ElementCounts.forGraph(graph) : null;
+      futures.add(writers.submit(() -> {
+        write(graph, shard);
+        return null;
+      }));
+    }
+
+    Throwable failure = null;
+    for (Future<?> f : futures) { // wait for all writers, even if one fails
+      try {
+        f.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while populating " + graphUri);
+      } catch (ExecutionException e) {
+        if (failure == null)
+          failure = e.getCause();
+      }
+    }
+    if (failure instanceof RuntimeException)
+      throw (RuntimeException) failure;
+    if (failure != null)
+      throw new IOException("Could not populate " + graphUri, failure);
+  }
+
+  private void write(IdGraph<?> mainGraph, Shard shard) throws InterruptedException {
+    for (int attempt = 0; shard.committed < shard.size();) {
+      int threshold = (thresholdController == null) ? Integer.MAX_VALUE : Math.max(1, thresholdController.getThreshold());
+      int end = (int) Math.min(shard.size(), (long) shard.committed + threshold);
+      try {
+        writeTransaction(mainGraph, shard, end);
+        attempt = 0;
+      } catch (RuntimeException e) {
+        if (attempt >= maxRetries || !isRetryable(e))
+          throw e;
+        retries.incrementAndGet();
+        long backoff = Math.min(maxRetryMillis, minRetryMillis << Math.min(attempt, 20));
+        backoff += ThreadLocalRandom.current().nextLong(backoff + 1); // so conflicting writers don't retry in step
+        log.warn("Retrying {} of {} elements in shard in {}ms after attempt {}: {}", end - shard.committed,
+            shard.size(), backoff, attempt + 1, e.toString());
+        ++attempt;
+        Thread.sleep(backoff);
+      }
+    }
+  }
+
+  /// writes the shard's uncommitted elements before index end in one transaction
+  private void writeTransaction(IdGraph<?> mainGraph, Shard shard, int end) {
+    IdGraph<?> graph = openWriterGraph(mainGraph);
+    int tx = GraphTransaction.begin(graph);
+    boolean inMergeSession = true;
+    graphRecordMerger.beginMergeSession();
+    try {
+      int numVertices = shard.vertices.size();
+      for (int i = shard.committed; i < end; ++i) {
+        if (i < numVertices)
+          importVertex(graph, shard.vertices.get(i), shard);
+        else
+          importEdge(graph, shard.edges.get(i - numVertices), shard);
+      }
+      inMergeSession = false;
+      graphRecordMerger.endMergeSession(true);
+      GraphTransaction.commit(tx);
+      shard.committed = end;
+      createdNodes.addAndGet(shard.nodes);
+      createdEdges.addAndGet(shard.edgesCreated);
+      if (shard.counts != null)
+        shard.counts.addAll(shard.txCounts);
+      shard.clear();
+    } catch (RuntimeException e) {
+      if (inMergeSession)
+        graphRecordMerger.endMergeSession(false);
+      if (GraphTransaction.isInTransaction()) // also after a failed commit
+        GraphTransaction.rollback(tx);
+      shard.clear();
+      throw e;
+    } finally {
+      if (graph != mainGraph)
+        closeWriterGraph(graph);
+    }
+  }
+
+  /// simple class names of the backends' exceptions for conflicting writers; matched by name since
+  /// the backends are optional dependencies
+  private static final Set<String> CONFLICT_EXCEPTIONS = ImmutableSet.of(
+      "DeadlockDetectedException", // Neo4j
+      "TemporaryLockingException", "PermanentLockingException", // Titan
+      "OConcurrentModificationException"); // OrientDB
+
+  /// only conflicts between writers are retried, not errors in the records or in the code
+  static boolean isRetryable(Throwable e) {
+    boolean txFailure = false;
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      String name = t.getClass().getSimpleName();
+      if (CONFLICT_EXCEPTIONS.contains(name))
+        return true;
+      if (name.equals("TransactionFailureException")) // Neo4j
+        txFailure = true;
+      else if (txFailure && name.contains("Lock")) // e.g., timed out acquiring a lock
+        return true;
+    }
+    return false;
+  }
+
+  private IdGraph<?> openWriterGraph(IdGraph<?> mainGraph) {
+    if (writerGraphOpener != null)
+      return writerGraphOpener.apply(graphUri);
+    if (threadedTransactions) // closed by commit or rollback
+      return new IdGraph<>((KeyIndexableGraph) ((ThreadedTransactionalGraph) mainGraph.getBaseGraph()).newTransaction(),
+          true, true);
+    return mainGraph;
+  }
+
+  private void closeWriterGraph(IdGraph<?> graph) {
+    if (writerGraphOpener != null)
+      graph.shutdown();
+  }
+
+  private void importVertex(IdGraph<?> graph, GraphRecord gr, Shard shard) {
+    String id = gr.getStringId();
+    Vertex newV = graph.getVertex(id);
+    boolean created = (newV == null);
+    if (created) {
+      newV = graph.addVertex(id);
+      ++shard.nodes;
+    }
+    graphRecordMerger.mergeProperties(gr, newV);
+    if (created && shard.txCounts != null) // after copying the type property
+      shard.txCounts.nodeAdded(newV);
+  }
+
+  private void importEdge(IdGraph<?> graph, GraphRecordEdge grE, Shard shard) {
+    String edgeId = grE.getStringId();
+    Edge newEdge = graph.getEdge(edgeId);
+    if (newEdge == null) {
+      Vertex outV = graph.getVertex(grE.getOutVertexStringId());
+      Vertex inV = graph.getVertex(grE.getInVertexStringId());
+      if (outV == null || inV == null)
+        throw new IllegalArgumentException("Missing vertex for edge " + edgeId);
+      newEdge = graph.addEdge(edgeId, outV, inV, grE.getLabel());
+      ++shard.edgesCreated;
+      if (shard.txCounts != null)
+        shard.txCounts.edgeAdded(newEdge);
+    } else if (!newEdge.getLabel().equals(grE.getLabel())) {
+      throw new IllegalArgumentException("Expecting " + grE.getLabel() + " but got " + newEdge.getLabel());
+    }
+    graphRecordMerger.mergeProperties(grE, newEdge);
+  }
+
+  @Override
+  public void shutdown() {
+    if (writers != null) {
+      writers.shutdownNow();
+      writers = null;
+    }
+    if (graphUri != null) {
+      log.info("Created {} nodes and {} edges; {} cross-shard edges, {} retries", createdNodes, createdEdges,
+          crossShardEdges, retries);
+      Vertex mdV = GraphUtils.getMetaDataNode(graphUri.getGraph());
+      mdV.setProperty("createdNodes", createdNodes.get());
+      mdV.setProperty("createdEdges", createdEdges.get());
+      if (importerName != null)
+        mdV.setProperty(IMPORTER_KEY, importerName);
+      if (graphUri.isOpen())
+        graphUri.shutdown();
+    }
+  }
+
+}
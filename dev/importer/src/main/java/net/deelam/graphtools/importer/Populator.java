@@ -5,10 +5,12 @@ package net.deelam.graphtools.importer;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Map;
 
 import net.deelam.graphtools.GraphRecord;
 import net.deelam.graphtools.GraphRecordMerger;
 import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.ThresholdController;
 
 /**
  * @author deelam
@@ -26,4 +28,15 @@ public interface Populator {
 
   void shutdown();
 
+  /**
+   * Adds metrics that are updated as the graph is populated.  Called after reinit().
+   */
+  default void putMetrics(Map<String, Number> metrics) {}
+
+  /**
+   * Sets the importer's threshold controller, for populators that commit within populateGraph().
+   * Only getThreshold() should be called on it since the importer reports the batches.  Called after reinit().
+   */
+  default void setThresholdController(ThresholdController controller) {}
+
 }
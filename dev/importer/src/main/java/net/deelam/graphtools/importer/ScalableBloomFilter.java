@@ -0,0 +1,69 @@
+package net.deelam.graphtools.importer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Bloom filter of Strings that grows as ids are added (Almeida et al., "Scalable Bloom Filters"):
+ * when the current filter holds its capacity, a new filter with growthFactor times the capacity
+ * and tighteningRatio times the false-positive probability is added.
+ * The overall false-positive probability stays below the given fpp.
+ *
+ * Not thread-safe.
+ *
+ * @author deelam
+ */
+public class ScalableBloomFilter {
+
+  private static final int GROWTH_FACTOR = 2;
+  private static final double TIGHTENING_RATIO = 0.5;
+
+  private final List<BloomFilter<CharSequence>> filters = new ArrayList<>();
+  private int capacity;
+  private double fpp;
+  private int count = 0;
+
+  public ScalableBloomFilter(int initialCapacity, double fpp) {
+    if (initialCapacity < 1 || fpp <= 0 || fpp >= 1)
+      throw new IllegalArgumentException("Invalid parameters: initialCapacity=" + initialCapacity + " fpp=" + fpp);
+    capacity = initialCapacity;
+    this.fpp = fpp * (1 - TIGHTENING_RATIO); // so the sum of the filters' fpp is less than fpp
+    addFilter();
+  }
+
+  private void addFilter() {
+    filters.add(BloomFilter.create(Funnels.unencodedCharsFunnel(), capacity, fpp));
+    count = 0;
+  }
+
+  public boolean mightContain(String id) {
+    for (int i = filters.size() - 1; i >= 0; --i) // recent ids are more likely to be looked up
+      if (filters.get(i).mightContain(id))
+        return true;
+    return false;
+  }
+
+  public void put(String id) {
+    if (count >= capacity) {
+      capacity = (int) Math.min(Integer.MAX_VALUE, (long) capacity * GROWTH_FACTOR);
+      fpp *= TIGHTENING_RATIO;
+      addFilter();
+    }
+    filters.get(filters.size() - 1).put(id);
+    ++count;
+  }
+
+  /**
+   * @return estimated probability that mightContain() returns true for an id that was not put
+   */
+  public double expectedFpp() {
+    double p = 1;
+    for (BloomFilter<CharSequence> f : filters)
+      p *= 1 - f.expectedFpp();
+    return 1 - p;
+  }
+
+}
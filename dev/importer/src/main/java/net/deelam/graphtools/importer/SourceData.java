@@ -20,4 +20,12 @@ public interface SourceData<R> {
 
   int getPercentProcessed();
 
+  /**
+   * Used to estimate sizes of data structures for importing this sourceData
+   * @return size of underlying data or -1 if unknown
+   */
+  default long getSizeInBytes() {
+    return -1;
+  }
+
 }
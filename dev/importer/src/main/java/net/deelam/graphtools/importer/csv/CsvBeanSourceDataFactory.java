@@ -10,6 +10,7 @@ import java.util.function.Supplier;
 import net.deelam.graphtools.importer.SourceData;
 import net.deelam.graphtools.importer.SourceDataFactory;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 
 /**
  * @author deelam
@@ -20,8 +21,17 @@ public class CsvBeanSourceDataFactory<B> implements SourceDataFactory {
 
   private final Supplier<CsvParser<B>> parserFactory;
 
+  /**
+   * If greater than 1, files are memory-mapped and parsed in chunks on this many threads.
+   * Record order is then not preserved.
+   */
+  @Setter
+  private int numParsingThreads = 1;
+
   @Override
   public SourceData<B> createFrom(File file) throws FileNotFoundException {
+    if (numParsingThreads > 1)
+      return new CsvMappedFileToBeanSourceData<B>(file, parserFactory, numParsingThreads);
     return new CsvFileToBeanSourceData<B>(file, parserFactory.get());
   }
 
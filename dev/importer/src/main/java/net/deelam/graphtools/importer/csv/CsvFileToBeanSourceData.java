@@ -4,6 +4,7 @@
 package net.deelam.graphtools.importer.csv;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 
 import lombok.Getter;
@@ -25,37 +26,34 @@ public class CsvFileToBeanSourceData<B> implements SourceData<B> {
   @Getter
   protected final CsvParser<B> parser;
 
-  private int totalLines;
+  /// used to estimate progress without a separate pass to count lines
+  private final FileChannel fileChannel;
+  private final long totalBytes;
+
   public CsvFileToBeanSourceData(File file, CsvParser<B> parser) throws FileNotFoundException {
-    try{
-      totalLines=countLines(file);
-      log.info("{} has {} totalLines", file, totalLines);
-    }catch(IOException e){
-      e.printStackTrace();
-    }
+    FileInputStream fis = new FileInputStream(file);
+    fileChannel = fis.getChannel();
+    totalBytes = file.length();
+    log.info("{} has {} totalBytes", file, totalBytes);
     
-    Reader fileReader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    Reader fileReader = new BufferedReader(new InputStreamReader(fis, StandardCharsets.UTF_8));
     beanReader = new CsvBeanReader(fileReader, parser.getCsvPreferences());
     this.parser = parser;
   }
 
-  private static int countLines(File file) throws IOException {
-    try(LineNumberReader lnr=new LineNumberReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))){
-      while(lnr.skip(Long.MAX_VALUE)>0){}
-      int lineCount=lnr.getLineNumber();
-      return lineCount;
-    }
+  @Override
+  public long getSizeInBytes() {
+    return totalBytes;
   }
 
   @Override
   public String toString() {
     return "parser's beanClass="+parser.getBeanClass().getSimpleName();
   }
-  static Object staticToken=new StringBuilder("CsvBeanReader is not thread safe");
   
   @Override
   public B getNextRecord() throws IOException {
-    synchronized(staticToken){
+    synchronized(beanReader){ // CsvBeanReader is not thread safe
       while (true) { // keep reading next row until valid bean or EOF
         try {
           //log.info(" "+parser.getCsvFields().length+"=?"+parser.getCellProcessors().length+"");
@@ -82,14 +80,20 @@ public class CsvFileToBeanSourceData<B> implements SourceData<B> {
     }
   }
 
+  /**
+   * Based on bytes read from the file, which runs ahead of the parsed row by up to the size of the readers' buffers.
+   */
   @Override
   public int getPercentProcessed() {
-    int percent=0;
-    log.debug("line={} total={}", beanReader.getLineNumber(), totalLines);
-    if(totalLines==0)
+    if(totalBytes==0)
       return 99;
-    if(beanReader.getLineNumber()>0 && totalLines>0)
-      percent=beanReader.getLineNumber()*100/totalLines;
-    return percent;
+    try {
+      long position = fileChannel.position();
+      log.debug("position={} total={}", position, totalBytes);
+      return (int) (Math.min(position, totalBytes)*100/totalBytes);
+    } catch (IOException e) {
+      log.warn("Could not get file position", e);
+      return 0;
+    }
   }
 }
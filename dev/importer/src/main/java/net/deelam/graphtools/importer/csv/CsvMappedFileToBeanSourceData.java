@@ -0,0 +1,419 @@
+/**
+ *
+ */
+package net.deelam.graphtools.importer.csv;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import net.deelam.graphtools.importer.SourceData;
+import net.deelam.graphtools.util.MappedBuffers;
+
+import org.supercsv.exception.SuperCsvException;
+import org.supercsv.io.CsvBeanReader;
+import org.supercsv.io.ICsvBeanReader;
+
+/**
+ * Parses one large CSV file on multiple threads.
+ * The file is memory-mapped and cut into chunks of about chunkSize bytes that end at a newline
+ * outside of quotes, so quoted fields may contain newlines.
+ * Each chunk is parsed with its own CsvBeanReader and CsvParser (from parserFactory).
+ *
+ * Use either:
+ * <li> this instance as a single SourceData, where records from all chunks are merged into one stream
+ *   (record order is not preserved), e.g., as input to ParallelImporter; or
+ * <li> getChunks() for a SourceData per chunk, each to be read by one thread.
+ *
+ * Finding chunk boundaries requires counting quotes up to each boundary, which is done in parallel
+ * per chunk before parsing starts.  Assumes an ASCII-compatible encoding such as UTF-8.
+ *
+ * close() unmaps the file (ImporterManager closes the SourceDatas it creates), so chunks must not be read after it.
+ *
+ * @author deelam
+ */
+@Slf4j
+public class CsvMappedFileToBeanSourceData<B> implements SourceData<B>, Closeable {
+
+  /// a MappedByteBuffer is limited to Integer.MAX_VALUE bytes
+  private static final long MAX_CHUNK_SIZE = 1 << 30;
+
+  private final File file;
+  private final Supplier<CsvParser<B>> parserFactory;
+  private final int numThreads;
+
+  @Setter
+  private long chunkSize = 64 * 1024 * 1024;
+
+  /// number of records passed between threads at a time
+  @Setter
+  private int batchSize = 100;
+
+  private final RandomAccessFile raFile;
+  private final FileChannel channel;
+  private final long totalBytes;
+
+  public CsvMappedFileToBeanSourceData(File file, Supplier<CsvParser<B>> parserFactory, int numThreads)
+      throws FileNotFoundException {
+    this.file = file;
+    this.parserFactory = parserFactory;
+    this.numThreads = numThreads;
+    raFile = new RandomAccessFile(file, "r");
+    channel = raFile.getChannel();
+    totalBytes = file.length();
+  }
+
+  @Override
+  public long getSizeInBytes() {
+    return totalBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "file=" + file + " in " + (chunks == null ? "?" : chunks.size()) + " chunks";
+  }
+
+  private volatile List<Chunk> chunks;
+
+  /**
+   * @return a SourceData for each chunk; each is not thread-safe
+   */
+  public synchronized List<? extends SourceData<B>> getChunks() throws IOException {
+    if (chunks == null) {
+      ExecutorService threadPool = Executors.newFixedThreadPool(numThreads);
+      try {
+        chunks = splitIntoChunks(threadPool);
+      } finally {
+        threadPool.shutdown();
+        raFile.close(); // mapped buffers remain valid
+      }
+      log.info("{} has {} bytes in {} chunks", file, totalBytes, chunks.size());
+    }
+    return Collections.unmodifiableList(chunks);
+  }
+
+  /// Boundary detection
+
+  /**
+   * Quote parity of a region and the first newline in it, for each possible parity at its start.
+   */
+  private static class RegionScan {
+    boolean oddQuotes;
+    /// firstNewline[p] = position after first newline that is outside quotes given starting parity p
+    final long[] firstNewline = {-1, -1};
+  }
+
+  private RegionScan scanRegion(long start, long end, byte quote) throws IOException {
+    RegionScan scan = new RegionScan();
+    MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    int parity = 0;
+    try {
+      for (int i = 0, len = buf.limit(); i < len; ++i) {
+        byte b = buf.get(i);
+        if (b == quote) {
+          parity ^= 1;
+        } else if (b == '\n' && scan.firstNewline[parity] < 0) {
+          scan.firstNewline[parity] = start + i + 1;
+        }
+      }
+    } finally {
+      MappedBuffers.unmap(buf); // chunks map their own regions
+    }
+    scan.oddQuotes = (parity == 1);
+    return scan;
+  }
+
+  private List<Chunk> splitIntoChunks(ExecutorService threadPool) throws IOException {
+    long regionSize = Math.max(1, Math.min(chunkSize, MAX_CHUNK_SIZE));
+    int numRegions = (int) ((totalBytes + regionSize - 1) / regionSize);
+    byte quote = (byte) parserFactory.get().getCsvPreferences().getQuoteChar();
+
+    List<Future<RegionScan>> futures = new ArrayList<>(numRegions);
+    for (int i = 0; i < numRegions; ++i) {
+      long start = i * regionSize;
+      long end = Math.min(start + regionSize, totalBytes);
+      futures.add(threadPool.submit(() -> scanRegion(start, end, quote)));
+    }
+
+    // a chunk starts after the first newline that is outside quotes in each region
+    List<Long> boundaries = new ArrayList<>(numRegions + 1);
+    boundaries.add(0L);
+    int parity = 0; // number of quotes before the region
+    for (int i = 0; i < numRegions; ++i) {
+      RegionScan scan = get(futures.get(i));
+      if (i > 0) {
+        long boundary = scan.firstNewline[parity];
+        if (boundary > 0 && boundary < totalBytes)
+          boundaries.add(boundary);
+        // else region is within a quoted field or has no newline, so previous chunk extends over it
+      }
+      if (scan.oddQuotes)
+        parity ^= 1;
+    }
+    boundaries.add(totalBytes);
+
+    List<Chunk> chunkList = new ArrayList<>(boundaries.size() - 1);
+    for (int i = 1; i < boundaries.size(); ++i) {
+      long start = boundaries.get(i - 1);
+      long end = boundaries.get(i);
+      if (end - start > Integer.MAX_VALUE)
+        throw new IOException("Could not split " + file + " at a newline between bytes " + start + " and " + end);
+      chunkList.add(new Chunk(chunkList.size(), start, end));
+    }
+    return chunkList;
+  }
+
+  private static <T> T get(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /// Per-chunk parsing
+
+  private class Chunk implements SourceData<B> {
+    final int index;
+    final long start, end;
+    private final MappedByteBuffer buf;
+    private final CsvParser<B> parser;
+    private final ICsvBeanReader beanReader;
+
+    Chunk(int index, long start, long end) throws IOException {
+      this.index = index;
+      this.start = start;
+      this.end = end;
+      buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      parser = parserFactory.get();
+      BufferedReader reader = new BufferedReader(new InputStreamReader(
+          new ByteBufferInputStream(buf.duplicate()), StandardCharsets.UTF_8));
+      beanReader = new CsvBeanReader(reader, parser.getCsvPreferences());
+    }
+
+    @Override
+    public String toString() {
+      return "chunk " + index + " of " + file + " [" + start + "," + end + ")";
+    }
+
+    /// same as CsvFileToBeanSourceData.getNextRecord() but without synchronizing
+    @Override
+    public B getNextRecord() throws IOException {
+      while (true) { // keep reading next row until valid bean or EOF
+        try {
+          B bean = beanReader.read(parser.getBeanClass(), parser.getCsvFields(), parser.getCellProcessors());
+          if (bean == null) // bean=null if EOF
+            return null;
+
+          // bean may have been successfully created for a row that should be ignored
+          String rowStr = beanReader.getUntokenizedRow();
+          if (!CsvUtils.shouldIgnore(rowStr, beanReader.getLineNumber(), parser))
+            return bean;
+        } catch (SuperCsvException e) {
+          String rowStr = beanReader.getUntokenizedRow();
+          if (!CsvUtils.shouldIgnore(rowStr, beanReader.getLineNumber(), parser))
+            throw e;
+          //else try reading next line
+        }
+      }
+    }
+
+    long bytesRead() {
+      return bytesRead.get();
+    }
+
+    private final AtomicInteger bytesRead = new AtomicInteger();
+
+    @Override
+    public int getPercentProcessed() {
+      return (int) (bytesRead() * 100 / Math.max(1, end - start));
+    }
+
+    private class ByteBufferInputStream extends InputStream {
+      private final ByteBuffer bb;
+
+      ByteBufferInputStream(ByteBuffer bb) {
+        this.bb = bb;
+      }
+
+      @Override
+      public int read() {
+        if (!bb.hasRemaining())
+          return -1;
+        bytesRead.lazySet(bb.position() + 1);
+        return bb.get() & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] bytes, int off, int len) {
+        if (!bb.hasRemaining())
+          return -1;
+        len = Math.min(len, bb.remaining());
+        bb.get(bytes, off, len);
+        bytesRead.lazySet(bb.position());
+        return len;
+      }
+
+      @Override
+      public int available() {
+        return bb.remaining();
+      }
+    }
+  }
+
+  /// Merged stream of all chunks
+
+  private static final List<?> END_OF_DATA = new ArrayList<>(0);
+
+  private BlockingQueue<List<B>> queue;
+  private ExecutorService parsingThreads;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private List<B> currBatch = new ArrayList<>(0);
+  private int currIndex = 0;
+
+  private void startParsing() throws IOException {
+    getChunks();
+    List<Chunk> chunkList = chunks;
+    queue = new ArrayBlockingQueue<>(numThreads * 4);
+    parsingThreads = Executors.newFixedThreadPool(numThreads);
+    AtomicInteger remainingChunks = new AtomicInteger(chunkList.size());
+    for (Chunk chunk : chunkList) {
+      parsingThreads.execute(() -> parseChunk(chunk, remainingChunks));
+    }
+    parsingThreads.shutdown(); // threads end after parsing all chunks
+    if (chunkList.isEmpty())
+      queue.add(endOfData());
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<B> endOfData() {
+    return (List<B>) END_OF_DATA;
+  }
+
+  private void parseChunk(Chunk chunk, AtomicInteger remainingChunks) {
+    try {
+      try {
+        List<B> batch = new ArrayList<>(batchSize);
+        B bean;
+        while (!closed && failure.get() == null && (bean = chunk.getNextRecord()) != null) {
+          batch.add(bean);
+          if (batch.size() == batchSize) {
+            queue.put(batch);
+            batch = new ArrayList<>(batchSize);
+          }
+        }
+        if (!batch.isEmpty())
+          queue.put(batch);
+      } catch (IOException | RuntimeException e) {
+        log.warn("Could not parse " + chunk, e);
+        failure.compareAndSet(null, e);
+      } finally {
+        if (remainingChunks.decrementAndGet() == 0)
+          queue.put(endOfData());
+      }
+    } catch (InterruptedException e) {
+      // close() was called
+    }
+  }
+
+  /**
+   * Records are returned in the order they are parsed across all chunks.
+   * Not thread-safe; use ParallelImporter or getChunks() to consume records on multiple threads.
+   */
+  @Override
+  public B getNextRecord() throws IOException {
+    if (queue == null)
+      startParsing();
+    while (currIndex >= currBatch.size()) {
+      if (currBatch == END_OF_DATA) {
+        checkFailure();
+        return null;
+      }
+      try {
+        currBatch = queue.take();
+        currIndex = 0;
+      } catch (InterruptedException e) {
+        throw new IOException("Interrupted while waiting for parsed records", e);
+      }
+    }
+    return currBatch.get(currIndex++);
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable t = failure.get();
+    if (t instanceof IOException)
+      throw (IOException) t;
+    if (t instanceof RuntimeException)
+      throw (RuntimeException) t;
+  }
+
+  @Override
+  public int getPercentProcessed() {
+    if (totalBytes == 0)
+      return 99;
+    List<Chunk> chunkList = chunks;
+    if (chunkList == null)
+      return 0;
+    long bytesRead = 0;
+    for (Chunk chunk : chunkList)
+      bytesRead += chunk.bytesRead();
+    return (int) (bytesRead * 100 / totalBytes);
+  }
+
+  private volatile boolean closed = false;
+
+  /**
+   * Stops parsing and unmaps the file.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed)
+      return;
+    closed = true;
+    raFile.close();
+    if (parsingThreads != null) {
+      parsingThreads.shutdownNow();
+      try {
+        if (!parsingThreads.awaitTermination(10, TimeUnit.SECONDS)) {
+          log.warn("Not unmapping {} since parsing threads are still running", file);
+          return; // buffers are released when garbage collected
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    if (chunks != null) {
+      for (Chunk chunk : chunks)
+        MappedBuffers.unmap(chunk.buf);
+    }
+  }
+}
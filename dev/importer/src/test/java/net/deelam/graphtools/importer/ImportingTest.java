@@ -3,10 +3,23 @@ package net.deelam.graphtools.importer;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import net.deelam.graphtools.CompactGraphRecord;
+import net.deelam.graphtools.ElementCounts;
 import net.deelam.graphtools.GraphRecordImpl;
 import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.GraphUtils;
 import net.deelam.graphtools.JavaSetPropertyMerger;
+import net.deelam.graphtools.Neo4jPropertyMerger;
+import net.deelam.graphtools.graphfactories.IdGraphFactoryNeo4j;
 import net.deelam.graphtools.graphfactories.IdGraphFactoryOrientdb;
 import net.deelam.graphtools.graphfactories.IdGraphFactoryTinker;
 import net.deelam.graphtools.importer.csv.CsvBeanSourceDataFactory;
@@ -18,6 +31,9 @@ import org.apache.commons.lang.time.StopWatch;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.orient.OrientGraph;
 import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
 
@@ -32,6 +48,7 @@ public class ImportingTest {
   public static void setup() throws IOException {
     IdGraphFactoryTinker.register();
     IdGraphFactoryOrientdb.register();
+    IdGraphFactoryNeo4j.register();
     mgr.register("companyContactsCsv",
         new CsvBeanSourceDataFactory<CompanyContactBean>(()->new CompanyContactsCsvParser()),
         new ImporterFactory() {
@@ -59,6 +76,75 @@ public class ImportingTest {
             return importer;
           }
         });
+
+    mgr.register("companyContactsCsvParallel", new CsvBeanSourceDataFactory<CompanyContactBean>(()->new CompanyContactsCsvParser()),
+        new ImporterFactory() {
+          @Override
+          public Importer<CompanyContactBean> create(SourceData sd) {
+            ParallelImporter<CompanyContactBean> importer = new ParallelImporter<CompanyContactBean>(
+                ()->new CompanyContactsEncoder(),
+                new DefaultPopulator("telephoneCsv", new DefaultGraphRecordMerger(new JavaSetPropertyMerger())),
+                new CompactGraphRecord.Factory() // shared by workers
+                );
+            importer.setNumWorkers(4);
+            importer.setBatchSize(10);
+            importer.setBufferThreshold(300); // force several incremental populates
+            return importer;
+          }
+        });
+
+    mgr.register("companyContactsCsvParallelPopulator", new CsvBeanSourceDataFactory<CompanyContactBean>(()->new CompanyContactsCsvParser()),
+        new ImporterFactory() {
+          @Override
+          public Importer<CompanyContactBean> create(SourceData sd) {
+            ParallelPopulator populator = new ParallelPopulator("telephoneCsv", new DefaultGraphRecordMerger(new Neo4jPropertyMerger()));
+            populator.setNumWriters(4);
+            ParallelImporter<CompanyContactBean> importer = new ParallelImporter<CompanyContactBean>(
+                ()->new CompanyContactsEncoder(), populator, new CompactGraphRecord.Factory());
+            importer.setNumWorkers(2);
+            importer.setBufferThreshold(300); // force several incremental populates
+            return importer;
+          }
+        });
+
+    mgr.register("companyContactsCsvWriteBehind", new CsvBeanSourceDataFactory<CompanyContactBean>(()->new CompanyContactsCsvParser()),
+        new ImporterFactory() {
+          @Override
+          public Importer<CompanyContactBean> create(SourceData sd) {
+            DefaultPopulator populator = new DefaultPopulator("telephoneCsv", new DefaultGraphRecordMerger(new JavaSetPropertyMerger()));
+            populator.setWriteBehindBufferSize(50); // force flushes between commits
+            return new DefaultImporter<CompanyContactBean>(new CompanyContactsEncoder(), populator,
+                new GraphRecordImpl.Factory());
+          }
+        });
+
+    mgr.register("companyContactsCsvBloom", new CsvBeanSourceDataFactory<CompanyContactBean>(()->new CompanyContactsCsvParser()),
+        new ImporterFactory() {
+          @Override
+          public Importer<CompanyContactBean> create(SourceData sd) {
+            DefaultPopulator populator = new DefaultPopulator("telephoneCsv", new DefaultGraphRecordMerger(new JavaSetPropertyMerger()));
+            populator.setBloomFilterCapacity(100); // force the filter to grow
+            populator.setBloomFilterWarmUp(true);
+            return new DefaultImporter<CompanyContactBean>(new CompanyContactsEncoder(), populator,
+                new GraphRecordImpl.Factory());
+          }
+        });
+
+    mgr.register("companyContactsCsvExternalSort", new CsvBeanSourceDataFactory<CompanyContactBean>(()->new CompanyContactsCsvParser()),
+        new ImporterFactory() {
+          @Override
+          public Importer<CompanyContactBean> create(SourceData sd) {
+            ExternalSortImporter<CompanyContactBean> importer = new ExternalSortImporter<CompanyContactBean>(
+                new CompanyContactsEncoder(),
+                new DefaultPopulator("telephoneCsv", new DefaultGraphRecordMerger(new JavaSetPropertyMerger())),
+                new GraphRecordImpl.Factory()
+                );
+            importer.setBufferThreshold(200); // force many spilled runs
+            importer.setPopulateBatchSize(150);
+            importer.setSpillDir(new File("target"));
+            return importer;
+          }
+        });
   }
 
   @Test
@@ -71,6 +157,176 @@ public class ImportingTest {
     mgr.importFile("companyContactsCsv", csvFile, graphUri);
   }
 
+  @Test
+  public void parallelImportTest() throws IOException {
+    File csvFile = new File(getClass().getResource("/us-500.csv").getFile());
+
+    GraphUri expectedUri = new GraphUri("tinker:///./target/us500consolidated?fileType=graphml");
+    expectedUri.delete();
+    mgr.importFile("companyContactsCsvConsolidating", csvFile, expectedUri);
+
+    GraphUri graphUri = new GraphUri("tinker:///./target/us500parallel?fileType=graphml");
+    graphUri.delete();
+    mgr.importFile("companyContactsCsvParallel", csvFile, graphUri);
+
+    assertSameElements(expectedUri, graphUri);
+  }
+
+  @Test
+  public void parallelPopulatorImportTest() throws IOException {
+    File csvFile = new File(getClass().getResource("/us-500.csv").getFile());
+
+    GraphUri expectedUri = new GraphUri("tinker:///./target/us500consolidated?fileType=graphml");
+    expectedUri.delete();
+    mgr.importFile("companyContactsCsvConsolidating", csvFile, expectedUri);
+
+    GraphUri graphUri = new GraphUri("neo4j:./target/us500parallelPopulator");
+    graphUri.delete();
+    Map<String, Number> metrics = new HashMap<>();
+    mgr.importFile("companyContactsCsvParallelPopulator", csvFile, graphUri, metrics);
+    assertTrue(metrics.get("CROSS_SHARD_EDGES").longValue() > 0);
+
+    assertSameElements(expectedUri, graphUri);
+  }
+
+  @Test
+  public void externalSortImportTest() throws IOException {
+    File csvFile = new File(getClass().getResource("/us-500.csv").getFile());
+
+    GraphUri expectedUri = new GraphUri("tinker:///./target/us500consolidated?fileType=graphml");
+    expectedUri.delete();
+    mgr.importFile("companyContactsCsvConsolidating", csvFile, expectedUri);
+
+    GraphUri graphUri = new GraphUri("tinker:///./target/us500externalSort?fileType=graphml");
+    graphUri.delete();
+    mgr.importFile("companyContactsCsvExternalSort", csvFile, graphUri);
+
+    assertSameElements(expectedUri, graphUri);
+  }
+
+  @Test
+  public void writeBehindImportTest() throws IOException {
+    File csvFile = new File(getClass().getResource("/us-500.csv").getFile());
+
+    GraphUri expectedUri = new GraphUri("tinker:///./target/us500test?fileType=graphml");
+    expectedUri.delete();
+    mgr.importFile("companyContactsCsv", csvFile, expectedUri);
+
+    GraphUri graphUri = new GraphUri("tinker:///./target/us500writeBehind?fileType=graphml");
+    graphUri.delete();
+    mgr.importFile("companyContactsCsvWriteBehind", csvFile, graphUri);
+
+    assertSameElements(expectedUri, graphUri);
+    IdGraph<?> expected = expectedUri.openIdGraph();
+    IdGraph<?> graph = graphUri.openIdGraph();
+    try {
+      for (Vertex v : expected.getVertices()) {
+        if (GraphUtils.METADATA_VERTEXID.equals(v.getId()))
+          continue;
+        Vertex v2 = graph.getVertex(v.getId());
+        for (String key : v.getPropertyKeys())
+          assertEquals(v.getId() + "." + key, (Object) v.getProperty(key), (Object) v2.getProperty(key));
+      }
+    } finally {
+      expectedUri.shutdown();
+      graphUri.shutdown();
+    }
+  }
+
+  @Test
+  public void bloomFilterImportTest() throws IOException {
+    File csvFile = new File(getClass().getResource("/us-500.csv").getFile());
+
+    GraphUri expectedUri = new GraphUri("tinker:///./target/us500test?fileType=graphml");
+    expectedUri.delete();
+    mgr.importFile("companyContactsCsv", csvFile, expectedUri);
+
+    GraphUri graphUri = new GraphUri("tinker:///./target/us500bloom?fileType=graphml");
+    graphUri.delete();
+    Map<String, Number> metrics = new HashMap<>();
+    mgr.importFile("companyContactsCsvBloom", csvFile, graphUri, metrics);
+    assertTrue(metrics.get("LOOKUPS_SKIPPED").longValue() > 0);
+    assertTrue(metrics.get("BLOOM_FALSE_POSITIVE_RATE").doubleValue() < 0.05);
+    assertSameElements(expectedUri, graphUri);
+
+    // append the same records; warm-up adds existing ids so no lookups are skipped
+    metrics.clear();
+    mgr.importFile("companyContactsCsvBloom", csvFile, graphUri, metrics);
+    assertEquals(0, metrics.get("LOOKUPS_SKIPPED").longValue());
+    assertSameElements(expectedUri, graphUri);
+  }
+
+  @Test
+  public void bloomFilterRestoresUniqueIdCheckTest() throws IOException {
+    GraphUri graphUri = new GraphUri("tinker:/");
+    DefaultPopulator populator = new DefaultPopulator("telephoneCsv", new DefaultGraphRecordMerger(new JavaSetPropertyMerger()));
+    populator.setBloomFilterCapacity(100);
+    populator.reinit(graphUri, null);
+    populator.populateGraph(graphUri, Arrays.asList(new GraphRecordImpl("a")));
+    try {
+      populator.populateGraph(graphUri, Arrays.asList(new GraphRecordImpl("b"), null));
+      fail("Expected failed import");
+    } catch (NullPointerException e) {
+      // expected
+    }
+    try {
+      graphUri.getGraph().addVertex("a"); // not populated by the populator, so ids are checked
+      fail("Expected unique id check");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    populator.shutdown();
+  }
+
+  private static void assertSameElements(GraphUri expectedUri, GraphUri graphUri) {
+    IdGraph<?> expected = expectedUri.openIdGraph();
+    IdGraph<?> graph = graphUri.openIdGraph();
+    try {
+      assertEquals(GraphUtils.getNodeCount(expected), GraphUtils.getNodeCount(graph));
+      assertEquals(GraphUtils.getEdgeCount(expected), GraphUtils.getEdgeCount(graph));
+      assertCountsMaintained(graph);
+      for (Vertex v : expected.getVertices()) {
+        Vertex v2 = graph.getVertex(v.getId());
+        assertNotNull(v.getId().toString(), v2);
+        assertEquals(v.getId().toString(), v.getPropertyKeys(), v2.getPropertyKeys());
+      }
+    } finally {
+      expectedUri.shutdown();
+      graphUri.shutdown();
+    }
+  }
+
+  private static void assertCountsMaintained(IdGraph<?> graph) {
+    assertNotNull(ElementCounts.getNodeCount(graph));
+    assertEquals(Iterables.size(graph.getVertices()), ElementCounts.getNodeCount(graph).longValue());
+    assertEquals(Iterables.size(graph.getEdges()), ElementCounts.getEdgeCount(graph).longValue());
+  }
+
+  @Test
+  public void neo4jBatchDeferredIndexingTest() throws IOException {
+    File csvFile = new File(getClass().getResource("/us-500.csv").getFile());
+    GraphUri graphUri = new GraphUri("neo4j:./target/us500neo4jBatch");
+    Neo4jBatchPopulator populator = new Neo4jBatchPopulator("telephoneCsv");
+    populator.setDeferIndexing(true);
+    Neo4jBatchImporter<CompanyContactBean> importer =
+        new Neo4jBatchImporter<>(new CompanyContactsEncoder(), populator, new GraphRecordImpl.Factory());
+    mgr.importData(new CsvBeanSourceDataFactory<CompanyContactBean>(()->new CompanyContactsCsvParser()).createFrom(csvFile),
+        importer, graphUri, new HashMap<>());
+
+    IdGraph<?> graph = new GraphUri(graphUri.asString()).openExistingIdGraph();
+    try {
+      assertCountsMaintained(graph);
+      for (Vertex v : graph.getVertices()) { // lookup by string id uses index
+        assertNotNull(v.getId().toString(), graph.getVertex(v.getId()));
+      }
+      for (Edge e : graph.getEdges()) {
+        assertNotNull(e.getId().toString(), graph.getEdge(e.getId()));
+      }
+    } finally {
+      graph.shutdown();
+    }
+  }
+
   //@Test
   public void orientImportTest() throws Exception {
     StopWatch sw = new StopWatch();
@@ -0,0 +1,58 @@
+package net.deelam.graphtools.importer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * @author deelam
+ */
+public class OffHeapIdMapTest {
+
+  @Test
+  public void testGrowth() throws IOException {
+    File dir = new File("target/offHeapIdMap");
+    FileUtils.deleteDirectory(dir);
+    dir.mkdirs();
+    try (OffHeapIdMap idMap = new OffHeapIdMap(10, dir)) {
+      int count = 100_000; // forces several rehashes
+      for (int i = 0; i < count; ++i)
+        idMap.put("node:" + i, i);
+      assertEquals(count, idMap.getSize());
+      assertEquals(2, dir.list().length); // old tables are deleted
+
+      for (int i = 0; i < count; ++i)
+        assertEquals(i, idMap.get("node:" + i));
+      assertEquals(OffHeapIdMap.NOT_FOUND, idMap.get("node:" + count));
+      assertEquals(OffHeapIdMap.NOT_FOUND, idMap.get(""));
+
+      idMap.put("node:7", 77);
+      assertEquals(77, idMap.get("node:7"));
+      assertEquals(count, idMap.getSize());
+    }
+    assertEquals(0, dir.list().length);
+  }
+
+  @Test
+  public void testNonAsciiIds() throws IOException {
+    try (OffHeapIdMap idMap = new OffHeapIdMap(0, null)) {
+      idMap.put("日本", 1);
+      idMap.put("日本 ", 2);
+      idMap.put("", 3);
+      assertEquals(1, idMap.get("日本"));
+      assertEquals(2, idMap.get("日本 "));
+      assertEquals(3, idMap.get(""));
+    }
+  }
+
+  @Test
+  public void testTableCapacity() {
+    assertEquals(2048, OffHeapIdMap.tableCapacityFor(0));
+    assertEquals(1 << 24, OffHeapIdMap.tableCapacityFor(10_000_000));
+    assertEquals(1 << 23, OffHeapIdMap.tableCapacityFor(Neo4jBatchPopulator.MAX_INITIAL_IDMAP_SIZE));
+  }
+}
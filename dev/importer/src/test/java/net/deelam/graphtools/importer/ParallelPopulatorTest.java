@@ -0,0 +1,99 @@
+package net.deelam.graphtools.importer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Iterables;
+import com.tinkerpop.blueprints.util.wrappers.id.IdGraph;
+
+import net.deelam.graphtools.FixedThresholdController;
+import net.deelam.graphtools.GraphRecord;
+import net.deelam.graphtools.GraphRecordImpl;
+import net.deelam.graphtools.GraphUri;
+import net.deelam.graphtools.GraphUtils;
+import net.deelam.graphtools.Neo4jPropertyMerger;
+import net.deelam.graphtools.graphfactories.IdGraphFactoryNeo4j;
+
+/**
+ * @author deelam
+ */
+public class ParallelPopulatorTest {
+
+  @BeforeClass
+  public static void setUpBeforeClass() {
+    IdGraphFactoryNeo4j.register();
+  }
+
+  @Test
+  public void testThresholdSizedTransactions() throws IOException {
+    GraphUri graphUri = new GraphUri("neo4j:./target/parallelPopulator");
+    graphUri.delete();
+    ParallelPopulator populator =
+        new ParallelPopulator("test", new DefaultGraphRecordMerger(new Neo4jPropertyMerger()));
+    populator.setNumWriters(3);
+    populator.reinit(graphUri, null);
+    Map<String, Number> metrics = new HashMap<>();
+    populator.putMetrics(metrics);
+    populator.setThresholdController(new FixedThresholdController(4)); // several transactions per shard
+
+    GraphRecord.Factory factory = new GraphRecordImpl.Factory();
+    List<GraphRecord> records = new ArrayList<>();
+    for (int i = 0; i < 40; ++i) {
+      GraphRecord gr = factory.create("v" + i, "node");
+      gr.setProperty("num", i);
+      records.add(gr);
+      if (i > 0)
+        records.get(i - 1).addEdge("next", gr);
+    }
+    populator.populateGraph(graphUri, records);
+    assertTrue(metrics.get("CROSS_SHARD_EDGES").longValue() > 0);
+    assertEquals(0, metrics.get("WRITE_RETRIES").longValue());
+
+    IdGraph<?> graph = graphUri.getGraph();
+    try {
+      assertEquals(41, Iterables.size(graph.getVertices())); // including metadata node
+      assertEquals(39, Iterables.size(graph.getEdges()));
+      assertNotNull(graph.getVertex("v39").getProperty("num"));
+      assertEquals(41, GraphUtils.getNodeCount(graph, true));
+      assertEquals(39, GraphUtils.getEdgeCount(graph, true));
+    } finally {
+      populator.shutdown();
+    }
+  }
+
+  @SuppressWarnings("serial")
+  static class DeadlockDetectedException extends RuntimeException {}
+
+  @SuppressWarnings("serial")
+  static class TransactionFailureException extends RuntimeException {
+    TransactionFailureException(Throwable cause) {
+      super(cause);
+    }
+  }
+
+  @SuppressWarnings("serial")
+  static class AcquireLockTimeoutException extends RuntimeException {}
+
+  @Test
+  public void testOnlyConflictsAreRetryable() {
+    assertTrue(ParallelPopulator.isRetryable(new DeadlockDetectedException()));
+    assertTrue(ParallelPopulator.isRetryable(new RuntimeException(new DeadlockDetectedException())));
+    assertTrue(ParallelPopulator.isRetryable(new TransactionFailureException(new AcquireLockTimeoutException())));
+    assertFalse(ParallelPopulator.isRetryable(new TransactionFailureException(new IllegalStateException())));
+    assertFalse(ParallelPopulator.isRetryable(new AcquireLockTimeoutException()));
+    assertFalse(ParallelPopulator.isRetryable(new NullPointerException()));
+    assertFalse(ParallelPopulator.isRetryable(new IllegalArgumentException("Missing vertex for edge")));
+  }
+
+}
@@ -0,0 +1,94 @@
+package net.deelam.graphtools.importer.csv;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import net.deelam.graphtools.importer.SourceData;
+import net.deelam.graphtools.importer.domain.CompanyContactBean;
+import net.deelam.graphtools.importer.domain.CompanyContactsCsvParser;
+
+import org.junit.Test;
+
+/**
+ * @author deelam
+ */
+public class CsvMappedFileToBeanSourceDataTest {
+
+  static List<CompanyContactBean> readAll(SourceData<CompanyContactBean> sd) throws IOException {
+    List<CompanyContactBean> beans = new ArrayList<>();
+    CompanyContactBean bean;
+    while ((bean = sd.getNextRecord()) != null)
+      beans.add(bean);
+    return beans;
+  }
+
+  static final Comparator<CompanyContactBean> BY_EMAIL = Comparator.comparing(CompanyContactBean::getEmail);
+
+  @Test
+  public void testSameRecordsAsSequentialReader() throws IOException {
+    File csvFile = new File(getClass().getResource("/us-500.csv").getFile());
+    List<CompanyContactBean> expected =
+        readAll(new CsvFileToBeanSourceData<>(csvFile, new CompanyContactsCsvParser()));
+
+    try (CsvMappedFileToBeanSourceData<CompanyContactBean> sd =
+        new CsvMappedFileToBeanSourceData<>(csvFile, () -> new CompanyContactsCsvParser(), 4)) {
+      sd.setChunkSize(4096); // many chunks
+      sd.setBatchSize(7);
+      List<CompanyContactBean> beans = readAll(sd);
+      assertTrue(sd.getChunks().size() > 10);
+      assertEquals(100, sd.getPercentProcessed());
+
+      assertEquals(500, expected.size());
+      expected.sort(BY_EMAIL);
+      beans.sort(BY_EMAIL);
+      assertEquals(expected, beans);
+    }
+  }
+
+  @Test(timeout = 20000)
+  public void testCloseWhileParsing() throws IOException {
+    File csvFile = new File(getClass().getResource("/us-500.csv").getFile());
+    CsvMappedFileToBeanSourceData<CompanyContactBean> sd =
+        new CsvMappedFileToBeanSourceData<>(csvFile, () -> new CompanyContactsCsvParser(), 2);
+    sd.setChunkSize(4096);
+    sd.setBatchSize(1); // parsing threads block on the full queue
+    assertNotNull(sd.getNextRecord());
+    sd.close(); // stops the parsing threads before unmapping the chunks
+    sd.close();
+  }
+
+  @Test
+  public void testQuotedNewlines() throws IOException {
+    File csvFile = new File("target/quotedNewlines.csv");
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 50; ++i) {
+      sb.append("First" + i + ",Last,\"Company, Inc.\",\"" + i + " Main St\nSuite " + i + "\nBldg \"\"B\"\"\","
+          + "City,County,VA,12345,555-555-5555,555-555-0000,f" + i + "@company.com,web\n");
+    }
+    Files.write(csvFile.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+
+    try (CsvMappedFileToBeanSourceData<CompanyContactBean> sd =
+        new CsvMappedFileToBeanSourceData<>(csvFile, () -> new CompanyContactsCsvParser(), 3)) {
+      sd.setChunkSize(37); // boundaries often fall within quoted fields
+      List<CompanyContactBean> beans = readAll(sd);
+      assertEquals(50, beans.size());
+
+      for (SourceData<CompanyContactBean> chunk : sd.getChunks()) {
+        assertEquals(100, chunk.getPercentProcessed());
+      }
+      beans.sort(Comparator.comparing(CompanyContactBean::getZip)
+          .thenComparing(b -> Integer.parseInt(b.getFirstName().substring(5))));
+      for (int i = 0; i < 50; ++i) {
+        assertEquals("First" + i, beans.get(i).getFirstName());
+        assertEquals(i + " Main St\nSuite " + i + "\nBldg \"B\"", beans.get(i).getAddress());
+      }
+    }
+  }
+}